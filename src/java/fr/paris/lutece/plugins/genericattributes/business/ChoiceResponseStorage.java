@@ -0,0 +1,401 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.business;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import fr.paris.lutece.plugins.genericattributes.service.GenericAttributesPlugin;
+import fr.paris.lutece.plugins.genericattributes.service.entrytype.EntryTypeServiceManager;
+import fr.paris.lutece.plugins.genericattributes.service.entrytype.IEntryTypeService;
+import fr.paris.lutece.plugins.genericattributes.util.StorageCompression;
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.plugin.PluginService;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+import fr.paris.lutece.util.sql.DAOUtil;
+import fr.paris.lutece.util.sql.TransactionManager;
+
+/**
+ * Compact storage of the responses of choice entries. The value of such a response is the value of its field, so it can be stored as the id of the field
+ * only, with a NULL response_value, and resolved on read from a cache of the values of the fields. The entry types of the choice entries are the ones whose
+ * {@link IEntryTypeService#isResponseValueOfField( )} is true.
+ */
+public final class ChoiceResponseStorage
+{
+    // Properties
+    private static final String PROPERTY_COMPACT = "genericattributes.response.compactChoiceStorage";
+    private static final String PROPERTY_CHUNK_SIZE = "genericattributes.response.compactChoiceStorage.chunkSize";
+    private static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    // Constants
+    private static final String SQL_QUERY_SELECT_FIELD_VALUES = "SELECT id_field, value FROM genatt_field WHERE id_entry = ? ";
+    private static final String SQL_QUERY_SELECT_CHUNK = "SELECT resp.id_response, resp.response_value, resp.id_field, resp.id_entry, type.class_name "
+            + " FROM genatt_response resp, genatt_entry ent, genatt_entry_type type WHERE resp.id_entry = ent.id_entry AND ent.id_type = type.id_type "
+            + " AND resp.id_response > ? AND resp.id_field IS NOT NULL AND resp.response_value IS NOT NULL ORDER BY resp.id_response LIMIT ? ";
+    private static final String SQL_QUERY_CLEAR_VALUES = "UPDATE genatt_response SET response_value = NULL WHERE response_value = ? ";
+    private static final String SQL_COLUMN_ID_RESPONSE = "id_response";
+    private static final String SQL_QUERY_SELECT_FIELD = "SELECT field.id_entry, field.value, type.class_name FROM genatt_field field, genatt_entry ent, genatt_entry_type type "
+            + " WHERE field.id_field = ? AND field.id_entry = ent.id_entry AND ent.id_type = type.id_type ";
+    private static final String SQL_QUERY_MATERIALIZE_VALUES = "UPDATE genatt_response SET response_value = ? WHERE id_field = ? AND id_entry = ? AND response_value IS NULL ";
+
+    private static final Map<Integer, FieldValue> _mapFieldValues = new ConcurrentHashMap<>( );
+    private static volatile Boolean _bEnabled;
+    private static volatile Predicate<Entry> _choiceEntry;
+
+    /**
+     * Private constructor
+     */
+    private ChoiceResponseStorage( )
+    {
+    }
+
+    /**
+     * Tell if the new responses of choice entries are stored without their value
+     * 
+     * @return true if the compact storage is enabled
+     */
+    public static boolean isEnabled( )
+    {
+        Boolean bEnabled = _bEnabled;
+
+        return ( bEnabled != null ) ? bEnabled : AppPropertiesService.getPropertyBoolean( PROPERTY_COMPACT, false );
+    }
+
+    /**
+     * Clear the values of the responses of choice entries already stored, by chunks. Each chunk is committed in its own transaction. The responses whose
+     * value differs from the value of their field, or has been modified since it was read, are kept as they are.
+     * 
+     * @return The number of responses compacted
+     */
+    public static int compactExistingResponses( )
+    {
+        return compactExistingResponses( AppPropertiesService.getPropertyInt( PROPERTY_CHUNK_SIZE, DEFAULT_CHUNK_SIZE ) );
+    }
+
+    /**
+     * Clear the values of the responses of choice entries already stored, by chunks of a given size
+     * 
+     * @param nChunkSize
+     *            The number of responses read by chunk
+     * @return The number of responses compacted
+     */
+    static int compactExistingResponses( int nChunkSize )
+    {
+        Plugin plugin = PluginService.getPlugin( GenericAttributesPlugin.PLUGIN_NAME );
+        int nLastIdResponse = 0;
+        int nCompacted = 0;
+        int nRead;
+
+        do
+        {
+            Map<String, List<Integer>> mapIdResponseByValue = new HashMap<>( );
+            nRead = 0;
+
+            try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_CHUNK, plugin ) )
+            {
+                daoUtil.setInt( 1, nLastIdResponse );
+                daoUtil.setInt( 2, nChunkSize );
+                daoUtil.executeQuery( );
+
+                while ( daoUtil.next( ) )
+                {
+                    nRead++;
+                    nLastIdResponse = daoUtil.getInt( 1 );
+
+                    Entry entry = new Entry( );
+                    entry.setIdEntry( daoUtil.getInt( 4 ) );
+                    entry.setEntryType( new EntryType( ) );
+                    entry.getEntryType( ).setBeanName( daoUtil.getString( 5 ) );
+
+                    String strStoredValue = daoUtil.getString( 2 );
+                    int nIdField = daoUtil.getInt( 3 );
+
+                    if ( isChoice( entry )
+                            && StorageCompression.decompressValue( strStoredValue ).equals( getFieldValue( nIdField, entry.getIdEntry( ), plugin ) ) )
+                    {
+                        mapIdResponseByValue.computeIfAbsent( strStoredValue, strValue -> new ArrayList<>( ) ).add( nLastIdResponse );
+                    }
+                }
+            }
+
+            if ( !mapIdResponseByValue.isEmpty( ) )
+            {
+                nCompacted += clearValues( mapIdResponseByValue, plugin );
+            }
+        }
+        while ( nRead == nChunkSize );
+
+        return nCompacted;
+    }
+
+    /**
+     * Tell if a response can be stored without its value
+     * 
+     * @param response
+     *            The response
+     * @param plugin
+     *            the plugin
+     * @return true if the compact storage is enabled and the value of the response is the value of its field
+     */
+    static boolean isCompactable( Response response, Plugin plugin )
+    {
+        return isEnabled( ) && ( response.getField( ) != null ) && ( response.getResponseValue( ) != null ) && isChoice( response.getEntry( ) )
+                && response.getResponseValue( ).equals( getFieldValue( response.getField( ).getIdField( ), response.getEntry( ).getIdEntry( ), plugin ) );
+    }
+
+    /**
+     * Set the value of a response stored without its value
+     * 
+     * @param response
+     *            The response, with its entry type and field
+     * @param plugin
+     *            the plugin
+     */
+    static void resolveValue( Response response, Plugin plugin )
+    {
+        if ( ( response.getResponseValue( ) == null ) && ( response.getField( ) != null ) && isChoice( response.getEntry( ) ) )
+        {
+            response.setResponseValue( getFieldValue( response.getField( ).getIdField( ), response.getEntry( ).getIdEntry( ), plugin ) );
+        }
+    }
+
+    /**
+     * Store the current value of a field in the responses stored without their value, before the field is modified or removed, so that these responses keep
+     * the value they were given
+     * 
+     * @param nIdField
+     *            The id of the field
+     * @param strNewValue
+     *            The new value of the field, or null if the field is removed
+     * @param plugin
+     *            the plugin
+     */
+    static void beforeFieldChange( int nIdField, String strNewValue, Plugin plugin )
+    {
+        invalidate( nIdField );
+
+        Entry entry = null;
+        String strValue = null;
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_FIELD, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdField );
+            daoUtil.executeQuery( );
+
+            if ( daoUtil.next( ) )
+            {
+                entry = new Entry( );
+                entry.setIdEntry( daoUtil.getInt( 1 ) );
+                strValue = daoUtil.getString( 2 );
+                entry.setEntryType( new EntryType( ) );
+                entry.getEntryType( ).setBeanName( daoUtil.getString( 3 ) );
+            }
+        }
+
+        if ( ( entry != null ) && ( strValue != null ) && !strValue.equals( strNewValue ) && isChoice( entry ) )
+        {
+            try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_MATERIALIZE_VALUES, plugin ) )
+            {
+                daoUtil.setString( 1, StorageCompression.compressValue( strValue ) );
+                daoUtil.setInt( 2, nIdField );
+                daoUtil.setInt( 3, entry.getIdEntry( ) );
+                daoUtil.executeUpdate( );
+            }
+        }
+    }
+
+    /**
+     * Remove the value of a field from the cache
+     * 
+     * @param nIdField
+     *            The id of the field
+     */
+    static void invalidate( int nIdField )
+    {
+        _mapFieldValues.remove( nIdField );
+    }
+
+    /**
+     * Enable or disable the compact storage regardless of the properties. Used by the tests.
+     * 
+     * @param bEnabled
+     *            true to enable the compact storage, false to disable it, null to read it from the properties again
+     */
+    static void setEnabled( Boolean bEnabled )
+    {
+        _bEnabled = bEnabled;
+    }
+
+    /**
+     * Set the test telling the choice entries in place of their entry type services. Used by the tests.
+     * 
+     * @param choiceEntry
+     *            The test, or null to use the entry type services again
+     */
+    static void setChoiceEntry( Predicate<Entry> choiceEntry )
+    {
+        _choiceEntry = choiceEntry;
+    }
+
+    /**
+     * Tell if an entry is a choice entry
+     * 
+     * @param entry
+     *            The entry
+     * @return true if the value of the responses of the entry is the value of their field
+     */
+    private static boolean isChoice( Entry entry )
+    {
+        Predicate<Entry> choiceEntry = _choiceEntry;
+
+        if ( choiceEntry != null )
+        {
+            return choiceEntry.test( entry );
+        }
+
+        IEntryTypeService entryTypeService = EntryTypeServiceManager.getEntryTypeService( entry );
+
+        return ( entryTypeService != null ) && entryTypeService.isResponseValueOfField( );
+    }
+
+    /**
+     * Get the value of a field, loading the values of all the fields of its entry if it is not cached
+     * 
+     * @param nIdField
+     *            The id of the field
+     * @param nIdEntry
+     *            The id of the entry of the field
+     * @param plugin
+     *            the plugin
+     * @return The value of the field, or null if the field does not belong to the entry
+     */
+    private static String getFieldValue( int nIdField, int nIdEntry, Plugin plugin )
+    {
+        FieldValue fieldValue = _mapFieldValues.get( nIdField );
+
+        if ( fieldValue == null )
+        {
+            Map<Integer, FieldValue> mapEntryValues = new ConcurrentHashMap<>( );
+
+            try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_FIELD_VALUES, plugin ) )
+            {
+                daoUtil.setInt( 1, nIdEntry );
+                daoUtil.executeQuery( );
+
+                while ( daoUtil.next( ) )
+                {
+                    mapEntryValues.put( daoUtil.getInt( 1 ), new FieldValue( nIdEntry, daoUtil.getString( 2 ) ) );
+                }
+            }
+
+            // Values read inside a transaction may be rolled back
+            if ( TransactionManager.getCurrentTransaction( plugin ) == null )
+            {
+                _mapFieldValues.putAll( mapEntryValues );
+            }
+
+            fieldValue = mapEntryValues.get( nIdField );
+        }
+
+        return ( ( fieldValue != null ) && ( fieldValue._nIdEntry == nIdEntry ) ) ? fieldValue._strValue : null;
+    }
+
+    /**
+     * Clear the values of responses in a transaction. A value is only cleared if it is still the value read, so that a response updated meanwhile keeps its
+     * new value.
+     * 
+     * @param mapIdResponseByValue
+     *            The ids of the responses, by stored value
+     * @param plugin
+     *            the plugin
+     * @return The number of responses cleared
+     */
+    private static int clearValues( Map<String, List<Integer>> mapIdResponseByValue, Plugin plugin )
+    {
+        int nCleared = 0;
+
+        TransactionManager.beginTransaction( plugin );
+
+        try
+        {
+            for ( Map.Entry<String, List<Integer>> entryValue : mapIdResponseByValue.entrySet( ) )
+            {
+                try ( DAOUtil daoUtil = new DAOUtil(
+                        SQL_QUERY_CLEAR_VALUES + IdListQueryHelper.buildInClause( SQL_COLUMN_ID_RESPONSE, entryValue.getValue( ).size( ) ), plugin ) )
+                {
+                    daoUtil.setString( 1, entryValue.getKey( ) );
+                    IdListQueryHelper.bindIds( daoUtil, 2, entryValue.getValue( ) );
+                    nCleared += daoUtil.executeUpdate( );
+                }
+            }
+
+            TransactionManager.commitTransaction( plugin );
+        }
+        catch( Exception e )
+        {
+            TransactionManager.rollBack( plugin );
+            throw new AppException( e.getMessage( ), e );
+        }
+
+        return nCleared;
+    }
+
+    /**
+     * The cached value of a field
+     */
+    private static final class FieldValue
+    {
+        private final int _nIdEntry;
+        private final String _strValue;
+
+        /**
+         * Constructor
+         * 
+         * @param nIdEntry
+         *            The id of the entry of the field
+         * @param strValue
+         *            The value of the field
+         */
+        FieldValue( int nIdEntry, String strValue )
+        {
+            _nIdEntry = nIdEntry;
+            _strValue = strValue;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.business;
+
+import java.util.List;
+
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+
+/**
+ * Notifies the entry change listeners
+ */
+public final class EntryChangeListenerManager
+{
+    /**
+     * Private constructor
+     */
+    private EntryChangeListenerManager( )
+    {
+    }
+
+    /**
+     * Notify the listeners that an entry has changed
+     * 
+     * @param nIdEntry
+     *            The id of the entry
+     */
+    public static void notifyEntryChanged( int nIdEntry )
+    {
+        for ( IEntryChangeListener listener : getListeners( ) )
+        {
+            listener.entryChanged( nIdEntry );
+        }
+    }
+
+    /**
+     * Notify the listeners that a field has changed
+     * 
+     * @param nIdField
+     *            The id of the field
+     */
+    public static void notifyFieldChanged( int nIdField )
+    {
+        for ( IEntryChangeListener listener : getListeners( ) )
+        {
+            listener.fieldChanged( nIdField );
+        }
+    }
+
+    /**
+     * Get the entry change listeners
+     * 
+     * @return The listeners
+     */
+    private static List<IEntryChangeListener> getListeners( )
+    {
+        return SpringContextService.getBeansOfType( IEntryChangeListener.class );
+    }
+}
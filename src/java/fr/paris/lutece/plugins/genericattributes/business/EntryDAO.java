@@ -38,7 +38,6 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 import org.apache.commons.lang.StringUtils;
 
@@ -58,19 +57,20 @@ public final class EntryDAO implements IEntryDAO
     private static final String SQL_QUERY_SELECT_ENTRY_ATTRIBUTES = "SELECT " + SQL_QUERY_SELECT_LIST
             + "FROM genatt_entry ent,genatt_entry_type typ WHERE ent.id_type=typ.id_type ";
     private static final String SQL_QUERY_FIND_BY_PRIMARY_KEY = SQL_QUERY_SELECT_ENTRY_ATTRIBUTES + " AND ent.id_entry = ? ";
-    private static final String SQL_QUERY_INSERT = "INSERT INTO genatt_entry ( id_resource,resource_type,id_type,id_parent,code,title,help_message, comment,mandatory,fields_in_line,"
-            + "pos,id_field_depend,field_unique,css_class, pos_conditional, error_message, is_only_display_back, is_editable_back, is_indexed ) VALUES(?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+    private static final String SQL_QUERY_INSERT = "INSERT INTO genatt_entry ( id_resource,id_resource_type,resource_type,id_type,id_parent,code,title,help_message, comment,mandatory,fields_in_line,"
+            + "pos,id_field_depend,field_unique,css_class, pos_conditional, error_message, is_only_display_back, is_editable_back, is_indexed ) VALUES(?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
     private static final String SQL_QUERY_DELETE = "DELETE FROM genatt_entry WHERE id_entry = ? ";
-    private static final String SQL_QUERY_UPDATE = "UPDATE genatt_entry SET id_entry=?,id_resource=?,resource_type=?,id_type=?,id_parent=?,code=?,title=?,help_message=?,"
+    private static final String SQL_QUERY_UPDATE = "UPDATE genatt_entry SET id_entry=?,id_resource=?,id_resource_type=?,resource_type=?,id_type=?,id_parent=?,code=?,title=?,help_message=?,"
             + "comment=?,mandatory=?, fields_in_line=?,pos=?,id_field_depend=?,field_unique=?,css_class=?, pos_conditional=?, "
             + "error_message=?, is_only_display_back = ?, is_editable_back = ?, is_indexed = ? WHERE id_entry=?";
     private static final String SQL_QUERY_SELECT_ENTRY_BY_FILTER = SQL_QUERY_SELECT_ENTRY_ATTRIBUTES;
     private static final String SQL_QUERY_SELECT_NUMBER_ENTRY_BY_FILTER = "SELECT COUNT(ent.id_entry) "
             + "FROM genatt_entry ent,genatt_entry_type typ WHERE ent.id_type=typ.id_type ";
-    private static final String SQL_QUERY_NEW_POSITION = "SELECT MAX(pos) " + "FROM genatt_entry WHERE id_resource=? AND resource_type=?";
+    private static final String SQL_MATCH_RESOURCE_TYPE = " ( id_resource_type = ? OR ( id_resource_type = 0 AND resource_type = ? ) ) ";
+    private static final String SQL_QUERY_NEW_POSITION = "SELECT MAX(pos) " + "FROM genatt_entry WHERE id_resource=? AND" + SQL_MATCH_RESOURCE_TYPE;
     private static final String SQL_QUERY_NEW_POSITION_CONDITIONAL_QUESTION = "SELECT MAX(pos_conditional) FROM genatt_entry WHERE id_field_depend=?";
     private static final String SQL_FILTER_ID_RESOURCE = " AND ent.id_resource = ? ";
-    private static final String SQL_FILTER_RESOURCE_TYPE = " AND ent.resource_type = ? ";
+    private static final String SQL_FILTER_RESOURCE_TYPE = " AND ( ent.id_resource_type = ? OR ( ent.id_resource_type = 0 AND ent.resource_type = ? ) ) ";
     private static final String SQL_FILTER_ID_PARENT = " AND ent.id_parent = ? ";
     private static final String SQL_FILTER_ID_PARENT_IS_NULL = " AND ent.id_parent IS NULL ";
     private static final String SQL_FILTER_IS_GROUP = " AND typ.is_group = ? ";
@@ -85,15 +85,16 @@ public final class EntryDAO implements IEntryDAO
     private static final String SQL_GROUP_BY_POSITION = " GROUP BY ent.pos, ent.pos_conditional ";
     private static final String SQL_GROUP_BY_ENTRY_ENTRY_TYPE = "GROUP BY " + SQL_QUERY_SELECT_LIST;
     private static final String SQL_QUERY_ENTRIES_PARENT_NULL = SQL_QUERY_SELECT_ENTRY_ATTRIBUTES
-            + " AND id_parent IS NULL AND id_resource=? AND resource_type = ?" + SQL_FILTER_ID_FIELD_DEPEND_IS_NULL + " ORDER BY ent.pos";
+            + " AND id_parent IS NULL AND id_resource=? AND" + SQL_MATCH_RESOURCE_TYPE + SQL_FILTER_ID_FIELD_DEPEND_IS_NULL + " ORDER BY ent.pos";
     private static final String SQL_QUERY_ENTRY_CONDITIONAL_WITH_ORDER_BY_FIELD = SQL_QUERY_SELECT_ENTRY_ATTRIBUTES
             + " AND pos_conditional = ?  AND ent.id_field_depend = ? AND id_resource=? ";
-    private static final String SQL_QUERY_DECREMENT_ORDER_CONDITIONAL = "UPDATE genatt_entry SET pos_conditional = pos_conditional - 1 WHERE pos_conditional > ? AND id_field_depend=? AND id_resource=? AND resource_type=? ";
+    private static final String SQL_QUERY_DECREMENT_ORDER_CONDITIONAL = "UPDATE genatt_entry SET pos_conditional = pos_conditional - 1 WHERE pos_conditional > ? AND id_field_depend=? AND id_resource=? AND"
+            + SQL_MATCH_RESOURCE_TYPE;
     private static final int CONSTANT_ZERO = 0;
     private static final String SQL_QUERY_SELECT_ENTRY_BY_FORM = "SELECT id_entry, title FROM genatt_entry WHERE id_resource = ? AND title IS NOT NULL ORDER BY id_entry ";
     private static final String SQL_QUERY_SELECT_ENTRY_VALUE = "SELECT title FROM genatt_response INNER JOIN genatt_field ON genatt_response.id_field = genatt_field.id_field "
             + "	WHERE genatt_response.id_entry = ? AND genatt_response.id_response = ? AND title IS NOT NULL  ORDER BY genatt_response.id_entry ";
-    private static final String SQL_QUERY_FIND_BY_PRIMARY_KEY_LIST = SQL_QUERY_SELECT_ENTRY_ATTRIBUTES + " AND ent.id_entry IN ( ";
+    private static final String SQL_COLUMN_ID_ENTRY = "ent.id_entry";
 
     /**
      * {@inheritDoc}
@@ -105,6 +106,7 @@ public final class EntryDAO implements IEntryDAO
         {
             int nIndex = 1;
             daoUtil.setInt( nIndex++, entry.getIdResource( ) );
+            daoUtil.setInt( nIndex++, ResourceTypeDictionary.getOrCreateId( entry.getResourceType( ), plugin ) );
             daoUtil.setString( nIndex++, entry.getResourceType( ) );
             daoUtil.setInt( nIndex++, entry.getEntryType( ).getIdType( ) );
 
@@ -176,25 +178,61 @@ public final class EntryDAO implements IEntryDAO
         return entry;
     }
 
+    /**
+     * {@inheritDoc}
+     */
     @Override
     public List<Entry> loadMultiple( List<Integer> idList, Plugin plugin )
     {
-        List<Entry> list = new ArrayList<>( );
-        String query = SQL_QUERY_FIND_BY_PRIMARY_KEY_LIST + idList.stream( ).distinct( ).map( i -> "?" ).collect( Collectors.joining( "," ) ) + " )";
+        if ( idList.isEmpty( ) )
+        {
+            return new ArrayList<>( );
+        }
+
+        List<Integer> listId = IdListQueryHelper.distinct( idList );
 
-        try ( DAOUtil daoUtil = new DAOUtil( query, plugin ) )
+        if ( IdListQueryHelper.isIdTableRequired( listId ) )
         {
-            for ( int i = 0; i < idList.size( ); i++ )
-            {
-                daoUtil.setInt( i + 1, idList.get( i ) );
-            }
-            daoUtil.executeQuery( );
+            String strSQL = SQL_QUERY_SELECT_ENTRY_ATTRIBUTES + IdListQueryHelper.buildIdTableClause( SQL_COLUMN_ID_ENTRY );
 
-            while ( daoUtil.next( ) )
-            {
-                list.add( getEntryValues( daoUtil ) );
-            }
+            return IdListQueryHelper.callWithIdTable( listId, plugin, strListKey -> {
+                try ( DAOUtil daoUtil = new DAOUtil( strSQL, plugin ) )
+                {
+                    daoUtil.setString( 1, strListKey );
+
+                    return selectEntries( daoUtil, plugin );
+                }
+            } );
+        }
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_ENTRY_ATTRIBUTES + IdListQueryHelper.buildInClause( SQL_COLUMN_ID_ENTRY, listId.size( ) ),
+                plugin ) )
+        {
+            IdListQueryHelper.bindIds( daoUtil, 1, listId );
+
+            return selectEntries( daoUtil, plugin );
         }
+    }
+
+    /**
+     * Execute the query of a daoUtil whose parameters are set and load all the entries
+     * 
+     * @param daoUtil
+     *            The daoUtil
+     * @param plugin
+     *            the plugin
+     * @return The list of entries
+     */
+    private List<Entry> selectEntries( DAOUtil daoUtil, Plugin plugin )
+    {
+        List<Entry> list = new ArrayList<>( );
+        daoUtil.executeQuery( );
+
+        while ( daoUtil.next( ) )
+        {
+            list.add( getEntryValues( daoUtil ) );
+        }
+
         return list;
     }
 
@@ -222,6 +260,7 @@ public final class EntryDAO implements IEntryDAO
             int nIndex = 1;
             daoUtil.setInt( nIndex++, entry.getIdEntry( ) );
             daoUtil.setInt( nIndex++, entry.getIdResource( ) );
+            daoUtil.setInt( nIndex++, ResourceTypeDictionary.getOrCreateId( entry.getResourceType( ), plugin ) );
             daoUtil.setString( nIndex++, entry.getResourceType( ) );
             daoUtil.setInt( nIndex++, entry.getEntryType( ).getIdType( ) );
 
@@ -318,6 +357,7 @@ public final class EntryDAO implements IEntryDAO
 
             if ( filter.containsResourceType( ) )
             {
+                daoUtil.setInt( nIndex++, ResourceTypeDictionary.getId( filter.getResourceType( ), plugin ) );
                 daoUtil.setString( nIndex++, filter.getResourceType( ) );
             }
 
@@ -460,7 +500,8 @@ public final class EntryDAO implements IEntryDAO
         try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_ENTRIES_PARENT_NULL, plugin ) )
         {
             daoUtil.setInt( 1, nIdResource );
-            daoUtil.setString( 2, strResourceType );
+            daoUtil.setInt( 2, ResourceTypeDictionary.getId( strResourceType, plugin ) );
+            daoUtil.setString( 3, strResourceType );
             daoUtil.executeQuery( );
 
             while ( daoUtil.next( ) )
@@ -506,7 +547,8 @@ public final class EntryDAO implements IEntryDAO
             daoUtil.setInt( 1, nOrder );
             daoUtil.setInt( 2, nIdField );
             daoUtil.setInt( 3, nIdResource );
-            daoUtil.setString( 4, strResourceType );
+            daoUtil.setInt( 4, ResourceTypeDictionary.getId( strResourceType, plugin ) );
+            daoUtil.setString( 5, strResourceType );
             daoUtil.executeUpdate( );
         }
     }
@@ -529,7 +571,8 @@ public final class EntryDAO implements IEntryDAO
             try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_NEW_POSITION, plugin ) )
             {
                 daoUtil.setInt( 1, entry.getIdResource( ) );
-                daoUtil.setString( 2, entry.getResourceType( ) );
+                daoUtil.setInt( 2, ResourceTypeDictionary.getId( entry.getResourceType( ), plugin ) );
+                daoUtil.setString( 3, entry.getResourceType( ) );
                 daoUtil.executeQuery( );
 
                 if ( !daoUtil.next( ) )
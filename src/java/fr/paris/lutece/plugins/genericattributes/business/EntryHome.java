@@ -145,6 +145,7 @@ public final class EntryHome
     public static void update( Entry entry )
     {
         _dao.store( entry, getPlugin( ) );
+        EntryChangeListenerManager.notifyEntryChanged( entry.getIdEntry( ) );
         ResourceEvent event = new ResourceEvent( );
         event.setIdResource( String.valueOf( entry.getIdEntry( ) ) );
         event.setTypeResource( entry.getResourceType( ) );
@@ -181,6 +182,7 @@ public final class EntryHome
                 }
 
                 _dao.delete( nIdEntry, getPlugin( ) );
+                EntryChangeListenerManager.notifyEntryChanged( nIdEntry );
 
                 ResourceEvent event = new ResourceEvent( );
                 event.setIdResource( String.valueOf( nIdEntry ) );
@@ -255,15 +257,16 @@ public final class EntryHome
     }
 
     /**
-     * Load the data of all the entry who verify the filter and returns them in a list
+     * Load the data of all the entry who verify the filter and returns them in a list. The query is routed to the read replica pool when one is defined.
      * 
      * @param filter
      *            the filter
      * @return the list of entry
+     * @see ReadReplicaRouter
      */
     public static List<Entry> getEntryList( EntryFilter filter )
     {
-        return _dao.selectEntryListByFilter( filter, getPlugin( ) );
+        return ReadReplicaRouter.read( getPlugin( ), plugin -> _dao.selectEntryListByFilter( filter, plugin ) );
     }
 
     /**
@@ -339,6 +342,16 @@ public final class EntryHome
         _dao.decrementOrderByOne( getPlugin( ), nOrder, nIdField, nIdResource, strResourceType );
     }
 
+    /**
+     * Resolve the key of the resource type of the entries which only have their resource type, like the entries inserted by SQL scripts
+     * 
+     * @return The number of entries resolved
+     */
+    public static int resolveResourceTypes( )
+    {
+        return ResourceTypeDictionary.resolveEntries( getPlugin( ) );
+    }
+
     /**
      * Get the generic attributes plugin
      * 
@@ -37,7 +37,6 @@ import java.sql.Date;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import fr.paris.lutece.portal.service.plugin.Plugin;
 import fr.paris.lutece.util.sql.DAOUtil;
@@ -62,7 +61,8 @@ public final class FieldDAO implements IFieldDAO
     private static final String SQL_QUERY_NEW_POSITION = "SELECT MAX(pos)" + " FROM genatt_field ";
     private static final String SQL_QUERY_SELECT_REGULAR_EXPRESSION_BY_ID_FIELD = "SELECT id_expression " + " FROM genatt_verify_by where id_field=?";
     private static final String SQL_QUERY_COUNT_FIELD_BY_ID_REGULAR_EXPRESSION = "SELECT COUNT(id_field) " + " FROM genatt_verify_by where id_expression = ?";
-    private static final String SQL_QUERY_SELECT_FIELD_BY_LIST_ID_ENTRY = SQL_QUERY_SELECT_ALL + " WHERE id_entry IN ";
+    private static final String SQL_QUERY_SELECT_FIELD_BY_LIST_ID_ENTRY = SQL_QUERY_SELECT_ALL + " WHERE 1=1 ";
+    private static final String SQL_COLUMN_ID_ENTRY = "id_entry";
 
     /**
      * Generates a new field position
@@ -273,26 +273,59 @@ public final class FieldDAO implements IFieldDAO
         return nNumberEntry != 0;
     }
 
+    /**
+     * {@inheritDoc}
+     */
     @Override
     public List<Field> loadMultipleByEntryIdList( List<Integer> idList, Plugin plugin )
     {
-        List<Field> list = new ArrayList<>( );
-        String query = SQL_QUERY_SELECT_FIELD_BY_LIST_ID_ENTRY + " ( " + idList.stream( ).distinct( ).map( i -> "?" ).collect( Collectors.joining( "," ) )
-                + " )";
+        if ( idList.isEmpty( ) )
+        {
+            return new ArrayList<>( );
+        }
 
-        try ( DAOUtil daoUtil = new DAOUtil( query, plugin ) )
+        List<Integer> listId = IdListQueryHelper.distinct( idList );
+
+        if ( IdListQueryHelper.isIdTableRequired( listId ) )
         {
-            for ( int i = 0; i < idList.size( ); i++ )
-            {
-                daoUtil.setInt( i + 1, idList.get( i ) );
-            }
-            daoUtil.executeQuery( );
+            String strSQL = SQL_QUERY_SELECT_FIELD_BY_LIST_ID_ENTRY + IdListQueryHelper.buildIdTableClause( SQL_COLUMN_ID_ENTRY );
 
-            while ( daoUtil.next( ) )
-            {
-                list.add( dataToObject( daoUtil ) );
-            }
+            return IdListQueryHelper.callWithIdTable( listId, plugin, strListKey -> {
+                try ( DAOUtil daoUtil = new DAOUtil( strSQL, plugin ) )
+                {
+                    daoUtil.setString( 1, strListKey );
+
+                    return selectFields( daoUtil );
+                }
+            } );
         }
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_FIELD_BY_LIST_ID_ENTRY + IdListQueryHelper.buildInClause( SQL_COLUMN_ID_ENTRY, listId.size( ) ),
+                plugin ) )
+        {
+            IdListQueryHelper.bindIds( daoUtil, 1, listId );
+
+            return selectFields( daoUtil );
+        }
+    }
+
+    /**
+     * Execute the query of a daoUtil whose parameters are set and load all the fields
+     * 
+     * @param daoUtil
+     *            The daoUtil
+     * @return The list of fields
+     */
+    private List<Field> selectFields( DAOUtil daoUtil )
+    {
+        List<Field> list = new ArrayList<>( );
+        daoUtil.executeQuery( );
+
+        while ( daoUtil.next( ) )
+        {
+            list.add( dataToObject( daoUtil ) );
+        }
+
         return list;
     }
 
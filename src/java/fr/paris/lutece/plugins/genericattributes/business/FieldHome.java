@@ -71,7 +71,10 @@ public final class FieldHome
      */
     public static int create( Field field )
     {
-        return _dao.insert( field, getPlugin( ) );
+        int nIdField = _dao.insert( field, getPlugin( ) );
+        EntryChangeListenerManager.notifyEntryChanged( field.getParentEntry( ).getIdEntry( ) );
+
+        return nIdField;
     }
 
     /**
@@ -118,7 +121,10 @@ public final class FieldHome
      */
     public static void update( Field field )
     {
+        ChoiceResponseStorage.beforeFieldChange( field.getIdField( ), field.getValue( ), getPlugin( ) );
         _dao.store( field, getPlugin( ) );
+        ChoiceResponseStorage.invalidate( field.getIdField( ) );
+        EntryChangeListenerManager.notifyFieldChanged( field.getIdField( ) );
     }
 
     /**
@@ -144,7 +150,10 @@ public final class FieldHome
             removeVerifyBy( nIdField, regularExpressionKey );
         }
 
+        ChoiceResponseStorage.beforeFieldChange( nIdField, null, getPlugin( ) );
         _dao.delete( nIdField, getPlugin( ) );
+        ChoiceResponseStorage.invalidate( nIdField );
+        EntryChangeListenerManager.notifyFieldChanged( nIdField );
     }
 
     // /////////////////////////////////////////////////////////////////////////
@@ -219,6 +228,7 @@ public final class FieldHome
     public static void removeVerifyBy( int nIdField, int nIdExpression )
     {
         _dao.deleteVerifyBy( nIdField, nIdExpression, getPlugin( ) );
+        EntryChangeListenerManager.notifyFieldChanged( nIdField );
     }
 
     /**
@@ -232,6 +242,7 @@ public final class FieldHome
     public static void createVerifyBy( int nIdField, int nIdExpression )
     {
         _dao.insertVerifyBy( nIdField, nIdExpression, getPlugin( ) );
+        EntryChangeListenerManager.notifyFieldChanged( nIdField );
     }
 
     /**
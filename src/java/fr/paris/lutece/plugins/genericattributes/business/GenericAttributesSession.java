@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.business;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import fr.paris.lutece.plugins.genericattributes.util.GenericAttributesUtils;
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.util.sql.TransactionManager;
+
+/**
+ * Unit of work for the generic attributes DAOs. Every DAO call made while an operation runs through {@link #run(Runnable)} or {@link #call(Supplier)} uses
+ * the single connection borrowed when the outermost operation started, instead of borrowing and releasing a pooled connection for each statement. The
+ * connection is pinned through the {@link TransactionManager}, so the operation is committed when it ends and rolled back if it fails. Nested operations
+ * join the current unit of work.
+ */
+public final class GenericAttributesSession
+{
+    private static final ThreadLocal<Boolean> _active = new ThreadLocal<>( );
+    private static final AtomicLong _lUnitOfWorkCount = new AtomicLong( );
+    private static final AtomicLong _lJoinedCount = new AtomicLong( );
+    private static Plugin _plugin;
+
+    /**
+     * Private constructor - this class need not be instantiated
+     */
+    private GenericAttributesSession( )
+    {
+    }
+
+    /**
+     * Run an operation within a unit of work
+     * 
+     * @param operation
+     *            The operation
+     */
+    public static void run( Runnable operation )
+    {
+        call( ( ) -> {
+            operation.run( );
+
+            return null;
+        } );
+    }
+
+    /**
+     * Run an operation within a unit of work and return its result
+     * 
+     * @param operation
+     *            The operation
+     * @param <T>
+     *            The type of the result
+     * @return The result of the operation
+     */
+    public static <T> T call( Supplier<T> operation )
+    {
+        if ( isActive( ) )
+        {
+            _lJoinedCount.incrementAndGet( );
+
+            return operation.get( );
+        }
+
+        _lUnitOfWorkCount.incrementAndGet( );
+        TransactionManager.beginTransaction( getPlugin( ) );
+        _active.set( Boolean.TRUE );
+        boolean bCommitted = false;
+
+        try
+        {
+            T result = operation.get( );
+            TransactionManager.commitTransaction( getPlugin( ) );
+            bCommitted = true;
+
+            return result;
+        }
+        finally
+        {
+            _active.remove( );
+
+            // Rolled back whatever the operation threw, errors included, so that the pinned connection is always released
+            if ( !bCommitted )
+            {
+                TransactionManager.rollBack( getPlugin( ) );
+            }
+        }
+    }
+
+    /**
+     * Check whether the current thread runs within a unit of work
+     * 
+     * @return true if a unit of work is active, false otherwise
+     */
+    public static boolean isActive( )
+    {
+        return Boolean.TRUE.equals( _active.get( ) );
+    }
+
+    /**
+     * Get the number of outermost units of work started since the start or the last reset
+     * 
+     * @return The number of units of work
+     */
+    public static long getUnitOfWorkCount( )
+    {
+        return _lUnitOfWorkCount.get( );
+    }
+
+    /**
+     * Get the number of nested operations which joined a unit of work since the start or the last reset
+     * 
+     * @return The number of joined operations
+     */
+    public static long getJoinedCount( )
+    {
+        return _lJoinedCount.get( );
+    }
+
+    /**
+     * Reset the statistics
+     */
+    public static void resetStatistics( )
+    {
+        _lUnitOfWorkCount.set( 0 );
+        _lJoinedCount.set( 0 );
+    }
+
+    /**
+     * Get the generic attributes plugin
+     * 
+     * @return The generic attributes plugin
+     */
+    private static Plugin getPlugin( )
+    {
+        if ( _plugin == null )
+        {
+            _plugin = GenericAttributesUtils.getPlugin( );
+        }
+
+        return _plugin;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.business;
+
+import java.util.List;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+
+/**
+ * IResponseBlobDAO Interface
+ */
+public interface IResponseBlobDAO
+{
+    /**
+     * Select the number of references to a blob
+     *
+     * @param strBlobKey
+     *            The key of the blob
+     * @param plugin
+     *            the plugin
+     * @return The number of references, 0 if the blob is not referenced
+     */
+    int selectReferenceCount( String strBlobKey, Plugin plugin );
+
+    /**
+     * Select the number of references to a blob, and lock its row until the end of the transaction
+     *
+     * @param strBlobKey
+     *            The key of the blob
+     * @param plugin
+     *            the plugin
+     * @return The number of references, 0 if the blob is not referenced
+     */
+    int selectReferenceCountForUpdate( String strBlobKey, Plugin plugin );
+
+    /**
+     * Select the keys of the blobs left with no reference
+     *
+     * @param plugin
+     *            the plugin
+     * @return The keys of the blobs
+     */
+    List<String> selectUnreferencedKeys( Plugin plugin );
+
+    /**
+     * Insert a blob with one reference
+     *
+     * @param strBlobKey
+     *            The key of the blob
+     * @param plugin
+     *            the plugin
+     */
+    void insert( String strBlobKey, Plugin plugin );
+
+    /**
+     * Add a reference to a blob, in a single statement
+     *
+     * @param strBlobKey
+     *            The key of the blob
+     * @param plugin
+     *            the plugin
+     * @return The number of rows updated, 0 if the blob has no row yet
+     */
+    int incrementReferenceCount( String strBlobKey, Plugin plugin );
+
+    /**
+     * Remove a reference to a blob, in a single statement. The row of the blob is kept with no reference, so that it can be locked when it is purged.
+     *
+     * @param strBlobKey
+     *            The key of the blob
+     * @param plugin
+     *            the plugin
+     * @return The number of rows updated, 0 if the blob was not referenced
+     */
+    int decrementReferenceCount( String strBlobKey, Plugin plugin );
+
+    /**
+     * Delete a blob if it is no longer referenced
+     *
+     * @param strBlobKey
+     *            The key of the blob
+     * @param plugin
+     *            the plugin
+     * @return The number of rows deleted, 0 if the blob is referenced
+     */
+    int deleteUnreferenced( String strBlobKey, Plugin plugin );
+
+    /**
+     * Select the key of the blob of a physical file
+     *
+     * @param nIdPhysicalFile
+     *            The id of the physical file
+     * @param plugin
+     *            the plugin
+     * @return The key of the blob, or null if the content of the physical file is not in the blob store
+     */
+    String selectFileBlobKey( int nIdPhysicalFile, Plugin plugin );
+
+    /**
+     * Insert the blob of a physical file
+     *
+     * @param nIdPhysicalFile
+     *            The id of the physical file
+     * @param strBlobKey
+     *            The key of the blob
+     * @param plugin
+     *            the plugin
+     */
+    void insertFileBlob( int nIdPhysicalFile, String strBlobKey, Plugin plugin );
+
+    /**
+     * Delete the blob of a physical file
+     *
+     * @param nIdPhysicalFile
+     *            The id of the physical file
+     * @param plugin
+     *            the plugin
+     */
+    void deleteFileBlob( int nIdPhysicalFile, Plugin plugin );
+}
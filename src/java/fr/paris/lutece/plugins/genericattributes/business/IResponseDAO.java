@@ -33,6 +33,7 @@
  */
 package fr.paris.lutece.plugins.genericattributes.business;
 
+import fr.paris.lutece.portal.business.file.File;
 import fr.paris.lutece.portal.service.plugin.Plugin;
 
 import java.util.List;
@@ -117,4 +118,41 @@ public interface IResponseDAO
      * @return the max number
      */
     int getMaxNumber( int nIdEntry, Plugin plugin );
+
+    /**
+     * Load the file of a response with its content. The core tables of the file are read through the core pool.
+     * 
+     * @param nIdResponse
+     *            The identifier of the response
+     * @param plugin
+     *            the plugin
+     * @return The file of the response, or null if the response has no file
+     */
+    ResponseImage loadImage( int nIdResponse, Plugin plugin );
+
+    /**
+     * Load a batch of the responses to the entries of a resource, in ascending order of id
+     * 
+     * @param nIdResource
+     *            The id of the resource of the entries
+     * @param nIdResponseAfter
+     *            The id after which the responses are loaded, 0 to start from the first one
+     * @param nBatchSize
+     *            The maximum number of responses to load
+     * @param plugin
+     *            the plugin
+     * @return The responses, fewer than the batch size once the last response is loaded
+     */
+    List<Response> selectBatchByIdResource( int nIdResource, int nIdResponseAfter, int nBatchSize, Plugin plugin );
+
+    /**
+     * Load the files of responses through the core pool, without their content
+     * 
+     * @param listIdFile
+     *            The ids of the files
+     * @param plugin
+     *            the plugin
+     * @return The files, with the id of their physical file
+     */
+    List<File> selectFileList( List<Integer> listIdFile, Plugin plugin );
 }
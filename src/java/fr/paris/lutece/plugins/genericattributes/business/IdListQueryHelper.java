@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.business;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+import fr.paris.lutece.util.sql.DAOUtil;
+import fr.paris.lutece.util.sql.TransactionManager;
+
+/**
+ * Builds the SQL restrictions used to filter a query on a list of identifiers.
+ * <ul>
+ * <li>Lists up to the id table threshold are bound as parameters of fixed size <code>IN</code> chunks. The last chunk is padded with the last id so that the
+ * statement text only depends on the number of chunks and can be reused by the database.</li>
+ * <li>Larger lists are written in the <code>genatt_id_list</code> table under a unique key, joined by the query and removed in the same transaction.</li>
+ * </ul>
+ */
+final class IdListQueryHelper
+{
+    private static final String PROPERTY_CHUNK_SIZE = "genericattributes.sql.idList.chunkSize";
+    private static final String PROPERTY_ID_TABLE_THRESHOLD = "genericattributes.sql.idList.idTableThreshold";
+    private static final int DEFAULT_CHUNK_SIZE = 500;
+    private static final int DEFAULT_ID_TABLE_THRESHOLD = 5000;
+
+    private static final String SQL_AND = " AND ( ";
+    private static final String SQL_OR = " OR ";
+    private static final String SQL_IN = " IN ( ";
+    private static final String SQL_CLOSE = " ) ";
+    private static final String SQL_PARAMETER = "?";
+    private static final String SQL_SEPARATOR = ",";
+    private static final String SQL_FILTER_ID_TABLE = " IN ( SELECT id FROM genatt_id_list WHERE list_key = ? ) ";
+    private static final String SQL_QUERY_INSERT_ID_TABLE = "INSERT INTO genatt_id_list ( list_key, id ) VALUES ";
+    private static final String SQL_QUERY_INSERT_ID_TABLE_VALUES = "(?,?)";
+    private static final String SQL_QUERY_DELETE_ID_TABLE = "DELETE FROM genatt_id_list WHERE list_key = ? ";
+
+    private static final int CHUNK_SIZE = Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_CHUNK_SIZE, DEFAULT_CHUNK_SIZE ) );
+    private static final int ID_TABLE_THRESHOLD = AppPropertiesService.getPropertyInt( PROPERTY_ID_TABLE_THRESHOLD, DEFAULT_ID_TABLE_THRESHOLD );
+    private static final String SQL_QUERY_INSERT_ID_TABLE_CHUNK = buildInsertIdTableQuery( );
+
+    /**
+     * Private constructor - this class need not be instantiated
+     */
+    private IdListQueryHelper( )
+    {
+    }
+
+    /**
+     * Remove the duplicates of a list of ids, keeping the original order
+     * 
+     * @param listId
+     *            The list of ids
+     * @return The list of distinct ids
+     */
+    static List<Integer> distinct( List<Integer> listId )
+    {
+        return new ArrayList<>( new LinkedHashSet<>( listId ) );
+    }
+
+    /**
+     * Get the size of the chunks of ids
+     * 
+     * @return The size of the chunks of ids
+     */
+    static int getChunkSize( )
+    {
+        return CHUNK_SIZE;
+    }
+
+    /**
+     * Check if a list of ids is too large to be bound as parameters and must be written in the id table
+     * 
+     * @param listId
+     *            The list of distinct ids
+     * @return true if the id table must be used, false otherwise
+     */
+    static boolean isIdTableRequired( List<Integer> listId )
+    {
+        return listId.size( ) > ID_TABLE_THRESHOLD;
+    }
+
+    /**
+     * Split a list of ids in lists which can be bound as parameters, for the queries on a pool which has no id table
+     * 
+     * @param listId
+     *            The list of distinct ids
+     * @return The lists of ids, each one below the id table threshold
+     */
+    static List<List<Integer>> partition( List<Integer> listId )
+    {
+        int nSize = Math.max( 1, ID_TABLE_THRESHOLD );
+        List<List<Integer>> listPartitions = new ArrayList<>( );
+
+        for ( int nFrom = 0; nFrom < listId.size( ); nFrom += nSize )
+        {
+            listPartitions.add( listId.subList( nFrom, Math.min( listId.size( ), nFrom + nSize ) ) );
+        }
+
+        return listPartitions;
+    }
+
+    /**
+     * Build the restriction of a column to a list of ids bound as parameters
+     * 
+     * @param strColumn
+     *            The column to restrict
+     * @param nIdCount
+     *            The number of distinct ids
+     * @return The SQL restriction, starting with AND
+     */
+    static String buildInClause( String strColumn, int nIdCount )
+    {
+        int nChunks = getChunkCount( nIdCount );
+        StringBuilder sbChunk = new StringBuilder( strColumn ).append( SQL_IN );
+
+        for ( int i = 0; i < CHUNK_SIZE; i++ )
+        {
+            if ( i > 0 )
+            {
+                sbChunk.append( SQL_SEPARATOR );
+            }
+
+            sbChunk.append( SQL_PARAMETER );
+        }
+
+        sbChunk.append( SQL_CLOSE );
+
+        StringBuilder sbSQL = new StringBuilder( SQL_AND );
+
+        for ( int i = 0; i < nChunks; i++ )
+        {
+            if ( i > 0 )
+            {
+                sbSQL.append( SQL_OR );
+            }
+
+            sbSQL.append( sbChunk );
+        }
+
+        return sbSQL.append( SQL_CLOSE ).toString( );
+    }
+
+    /**
+     * Bind the ids of a restriction built by {@link #buildInClause(String, int)}
+     * 
+     * @param daoUtil
+     *            The daoUtil
+     * @param nIndex
+     *            The index of the first parameter to bind
+     * @param listId
+     *            The list of distinct ids
+     * @return The index of the next parameter
+     */
+    static int bindIds( DAOUtil daoUtil, int nIndex, List<Integer> listId )
+    {
+        int nParameters = getChunkCount( listId.size( ) ) * CHUNK_SIZE;
+        int nLastId = listId.get( listId.size( ) - 1 );
+        int nParameterIndex = nIndex;
+
+        for ( int i = 0; i < nParameters; i++ )
+        {
+            daoUtil.setInt( nParameterIndex++, ( i < listId.size( ) ) ? listId.get( i ) : nLastId );
+        }
+
+        return nParameterIndex;
+    }
+
+    /**
+     * Build the restriction of a column to the ids written in the id table. The key of the list is the only parameter.
+     * 
+     * @param strColumn
+     *            The column to restrict
+     * @return The SQL restriction, starting with AND
+     */
+    static String buildIdTableClause( String strColumn )
+    {
+        return SQL_AND + strColumn + SQL_FILTER_ID_TABLE + SQL_CLOSE;
+    }
+
+    /**
+     * Write a list of ids in the id table, run a query joining it and remove the list, all in a single transaction
+     * 
+     * @param listId
+     *            The list of distinct ids
+     * @param plugin
+     *            the plugin
+     * @param query
+     *            The query to run, given the key of the list in the id table
+     * @param <T>
+     *            The type of the query result
+     * @return The query result
+     */
+    static <T> T callWithIdTable( List<Integer> listId, Plugin plugin, Function<String, T> query )
+    {
+        String strListKey = UUID.randomUUID( ).toString( );
+
+        TransactionManager.beginTransaction( plugin );
+
+        try
+        {
+            insertIdTable( strListKey, listId, plugin );
+
+            T result = query.apply( strListKey );
+
+            try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_DELETE_ID_TABLE, plugin ) )
+            {
+                daoUtil.setString( 1, strListKey );
+                daoUtil.executeUpdate( );
+            }
+
+            TransactionManager.commitTransaction( plugin );
+
+            return result;
+        }
+        catch( Exception e )
+        {
+            TransactionManager.rollBack( plugin );
+            throw new AppException( e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Insert a list of ids in the id table by chunks, reusing the same statement
+     * 
+     * @param strListKey
+     *            The key of the list
+     * @param listId
+     *            The list of distinct ids
+     * @param plugin
+     *            the plugin
+     */
+    private static void insertIdTable( String strListKey, List<Integer> listId, Plugin plugin )
+    {
+        int nLastId = listId.get( listId.size( ) - 1 );
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT_ID_TABLE_CHUNK, plugin ) )
+        {
+            for ( int nStart = 0; nStart < listId.size( ); nStart += CHUNK_SIZE )
+            {
+                int nIndex = 1;
+
+                for ( int i = nStart; i < nStart + CHUNK_SIZE; i++ )
+                {
+                    daoUtil.setString( nIndex++, strListKey );
+                    daoUtil.setInt( nIndex++, ( i < listId.size( ) ) ? listId.get( i ) : nLastId );
+                }
+
+                daoUtil.executeUpdate( );
+            }
+        }
+    }
+
+    /**
+     * Get the number of chunks needed for a number of ids
+     * 
+     * @param nIdCount
+     *            The number of ids
+     * @return The number of chunks
+     */
+    private static int getChunkCount( int nIdCount )
+    {
+        return Math.max( 1, ( nIdCount + CHUNK_SIZE - 1 ) / CHUNK_SIZE );
+    }
+
+    /**
+     * Build the multi-row insert query of a full chunk of ids
+     * 
+     * @return The insert query
+     */
+    private static String buildInsertIdTableQuery( )
+    {
+        StringBuilder sbSQL = new StringBuilder( SQL_QUERY_INSERT_ID_TABLE );
+
+        for ( int i = 0; i < CHUNK_SIZE; i++ )
+        {
+            if ( i > 0 )
+            {
+                sbSQL.append( SQL_SEPARATOR );
+            }
+
+            sbSQL.append( SQL_QUERY_INSERT_ID_TABLE_VALUES );
+        }
+
+        return sbSQL.toString( );
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.business;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.util.sql.DAOUtil;
+import fr.paris.lutece.util.sql.TransactionManager;
+
+/**
+ * Upgrade of the responses stored before the sharding, run once by the {@link ResponseShardRing} before it is used. A shard whose table has no suffix holds
+ * the genatt_response table of the plugin, whose responses have no row in genatt_response_index:
+ * <ul>
+ * <li>each response above the greatest indexed id is indexed with its id and the resource of its entry. The ids explicitly inserted move the AUTO_INCREMENT of
+ * the index above them, so that the ids of the new responses do not collide with the existing ones;</li>
+ * <li>the resources of these responses are attached to the shard of the table when the hash ring gives them another shard, so that their responses are read
+ * where they are. They can then be moved with the {@link ResponseShardRebalancer}.</li>
+ * </ul>
+ * The responses inserted by the plain DAO after the upgrade script are indexed as well, as long as the sharded DAO has not been used in between.
+ */
+final class LegacyResponseIndexer
+{
+    // Constants
+    private static final String TABLE_LEGACY = "genatt_response";
+    private static final int CHUNK_SIZE = 1000;
+    private static final int UNKNOWN_RESOURCE = 0;
+
+    private static final String SQL_QUERY_SELECT_MAX_INDEXED = "SELECT MAX( id_response ) FROM genatt_response_index ";
+    private static final String SQL_QUERY_SELECT_CHUNK = "SELECT id_response, id_entry FROM " + TABLE_LEGACY
+            + " WHERE id_response > ? ORDER BY id_response LIMIT ? ";
+    private static final String SQL_QUERY_SELECT_INDEXED = "SELECT id_response FROM genatt_response_index WHERE id_response > ? AND id_response <= ? ";
+    private static final String SQL_QUERY_INSERT_INDEX = "INSERT INTO genatt_response_index ( id_response, id_resource ) VALUES ( ?,? ) ";
+    private static final String SQL_QUERY_SELECT_ID_RESOURCE = "SELECT id_resource FROM genatt_entry WHERE id_entry = ? ";
+    private static final String SQL_QUERY_SELECT_RESOURCE_SHARD = "SELECT shard_name FROM genatt_response_shard_resource WHERE id_resource = ? ";
+    private static final String SQL_QUERY_INSERT_RESOURCE_SHARD = "INSERT INTO genatt_response_shard_resource ( id_resource, shard_name, previous_shard_name ) VALUES ( ?,?,NULL ) ";
+
+    /**
+     * Private constructor
+     */
+    private LegacyResponseIndexer( )
+    {
+    }
+
+    /**
+     * Index the responses of the shards holding the table of the plugin
+     * 
+     * @param ring
+     *            The ring of the shards
+     * @param plugin
+     *            The plugin of the pool holding the index and the entries
+     * @return The number of responses indexed
+     */
+    static int indexLegacyResponses( ResponseShardRing ring, Plugin plugin )
+    {
+        int nIndexed = 0;
+
+        for ( ResponseShard shard : ring.getShards( ) )
+        {
+            if ( TABLE_LEGACY.equals( shard.getTable( ) ) )
+            {
+                nIndexed += indexShard( ring, shard, plugin );
+            }
+        }
+
+        if ( nIndexed > 0 )
+        {
+            AppLogService.info( nIndexed + " response(s) stored before the sharding have been indexed" );
+        }
+
+        return nIndexed;
+    }
+
+    /**
+     * Index the responses of a shard holding the table of the plugin, chunk by chunk
+     * 
+     * @param ring
+     *            The ring of the shards
+     * @param shard
+     *            The shard
+     * @param plugin
+     *            The plugin of the pool holding the index and the entries
+     * @return The number of responses indexed
+     */
+    private static int indexShard( ResponseShardRing ring, ResponseShard shard, Plugin plugin )
+    {
+        Map<Integer, Integer> mapEntryResource = new HashMap<>( );
+        Set<Integer> setResources = new HashSet<>( );
+        int nLastIdResponse = selectMaxIndexed( plugin );
+        int nIndexed = 0;
+        List<int [ ]> listChunk;
+
+        do
+        {
+            listChunk = selectChunk( shard, nLastIdResponse );
+
+            if ( !listChunk.isEmpty( ) )
+            {
+                int nChunkLastIdResponse = listChunk.get( listChunk.size( ) - 1 ) [0];
+                Set<Integer> setIndexed = selectIndexed( nLastIdResponse, nChunkLastIdResponse, plugin );
+
+                TransactionManager.beginTransaction( plugin );
+
+                try
+                {
+                    for ( int [ ] row : listChunk )
+                    {
+                        int nIdResource = mapEntryResource.computeIfAbsent( row [1], nIdEntry -> selectIdResource( nIdEntry, plugin ) );
+
+                        // The responses already indexed by another node starting at the same time are skipped
+                        if ( !setIndexed.contains( row [0] ) )
+                        {
+                            insertIndex( row [0], nIdResource, plugin );
+                            nIndexed++;
+                        }
+
+                        if ( setResources.add( nIdResource ) )
+                        {
+                            attachResource( ring, shard, nIdResource, plugin );
+                        }
+                    }
+
+                    TransactionManager.commitTransaction( plugin );
+                }
+                catch( Exception e )
+                {
+                    TransactionManager.rollBack( plugin );
+                    throw new AppException( e.getMessage( ), e );
+                }
+
+                nLastIdResponse = nChunkLastIdResponse;
+            }
+        }
+        while ( listChunk.size( ) == CHUNK_SIZE );
+
+        return nIndexed;
+    }
+
+    /**
+     * Attach a resource to a shard, unless the hash ring already gives it this shard or it is already attached to a shard
+     * 
+     * @param ring
+     *            The ring of the shards
+     * @param shard
+     *            The shard
+     * @param nIdResource
+     *            The id of the resource
+     * @param plugin
+     *            The plugin of the pool holding the shards of the resources
+     */
+    private static void attachResource( ResponseShardRing ring, ResponseShard shard, int nIdResource, Plugin plugin )
+    {
+        if ( ring.getHashedShard( nIdResource ) == shard )
+        {
+            return;
+        }
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_RESOURCE_SHARD, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdResource );
+            daoUtil.executeQuery( );
+
+            if ( daoUtil.next( ) )
+            {
+                return;
+            }
+        }
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT_RESOURCE_SHARD, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdResource );
+            daoUtil.setString( 2, shard.getName( ) );
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    /**
+     * Get the greatest id of the index
+     * 
+     * @param plugin
+     *            The plugin of the pool holding the index
+     * @return The greatest id, 0 if the index is empty
+     */
+    private static int selectMaxIndexed( Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_MAX_INDEXED, plugin ) )
+        {
+            daoUtil.executeQuery( );
+
+            return daoUtil.next( ) ? daoUtil.getInt( 1 ) : 0;
+        }
+    }
+
+    /**
+     * Get the next chunk of responses of a shard
+     * 
+     * @param shard
+     *            The shard
+     * @param nLastIdResponse
+     *            The id of the last response of the previous chunk
+     * @return The id and the id of the entry of each response, ordered by id
+     */
+    private static List<int [ ]> selectChunk( ResponseShard shard, int nLastIdResponse )
+    {
+        List<int [ ]> listChunk = new ArrayList<>( );
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_CHUNK, shard.getPlugin( ) ) )
+        {
+            daoUtil.setInt( 1, nLastIdResponse );
+            daoUtil.setInt( 2, CHUNK_SIZE );
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                listChunk.add( new int [ ] {
+                        daoUtil.getInt( 1 ), daoUtil.getInt( 2 )
+                } );
+            }
+        }
+
+        return listChunk;
+    }
+
+    /**
+     * Get the ids of the index in a range
+     * 
+     * @param nIdResponseAfter
+     *            The lower bound of the range, excluded
+     * @param nIdResponseTo
+     *            The upper bound of the range, included
+     * @param plugin
+     *            The plugin of the pool holding the index
+     * @return The ids
+     */
+    private static Set<Integer> selectIndexed( int nIdResponseAfter, int nIdResponseTo, Plugin plugin )
+    {
+        Set<Integer> setIndexed = new HashSet<>( );
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_INDEXED, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdResponseAfter );
+            daoUtil.setInt( 2, nIdResponseTo );
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                setIndexed.add( daoUtil.getInt( 1 ) );
+            }
+        }
+
+        return setIndexed;
+    }
+
+    /**
+     * Insert a response in the index with its id
+     * 
+     * @param nIdResponse
+     *            The id of the response
+     * @param nIdResource
+     *            The id of the resource of the response
+     * @param plugin
+     *            The plugin of the pool holding the index
+     */
+    private static void insertIndex( int nIdResponse, int nIdResource, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT_INDEX, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdResponse );
+            daoUtil.setInt( 2, nIdResource );
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    /**
+     * Get the id of the resource of an entry
+     * 
+     * @param nIdEntry
+     *            The id of the entry
+     * @param plugin
+     *            The plugin of the pool holding the entries
+     * @return The id of the resource, 0 if the entry no longer exists
+     */
+    private static int selectIdResource( int nIdEntry, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_ID_RESOURCE, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdEntry );
+            daoUtil.executeQuery( );
+
+            return daoUtil.next( ) ? daoUtil.getInt( 1 ) : UNKNOWN_RESOURCE;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.business;
+
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang.StringUtils;
+
+import fr.paris.lutece.plugins.genericattributes.util.GenericAttributesUtils;
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+import fr.paris.lutece.util.sql.TransactionManager;
+
+/**
+ * Routes the read-only finders to the read replica connection pool, when one is defined by the property <code>genericattributes.readReplica.pool</code>.
+ * Reads stay on the primary pool :
+ * <ul>
+ * <li>within a transaction or a {@link GenericAttributesSession}, so that they see the pending writes,</li>
+ * <li>within {@link #readYourWrites(Supplier)},</li>
+ * <li>while the replica is considered unavailable, after a failed read and until the retry delay has elapsed.</li>
+ * </ul>
+ */
+public final class ReadReplicaRouter
+{
+    private static final String PROPERTY_REPLICA_POOL = "genericattributes.readReplica.pool";
+    private static final String PROPERTY_REPLICA_RETRY_DELAY = "genericattributes.readReplica.retryDelay";
+    private static final long DEFAULT_REPLICA_RETRY_DELAY = 30000L;
+
+    private static final ThreadLocal<Boolean> _readYourWrites = new ThreadLocal<>( );
+    private static volatile long _lReplicaUnavailableUntil;
+    private static volatile Plugin _pluginReplica;
+    private static volatile boolean _bReplicaInitialized;
+    private static volatile LongSupplier _clock = System::currentTimeMillis;
+
+    /**
+     * Private constructor - this class need not be instantiated
+     */
+    private ReadReplicaRouter( )
+    {
+    }
+
+    /**
+     * Run a read-only query on the pool chosen for the current call. If the query fails on the replica, the replica is marked as unavailable and the query is
+     * run again on the primary pool.
+     * 
+     * @param pluginPrimary
+     *            The plugin holding the primary pool
+     * @param query
+     *            The query, given the plugin whose pool must be used
+     * @param <T>
+     *            The type of the query result
+     * @return The query result
+     */
+    static <T> T read( Plugin pluginPrimary, Function<Plugin, T> query )
+    {
+        Plugin plugin = selectPlugin( pluginPrimary );
+
+        if ( plugin == pluginPrimary )
+        {
+            return query.apply( pluginPrimary );
+        }
+
+        try
+        {
+            return query.apply( plugin );
+        }
+        catch( AppException e )
+        {
+            AppLogService.error( "Read replica unavailable, falling back to the primary pool : " + e.getMessage( ), e );
+            _lReplicaUnavailableUntil = _clock.getAsLong( ) + getRetryDelay( );
+
+            return query.apply( pluginPrimary );
+        }
+    }
+
+    /**
+     * Run an operation whose reads must all be made on the primary pool, for instance to read data written just before
+     * 
+     * @param operation
+     *            The operation
+     * @param <T>
+     *            The type of the result
+     * @return The result of the operation
+     */
+    public static <T> T readYourWrites( Supplier<T> operation )
+    {
+        if ( isReadYourWrites( ) )
+        {
+            return operation.get( );
+        }
+
+        _readYourWrites.set( Boolean.TRUE );
+
+        try
+        {
+            return operation.get( );
+        }
+        finally
+        {
+            _readYourWrites.remove( );
+        }
+    }
+
+    /**
+     * Check whether the reads of the current thread must be made on the primary pool
+     * 
+     * @return true if the reads must be made on the primary pool, false otherwise
+     */
+    public static boolean isReadYourWrites( )
+    {
+        return Boolean.TRUE.equals( _readYourWrites.get( ) );
+    }
+
+    /**
+     * Check whether a read replica pool is defined
+     * 
+     * @return true if a read replica pool is defined, false otherwise
+     */
+    public static boolean isReplicaEnabled( )
+    {
+        return getReplicaPlugin( ) != null;
+    }
+
+    /**
+     * Select the plugin whose pool must be used by a read-only query of the current thread
+     * 
+     * @param pluginPrimary
+     *            The plugin holding the primary pool
+     * @return The plugin whose pool must be used
+     */
+    static Plugin selectPlugin( Plugin pluginPrimary )
+    {
+        Plugin pluginReplica = getReplicaPlugin( );
+
+        if ( ( pluginReplica == null ) || isReadYourWrites( ) || GenericAttributesSession.isActive( )
+                || ( TransactionManager.getCurrentTransaction( pluginPrimary ) != null ) || ( _clock.getAsLong( ) < _lReplicaUnavailableUntil ) )
+        {
+            return pluginPrimary;
+        }
+
+        return pluginReplica;
+    }
+
+    /**
+     * Get the plugin holding the read replica pool
+     * 
+     * @return The plugin holding the read replica pool, or null if no replica is defined
+     */
+    static Plugin getReplicaPlugin( )
+    {
+        if ( !_bReplicaInitialized )
+        {
+            synchronized( ReadReplicaRouter.class )
+            {
+                if ( !_bReplicaInitialized )
+                {
+                    _pluginReplica = createReplicaPlugin( );
+                    _bReplicaInitialized = true;
+                }
+            }
+        }
+
+        return _pluginReplica;
+    }
+
+    /**
+     * Get the delay before the replica is used again after a failed read
+     * 
+     * @return The delay, in milliseconds
+     */
+    static long getRetryDelay( )
+    {
+        return AppPropertiesService.getPropertyLong( PROPERTY_REPLICA_RETRY_DELAY, DEFAULT_REPLICA_RETRY_DELAY );
+    }
+
+    /**
+     * Set the plugin holding the read replica pool, and consider the replica available. Used by the tests.
+     * 
+     * @param pluginReplica
+     *            The plugin holding the read replica pool, or null for no replica
+     */
+    static synchronized void setReplicaPlugin( Plugin pluginReplica )
+    {
+        _pluginReplica = pluginReplica;
+        _bReplicaInitialized = true;
+        _lReplicaUnavailableUntil = 0L;
+    }
+
+    /**
+     * Set the clock giving the current time in milliseconds, which decides when the replica is retried. Used by the tests.
+     * 
+     * @param clock
+     *            The clock
+     */
+    static void setClock( LongSupplier clock )
+    {
+        _clock = clock;
+    }
+
+    /**
+     * Create a plugin whose connection service uses the read replica pool
+     * 
+     * @return The plugin, or null if no replica is defined
+     */
+    private static Plugin createReplicaPlugin( )
+    {
+        String strPoolName = AppPropertiesService.getProperty( PROPERTY_REPLICA_POOL );
+
+        if ( StringUtils.isBlank( strPoolName ) )
+        {
+            return null;
+        }
+
+        return GenericAttributesUtils.createPoolPlugin( strPoolName );
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.business;
+
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.util.sql.DAOUtil;
+import fr.paris.lutece.util.sql.TransactionManager;
+
+/**
+ * Dictionary of the resource types of the entries. The entries store the integer key of their resource type, given by the genatt_resource_type table. The
+ * mapping is cached in memory, except for the keys read inside a transaction, which could be rolled back. The entries inserted by SQL scripts with only their
+ * resource_type have the key {@link #UNKNOWN_ID} until {@link #resolveEntries(Plugin)} repairs them.
+ */
+final class ResourceTypeDictionary
+{
+    /**
+     * Key of the resource types which are not in the dictionary, and of the entries whose key is not resolved yet
+     */
+    static final int UNKNOWN_ID = 0;
+
+    // Constants
+    private static final String SQL_QUERY_SELECT_ID = "SELECT id_resource_type FROM genatt_resource_type WHERE resource_type = ? ";
+    private static final String SQL_QUERY_SELECT_ID_FOR_UPDATE = SQL_QUERY_SELECT_ID + " FOR UPDATE ";
+    private static final String SQL_QUERY_INSERT = "INSERT INTO genatt_resource_type ( resource_type ) VALUES ( ? ) ";
+    private static final String SQL_QUERY_INSERT_UNRESOLVED = "INSERT INTO genatt_resource_type ( resource_type ) SELECT DISTINCT ent.resource_type FROM genatt_entry ent "
+            + " WHERE ent.id_resource_type = 0 AND ent.resource_type IS NOT NULL AND NOT EXISTS "
+            + " ( SELECT rt.id_resource_type FROM genatt_resource_type rt WHERE rt.resource_type = ent.resource_type ) ";
+    private static final String SQL_QUERY_RESOLVE_ENTRIES = "UPDATE genatt_entry SET id_resource_type = "
+            + " ( SELECT rt.id_resource_type FROM genatt_resource_type rt WHERE rt.resource_type = genatt_entry.resource_type ) "
+            + " WHERE id_resource_type = 0 AND resource_type IN ( SELECT resource_type FROM genatt_resource_type ) ";
+
+    private static final Map<String, Integer> _mapIds = new ConcurrentHashMap<>( );
+
+    /**
+     * Private constructor
+     */
+    private ResourceTypeDictionary( )
+    {
+    }
+
+    /**
+     * Get the key of a resource type
+     * 
+     * @param strResourceType
+     *            The resource type
+     * @param plugin
+     *            the plugin
+     * @return The key of the resource type, or {@link #UNKNOWN_ID} if it is not in the dictionary
+     */
+    static int getId( String strResourceType, Plugin plugin )
+    {
+        if ( strResourceType == null )
+        {
+            return UNKNOWN_ID;
+        }
+
+        Integer nId = _mapIds.get( strResourceType );
+
+        if ( nId != null )
+        {
+            return nId;
+        }
+
+        int nIdResourceType = UNKNOWN_ID;
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_ID, plugin ) )
+        {
+            daoUtil.setString( 1, strResourceType );
+            daoUtil.executeQuery( );
+
+            if ( daoUtil.next( ) )
+            {
+                nIdResourceType = daoUtil.getInt( 1 );
+                cache( nIdResourceType, strResourceType, plugin );
+            }
+        }
+
+        return nIdResourceType;
+    }
+
+    /**
+     * Get the key of a resource type, adding it to the dictionary if needed
+     * 
+     * @param strResourceType
+     *            The resource type
+     * @param plugin
+     *            the plugin
+     * @return The key of the resource type
+     */
+    static int getOrCreateId( String strResourceType, Plugin plugin )
+    {
+        int nIdResourceType = getId( strResourceType, plugin );
+
+        if ( nIdResourceType != UNKNOWN_ID )
+        {
+            return nIdResourceType;
+        }
+
+        synchronized( ResourceTypeDictionary.class )
+        {
+            nIdResourceType = getId( strResourceType, plugin );
+
+            if ( nIdResourceType == UNKNOWN_ID )
+            {
+                try
+                {
+                    nIdResourceType = insert( strResourceType, plugin );
+                }
+                catch( AppException e )
+                {
+                    // The lock only covers this JVM : another node may have added the resource type, which the unique index rejects here
+                    nIdResourceType = selectIdForUpdate( strResourceType, plugin );
+
+                    if ( nIdResourceType == UNKNOWN_ID )
+                    {
+                        throw e;
+                    }
+                }
+            }
+        }
+
+        return nIdResourceType;
+    }
+
+    /**
+     * Add a resource type to the dictionary
+     * 
+     * @param strResourceType
+     *            The resource type
+     * @param plugin
+     *            the plugin
+     * @return The key of the resource type
+     */
+    private static int insert( String strResourceType, Plugin plugin )
+    {
+        int nIdResourceType = UNKNOWN_ID;
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT, Statement.RETURN_GENERATED_KEYS, plugin ) )
+        {
+            daoUtil.setString( 1, strResourceType );
+            daoUtil.executeUpdate( );
+
+            if ( daoUtil.nextGeneratedKey( ) )
+            {
+                nIdResourceType = daoUtil.getGeneratedKeyInt( 1 );
+                cache( nIdResourceType, strResourceType, plugin );
+            }
+        }
+
+        return nIdResourceType;
+    }
+
+    /**
+     * Read the key of a resource type with a locking read, which sees the rows committed by the other nodes even inside a transaction
+     * 
+     * @param strResourceType
+     *            The resource type
+     * @param plugin
+     *            the plugin
+     * @return The key of the resource type, or {@link #UNKNOWN_ID} if it is not in the dictionary
+     */
+    private static int selectIdForUpdate( String strResourceType, Plugin plugin )
+    {
+        int nIdResourceType = UNKNOWN_ID;
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_ID_FOR_UPDATE, plugin ) )
+        {
+            daoUtil.setString( 1, strResourceType );
+            daoUtil.executeQuery( );
+
+            if ( daoUtil.next( ) )
+            {
+                nIdResourceType = daoUtil.getInt( 1 );
+                cache( nIdResourceType, strResourceType, plugin );
+            }
+        }
+
+        return nIdResourceType;
+    }
+
+    /**
+     * Resolve the key of the entries which only have their resource_type, like the entries inserted by SQL scripts. The finders of {@link EntryDAO} match these
+     * entries by their resource_type meanwhile.
+     * 
+     * @param plugin
+     *            the plugin
+     * @return The number of entries resolved
+     */
+    static int resolveEntries( Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT_UNRESOLVED, plugin ) )
+        {
+            daoUtil.executeUpdate( );
+        }
+        catch( AppException e )
+        {
+            // Another node may be adding the same resource types, which the unique index rejects here : the entries of the others are resolved below
+            AppLogService.info( "Resource types of the entries not added to the dictionary : " + e.getMessage( ) );
+        }
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_RESOLVE_ENTRIES, plugin ) )
+        {
+            return daoUtil.executeUpdate( );
+        }
+    }
+
+    /**
+     * Clear the cached mapping
+     */
+    static void reset( )
+    {
+        _mapIds.clear( );
+    }
+
+    /**
+     * Cache a mapping read outside of a transaction
+     * 
+     * @param nIdResourceType
+     *            The key of the resource type
+     * @param strResourceType
+     *            The resource type
+     * @param plugin
+     *            the plugin
+     */
+    private static void cache( int nIdResourceType, String strResourceType, Plugin plugin )
+    {
+        if ( TransactionManager.getCurrentTransaction( plugin ) == null )
+        {
+            _mapIds.put( strResourceType, nIdResourceType );
+        }
+    }
+}
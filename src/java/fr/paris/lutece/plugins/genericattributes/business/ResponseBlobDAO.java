@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.business;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.util.sql.DAOUtil;
+
+/**
+ * This class provides Data Access methods for the reference counts of the blobs of the response files
+ */
+public final class ResponseBlobDAO implements IResponseBlobDAO
+{
+    // Constants
+    private static final String SQL_QUERY_SELECT_REFERENCE_COUNT = "SELECT ref_count FROM genatt_response_blob WHERE blob_key = ? ";
+    private static final String SQL_QUERY_SELECT_REFERENCE_COUNT_FOR_UPDATE = SQL_QUERY_SELECT_REFERENCE_COUNT + " FOR UPDATE ";
+    private static final String SQL_QUERY_SELECT_UNREFERENCED_KEYS = "SELECT blob_key FROM genatt_response_blob WHERE ref_count = 0 ";
+    private static final String SQL_QUERY_INSERT = "INSERT INTO genatt_response_blob ( blob_key, ref_count ) VALUES ( ?, 1 ) ";
+    private static final String SQL_QUERY_INCREMENT_REFERENCE_COUNT = "UPDATE genatt_response_blob SET ref_count = ref_count + 1 WHERE blob_key = ? ";
+    private static final String SQL_QUERY_DECREMENT_REFERENCE_COUNT = "UPDATE genatt_response_blob SET ref_count = ref_count - 1 WHERE blob_key = ? AND ref_count > 0 ";
+    private static final String SQL_QUERY_DELETE_UNREFERENCED = "DELETE FROM genatt_response_blob WHERE blob_key = ? AND ref_count = 0 ";
+    private static final String SQL_QUERY_SELECT_FILE_BLOB_KEY = "SELECT blob_key FROM genatt_response_file_blob WHERE id_physical_file = ? ";
+    private static final String SQL_QUERY_INSERT_FILE_BLOB = "INSERT INTO genatt_response_file_blob ( id_physical_file, blob_key ) VALUES ( ?, ? ) ";
+    private static final String SQL_QUERY_DELETE_FILE_BLOB = "DELETE FROM genatt_response_file_blob WHERE id_physical_file = ? ";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int selectReferenceCount( String strBlobKey, Plugin plugin )
+    {
+        return selectReferenceCount( SQL_QUERY_SELECT_REFERENCE_COUNT, strBlobKey, plugin );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int selectReferenceCountForUpdate( String strBlobKey, Plugin plugin )
+    {
+        return selectReferenceCount( SQL_QUERY_SELECT_REFERENCE_COUNT_FOR_UPDATE, strBlobKey, plugin );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> selectUnreferencedKeys( Plugin plugin )
+    {
+        List<String> listKeys = new ArrayList<>( );
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_UNREFERENCED_KEYS, plugin ) )
+        {
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                listKeys.add( daoUtil.getString( 1 ) );
+            }
+        }
+
+        return listKeys;
+    }
+
+    /**
+     * Select the reference count of a blob
+     *
+     * @param strQuery
+     *            The select query
+     * @param strBlobKey
+     *            The key of the blob
+     * @param plugin
+     *            the plugin
+     * @return The number of references, 0 if the blob has no row
+     */
+    private static int selectReferenceCount( String strQuery, String strBlobKey, Plugin plugin )
+    {
+        int nReferenceCount = 0;
+
+        try ( DAOUtil daoUtil = new DAOUtil( strQuery, plugin ) )
+        {
+            daoUtil.setString( 1, strBlobKey );
+            daoUtil.executeQuery( );
+
+            if ( daoUtil.next( ) )
+            {
+                nReferenceCount = daoUtil.getInt( 1 );
+            }
+        }
+
+        return nReferenceCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void insert( String strBlobKey, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT, plugin ) )
+        {
+            daoUtil.setString( 1, strBlobKey );
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int incrementReferenceCount( String strBlobKey, Plugin plugin )
+    {
+        return updateReferenceCount( SQL_QUERY_INCREMENT_REFERENCE_COUNT, strBlobKey, plugin );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int decrementReferenceCount( String strBlobKey, Plugin plugin )
+    {
+        return updateReferenceCount( SQL_QUERY_DECREMENT_REFERENCE_COUNT, strBlobKey, plugin );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int deleteUnreferenced( String strBlobKey, Plugin plugin )
+    {
+        return updateReferenceCount( SQL_QUERY_DELETE_UNREFERENCED, strBlobKey, plugin );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String selectFileBlobKey( int nIdPhysicalFile, Plugin plugin )
+    {
+        String strBlobKey = null;
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_FILE_BLOB_KEY, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdPhysicalFile );
+            daoUtil.executeQuery( );
+
+            if ( daoUtil.next( ) )
+            {
+                strBlobKey = daoUtil.getString( 1 );
+            }
+        }
+
+        return strBlobKey;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void insertFileBlob( int nIdPhysicalFile, String strBlobKey, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT_FILE_BLOB, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdPhysicalFile );
+            daoUtil.setString( 2, strBlobKey );
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void deleteFileBlob( int nIdPhysicalFile, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_DELETE_FILE_BLOB, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdPhysicalFile );
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    /**
+     * Update or delete the row of a blob
+     *
+     * @param strQuery
+     *            The query
+     * @param strBlobKey
+     *            The key of the blob
+     * @param plugin
+     *            the plugin
+     * @return The number of rows updated or deleted
+     */
+    private static int updateReferenceCount( String strQuery, String strBlobKey, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( strQuery, plugin ) )
+        {
+            daoUtil.setString( 1, strBlobKey );
+
+            return daoUtil.executeUpdate( );
+        }
+    }
+}
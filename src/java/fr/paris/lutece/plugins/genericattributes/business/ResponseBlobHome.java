@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.business;
+
+import java.util.List;
+
+import fr.paris.lutece.plugins.genericattributes.util.GenericAttributesUtils;
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+import fr.paris.lutece.portal.service.util.AppException;
+
+/**
+ * This class provides the management of the reference counts of the blobs of the response files, and of the blobs of their physical files
+ */
+public final class ResponseBlobHome
+{
+    // Static variable pointed at the DAO instance
+    private static IResponseBlobDAO _dao = SpringContextService.getBean( "genericattributes.responseBlobDAO" );
+    private static Plugin _plugin;
+
+    /**
+     * Private constructor - this class need not be instantiated
+     */
+    private ResponseBlobHome( )
+    {
+    }
+
+    /**
+     * Add a reference to a blob. The count is incremented in a single statement, so that concurrent references to the same content are all counted.
+     *
+     * @param strBlobKey
+     *            The key of the blob
+     */
+    public static void addReference( String strBlobKey )
+    {
+        if ( _dao.incrementReferenceCount( strBlobKey, getPlugin( ) ) > 0 )
+        {
+            return;
+        }
+
+        try
+        {
+            _dao.insert( strBlobKey, getPlugin( ) );
+        }
+        catch( AppException e )
+        {
+            // The first reference has been inserted by a concurrent request in the meantime
+            if ( _dao.incrementReferenceCount( strBlobKey, getPlugin( ) ) == 0 )
+            {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Remove a reference to a blob. The count is decremented in a single statement, and the row of the blob is kept until the blob is purged.
+     *
+     * @param strBlobKey
+     *            The key of the blob
+     * @return true if a reference has been removed, false if the blob was not referenced
+     */
+    public static boolean removeReference( String strBlobKey )
+    {
+        return _dao.decrementReferenceCount( strBlobKey, getPlugin( ) ) > 0;
+    }
+
+    /**
+     * Remove the row of a blob if it is no longer referenced
+     *
+     * @param strBlobKey
+     *            The key of the blob
+     * @return true if the row has been removed, false if the blob is referenced again
+     */
+    public static boolean removeUnreferenced( String strBlobKey )
+    {
+        return _dao.deleteUnreferenced( strBlobKey, getPlugin( ) ) > 0;
+    }
+
+    /**
+     * Get the number of references to a blob, and lock its row until the end of the current transaction, so that no reference is added meanwhile
+     *
+     * @param strBlobKey
+     *            The key of the blob
+     * @return The number of references
+     */
+    public static int lockReferenceCount( String strBlobKey )
+    {
+        return _dao.selectReferenceCountForUpdate( strBlobKey, getPlugin( ) );
+    }
+
+    /**
+     * Get the keys of the blobs left with no reference, whose purge has not been done
+     *
+     * @return The keys of the blobs
+     */
+    public static List<String> getUnreferencedKeys( )
+    {
+        return _dao.selectUnreferencedKeys( getPlugin( ) );
+    }
+
+    /**
+     * Tell if a blob is referenced
+     *
+     * @param strBlobKey
+     *            The key of the blob
+     * @return true if the blob is referenced
+     */
+    public static boolean isReferenced( String strBlobKey )
+    {
+        return _dao.selectReferenceCount( strBlobKey, getPlugin( ) ) > 0;
+    }
+
+    /**
+     * Get the key of the blob of a physical file
+     *
+     * @param nIdPhysicalFile
+     *            The id of the physical file
+     * @return The key of the blob, or null if the content of the physical file is not in the blob store
+     */
+    public static String findFileBlobKey( int nIdPhysicalFile )
+    {
+        return _dao.selectFileBlobKey( nIdPhysicalFile, getPlugin( ) );
+    }
+
+    /**
+     * Set the blob of a physical file, which must already hold a reference to it
+     *
+     * @param nIdPhysicalFile
+     *            The id of the physical file
+     * @param strBlobKey
+     *            The key of the blob
+     */
+    public static void setFileBlobKey( int nIdPhysicalFile, String strBlobKey )
+    {
+        _dao.insertFileBlob( nIdPhysicalFile, strBlobKey, getPlugin( ) );
+    }
+
+    /**
+     * Remove the blob of a physical file, and the reference it holds
+     *
+     * @param nIdPhysicalFile
+     *            The id of the physical file
+     * @return The key of the blob if a reference has been removed, null otherwise
+     */
+    public static String removeFileBlobKey( int nIdPhysicalFile )
+    {
+        String strBlobKey = findFileBlobKey( nIdPhysicalFile );
+
+        if ( strBlobKey == null )
+        {
+            return null;
+        }
+
+        _dao.deleteFileBlob( nIdPhysicalFile, getPlugin( ) );
+
+        return removeReference( strBlobKey ) ? strBlobKey : null;
+    }
+
+    /**
+     * Get the generic attributes plugin
+     * 
+     * @return The generic attributes plugin
+     */
+    private static Plugin getPlugin( )
+    {
+        if ( _plugin == null )
+        {
+            _plugin = GenericAttributesUtils.getPlugin( );
+        }
+
+        return _plugin;
+    }
+}
@@ -36,9 +36,11 @@ package fr.paris.lutece.plugins.genericattributes.business;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
+import fr.paris.lutece.plugins.genericattributes.util.StorageCompression;
 import fr.paris.lutece.portal.business.file.File;
+import fr.paris.lutece.portal.business.physicalfile.PhysicalFile;
 import fr.paris.lutece.portal.service.plugin.Plugin;
 import fr.paris.lutece.util.sql.DAOUtil;
 
@@ -58,6 +60,14 @@ public final class ResponseDAO implements IResponseDAO
             + " response_value, id_entry, iteration_number, id_field, id_file, status ) VALUES ( ?,?,?,?,?,?)";
     private static final String SQL_QUERY_UPDATE = "UPDATE genatt_response SET response_value = ?, id_entry = ?, iteration_number = ?, id_field = ?, id_file = ?, status = ? WHERE id_response = ?";
     private static final String SQL_QUERY_DELETE = "DELETE FROM genatt_response WHERE id_response = ? ";
+    private static final String SQL_QUERY_SELECT_ID_FILE = "SELECT id_file FROM genatt_response WHERE id_response = ? AND id_file IS NOT NULL ";
+    // The core tables are read through the core pool, the pool of the plugin may be another database
+    private static final String SQL_QUERY_SELECT_IMAGE = "SELECT f.title, f.mime_type, f.date_creation, pf.file_value FROM core_file f, core_physical_file pf "
+            + " WHERE f.id_file = ? AND f.id_physical_file = pf.id_physical_file ";
+    private static final String SQL_QUERY_SELECT_BATCH_BY_ID_RESOURCE = SQL_QUERY_SELECT_RESPONSE_BY_FILTER
+            + " AND ent.id_resource = ? AND resp.id_response > ? ORDER BY resp.id_response LIMIT ? ";
+    private static final String SQL_QUERY_SELECT_FILES = "SELECT id_file, title, id_physical_file, file_size, mime_type FROM core_file WHERE 1=1 ";
+    private static final String SQL_COLUMN_ID_FILE = "id_file";
     private static final String SQL_QUERY_SELECT_COUNT_RESPONSE_BY_ID_ENTRY = " SELECT field.title, COUNT( resp.id_response )"
             + " FROM genatt_entry e LEFT JOIN genatt_field field ON ( e.id_entry = field.id_entry ) LEFT JOIN genatt_response resp on ( resp.id_field = field.id_field ) "
             + " WHERE e.id_entry = ? GROUP BY field.id_field ORDER BY field.pos ";
@@ -70,9 +80,10 @@ public final class ResponseDAO implements IResponseDAO
     private static final String SQL_FILTER_ID_ENTRY = " AND resp.id_entry = ? ";
     private static final String SQL_FILTER_ID_FIELD = " AND resp.id_field = ? ";
     private static final String SQL_FILTER_CODE_ENTRY = " AND ent.code = ? ";
-    private static final String SQL_FILTER_RESPONSE_VALUE = " AND resp.response_value = ? ";
+    private static final String SQL_FILTER_RESPONSE_VALUE = " AND ( resp.response_value IN ( ?,? ) OR ( resp.response_value IS NULL AND resp.id_field IN "
+            + " ( SELECT field.id_field FROM genatt_field field WHERE field.id_entry = resp.id_entry AND field.value = ? ) ) ) ";
     private static final String SQL_FILTER_ID_RESPONSE = " resp.id_response ";
-    private static final String SQL_FILTER_MULTI_ID_RESPONSE = "AND resp.id_response IN ";
+    private static final String SQL_COLUMN_ID_RESPONSE = "resp.id_response";
     private static final String SQL_ORDER_BY = " ORDER BY ";
     private static final String SQL_ASC = " ASC ";
     private static final String SQL_DESC = " DESC ";
@@ -87,7 +98,8 @@ public final class ResponseDAO implements IResponseDAO
 
         try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT, Statement.RETURN_GENERATED_KEYS, plugin ) )
         {
-            daoUtil.setString( nIndex++, removeInvalidChars( response.getResponseValue( ) ) );
+            daoUtil.setString( nIndex++, ChoiceResponseStorage.isCompactable( response, plugin ) ? null
+                    : StorageCompression.compressValue( removeInvalidChars( response.getResponseValue( ) ) ) );
             daoUtil.setInt( nIndex++, response.getEntry( ).getIdEntry( ) );
             daoUtil.setInt( nIndex++, response.getIterationNumber( ) );
 
@@ -121,6 +133,58 @@ public final class ResponseDAO implements IResponseDAO
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ResponseImage loadImage( int nIdResponse, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_ID_FILE, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdResponse );
+            daoUtil.executeQuery( );
+
+            if ( daoUtil.next( ) )
+            {
+                return selectImage( daoUtil.getInt( 1 ), nIdResponse );
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Load the file of a response with its content, through the core pool
+     * 
+     * @param nIdFile
+     *            The id of the file
+     * @param nIdResponse
+     *            The id of the response
+     * @return The response image, or null if the file does not exist
+     */
+    static ResponseImage selectImage( int nIdFile, int nIdResponse )
+    {
+        ResponseImage image = null;
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_IMAGE ) )
+        {
+            daoUtil.setInt( 1, nIdFile );
+            daoUtil.executeQuery( );
+
+            if ( daoUtil.next( ) )
+            {
+                image = new ResponseImage( );
+                image.setIdResponse( nIdResponse );
+                image.setTitle( daoUtil.getString( 1 ) );
+                image.setMimeType( daoUtil.getString( 2 ) );
+                image.setDateCreation( daoUtil.getTimestamp( 3 ) );
+                image.setContent( daoUtil.getBytes( 4 ) );
+            }
+        }
+
+        return image;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -136,7 +200,7 @@ public final class ResponseDAO implements IResponseDAO
 
             if ( daoUtil.next( ) )
             {
-                response = getResponseFromDAOUtil( daoUtil );
+                response = getResponseFromDAOUtil( daoUtil, plugin );
             }
 
         }
@@ -166,7 +230,8 @@ public final class ResponseDAO implements IResponseDAO
         int nIndex = 1;
         try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_UPDATE, plugin ) )
         {
-            daoUtil.setString( nIndex++, response.getResponseValue( ) );
+            daoUtil.setString( nIndex++, ChoiceResponseStorage.isCompactable( response, plugin ) ? null
+                    : StorageCompression.compressValue( response.getResponseValue( ) ) );
             daoUtil.setInt( nIndex++, response.getEntry( ).getIdEntry( ) );
             daoUtil.setInt( nIndex++, response.getIterationNumber( ) );
 
@@ -201,8 +266,6 @@ public final class ResponseDAO implements IResponseDAO
     @Override
     public List<Response> selectListByFilter( ResponseFilter filter, Plugin plugin )
     {
-        List<Response> responseList = new ArrayList<>( );
-
         StringBuilder sbSQL = new StringBuilder( SQL_QUERY_SELECT_RESPONSE_BY_FILTER );
 
         if ( filter.containsIdResource( ) )
@@ -230,19 +293,51 @@ public final class ResponseDAO implements IResponseDAO
             sbSQL.append( SQL_FILTER_RESPONSE_VALUE );
         }
 
+        List<Integer> listId = null;
+        boolean bUseIdTable = false;
+
         if ( filter.containsListIdResource( ) )
         {
-            StringBuilder sb = new StringBuilder( SQL_FILTER_MULTI_ID_RESPONSE + " (" );
-            sb.append( filter.getListId( ).stream( ).map( String::valueOf ).collect( Collectors.joining( "," ) ) );
-            sb.append( ")" );
-            sbSQL.append( sb.toString( ) );
+            listId = IdListQueryHelper.distinct( filter.getListId( ) );
+            bUseIdTable = IdListQueryHelper.isIdTableRequired( listId );
+            sbSQL.append( bUseIdTable ? IdListQueryHelper.buildIdTableClause( SQL_COLUMN_ID_RESPONSE )
+                    : IdListQueryHelper.buildInClause( SQL_COLUMN_ID_RESPONSE, listId.size( ) ) );
         }
 
         sbSQL.append( SQL_ORDER_BY );
         sbSQL.append( ( filter.containsOrderBy( ) ) ? filter.getOrderBy( ) : SQL_FILTER_ID_RESPONSE );
         sbSQL.append( ( filter.isOrderByAsc( ) ) ? SQL_ASC : SQL_DESC );
 
-        try ( DAOUtil daoUtil = new DAOUtil( sbSQL.toString( ), plugin ) )
+        String strSQL = sbSQL.toString( );
+
+        if ( bUseIdTable )
+        {
+            return IdListQueryHelper.callWithIdTable( listId, plugin, strListKey -> selectResponses( strSQL, filter, null, strListKey, plugin ) );
+        }
+
+        return selectResponses( strSQL, filter, listId, null, plugin );
+    }
+
+    /**
+     * Run the query built from a filter and load the responses
+     * 
+     * @param strSQL
+     *            The query
+     * @param filter
+     *            the filter
+     * @param listId
+     *            The distinct ids of responses to bind as parameters, or null
+     * @param strListKey
+     *            The key of the ids written in the id table, or null
+     * @param plugin
+     *            the plugin
+     * @return the list of response
+     */
+    private List<Response> selectResponses( String strSQL, ResponseFilter filter, List<Integer> listId, String strListKey, Plugin plugin )
+    {
+        List<Response> responseList = new ArrayList<>( );
+
+        try ( DAOUtil daoUtil = new DAOUtil( strSQL, plugin ) )
         {
             int nIndex = 1;
 
@@ -268,14 +363,27 @@ public final class ResponseDAO implements IResponseDAO
 
             if ( filter.containsResponseValue( ) )
             {
+                // The value may be stored compressed
+                daoUtil.setString( nIndex++, filter.getResponseValue( ) );
+                daoUtil.setString( nIndex++, StorageCompression.compressValue( filter.getResponseValue( ) ) );
                 daoUtil.setString( nIndex++, filter.getResponseValue( ) );
             }
 
+            if ( strListKey != null )
+            {
+                daoUtil.setString( nIndex, strListKey );
+            }
+            else
+                if ( listId != null )
+                {
+                    IdListQueryHelper.bindIds( daoUtil, nIndex, listId );
+                }
+
             daoUtil.executeQuery( );
 
             while ( daoUtil.next( ) )
             {
-                responseList.add( getResponseFromDAOUtil( daoUtil ) );
+                responseList.add( getResponseFromDAOUtil( daoUtil, plugin ) );
             }
 
         }
@@ -283,6 +391,100 @@ public final class ResponseDAO implements IResponseDAO
         return responseList;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Response> selectBatchByIdResource( int nIdResource, int nIdResponseAfter, int nBatchSize, Plugin plugin )
+    {
+        List<Response> listResponse = new ArrayList<>( );
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_BATCH_BY_ID_RESOURCE, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdResource );
+            daoUtil.setInt( 2, nIdResponseAfter );
+            daoUtil.setInt( 3, nBatchSize );
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                listResponse.add( getResponseFromDAOUtil( daoUtil, plugin ) );
+            }
+        }
+
+        return listResponse;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<File> selectFileList( List<Integer> listIdFile, Plugin plugin )
+    {
+        return selectFiles( listIdFile );
+    }
+
+    /**
+     * Load files without their content, through the core pool. The lists of ids too large to be bound at once are read by parts, as the id table of the plugin
+     * may not be in the database of the core.
+     * 
+     * @param listIdFile
+     *            The ids of the files
+     * @return The files, with the id of their physical file
+     */
+    static List<File> selectFiles( List<Integer> listIdFile )
+    {
+        List<File> listFiles = new ArrayList<>( );
+
+        for ( List<Integer> listId : IdListQueryHelper.partition( IdListQueryHelper.distinct( listIdFile ) ) )
+        {
+            listFiles.addAll( selectFiles( SQL_QUERY_SELECT_FILES + IdListQueryHelper.buildInClause( SQL_COLUMN_ID_FILE, listId.size( ) ),
+                    daoUtil -> IdListQueryHelper.bindIds( daoUtil, 1, listId ) ) );
+        }
+
+        return listFiles;
+    }
+
+    /**
+     * Run a select query on files through the core pool
+     * 
+     * @param strSQL
+     *            The query
+     * @param parameters
+     *            The binding of the parameters of the query
+     * @return The files, with the id of their physical file
+     */
+    private static List<File> selectFiles( String strSQL, Consumer<DAOUtil> parameters )
+    {
+        List<File> listFiles = new ArrayList<>( );
+
+        try ( DAOUtil daoUtil = new DAOUtil( strSQL ) )
+        {
+            parameters.accept( daoUtil );
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                File file = new File( );
+                file.setIdFile( daoUtil.getInt( 1 ) );
+                file.setTitle( daoUtil.getString( 2 ) );
+
+                if ( daoUtil.getObject( 3 ) != null )
+                {
+                    PhysicalFile physicalFile = new PhysicalFile( );
+                    physicalFile.setIdPhysicalFile( daoUtil.getInt( 3 ) );
+                    file.setPhysicalFile( physicalFile );
+                }
+
+                file.setSize( daoUtil.getInt( 4 ) );
+                file.setMimeType( daoUtil.getString( 5 ) );
+                listFiles.add( file );
+            }
+        }
+
+        return listFiles;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -336,16 +538,18 @@ public final class ResponseDAO implements IResponseDAO
      * 
      * @param daoUtil
      *            The daoUtil to get data from. Note that the DAOUtil will NOT be free by this method
+     * @param plugin
+     *            the plugin
      * @return The response
      */
-    private Response getResponseFromDAOUtil( DAOUtil daoUtil )
+    private Response getResponseFromDAOUtil( DAOUtil daoUtil, Plugin plugin )
     {
         int nIndex = 1;
 
         Response response = new Response( );
         response.setIdResponse( daoUtil.getInt( nIndex++ ) );
 
-        response.setResponseValue( daoUtil.getString( nIndex++ ) );
+        response.setResponseValue( StorageCompression.decompressValue( daoUtil.getString( nIndex++ ) ) );
 
         EntryType entryType = new EntryType( );
         entryType.setBeanName( daoUtil.getString( nIndex++ ) );
@@ -382,6 +586,8 @@ public final class ResponseDAO implements IResponseDAO
         nIndex++;
         response.setStatus( daoUtil.getInt( nIndex ) );
 
+        ChoiceResponseStorage.resolveValue( response, plugin );
+
         return response;
     }
 
@@ -392,7 +598,7 @@ public final class ResponseDAO implements IResponseDAO
      *            the string to control
      * @return the string with only valid caracters
      */
-    private String removeInvalidChars( String s )
+    static String removeInvalidChars( String s )
     {
         if ( s == null )
         {
@@ -33,13 +33,20 @@
  */
 package fr.paris.lutece.plugins.genericattributes.business;
 
+import fr.paris.lutece.plugins.genericattributes.service.file.ResponseBlobService;
+import fr.paris.lutece.plugins.genericattributes.service.image.ResponseImageCache;
+import fr.paris.lutece.plugins.genericattributes.service.image.ResponseThumbnailService;
 import fr.paris.lutece.plugins.genericattributes.util.GenericAttributesUtils;
+import fr.paris.lutece.portal.business.file.File;
 import fr.paris.lutece.portal.business.file.FileHome;
+import fr.paris.lutece.portal.business.physicalfile.PhysicalFile;
 import fr.paris.lutece.portal.service.plugin.Plugin;
 import fr.paris.lutece.portal.service.spring.SpringContextService;
 import fr.paris.lutece.portal.service.util.AppException;
 import fr.paris.lutece.util.sql.TransactionManager;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -73,7 +80,7 @@ public final class ResponseHome
         {
             if ( response.getFile( ) != null )
             {
-                FileHome.create( response.getFile( ) );
+                storeFile( response.getFile( ), true );
             }
 
             _dao.insert( response, getPlugin( ) );
@@ -95,13 +102,16 @@ public final class ResponseHome
      */
     public static void update( Response response )
     {
+        List<String> listReleasedBlobKeys = new ArrayList<>( );
+
         TransactionManager.beginTransaction( getPlugin( ) );
 
         try
         {
             if ( response.getFile( ) != null )
             {
-                FileHome.update( response.getFile( ) );
+                listReleasedBlobKeys.add( storeFile( response.getFile( ), false ) );
+                listReleasedBlobKeys.addAll( ResponseThumbnailHome.removeByIdResponse( response.getIdResponse( ) ) );
             }
 
             _dao.store( response, getPlugin( ) );
@@ -112,6 +122,15 @@ public final class ResponseHome
             TransactionManager.rollBack( getPlugin( ) );
             throw new AppException( e.getMessage( ), e );
         }
+
+        ResponseImageCache.invalidate( response.getIdResponse( ) );
+
+        if ( response.getFile( ) != null )
+        {
+            ResponseThumbnailService.invalidate( response.getIdResponse( ) );
+        }
+
+        purge( listReleasedBlobKeys );
     }
 
     /**
@@ -123,6 +142,7 @@ public final class ResponseHome
     public static void remove( int nIdResponse )
     {
         Response response = findByPrimaryKey( nIdResponse );
+        List<String> listReleasedBlobKeys = new ArrayList<>( );
 
         TransactionManager.beginTransaction( getPlugin( ) );
 
@@ -132,6 +152,8 @@ public final class ResponseHome
             {
                 if ( response.getFile( ) != null )
                 {
+                    listReleasedBlobKeys.add( releaseFileBlob( FileHome.findByPrimaryKey( response.getFile( ).getIdFile( ) ) ) );
+                    listReleasedBlobKeys.addAll( ResponseThumbnailHome.removeByIdResponse( nIdResponse ) );
                     FileHome.remove( response.getFile( ).getIdFile( ) );
                 }
 
@@ -145,6 +167,15 @@ public final class ResponseHome
             TransactionManager.rollBack( getPlugin( ) );
             throw new AppException( e.getMessage( ), e );
         }
+
+        ResponseImageCache.invalidate( nIdResponse );
+
+        if ( ( response != null ) && ( response.getFile( ) != null ) )
+        {
+            ResponseThumbnailService.invalidate( nIdResponse );
+        }
+
+        purge( listReleasedBlobKeys );
     }
 
     // /////////////////////////////////////////////////////////////////////////
@@ -163,27 +194,76 @@ public final class ResponseHome
     }
 
     /**
-     * Load the data of all the response who verify the filter and returns them in a list
+     * Returns the file of a response with its content, without loading the response
+     *
+     * @param nIdResponse
+     *            The id of the response
+     * @return The file of the response, or null if the response has no file
+     */
+    public static ResponseImage findImageByPrimaryKey( int nIdResponse )
+    {
+        return _dao.loadImage( nIdResponse, getPlugin( ) );
+    }
+
+    /**
+     * Load a batch of the responses to the entries of a resource, in ascending order of id, so that all the responses of a resource can be read with a
+     * bounded memory
+     * 
+     * @param nIdResource
+     *            The id of the resource of the entries
+     * @param nIdResponseAfter
+     *            The id after which the responses are loaded, 0 to start from the first one
+     * @param nBatchSize
+     *            The maximum number of responses to load
+     * @return The responses, fewer than the batch size once the last response is loaded
+     */
+    public static List<Response> getResponseBatchByIdResource( int nIdResource, int nIdResponseAfter, int nBatchSize )
+    {
+        return _dao.selectBatchByIdResource( nIdResource, nIdResponseAfter, nBatchSize, getPlugin( ) );
+    }
+
+    /**
+     * Load the files of responses, without their content
+     * 
+     * @param listIdFile
+     *            The ids of the files
+     * @return The files, with the id of their physical file
+     */
+    public static List<File> getFileList( List<Integer> listIdFile )
+    {
+        return _dao.selectFileList( listIdFile, getPlugin( ) );
+    }
+
+    /**
+     * Load the data of all the response who verify the filter and returns them in a list. The query is routed to the read replica pool when one is defined.
      * 
      * @param filter
      *            the filter
      * @return the list of response
+     * @see ReadReplicaRouter
      */
     public static List<Response> getResponseList( ResponseFilter filter )
     {
-        return _dao.selectListByFilter( filter, getPlugin( ) );
+        if ( filter.containsListIdResource( ) && IdListQueryHelper.isIdTableRequired( filter.getListId( ) ) )
+        {
+            // The ids are written in the id table, which is not possible on a replica
+            return _dao.selectListByFilter( filter, getPlugin( ) );
+        }
+
+        return ReadReplicaRouter.read( getPlugin( ), plugin -> _dao.selectListByFilter( filter, plugin ) );
     }
 
     /**
-     * return a list of statistic on the entry
+     * return a list of statistic on the entry. The query is routed to the read replica pool when one is defined.
      * 
      * @param nIdEntry
      *            the id of the entry
      * @return return a list of statistic on the entry
+     * @see ReadReplicaRouter
      */
     public static List<StatisticEntrySubmit> getStatisticByIdEntry( int nIdEntry )
     {
-        return _dao.getStatisticByIdEntry( nIdEntry, getPlugin( ) );
+        return ReadReplicaRouter.read( getPlugin( ), plugin -> _dao.getStatisticByIdEntry( nIdEntry, plugin ) );
     }
 
     /**
@@ -212,4 +292,102 @@ public final class ResponseHome
 
         return _plugin;
     }
+
+    /**
+     * Create or update the file of a response. When the blob store is enabled, its content is also written through the {@link ResponseBlobService}.
+     * 
+     * @param file
+     *            The file
+     * @param bCreate
+     *            true to create the file, false to update it
+     * @return The key of the blob no longer referenced by the updated file, to purge once committed, or null
+     */
+    private static String storeFile( File file, boolean bCreate )
+    {
+        PhysicalFile physicalFile = file.getPhysicalFile( );
+        String strBlobKey = ResponseBlobService.isEnabled( ) ? writeBlob( physicalFile ) : null;
+        String strReleasedBlobKey = null;
+
+        if ( bCreate )
+        {
+            FileHome.create( file );
+        }
+        else
+        {
+            FileHome.update( file );
+
+            if ( ( physicalFile != null ) && ( physicalFile.getValue( ) != null ) )
+            {
+                // The blob of the previous content is released, even if the blob store has been disabled since
+                strReleasedBlobKey = ResponseBlobHome.removeFileBlobKey( physicalFile.getIdPhysicalFile( ) );
+            }
+        }
+
+        if ( strBlobKey != null )
+        {
+            ResponseBlobHome.setFileBlobKey( physicalFile.getIdPhysicalFile( ), strBlobKey );
+        }
+
+        return strReleasedBlobKey;
+    }
+
+    /**
+     * Write the content of a physical file in the blob store. The content of an uploaded file is streamed without being loaded in memory.
+     * 
+     * @param physicalFile
+     *            The physical file, can be null
+     * @return The key of the blob, or null if the physical file has no content
+     */
+    private static String writeBlob( PhysicalFile physicalFile )
+    {
+        if ( ( physicalFile instanceof UploadedPhysicalFile ) && ( (UploadedPhysicalFile) physicalFile ).isStreamable( ) )
+        {
+            try
+            {
+                return ResponseBlobService.write( ( (UploadedPhysicalFile) physicalFile ).getInputStream( ) );
+            }
+            catch( IOException e )
+            {
+                throw new AppException( e.getMessage( ), e );
+            }
+        }
+
+        if ( ( physicalFile != null ) && ( physicalFile.getValue( ) != null ) )
+        {
+            return ResponseBlobService.write( physicalFile.getValue( ) );
+        }
+
+        return null;
+    }
+
+    /**
+     * Delete the blobs released by a committed transaction
+     * 
+     * @param listReleasedBlobKeys
+     *            The keys of the blobs no longer referenced, can contain null
+     */
+    private static void purge( List<String> listReleasedBlobKeys )
+    {
+        for ( String strReleasedBlobKey : listReleasedBlobKeys )
+        {
+            ResponseBlobService.purge( strReleasedBlobKey );
+        }
+    }
+
+    /**
+     * Remove the reference held by the physical file of a file to its blob
+     * 
+     * @param file
+     *            The file, can be null
+     * @return The key of the blob if a reference has been removed, null otherwise
+     */
+    private static String releaseFileBlob( File file )
+    {
+        if ( ( file == null ) || ( file.getPhysicalFile( ) == null ) )
+        {
+            return null;
+        }
+
+        return ResponseBlobHome.removeFileBlobKey( file.getPhysicalFile( ).getIdPhysicalFile( ) );
+    }
 }
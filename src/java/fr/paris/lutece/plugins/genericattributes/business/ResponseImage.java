@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.business;
+
+import java.sql.Timestamp;
+
+/**
+ * This class represents the file of a response with its content, as served to display an image response
+ */
+public class ResponseImage
+{
+    private int _nIdResponse;
+    private String _strTitle;
+    private String _strMimeType;
+    private Timestamp _dateCreation;
+    private byte [ ] _content;
+    private String _strETag;
+
+    /**
+     * Get the id of the response
+     * 
+     * @return The id of the response
+     */
+    public int getIdResponse( )
+    {
+        return _nIdResponse;
+    }
+
+    /**
+     * Set the id of the response
+     * 
+     * @param nIdResponse
+     *            The id of the response
+     */
+    public void setIdResponse( int nIdResponse )
+    {
+        _nIdResponse = nIdResponse;
+    }
+
+    /**
+     * Get the title of the file
+     * 
+     * @return The title of the file
+     */
+    public String getTitle( )
+    {
+        return _strTitle;
+    }
+
+    /**
+     * Set the title of the file
+     * 
+     * @param strTitle
+     *            The title of the file
+     */
+    public void setTitle( String strTitle )
+    {
+        _strTitle = strTitle;
+    }
+
+    /**
+     * Get the MIME type of the file
+     * 
+     * @return The MIME type
+     */
+    public String getMimeType( )
+    {
+        return _strMimeType;
+    }
+
+    /**
+     * Set the MIME type of the file
+     * 
+     * @param strMimeType
+     *            The MIME type
+     */
+    public void setMimeType( String strMimeType )
+    {
+        _strMimeType = strMimeType;
+    }
+
+    /**
+     * Get the creation date of the file
+     * 
+     * @return The creation date, can be null
+     */
+    public Timestamp getDateCreation( )
+    {
+        return _dateCreation;
+    }
+
+    /**
+     * Set the creation date of the file
+     * 
+     * @param dateCreation
+     *            The creation date
+     */
+    public void setDateCreation( Timestamp dateCreation )
+    {
+        _dateCreation = dateCreation;
+    }
+
+    /**
+     * Get the content of the file
+     * 
+     * @return The content
+     */
+    public byte [ ] getContent( )
+    {
+        return _content;
+    }
+
+    /**
+     * Set the content of the file
+     * 
+     * @param content
+     *            The content
+     */
+    public void setContent( byte [ ] content )
+    {
+        _content = content;
+    }
+
+    /**
+     * Get the entity tag identifying the content, set once the content is loaded
+     * 
+     * @return The entity tag
+     */
+    public String getETag( )
+    {
+        return _strETag;
+    }
+
+    /**
+     * Set the entity tag identifying the content
+     * 
+     * @param strETag
+     *            The entity tag
+     */
+    public void setETag( String strETag )
+    {
+        _strETag = strETag;
+    }
+}
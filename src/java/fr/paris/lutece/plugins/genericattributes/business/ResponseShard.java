@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.business;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+
+/**
+ * A shard of the responses : a table of responses in the database of a connection pool
+ */
+final class ResponseShard
+{
+    private static final String TABLE_RESPONSE = "genatt_response";
+
+    private final String _strName;
+    private final Plugin _plugin;
+    private final String _strTable;
+
+    /**
+     * Constructor
+     * 
+     * @param strName
+     *            The name of the shard
+     * @param plugin
+     *            The plugin whose connection service uses the pool of the shard
+     * @param strTableSuffix
+     *            The suffix of the table of the shard
+     */
+    ResponseShard( String strName, Plugin plugin, String strTableSuffix )
+    {
+        _strName = strName;
+        _plugin = plugin;
+        _strTable = TABLE_RESPONSE + strTableSuffix;
+    }
+
+    /**
+     * Get the name of the shard
+     * 
+     * @return The name of the shard
+     */
+    String getName( )
+    {
+        return _strName;
+    }
+
+    /**
+     * Get the plugin whose connection service uses the pool of the shard
+     * 
+     * @return The plugin
+     */
+    Plugin getPlugin( )
+    {
+        return _plugin;
+    }
+
+    /**
+     * Get the name of the table of the shard
+     * 
+     * @return The name of the table
+     */
+    String getTable( )
+    {
+        return _strTable;
+    }
+}
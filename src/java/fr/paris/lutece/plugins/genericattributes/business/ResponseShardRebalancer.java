@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.business;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import fr.paris.lutece.plugins.genericattributes.service.GenericAttributesPlugin;
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.plugin.PluginService;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+import fr.paris.lutece.util.sql.DAOUtil;
+import fr.paris.lutece.util.sql.TransactionManager;
+
+/**
+ * Moves the responses of a resource from its shard to another one, while they stay readable. The resource is first attached to the target shard, with the
+ * source shard kept as its previous shard so that the {@link ShardedResponseDAO} reads both. The responses are then copied by chunks, each chunk being deleted
+ * from the source once committed in the target. The rows of a chunk are locked in the source from their selection to their deletion, and the DAO updates and
+ * deletes a response in the source before the target, so that a change made during the move is either copied or applied to the copy. A move which has been
+ * interrupted can be run again.
+ */
+public final class ResponseShardRebalancer
+{
+    // Constants
+    private static final String PROPERTY_CHUNK_SIZE = "genericattributes.response.shards.moveChunkSize";
+    private static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private static final String SQL_QUERY_SELECT_ID_ENTRY = "SELECT id_entry FROM genatt_entry WHERE id_resource = ? ";
+    private static final String SQL_QUERY_DELETE_RESOURCE_SHARD = "DELETE FROM genatt_response_shard_resource WHERE id_resource = ? ";
+    private static final String SQL_QUERY_INSERT_RESOURCE_SHARD = "INSERT INTO genatt_response_shard_resource ( id_resource, shard_name, previous_shard_name ) VALUES ( ?,?,? ) ";
+    private static final String SQL_QUERY_END_MOVE = "UPDATE genatt_response_shard_resource SET previous_shard_name = NULL WHERE id_resource = ? ";
+    private static final String SQL_QUERY_DELETE_RESPONSES = "DELETE FROM %s WHERE 1=1 ";
+    private static final String SQL_FILTER_FROM_ID_RESPONSE = " AND resp.id_response > ? ORDER BY resp.id_response LIMIT ? FOR UPDATE ";
+    private static final String SQL_COLUMN_ID_ENTRY = "resp.id_entry";
+    private static final String SQL_COLUMN_ID_RESPONSE = "id_response";
+
+    /**
+     * Private constructor
+     */
+    private ResponseShardRebalancer( )
+    {
+    }
+
+    /**
+     * Move the responses of a resource to a shard
+     * 
+     * @param nIdResource
+     *            The id of the resource
+     * @param strTargetShard
+     *            The name of the target shard
+     * @return The number of responses moved
+     */
+    public static int moveResource( int nIdResource, String strTargetShard )
+    {
+        return moveResource( nIdResource, strTargetShard, AppPropertiesService.getPropertyInt( PROPERTY_CHUNK_SIZE, DEFAULT_CHUNK_SIZE ) );
+    }
+
+    /**
+     * Move the responses of a resource to a shard by chunks of a given size
+     * 
+     * @param nIdResource
+     *            The id of the resource
+     * @param strTargetShard
+     *            The name of the target shard
+     * @param nChunkSize
+     *            The number of responses of a chunk
+     * @return The number of responses moved
+     */
+    static int moveResource( int nIdResource, String strTargetShard, int nChunkSize )
+    {
+        Plugin plugin = PluginService.getPlugin( GenericAttributesPlugin.PLUGIN_NAME );
+        ResponseShardRing ring = ResponseShardRing.getInstance( );
+        ResponseShard shardTarget = ring.getShard( strTargetShard );
+        List<ResponseShard> listShards = ring.getShards( nIdResource, plugin );
+
+        if ( listShards.size( ) > 1 && listShards.get( 0 ) != shardTarget )
+        {
+            throw new AppException( "The resource " + nIdResource + " is being moved to the shard " + listShards.get( 0 ).getName( ) );
+        }
+
+        // The source of an interrupted move is the previous shard of the resource
+        ResponseShard shardSource = listShards.get( listShards.size( ) - 1 );
+
+        if ( shardSource == shardTarget )
+        {
+            return 0;
+        }
+
+        setResourceShard( nIdResource, shardTarget, shardSource, plugin );
+
+        List<Integer> listIdEntry = selectIdEntries( nIdResource, plugin );
+        int nMoved = 0;
+
+        if ( !listIdEntry.isEmpty( ) )
+        {
+            int nLastIdResponse = 0;
+            List<Response> listResponse;
+
+            do
+            {
+                listResponse = moveChunk( shardSource, shardTarget, listIdEntry, nLastIdResponse, nChunkSize );
+
+                if ( !listResponse.isEmpty( ) )
+                {
+                    nMoved += listResponse.size( );
+                    nLastIdResponse = listResponse.get( listResponse.size( ) - 1 ).getIdResponse( );
+                }
+            }
+            while ( listResponse.size( ) == nChunkSize );
+        }
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_END_MOVE, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdResource );
+            daoUtil.executeUpdate( );
+        }
+
+        return nMoved;
+    }
+
+    /**
+     * Attach a resource to a shard
+     * 
+     * @param nIdResource
+     *            The id of the resource
+     * @param shard
+     *            The shard
+     * @param shardPrevious
+     *            The shard the resource is moved from
+     * @param plugin
+     *            the plugin
+     */
+    private static void setResourceShard( int nIdResource, ResponseShard shard, ResponseShard shardPrevious, Plugin plugin )
+    {
+        TransactionManager.beginTransaction( plugin );
+
+        try
+        {
+            try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_DELETE_RESOURCE_SHARD, plugin ) )
+            {
+                daoUtil.setInt( 1, nIdResource );
+                daoUtil.executeUpdate( );
+            }
+
+            try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT_RESOURCE_SHARD, plugin ) )
+            {
+                daoUtil.setInt( 1, nIdResource );
+                daoUtil.setString( 2, shard.getName( ) );
+                daoUtil.setString( 3, shardPrevious.getName( ) );
+                daoUtil.executeUpdate( );
+            }
+
+            TransactionManager.commitTransaction( plugin );
+        }
+        catch( Exception e )
+        {
+            TransactionManager.rollBack( plugin );
+            throw new AppException( e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Get the ids of the entries of a resource
+     * 
+     * @param nIdResource
+     *            The id of the resource
+     * @param plugin
+     *            the plugin
+     * @return The ids of the entries
+     */
+    private static List<Integer> selectIdEntries( int nIdResource, Plugin plugin )
+    {
+        List<Integer> listIdEntry = new ArrayList<>( );
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_ID_ENTRY, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdResource );
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                listIdEntry.add( daoUtil.getInt( 1 ) );
+            }
+        }
+
+        return listIdEntry;
+    }
+
+    /**
+     * Move the next chunk of responses of a resource. The rows of the chunk stay locked in the source until they are deleted: a concurrent update waits for
+     * the chunk to be moved, then finds the response in the target. If the source can not be committed once the target is, the chunk is in both shards, where
+     * the DAO reads it once, until the move is run again.
+     * 
+     * @param shardSource
+     *            The source shard
+     * @param shardTarget
+     *            The target shard
+     * @param listIdEntry
+     *            The ids of the entries of the resource
+     * @param nLastIdResponse
+     *            The id of the last response of the previous chunk
+     * @param nChunkSize
+     *            The size of a chunk
+     * @return The responses moved, ordered by id
+     */
+    private static List<Response> moveChunk( ResponseShard shardSource, ResponseShard shardTarget, List<Integer> listIdEntry, int nLastIdResponse,
+            int nChunkSize )
+    {
+        TransactionManager.beginTransaction( shardSource.getPlugin( ) );
+
+        try
+        {
+            List<Response> listResponse = selectChunk( shardSource, listIdEntry, nLastIdResponse, nChunkSize );
+
+            if ( !listResponse.isEmpty( ) )
+            {
+                copyChunk( listResponse, shardTarget );
+                deleteChunk( listResponse, shardSource );
+            }
+
+            TransactionManager.commitTransaction( shardSource.getPlugin( ) );
+
+            return listResponse;
+        }
+        catch( Exception e )
+        {
+            TransactionManager.rollBack( shardSource.getPlugin( ) );
+            throw new AppException( e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Load the next chunk of responses of a resource from a shard, and lock them until the end of the transaction
+     * 
+     * @param shard
+     *            The shard
+     * @param listIdEntry
+     *            The ids of the entries of the resource
+     * @param nLastIdResponse
+     *            The id of the last response of the previous chunk
+     * @param nChunkSize
+     *            The size of a chunk
+     * @return The responses, ordered by id
+     */
+    private static List<Response> selectChunk( ResponseShard shard, List<Integer> listIdEntry, int nLastIdResponse, int nChunkSize )
+    {
+        String strSQL = ShardedResponseDAO.getSelectQuery( shard ) + IdListQueryHelper.buildInClause( SQL_COLUMN_ID_ENTRY, listIdEntry.size( ) )
+                + SQL_FILTER_FROM_ID_RESPONSE;
+
+        return ShardedResponseDAO.selectResponses( shard, strSQL, daoUtil -> {
+            int nIndex = IdListQueryHelper.bindIds( daoUtil, 1, listIdEntry );
+            daoUtil.setInt( nIndex++, nLastIdResponse );
+            daoUtil.setInt( nIndex, nChunkSize );
+        } );
+    }
+
+    /**
+     * Copy a chunk of responses in a shard. The responses already copied by an interrupted move are replaced.
+     * 
+     * @param listResponse
+     *            The responses
+     * @param shard
+     *            The shard
+     */
+    private static void copyChunk( List<Response> listResponse, ResponseShard shard )
+    {
+        TransactionManager.beginTransaction( shard.getPlugin( ) );
+
+        try
+        {
+            deleteChunk( listResponse, shard );
+
+            for ( Response response : listResponse )
+            {
+                ShardedResponseDAO.insertInShard( response, shard );
+            }
+
+            TransactionManager.commitTransaction( shard.getPlugin( ) );
+        }
+        catch( Exception e )
+        {
+            TransactionManager.rollBack( shard.getPlugin( ) );
+            throw new AppException( e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Delete a chunk of responses from a shard
+     * 
+     * @param listResponse
+     *            The responses
+     * @param shard
+     *            The shard
+     */
+    private static void deleteChunk( List<Response> listResponse, ResponseShard shard )
+    {
+        List<Integer> listIdResponse = listResponse.stream( ).map( Response::getIdResponse ).collect( Collectors.toList( ) );
+        String strSQL = String.format( SQL_QUERY_DELETE_RESPONSES, shard.getTable( ) )
+                + IdListQueryHelper.buildInClause( SQL_COLUMN_ID_RESPONSE, listIdResponse.size( ) );
+
+        try ( DAOUtil daoUtil = new DAOUtil( strSQL, shard.getPlugin( ) ) )
+        {
+            IdListQueryHelper.bindIds( daoUtil, 1, listIdResponse );
+            daoUtil.executeUpdate( );
+        }
+    }
+}
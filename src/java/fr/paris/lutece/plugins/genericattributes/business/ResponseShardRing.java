@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.business;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.commons.lang.StringUtils;
+
+import fr.paris.lutece.plugins.genericattributes.util.GenericAttributesUtils;
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+import fr.paris.lutece.util.sql.DAOUtil;
+
+/**
+ * Consistent hash ring of the response shards. The shard of a resource is the first shard met on the ring after the hash of its id, unless the resource has
+ * been moved to another shard by the {@link ResponseShardRebalancer}. While a resource is being moved, its responses are read from both the previous and the
+ * new shard.
+ */
+final class ResponseShardRing
+{
+    private static final String PROPERTY_SHARDS = "genericattributes.response.shards";
+    private static final String PROPERTY_SHARD_PREFIX = "genericattributes.response.shard.";
+    private static final String PROPERTY_SHARD_POOL = ".pool";
+    private static final String PROPERTY_SHARD_TABLE_SUFFIX = ".tableSuffix";
+    private static final String PROPERTY_VIRTUAL_NODES = "genericattributes.response.shards.virtualNodes";
+    private static final int DEFAULT_VIRTUAL_NODES = 64;
+    private static final String HASH_ALGORITHM = "MD5";
+    private static final String SEPARATOR = ",";
+    private static final String VIRTUAL_NODE_SEPARATOR = "#";
+
+    private static final String SQL_QUERY_SELECT_RESOURCE_SHARD = "SELECT shard_name, previous_shard_name FROM genatt_response_shard_resource WHERE id_resource = ? ";
+
+    private static ResponseShardRing _singleton;
+
+    private final Map<String, ResponseShard> _mapShards = new LinkedHashMap<>( );
+    private final TreeMap<Long, ResponseShard> _ring = new TreeMap<>( );
+
+    /**
+     * Build the ring of the shards defined in the properties
+     */
+    private ResponseShardRing( )
+    {
+        this( loadShards( ), AppPropertiesService.getPropertyInt( PROPERTY_VIRTUAL_NODES, DEFAULT_VIRTUAL_NODES ) );
+    }
+
+    /**
+     * Build the ring of some shards
+     * 
+     * @param listShards
+     *            The shards
+     * @param nVirtualNodes
+     *            The number of nodes of each shard on the ring
+     */
+    ResponseShardRing( List<ResponseShard> listShards, int nVirtualNodes )
+    {
+        for ( ResponseShard shard : listShards )
+        {
+            _mapShards.put( shard.getName( ), shard );
+
+            for ( int i = 0; i < nVirtualNodes; i++ )
+            {
+                _ring.put( hash( shard.getName( ) + VIRTUAL_NODE_SEPARATOR + i ), shard );
+            }
+        }
+
+        if ( _mapShards.isEmpty( ) )
+        {
+            throw new AppException( "No response shard is defined by the property " + PROPERTY_SHARDS );
+        }
+    }
+
+    /**
+     * Load the shards defined in the properties
+     * 
+     * @return The shards
+     */
+    private static List<ResponseShard> loadShards( )
+    {
+        List<ResponseShard> listShards = new ArrayList<>( );
+
+        for ( String strName : StringUtils.split( AppPropertiesService.getProperty( PROPERTY_SHARDS, StringUtils.EMPTY ), SEPARATOR ) )
+        {
+            String strShardName = strName.trim( );
+            String strPool = AppPropertiesService.getProperty( PROPERTY_SHARD_PREFIX + strShardName + PROPERTY_SHARD_POOL );
+            String strSuffix = AppPropertiesService.getProperty( PROPERTY_SHARD_PREFIX + strShardName + PROPERTY_SHARD_TABLE_SUFFIX, StringUtils.EMPTY );
+            Plugin plugin = StringUtils.isBlank( strPool ) ? GenericAttributesUtils.getPlugin( ) : GenericAttributesUtils.createPoolPlugin( strPool );
+            listShards.add( new ResponseShard( strShardName, plugin, strSuffix ) );
+        }
+
+        return listShards;
+    }
+
+    /**
+     * Get the ring of the shards defined in the properties. The responses stored before the sharding are indexed before the ring is first returned.
+     * 
+     * @return The ring
+     */
+    static synchronized ResponseShardRing getInstance( )
+    {
+        if ( _singleton == null )
+        {
+            ResponseShardRing ring = new ResponseShardRing( );
+            LegacyResponseIndexer.indexLegacyResponses( ring, GenericAttributesUtils.getPlugin( ) );
+            _singleton = ring;
+        }
+
+        return _singleton;
+    }
+
+    /**
+     * Replace the ring of the shards defined in the properties, for the tests
+     * 
+     * @param ring
+     *            The ring, or null to build the ring of the properties again
+     */
+    static synchronized void setInstance( ResponseShardRing ring )
+    {
+        _singleton = ring;
+    }
+
+    /**
+     * Get all the shards
+     * 
+     * @return The shards
+     */
+    List<ResponseShard> getShards( )
+    {
+        return Collections.unmodifiableList( new ArrayList<>( _mapShards.values( ) ) );
+    }
+
+    /**
+     * Get a shard from its name
+     * 
+     * @param strName
+     *            The name of the shard
+     * @return The shard
+     */
+    ResponseShard getShard( String strName )
+    {
+        ResponseShard shard = _mapShards.get( strName );
+
+        if ( shard == null )
+        {
+            throw new AppException( "Unknown response shard " + strName );
+        }
+
+        return shard;
+    }
+
+    /**
+     * Get the shard of a resource given by the hash ring only
+     * 
+     * @param nIdResource
+     *            The id of the resource
+     * @return The shard
+     */
+    ResponseShard getHashedShard( int nIdResource )
+    {
+        SortedMap<Long, ResponseShard> tail = _ring.tailMap( hash( String.valueOf( nIdResource ) ) );
+
+        return tail.isEmpty( ) ? _ring.firstEntry( ).getValue( ) : tail.get( tail.firstKey( ) );
+    }
+
+    /**
+     * Get the shards holding the responses of a resource. The first one is the shard where new responses are written, the second one, if any, is the shard the
+     * resource is being moved from.
+     * 
+     * @param nIdResource
+     *            The id of the resource
+     * @param pluginPrimary
+     *            The plugin of the pool holding the entries
+     * @return The shards of the resource
+     */
+    List<ResponseShard> getShards( int nIdResource, Plugin pluginPrimary )
+    {
+        List<ResponseShard> listShards = new ArrayList<>( 2 );
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_RESOURCE_SHARD, pluginPrimary ) )
+        {
+            daoUtil.setInt( 1, nIdResource );
+            daoUtil.executeQuery( );
+
+            if ( daoUtil.next( ) )
+            {
+                listShards.add( getShard( daoUtil.getString( 1 ) ) );
+
+                String strPreviousShard = daoUtil.getString( 2 );
+
+                if ( StringUtils.isNotBlank( strPreviousShard ) )
+                {
+                    listShards.add( getShard( strPreviousShard ) );
+                }
+            }
+        }
+
+        if ( listShards.isEmpty( ) )
+        {
+            listShards.add( getHashedShard( nIdResource ) );
+        }
+
+        return listShards;
+    }
+
+    /**
+     * Hash a key on the ring
+     * 
+     * @param strKey
+     *            The key
+     * @return The position of the key on the ring
+     */
+    private static long hash( String strKey )
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance( HASH_ALGORITHM );
+
+            return ByteBuffer.wrap( digest.digest( strKey.getBytes( StandardCharsets.UTF_8 ) ) ).getLong( );
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            throw new AppException( e.getMessage( ), e );
+        }
+    }
+}
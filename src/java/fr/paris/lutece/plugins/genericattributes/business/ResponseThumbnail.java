@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.business;
+
+/**
+ * This class represents a thumbnail of the image of a response, generated at one of the configured sizes
+ */
+public class ResponseThumbnail
+{
+    private int _nIdResponse;
+    private int _nSize;
+    private String _strMimeType;
+    private byte [ ] _content;
+
+    /**
+     * Get the id of the response
+     * 
+     * @return The id of the response
+     */
+    public int getIdResponse( )
+    {
+        return _nIdResponse;
+    }
+
+    /**
+     * Set the id of the response
+     * 
+     * @param nIdResponse
+     *            The id of the response
+     */
+    public void setIdResponse( int nIdResponse )
+    {
+        _nIdResponse = nIdResponse;
+    }
+
+    /**
+     * Get the size of the thumbnail, which is the maximum of its width and height
+     * 
+     * @return The size of the thumbnail
+     */
+    public int getSize( )
+    {
+        return _nSize;
+    }
+
+    /**
+     * Set the size of the thumbnail
+     * 
+     * @param nSize
+     *            The size of the thumbnail
+     */
+    public void setSize( int nSize )
+    {
+        _nSize = nSize;
+    }
+
+    /**
+     * Get the MIME type of the thumbnail
+     * 
+     * @return The MIME type
+     */
+    public String getMimeType( )
+    {
+        return _strMimeType;
+    }
+
+    /**
+     * Set the MIME type of the thumbnail
+     * 
+     * @param strMimeType
+     *            The MIME type
+     */
+    public void setMimeType( String strMimeType )
+    {
+        _strMimeType = strMimeType;
+    }
+
+    /**
+     * Get the content of the thumbnail
+     * 
+     * @return The content
+     */
+    public byte [ ] getContent( )
+    {
+        return _content;
+    }
+
+    /**
+     * Set the content of the thumbnail
+     * 
+     * @param content
+     *            The content
+     */
+    public void setContent( byte [ ] content )
+    {
+        _content = content;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.business;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.util.sql.DAOUtil;
+
+/**
+ * This class provides Data Access methods for the thumbnails of the image responses
+ */
+public final class ResponseThumbnailDAO implements IResponseThumbnailDAO
+{
+    // Constants
+    private static final String SQL_QUERY_SELECT = "SELECT mime_type, content FROM genatt_response_thumbnail WHERE id_response = ? AND thumbnail_size = ? ";
+    private static final String SQL_QUERY_INSERT = "INSERT INTO genatt_response_thumbnail ( id_response, thumbnail_size, mime_type, content ) VALUES ( ?, ?, ?, ? ) ";
+    private static final String SQL_QUERY_SELECT_CONTENTS = "SELECT content FROM genatt_response_thumbnail WHERE id_response = ? ";
+    private static final String SQL_QUERY_DELETE = "DELETE FROM genatt_response_thumbnail WHERE id_response = ? ";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ResponseThumbnail load( int nIdResponse, int nSize, Plugin plugin )
+    {
+        ResponseThumbnail thumbnail = null;
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdResponse );
+            daoUtil.setInt( 2, nSize );
+            daoUtil.executeQuery( );
+
+            if ( daoUtil.next( ) )
+            {
+                thumbnail = new ResponseThumbnail( );
+                thumbnail.setIdResponse( nIdResponse );
+                thumbnail.setSize( nSize );
+                thumbnail.setMimeType( daoUtil.getString( 1 ) );
+                thumbnail.setContent( daoUtil.getBytes( 2 ) );
+            }
+        }
+
+        return thumbnail;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void insert( ResponseThumbnail thumbnail, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT, plugin ) )
+        {
+            daoUtil.setInt( 1, thumbnail.getIdResponse( ) );
+            daoUtil.setInt( 2, thumbnail.getSize( ) );
+            daoUtil.setString( 3, thumbnail.getMimeType( ) );
+            daoUtil.setBytes( 4, thumbnail.getContent( ) );
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<byte [ ]> selectContentsByIdResponse( int nIdResponse, Plugin plugin )
+    {
+        List<byte [ ]> listContents = new ArrayList<>( );
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_CONTENTS, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdResponse );
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                listContents.add( daoUtil.getBytes( 1 ) );
+            }
+        }
+
+        return listContents;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void deleteByIdResponse( int nIdResponse, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_DELETE, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdResponse );
+            daoUtil.executeUpdate( );
+        }
+    }
+}
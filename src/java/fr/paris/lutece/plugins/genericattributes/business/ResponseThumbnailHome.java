@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.business;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import fr.paris.lutece.plugins.genericattributes.service.file.ResponseBlobService;
+import fr.paris.lutece.plugins.genericattributes.util.GenericAttributesUtils;
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.util.sql.TransactionManager;
+
+/**
+ * This class provides instances management methods for the thumbnails of the image responses. Their contents are written through the
+ * {@link ResponseBlobService}, in the blob store when it is enabled.
+ */
+public final class ResponseThumbnailHome
+{
+    // Static variable pointed at the DAO instance
+    private static IResponseThumbnailDAO _dao = SpringContextService.getBean( "genericattributes.responseThumbnailDAO" );
+    private static Plugin _plugin;
+
+    /**
+     * Private constructor - this class need not be instantiated
+     */
+    private ResponseThumbnailHome( )
+    {
+    }
+
+    /**
+     * Create a thumbnail. The content of the thumbnail object is left unchanged.
+     *
+     * @param thumbnail
+     *            The thumbnail
+     */
+    public static void create( ResponseThumbnail thumbnail )
+    {
+        byte [ ] content = thumbnail.getContent( );
+
+        TransactionManager.beginTransaction( getPlugin( ) );
+
+        try
+        {
+            thumbnail.setContent( ResponseBlobService.toStoredContent( content ) );
+            _dao.insert( thumbnail, getPlugin( ) );
+            TransactionManager.commitTransaction( getPlugin( ) );
+        }
+        catch( Exception e )
+        {
+            TransactionManager.rollBack( getPlugin( ) );
+            throw new AppException( e.getMessage( ), e );
+        }
+        finally
+        {
+            thumbnail.setContent( content );
+        }
+    }
+
+    /**
+     * Remove the thumbnails of a response, and the references they hold to their blobs
+     *
+     * @param nIdResponse
+     *            The id of the response
+     * @return The keys of the blobs no longer referenced, to purge once committed
+     */
+    public static List<String> removeByIdResponse( int nIdResponse )
+    {
+        List<String> listReleasedBlobKeys = new ArrayList<>( );
+
+        if ( ResponseBlobService.isEnabled( ) )
+        {
+            for ( byte [ ] storedContent : _dao.selectContentsByIdResponse( nIdResponse, getPlugin( ) ) )
+            {
+                String strReleasedBlobKey = ResponseBlobService.release( storedContent );
+
+                if ( strReleasedBlobKey != null )
+                {
+                    listReleasedBlobKeys.add( strReleasedBlobKey );
+                }
+            }
+        }
+
+        _dao.deleteByIdResponse( nIdResponse, getPlugin( ) );
+
+        return listReleasedBlobKeys;
+    }
+
+    /**
+     * Remove the thumbnails of a response in their own transaction, and delete the blobs no longer referenced
+     *
+     * @param nIdResponse
+     *            The id of the response
+     */
+    public static void remove( int nIdResponse )
+    {
+        List<String> listReleasedBlobKeys;
+
+        TransactionManager.beginTransaction( getPlugin( ) );
+
+        try
+        {
+            listReleasedBlobKeys = removeByIdResponse( nIdResponse );
+            TransactionManager.commitTransaction( getPlugin( ) );
+        }
+        catch( Exception e )
+        {
+            TransactionManager.rollBack( getPlugin( ) );
+            throw new AppException( e.getMessage( ), e );
+        }
+
+        for ( String strReleasedBlobKey : listReleasedBlobKeys )
+        {
+            ResponseBlobService.purge( strReleasedBlobKey );
+        }
+    }
+
+    /**
+     * Returns a thumbnail of a response, with its content
+     *
+     * @param nIdResponse
+     *            The id of the response
+     * @param nSize
+     *            The size of the thumbnail
+     * @return The thumbnail, or null if it has not been generated
+     */
+    public static ResponseThumbnail findByPrimaryKey( int nIdResponse, int nSize )
+    {
+        ResponseThumbnail thumbnail = _dao.load( nIdResponse, nSize, getPlugin( ) );
+
+        if ( thumbnail != null )
+        {
+            thumbnail.setContent( ResponseBlobService.toContent( thumbnail.getContent( ) ) );
+        }
+
+        return thumbnail;
+    }
+
+    /**
+     * Get the generic attributes plugin
+     * 
+     * @return The generic attributes plugin
+     */
+    private static Plugin getPlugin( )
+    {
+        if ( _plugin == null )
+        {
+            _plugin = GenericAttributesUtils.getPlugin( );
+        }
+
+        return _plugin;
+    }
+}
@@ -0,0 +1,965 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.business;
+
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import fr.paris.lutece.plugins.genericattributes.util.StorageCompression;
+import fr.paris.lutece.portal.business.file.File;
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+import fr.paris.lutece.util.sql.DAOUtil;
+
+/**
+ * Data Access methods for Response objects, with the responses split across several shards. The shard of a response is chosen from the id of the resource of
+ * its entry, see {@link ResponseShardRing}. The entries, the fields and the genatt_response_index table, which gives the resource of each response id, stay in
+ * the pool of the plugin. Queries which can not be restricted to one resource are run on every shard in parallel and their results are merged.
+ * <p>
+ * This DAO is enabled by declaring it as the <code>genericattributes.responseDAO</code> bean. In this mode, the order by of a {@link ResponseFilter} can only
+ * use the columns of the response table, aliased <code>resp</code>, and only applies to the queries run on a single shard: results merged from several
+ * shards are ordered by id, in the direction of the filter.
+ * </p>
+ */
+public final class ShardedResponseDAO implements IResponseDAO
+{
+    // Constants
+    private static final String SQL_QUERY_SELECT_RESPONSE = "SELECT resp.id_response, resp.response_value, resp.id_entry, resp.iteration_number, resp.id_field, "
+            + " resp.id_file, resp.status FROM %s resp WHERE 1=1 ";
+    private static final String SQL_QUERY_FIND_BY_PRIMARY_KEY = SQL_QUERY_SELECT_RESPONSE + " AND resp.id_response = ? ";
+    private static final String SQL_QUERY_INSERT = "INSERT INTO %s ( "
+            + " id_response, response_value, id_entry, iteration_number, id_field, id_file, status ) VALUES ( ?,?,?,?,?,?,? )";
+    private static final String SQL_QUERY_UPDATE = "UPDATE %s SET response_value = ?, id_entry = ?, iteration_number = ?, id_field = ?, id_file = ?, status = ? WHERE id_response = ?";
+    private static final String SQL_QUERY_DELETE = "DELETE FROM %s WHERE id_response = ? ";
+    private static final String SQL_QUERY_SELECT_ID_FILE = "SELECT id_file FROM %s WHERE id_response = ? AND id_file IS NOT NULL ";
+    private static final String SQL_QUERY_SELECT_COUNT_RESPONSE_BY_ID_ENTRY = "SELECT id_field, COUNT( id_response ) FROM %s WHERE id_entry = ? GROUP BY id_field ";
+    private static final String SQL_QUERY_SELECT_MAX_NUMBER = " SELECT fr.response_value FROM %s fr "
+            + " WHERE fr.id_entry = ? ORDER BY CAST(fr.response_value AS DECIMAL) DESC LIMIT 1 ";
+    private static final String SQL_QUERY_INSERT_INDEX = "INSERT INTO genatt_response_index ( id_resource ) VALUES ( ? ) ";
+    private static final String SQL_QUERY_SELECT_INDEX = "SELECT id_resource FROM genatt_response_index WHERE id_response = ? ";
+    private static final String SQL_QUERY_DELETE_INDEX = "DELETE FROM genatt_response_index WHERE id_response = ? ";
+    private static final String SQL_QUERY_SELECT_ID_RESOURCE = "SELECT id_resource FROM genatt_entry WHERE id_entry = ? ";
+    private static final String SQL_QUERY_SELECT_ID_ENTRY = "SELECT id_entry FROM genatt_entry WHERE 1=1 ";
+    private static final String SQL_QUERY_SELECT_FIELD_BY_ID_ENTRY = "SELECT id_field, title FROM genatt_field WHERE id_entry = ? ORDER BY pos ";
+    private static final String SQL_FILTER_ENTRY_ID_RESOURCE = " AND id_resource = ? ";
+    private static final String SQL_FILTER_ENTRY_CODE = " AND code = ? ";
+    private static final String SQL_FILTER_ID_ENTRY = " AND resp.id_entry = ? ";
+    private static final String SQL_FILTER_ID_FIELD = " AND resp.id_field = ? ";
+    private static final String SQL_FILTER_RESPONSE_VALUE = " AND resp.response_value IN ( ?,? ) ";
+    private static final String SQL_FILTER_RESPONSE_VALUE_OR_FIELD = " AND ( resp.response_value IN ( ?,? ) OR ( resp.response_value IS NULL %s ) ) ";
+    private static final String SQL_QUERY_SELECT_ID_FIELD_BY_VALUE = "SELECT id_field FROM genatt_field WHERE value = ? ";
+    private static final String SQL_FILTER_FIELD_ID_ENTRY = " AND id_entry = ? ";
+    private static final String SQL_COLUMN_FIELD_ID_ENTRY = "id_entry";
+    private static final String SQL_COLUMN_ID_FIELD = "resp.id_field";
+    private static final String SQL_FILTER_ID_RESPONSE = " resp.id_response ";
+    private static final String SQL_FILTER_BATCH = " AND resp.id_response > ? ORDER BY resp.id_response LIMIT ? ";
+    private static final String SQL_COLUMN_ID_RESPONSE = "resp.id_response";
+    private static final String SQL_COLUMN_ID_ENTRY = "resp.id_entry";
+    private static final String SQL_ORDER_BY = " ORDER BY ";
+    private static final String SQL_ASC = " ASC ";
+    private static final String SQL_DESC = " DESC ";
+
+    private static final String PROPERTY_FAN_OUT_THREADS = "genericattributes.response.shards.fanOutThreads";
+    private static final int DEFAULT_FAN_OUT_THREADS = 8;
+    private static final ExecutorService _executor = Executors.newFixedThreadPool( AppPropertiesService.getPropertyInt( PROPERTY_FAN_OUT_THREADS,
+            DEFAULT_FAN_OUT_THREADS ), runnable -> {
+                Thread thread = new Thread( runnable, "genericattributes-response-shards" );
+                thread.setDaemon( true );
+
+                return thread;
+            } );
+
+    private final Map<Integer, Integer> _mapEntryResource = new ConcurrentHashMap<>( );
+    private IEntryDAO _entryDAO;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void insert( Response response, Plugin plugin )
+    {
+        // The ring indexes the responses stored before the sharding before the first id is generated
+        ResponseShardRing ring = getRing( );
+        int nIdResource = getIdResource( response.getEntry( ).getIdEntry( ), plugin );
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT_INDEX, Statement.RETURN_GENERATED_KEYS, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdResource );
+            daoUtil.executeUpdate( );
+
+            if ( daoUtil.nextGeneratedKey( ) )
+            {
+                response.setIdResponse( daoUtil.getGeneratedKeyInt( 1 ) );
+            }
+        }
+
+        response.setStatus( Response.CONSTANT_STATUS_ACTIVE );
+        insertInShard( response, ring.getShards( nIdResource, plugin ).get( 0 ) );
+    }
+
+    /**
+     * Insert a response with its id in a shard
+     * 
+     * @param response
+     *            The response
+     * @param shard
+     *            The shard
+     */
+    static void insertInShard( Response response, ResponseShard shard )
+    {
+        int nIndex = 1;
+
+        try ( DAOUtil daoUtil = new DAOUtil( String.format( SQL_QUERY_INSERT, shard.getTable( ) ), shard.getPlugin( ) ) )
+        {
+            daoUtil.setInt( nIndex++, response.getIdResponse( ) );
+            nIndex = setResponseValues( daoUtil, nIndex, response );
+            daoUtil.setInt( nIndex, response.getStatus( ) );
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Response load( int nIdResponse, Plugin plugin )
+    {
+        for ( ResponseShard shard : getShardsOfResponse( nIdResponse, plugin ) )
+        {
+            List<Response> listResponse = selectResponses( shard, String.format( SQL_QUERY_FIND_BY_PRIMARY_KEY, shard.getTable( ) ), daoUtil -> daoUtil.setInt( 1,
+                    nIdResponse ) );
+
+            if ( !listResponse.isEmpty( ) )
+            {
+                resolveEntries( listResponse, plugin );
+
+                return listResponse.get( 0 );
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * {@inheritDoc} The id of the file is read from the shard of the response, whose pool may not hold the files.
+     */
+    @Override
+    public ResponseImage loadImage( int nIdResponse, Plugin plugin )
+    {
+        for ( ResponseShard shard : getShardsOfResponse( nIdResponse, plugin ) )
+        {
+            try ( DAOUtil daoUtil = new DAOUtil( String.format( SQL_QUERY_SELECT_ID_FILE, shard.getTable( ) ), shard.getPlugin( ) ) )
+            {
+                daoUtil.setInt( 1, nIdResponse );
+                daoUtil.executeQuery( );
+
+                if ( daoUtil.next( ) )
+                {
+                    return ResponseDAO.selectImage( daoUtil.getInt( 1 ), nIdResponse );
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * {@inheritDoc} The response is deleted from the shard its resource is moved from before its new shard, see {@link ResponseShardRebalancer}.
+     */
+    @Override
+    public void delete( int nIdResponse, Plugin plugin )
+    {
+        for ( ResponseShard shard : getShardsOfResponseSourceFirst( nIdResponse, plugin ) )
+        {
+            try ( DAOUtil daoUtil = new DAOUtil( String.format( SQL_QUERY_DELETE, shard.getTable( ) ), shard.getPlugin( ) ) )
+            {
+                daoUtil.setInt( 1, nIdResponse );
+                daoUtil.executeUpdate( );
+            }
+        }
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_DELETE_INDEX, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdResponse );
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    /**
+     * {@inheritDoc} The response is updated in the shard its resource is moved from before its new shard: if the rows being moved are locked, the update
+     * waits for them to be copied, then applies to the copy.
+     */
+    @Override
+    public void store( Response response, Plugin plugin )
+    {
+        for ( ResponseShard shard : getShardsOfResponseSourceFirst( response.getIdResponse( ), plugin ) )
+        {
+            int nIndex = 1;
+
+            try ( DAOUtil daoUtil = new DAOUtil( String.format( SQL_QUERY_UPDATE, shard.getTable( ) ), shard.getPlugin( ) ) )
+            {
+                nIndex = setResponseValues( daoUtil, nIndex, response );
+                daoUtil.setInt( nIndex++, response.getStatus( ) );
+                daoUtil.setInt( nIndex, response.getIdResponse( ) );
+                daoUtil.executeUpdate( );
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Response> selectListByFilter( ResponseFilter filter, Plugin plugin )
+    {
+        List<Integer> listIdEntry = null;
+
+        if ( filter.containsIdResource( ) || filter.containsCodeEntry( ) )
+        {
+            listIdEntry = selectIdEntries( filter, plugin );
+
+            if ( listIdEntry.isEmpty( ) )
+            {
+                return new ArrayList<>( );
+            }
+        }
+
+        List<ResponseShard> listShards;
+
+        if ( filter.containsIdResource( ) )
+        {
+            listShards = getRing( ).getShards( filter.getIdResource( ), plugin );
+        }
+        else
+            if ( filter.containsIdEntry( ) )
+            {
+                listShards = getRing( ).getShards( getIdResource( filter.getIdEntry( ), plugin ), plugin );
+            }
+            else
+            {
+                listShards = getRing( ).getShards( );
+            }
+
+        List<Integer> listIdEntryFilter = listIdEntry;
+        // The responses of choice entries may be stored without their value, see ChoiceResponseStorage
+        List<Integer> listIdFieldOfValue = filter.containsResponseValue( ) ? selectIdFieldsOfValue( filter, listIdEntry, plugin ) : null;
+        List<Response> listResponse = fanOut( listShards, shard -> selectListByFilter( shard, filter, listIdEntryFilter, listIdFieldOfValue ) );
+
+        if ( listShards.size( ) > 1 )
+        {
+            // While a resource is moved, a response may be found in both shards: the copy of the first shard wins
+            Map<Integer, Response> mapResponses = new LinkedHashMap<>( );
+            listResponse.forEach( response -> mapResponses.putIfAbsent( response.getIdResponse( ), response ) );
+            listResponse = new ArrayList<>( mapResponses.values( ) );
+        }
+
+        if ( listShards.size( ) > 1 )
+        {
+            // The order by of the filter can not be applied to the merged results
+            Comparator<Response> comparator = Comparator.comparingInt( Response::getIdResponse );
+            listResponse.sort( filter.isOrderByAsc( ) ? comparator : comparator.reversed( ) );
+        }
+
+        resolveEntries( listResponse, plugin );
+
+        return listResponse;
+    }
+
+    /**
+     * Load the responses of a shard which verify a filter
+     * 
+     * @param shard
+     *            The shard
+     * @param filter
+     *            The filter
+     * @param listIdEntry
+     *            The ids of the entries matching the restrictions of the filter on entries, or null if the filter has none
+     * @param listIdFieldOfValue
+     *            The ids of the fields whose value is the response value of the filter, or null if the filter has none
+     * @return The list of responses
+     */
+    private List<Response> selectListByFilter( ResponseShard shard, ResponseFilter filter, List<Integer> listIdEntry, List<Integer> listIdFieldOfValue )
+    {
+        StringBuilder sbSQL = new StringBuilder( String.format( SQL_QUERY_SELECT_RESPONSE, shard.getTable( ) ) );
+
+        if ( filter.containsIdEntry( ) )
+        {
+            sbSQL.append( SQL_FILTER_ID_ENTRY );
+        }
+
+        if ( filter.containsIdField( ) )
+        {
+            sbSQL.append( SQL_FILTER_ID_FIELD );
+        }
+
+        if ( filter.containsResponseValue( ) )
+        {
+            sbSQL.append( listIdFieldOfValue.isEmpty( ) ? SQL_FILTER_RESPONSE_VALUE
+                    : String.format( SQL_FILTER_RESPONSE_VALUE_OR_FIELD, IdListQueryHelper.buildInClause( SQL_COLUMN_ID_FIELD, listIdFieldOfValue.size( ) ) ) );
+        }
+
+        if ( listIdEntry != null )
+        {
+            sbSQL.append( IdListQueryHelper.buildInClause( SQL_COLUMN_ID_ENTRY, listIdEntry.size( ) ) );
+        }
+
+        List<Integer> listId = null;
+        boolean bUseIdTable = false;
+
+        if ( filter.containsListIdResource( ) )
+        {
+            listId = IdListQueryHelper.distinct( filter.getListId( ) );
+            bUseIdTable = IdListQueryHelper.isIdTableRequired( listId );
+            sbSQL.append( bUseIdTable ? IdListQueryHelper.buildIdTableClause( SQL_COLUMN_ID_RESPONSE )
+                    : IdListQueryHelper.buildInClause( SQL_COLUMN_ID_RESPONSE, listId.size( ) ) );
+        }
+
+        sbSQL.append( SQL_ORDER_BY );
+        sbSQL.append( ( filter.containsOrderBy( ) ) ? filter.getOrderBy( ) : SQL_FILTER_ID_RESPONSE );
+        sbSQL.append( ( filter.isOrderByAsc( ) ) ? SQL_ASC : SQL_DESC );
+
+        String strSQL = sbSQL.toString( );
+        List<Integer> listIdParameters = bUseIdTable ? null : listId;
+
+        Function<String, List<Response>> query = strListKey -> selectResponses( shard, strSQL, daoUtil -> {
+            int nIndex = 1;
+
+            if ( filter.containsIdEntry( ) )
+            {
+                daoUtil.setInt( nIndex++, filter.getIdEntry( ) );
+            }
+
+            if ( filter.containsIdField( ) )
+            {
+                daoUtil.setInt( nIndex++, filter.getIdField( ) );
+            }
+
+            if ( filter.containsResponseValue( ) )
+            {
+                // The value may be stored compressed
+                daoUtil.setString( nIndex++, filter.getResponseValue( ) );
+                daoUtil.setString( nIndex++, StorageCompression.compressValue( filter.getResponseValue( ) ) );
+
+                if ( !listIdFieldOfValue.isEmpty( ) )
+                {
+                    nIndex = IdListQueryHelper.bindIds( daoUtil, nIndex, listIdFieldOfValue );
+                }
+            }
+
+            if ( listIdEntry != null )
+            {
+                nIndex = IdListQueryHelper.bindIds( daoUtil, nIndex, listIdEntry );
+            }
+
+            if ( strListKey != null )
+            {
+                daoUtil.setString( nIndex, strListKey );
+            }
+            else
+                if ( listIdParameters != null )
+                {
+                    IdListQueryHelper.bindIds( daoUtil, nIndex, listIdParameters );
+                }
+        } );
+
+        if ( bUseIdTable )
+        {
+            return IdListQueryHelper.callWithIdTable( listId, shard.getPlugin( ), query );
+        }
+
+        return query.apply( null );
+    }
+
+    /**
+     * {@inheritDoc} Each shard of the resource returns its own batch, and the batches are merged.
+     */
+    @Override
+    public List<Response> selectBatchByIdResource( int nIdResource, int nIdResponseAfter, int nBatchSize, Plugin plugin )
+    {
+        ResponseFilter filter = new ResponseFilter( );
+        filter.setIdResource( nIdResource );
+
+        List<Integer> listIdEntry = selectIdEntries( filter, plugin );
+
+        if ( listIdEntry.isEmpty( ) )
+        {
+            return new ArrayList<>( );
+        }
+
+        List<ResponseShard> listShards = getRing( ).getShards( nIdResource, plugin );
+        List<Response> listResponse = fanOut( listShards,
+                shard -> selectResponses( shard, getSelectQuery( shard ) + IdListQueryHelper.buildInClause( SQL_COLUMN_ID_ENTRY, listIdEntry.size( ) )
+                        + SQL_FILTER_BATCH, daoUtil -> {
+                            int nIndex = IdListQueryHelper.bindIds( daoUtil, 1, listIdEntry );
+                            daoUtil.setInt( nIndex++, nIdResponseAfter );
+                            daoUtil.setInt( nIndex, nBatchSize );
+                        } ) );
+
+        if ( listShards.size( ) > 1 )
+        {
+            // While a resource is moved, a response may be found in both shards: the copy of the first shard wins
+            Map<Integer, Response> mapResponses = new LinkedHashMap<>( );
+            listResponse.forEach( response -> mapResponses.putIfAbsent( response.getIdResponse( ), response ) );
+            listResponse = new ArrayList<>( mapResponses.values( ) );
+            listResponse.sort( Comparator.comparingInt( Response::getIdResponse ) );
+
+            if ( listResponse.size( ) > nBatchSize )
+            {
+                listResponse = new ArrayList<>( listResponse.subList( 0, nBatchSize ) );
+            }
+        }
+
+        resolveEntries( listResponse, plugin );
+
+        return listResponse;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<File> selectFileList( List<Integer> listIdFile, Plugin plugin )
+    {
+        return ResponseDAO.selectFiles( listIdFile );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<StatisticEntrySubmit> getStatisticByIdEntry( int nIdEntry, Plugin plugin )
+    {
+        List<ResponseShard> listShards = getRing( ).getShards( getIdResource( nIdEntry, plugin ), plugin );
+        List<int [ ]> listCounts = fanOut( listShards, shard -> {
+            List<int [ ]> listShardCounts = new ArrayList<>( );
+
+            try ( DAOUtil daoUtil = new DAOUtil( String.format( SQL_QUERY_SELECT_COUNT_RESPONSE_BY_ID_ENTRY, shard.getTable( ) ), shard.getPlugin( ) ) )
+            {
+                daoUtil.setInt( 1, nIdEntry );
+                daoUtil.executeQuery( );
+
+                while ( daoUtil.next( ) )
+                {
+                    listShardCounts.add( new int [ ] {
+                            daoUtil.getInt( 1 ), daoUtil.getInt( 2 )
+                    } );
+                }
+            }
+
+            return listShardCounts;
+        } );
+
+        Map<Integer, Integer> mapCountByField = new HashMap<>( );
+
+        for ( int [ ] count : listCounts )
+        {
+            mapCountByField.merge( count [0], count [1], Integer::sum );
+        }
+
+        Map<Integer, String> mapFieldTitles = new LinkedHashMap<>( );
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_FIELD_BY_ID_ENTRY, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdEntry );
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                mapFieldTitles.put( daoUtil.getInt( 1 ), daoUtil.getString( 2 ) );
+            }
+        }
+
+        List<StatisticEntrySubmit> listStatisticEntrySubmit = new ArrayList<>( );
+
+        if ( mapFieldTitles.isEmpty( ) )
+        {
+            // Same result as the outer join of the non sharded query on an entry without field
+            mapFieldTitles.put( null, null );
+        }
+
+        for ( Map.Entry<Integer, String> field : mapFieldTitles.entrySet( ) )
+        {
+            StatisticEntrySubmit statisticEntrySubmit = new StatisticEntrySubmit( );
+            statisticEntrySubmit.setFieldLibelle( field.getValue( ) );
+            statisticEntrySubmit.setNumberResponse( ( field.getKey( ) == null ) ? 0 : mapCountByField.getOrDefault( field.getKey( ), 0 ) );
+            listStatisticEntrySubmit.add( statisticEntrySubmit );
+        }
+
+        return listStatisticEntrySubmit;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getMaxNumber( int nIdEntry, Plugin plugin )
+    {
+        int nKey = 1;
+
+        for ( ResponseShard shard : getRing( ).getShards( getIdResource( nIdEntry, plugin ), plugin ) )
+        {
+            try ( DAOUtil daoUtil = new DAOUtil( String.format( SQL_QUERY_SELECT_MAX_NUMBER, shard.getTable( ) ), shard.getPlugin( ) ) )
+            {
+                daoUtil.setInt( 1, nIdEntry );
+                daoUtil.executeQuery( );
+
+                if ( daoUtil.next( ) )
+                {
+                    nKey = Math.max( nKey, daoUtil.getInt( 1 ) + 1 );
+                }
+            }
+        }
+
+        return nKey;
+    }
+
+    /**
+     * Run a query on several shards in parallel and merge the results
+     * 
+     * @param listShards
+     *            The shards
+     * @param query
+     *            The query to run on a shard
+     * @param <T>
+     *            The type of the results
+     * @return The merged results
+     */
+    private static <T> List<T> fanOut( List<ResponseShard> listShards, Function<ResponseShard, List<T>> query )
+    {
+        if ( listShards.size( ) == 1 )
+        {
+            return query.apply( listShards.get( 0 ) );
+        }
+
+        List<CompletableFuture<List<T>>> listFutures = listShards.stream( ).map( shard -> CompletableFuture.supplyAsync( ( ) -> query.apply( shard ), _executor ) )
+                .collect( Collectors.toList( ) );
+        List<T> listResults = new ArrayList<>( );
+
+        try
+        {
+            for ( CompletableFuture<List<T>> future : listFutures )
+            {
+                listResults.addAll( future.join( ) );
+            }
+        }
+        catch( CompletionException e )
+        {
+            if ( e.getCause( ) instanceof AppException )
+            {
+                throw (AppException) e.getCause( );
+            }
+
+            throw new AppException( e.getMessage( ), e );
+        }
+
+        return listResults;
+    }
+
+    /**
+     * Run a select query on a shard
+     * 
+     * @param shard
+     *            The shard
+     * @param strSQL
+     *            The query
+     * @param parameters
+     *            Sets the parameters of the query
+     * @return The responses
+     */
+    static List<Response> selectResponses( ResponseShard shard, String strSQL, Consumer<DAOUtil> parameters )
+    {
+        List<Response> listResponse = new ArrayList<>( );
+
+        try ( DAOUtil daoUtil = new DAOUtil( strSQL, shard.getPlugin( ) ) )
+        {
+            parameters.accept( daoUtil );
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                listResponse.add( getResponseFromDAOUtil( daoUtil ) );
+            }
+        }
+
+        return listResponse;
+    }
+
+    /**
+     * Get the select query of the responses of a shard, without restriction
+     * 
+     * @param shard
+     *            The shard
+     * @return The select query, ending with a WHERE clause always true
+     */
+    static String getSelectQuery( ResponseShard shard )
+    {
+        return String.format( SQL_QUERY_SELECT_RESPONSE, shard.getTable( ) );
+    }
+
+    /**
+     * Get the shards which may hold a response
+     * 
+     * @param nIdResponse
+     *            The id of the response
+     * @param plugin
+     *            the plugin
+     * @return The shards
+     */
+    private List<ResponseShard> getShardsOfResponse( int nIdResponse, Plugin plugin )
+    {
+        ResponseShardRing ring = getRing( );
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_INDEX, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdResponse );
+            daoUtil.executeQuery( );
+
+            if ( daoUtil.next( ) )
+            {
+                return ring.getShards( daoUtil.getInt( 1 ), plugin );
+            }
+        }
+
+        return new ArrayList<>( );
+    }
+
+    /**
+     * Get the shards which may hold a response, the shard its resource is moved from first
+     * 
+     * @param nIdResponse
+     *            The id of the response
+     * @param plugin
+     *            the plugin
+     * @return The shards
+     */
+    private List<ResponseShard> getShardsOfResponseSourceFirst( int nIdResponse, Plugin plugin )
+    {
+        List<ResponseShard> listShards = new ArrayList<>( getShardsOfResponse( nIdResponse, plugin ) );
+        Collections.reverse( listShards );
+
+        return listShards;
+    }
+
+    /**
+     * Get the ids of the entries matching the restrictions of a filter on entries
+     * 
+     * @param filter
+     *            The filter
+     * @param plugin
+     *            the plugin
+     * @return The ids of the entries
+     */
+    private List<Integer> selectIdEntries( ResponseFilter filter, Plugin plugin )
+    {
+        StringBuilder sbSQL = new StringBuilder( SQL_QUERY_SELECT_ID_ENTRY );
+
+        if ( filter.containsIdResource( ) )
+        {
+            sbSQL.append( SQL_FILTER_ENTRY_ID_RESOURCE );
+        }
+
+        if ( filter.containsCodeEntry( ) )
+        {
+            sbSQL.append( SQL_FILTER_ENTRY_CODE );
+        }
+
+        List<Integer> listIdEntry = new ArrayList<>( );
+
+        try ( DAOUtil daoUtil = new DAOUtil( sbSQL.toString( ), plugin ) )
+        {
+            int nIndex = 1;
+
+            if ( filter.containsIdResource( ) )
+            {
+                daoUtil.setInt( nIndex++, filter.getIdResource( ) );
+            }
+
+            if ( filter.containsCodeEntry( ) )
+            {
+                daoUtil.setString( nIndex, filter.getCodeEntry( ) );
+            }
+
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                listIdEntry.add( daoUtil.getInt( 1 ) );
+            }
+        }
+
+        return listIdEntry;
+    }
+
+    /**
+     * Get the id of the resource of an entry
+     * 
+     * @param nIdEntry
+     *            The id of the entry
+     * @param plugin
+     *            the plugin
+     * @return The id of the resource
+     */
+    private int getIdResource( int nIdEntry, Plugin plugin )
+    {
+        return _mapEntryResource.computeIfAbsent( nIdEntry, nId -> {
+            try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_ID_RESOURCE, plugin ) )
+            {
+                daoUtil.setInt( 1, nId );
+                daoUtil.executeQuery( );
+
+                if ( !daoUtil.next( ) )
+                {
+                    throw new AppException( "Unknown entry " + nId );
+                }
+
+                return daoUtil.getInt( 1 );
+            }
+        } );
+    }
+
+    /**
+     * Replace the entries of responses, which only hold their id, by the entries loaded from the pool of the plugin, then set the values of the responses
+     * stored without their value
+     * 
+     * @param listResponse
+     *            The responses
+     * @param plugin
+     *            the plugin
+     */
+    private void resolveEntries( List<Response> listResponse, Plugin plugin )
+    {
+        if ( listResponse.isEmpty( ) )
+        {
+            return;
+        }
+
+        List<Integer> listIdEntry = listResponse.stream( ).map( response -> response.getEntry( ).getIdEntry( ) ).distinct( ).collect( Collectors.toList( ) );
+        Map<Integer, Entry> mapEntries = getEntryDAO( ).loadMultiple( listIdEntry, plugin ).stream( )
+                .collect( Collectors.toMap( Entry::getIdEntry, Function.identity( ) ) );
+
+        for ( Response response : listResponse )
+        {
+            Entry entryLoaded = mapEntries.get( response.getEntry( ).getIdEntry( ) );
+
+            if ( entryLoaded != null )
+            {
+                Entry entry = response.getEntry( );
+                entry.setEntryType( entryLoaded.getEntryType( ) );
+                entry.setTitle( entryLoaded.getTitle( ) );
+                entry.setCode( entryLoaded.getCode( ) );
+            }
+
+            ChoiceResponseStorage.resolveValue( response, plugin );
+        }
+    }
+
+    /**
+     * Load the ids of the fields whose value is the response value of a filter. The fields are in the pool of the plugin, so they can not be joined by the
+     * queries of the shards.
+     * 
+     * @param filter
+     *            The filter
+     * @param listIdEntry
+     *            The ids of the entries matching the restrictions of the filter on entries, or null if the filter has none
+     * @param plugin
+     *            the plugin
+     * @return The ids of the fields
+     */
+    private static List<Integer> selectIdFieldsOfValue( ResponseFilter filter, List<Integer> listIdEntry, Plugin plugin )
+    {
+        StringBuilder sbSQL = new StringBuilder( SQL_QUERY_SELECT_ID_FIELD_BY_VALUE );
+
+        if ( filter.containsIdEntry( ) )
+        {
+            sbSQL.append( SQL_FILTER_FIELD_ID_ENTRY );
+        }
+
+        if ( listIdEntry != null )
+        {
+            sbSQL.append( IdListQueryHelper.buildInClause( SQL_COLUMN_FIELD_ID_ENTRY, listIdEntry.size( ) ) );
+        }
+
+        List<Integer> listIdField = new ArrayList<>( );
+
+        try ( DAOUtil daoUtil = new DAOUtil( sbSQL.toString( ), plugin ) )
+        {
+            int nIndex = 1;
+            daoUtil.setString( nIndex++, filter.getResponseValue( ) );
+
+            if ( filter.containsIdEntry( ) )
+            {
+                daoUtil.setInt( nIndex++, filter.getIdEntry( ) );
+            }
+
+            if ( listIdEntry != null )
+            {
+                IdListQueryHelper.bindIds( daoUtil, nIndex, listIdEntry );
+            }
+
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                listIdField.add( daoUtil.getInt( 1 ) );
+            }
+        }
+
+        return listIdField;
+    }
+
+    /**
+     * Set the values of a response, from response_value to id_file
+     * 
+     * @param daoUtil
+     *            The daoUtil
+     * @param nIndex
+     *            The index of the first parameter
+     * @param response
+     *            The response
+     * @return The index of the next parameter
+     */
+    private static int setResponseValues( DAOUtil daoUtil, int nIndex, Response response )
+    {
+        int nParameterIndex = nIndex;
+        daoUtil.setString( nParameterIndex++, StorageCompression.compressValue( ResponseDAO.removeInvalidChars( response.getResponseValue( ) ) ) );
+        daoUtil.setInt( nParameterIndex++, response.getEntry( ).getIdEntry( ) );
+        daoUtil.setInt( nParameterIndex++, response.getIterationNumber( ) );
+
+        if ( response.getField( ) != null )
+        {
+            daoUtil.setInt( nParameterIndex++, response.getField( ).getIdField( ) );
+        }
+        else
+        {
+            daoUtil.setIntNull( nParameterIndex++ );
+        }
+
+        if ( response.getFile( ) != null )
+        {
+            daoUtil.setInt( nParameterIndex++, response.getFile( ).getIdFile( ) );
+        }
+        else
+        {
+            daoUtil.setIntNull( nParameterIndex++ );
+        }
+
+        return nParameterIndex;
+    }
+
+    /**
+     * Get a response from a DAOUtil. The entry of the response only holds its id.
+     * 
+     * @param daoUtil
+     *            The daoUtil to get data from. Note that the DAOUtil will NOT be free by this method
+     * @return The response
+     */
+    private static Response getResponseFromDAOUtil( DAOUtil daoUtil )
+    {
+        int nIndex = 1;
+
+        Response response = new Response( );
+        response.setIdResponse( daoUtil.getInt( nIndex++ ) );
+        response.setResponseValue( StorageCompression.decompressValue( daoUtil.getString( nIndex++ ) ) );
+
+        Entry entry = new Entry( );
+        entry.setIdEntry( daoUtil.getInt( nIndex++ ) );
+        response.setEntry( entry );
+
+        response.setIterationNumber( daoUtil.getInt( nIndex++ ) );
+
+        // Get field if it exists
+        if ( daoUtil.getObject( nIndex ) != null )
+        {
+            Field field = new Field( );
+            field.setIdField( daoUtil.getInt( nIndex ) );
+            response.setField( field );
+        }
+
+        nIndex++;
+
+        // Get file if it exists
+        if ( daoUtil.getObject( nIndex ) != null )
+        {
+            File file = new File( );
+            file.setIdFile( daoUtil.getInt( nIndex ) );
+            response.setFile( file );
+        }
+
+        nIndex++;
+        response.setStatus( daoUtil.getInt( nIndex ) );
+
+        return response;
+    }
+
+    /**
+     * Get the ring of the shards
+     * 
+     * @return The ring
+     */
+    private static ResponseShardRing getRing( )
+    {
+        return ResponseShardRing.getInstance( );
+    }
+
+    /**
+     * Get the entry DAO
+     * 
+     * @return The entry DAO
+     */
+    private IEntryDAO getEntryDAO( )
+    {
+        if ( _entryDAO == null )
+        {
+            _entryDAO = SpringContextService.getBean( "genericattributes.entryDAO" );
+        }
+
+        return _entryDAO;
+    }
+}
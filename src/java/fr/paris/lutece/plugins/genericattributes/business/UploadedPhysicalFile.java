@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.business;
+
+import fr.paris.lutece.portal.business.physicalfile.PhysicalFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.fileupload.FileItem;
+
+/**
+ * Physical file of an uploaded file item. Its content is only loaded in memory when its value is read, so that it can be streamed to the blob store
+ * beforehand.
+ */
+public class UploadedPhysicalFile extends PhysicalFile
+{
+    private static final long serialVersionUID = 1L;
+
+    private final transient FileItem _fileItem;
+    private byte [ ] _value;
+    private boolean _bValueSet;
+
+    /**
+     * Constructor
+     * 
+     * @param fileItem
+     *            The uploaded file item
+     */
+    public UploadedPhysicalFile( FileItem fileItem )
+    {
+        _fileItem = fileItem;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte [ ] getValue( )
+    {
+        if ( !_bValueSet && ( _fileItem != null ) )
+        {
+            _value = _fileItem.get( );
+            _bValueSet = true;
+        }
+
+        return _value;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setValue( byte [ ] value )
+    {
+        _value = value;
+        _bValueSet = true;
+    }
+
+    /**
+     * Open a stream on the content of the uploaded file item
+     * 
+     * @return The stream, to be closed by the caller
+     * @throws IOException
+     *             if the file item can not be read
+     */
+    public InputStream getInputStream( ) throws IOException
+    {
+        return _fileItem.getInputStream( );
+    }
+
+    /**
+     * Tell if the content can still be read from the uploaded file item, without having been loaded or replaced
+     * 
+     * @return true if the content is read from the file item
+     */
+    public boolean isStreamable( )
+    {
+        return !_bValueSet && ( _fileItem != null );
+    }
+}
@@ -33,8 +33,12 @@
  */
 package fr.paris.lutece.plugins.genericattributes.service;
 
+import fr.paris.lutece.plugins.genericattributes.business.EntryHome;
+import fr.paris.lutece.plugins.genericattributes.service.image.ResponseThumbnailService;
 import fr.paris.lutece.portal.service.image.ImageResourceManager;
 import fr.paris.lutece.portal.service.plugin.PluginDefaultImplementation;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppLogService;
 import fr.paris.lutece.portal.service.util.AppPropertiesService;
 
 /**
@@ -55,9 +59,28 @@ public class GenericAttributesPlugin extends PluginDefaultImplementation
     @Override
     public void init( )
     {
+        try
+        {
+            int nResolved = EntryHome.resolveResourceTypes( );
+
+            if ( nResolved > 0 )
+            {
+                AppLogService.info( "Generic attributes : resource type resolved for " + nResolved + " entries" );
+            }
+        }
+        catch( AppException e )
+        {
+            AppLogService.error( "Generic attributes : unable to resolve the resource types of the entries", e );
+        }
+
         if ( AppPropertiesService.getPropertyBoolean( PROPERTY_INSECURE_IMAGES_ENABLE, false ) )
         {
             ImageResourceManager.registerProvider( new ResponseImageResourceProvider( ) );
+
+            for ( int nSize : ResponseThumbnailService.getSizes( ) )
+            {
+                ImageResourceManager.registerProvider( new ResponseThumbnailResourceProvider( nSize ) );
+            }
         }
     }
 }
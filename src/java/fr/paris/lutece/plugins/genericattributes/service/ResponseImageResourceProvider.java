@@ -34,11 +34,8 @@
 package fr.paris.lutece.plugins.genericattributes.service;
 
 import fr.paris.lutece.plugins.genericattributes.business.Response;
-import fr.paris.lutece.plugins.genericattributes.business.ResponseHome;
-import fr.paris.lutece.portal.business.file.File;
-import fr.paris.lutece.portal.business.file.FileHome;
-import fr.paris.lutece.portal.business.physicalfile.PhysicalFile;
-import fr.paris.lutece.portal.business.physicalfile.PhysicalFileHome;
+import fr.paris.lutece.plugins.genericattributes.business.ResponseImage;
+import fr.paris.lutece.plugins.genericattributes.service.image.ResponseImageCache;
 import fr.paris.lutece.portal.service.image.ImageResource;
 import fr.paris.lutece.portal.service.image.ImageResourceProvider;
 import fr.paris.lutece.util.file.FileUtil;
@@ -64,21 +61,15 @@ public class ResponseImageResourceProvider implements ImageResourceProvider
     @Override
     public ImageResource getImageResource( int nIdResource )
     {
-        Response response = ResponseHome.findByPrimaryKey( nIdResource );
+        ResponseImage responseImage = ResponseImageCache.getImage( nIdResource );
 
-        if ( response.getFile( ) != null )
+        if ( ( responseImage != null ) && FileUtil.hasImageExtension( responseImage.getTitle( ) ) )
         {
-            File file = FileHome.findByPrimaryKey( response.getFile( ).getIdFile( ) );
+            ImageResource image = new ImageResource( );
+            image.setImage( responseImage.getContent( ) );
+            image.setMimeType( responseImage.getMimeType( ) );
 
-            if ( ( file.getPhysicalFile( ) != null ) && FileUtil.hasImageExtension( file.getTitle( ) ) )
-            {
-                PhysicalFile physicalFile = PhysicalFileHome.findByPrimaryKey( file.getPhysicalFile( ).getIdPhysicalFile( ) );
-                ImageResource image = new ImageResource( );
-                image.setImage( physicalFile.getValue( ) );
-                image.setMimeType( file.getMimeType( ) );
-
-                return image;
-            }
+            return image;
         }
 
         return null;
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service;
+
+import fr.paris.lutece.plugins.genericattributes.business.Response;
+import fr.paris.lutece.plugins.genericattributes.service.image.ResponseThumbnailService;
+import fr.paris.lutece.portal.service.image.ImageResource;
+import fr.paris.lutece.portal.service.image.ImageResourceProvider;
+import fr.paris.lutece.util.url.UrlItem;
+
+/**
+ * Resource provider for the thumbnails of the images at one size. The thumbnails are served by the image servlet with the resource type
+ * <code>GENERICATTRIBUTES_RESPONSE_THUMBNAIL_&lt;size&gt;</code>.
+ */
+public class ResponseThumbnailResourceProvider implements ImageResourceProvider
+{
+    /**
+     * Prefix of the resource types of the thumbnails, followed by their size
+     */
+    public static final String RESOURCE_TYPE_PREFIX = Response.RESOURCE_TYPE + "_THUMBNAIL_";
+
+    private final int _nSize;
+    private final ImageResourceProvider _imageProvider = new ResponseImageResourceProvider( );
+
+    /**
+     * Constructor
+     * 
+     * @param nSize
+     *            The size of the thumbnails, one of the configured sizes
+     */
+    public ResponseThumbnailResourceProvider( int nSize )
+    {
+        _nSize = nSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getResourceTypeId( )
+    {
+        return RESOURCE_TYPE_PREFIX + _nSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ImageResource getImageResource( int nIdResource )
+    {
+        return ResponseThumbnailService.getThumbnail( nIdResource, _nSize, _imageProvider );
+    }
+
+    /**
+     * Get the URL of a thumbnail of an image response. The thumbnail is the one of the configured sizes closest to the display size.
+     * 
+     * @param nIdResponse
+     *            The id of the response
+     * @param nSize
+     *            The display size
+     * @return The URL of the thumbnail, or the URL of the image if the thumbnails are disabled
+     */
+    public static String getUrlThumbnailImageResponse( int nIdResponse, int nSize )
+    {
+        int nThumbnailSize = ResponseThumbnailService.getThumbnailSize( nSize );
+
+        if ( nThumbnailSize == 0 )
+        {
+            return ResponseImageResourceProvider.getUrlDownloadImageResponse( nIdResponse );
+        }
+
+        UrlItem urlItem = new UrlItem( "image" );
+        urlItem.addParameter( "resource_type", RESOURCE_TYPE_PREFIX + nThumbnailSize );
+        urlItem.addParameter( "id", nIdResponse );
+
+        return urlItem.getUrl( );
+    }
+}
@@ -53,8 +53,10 @@ import fr.paris.lutece.plugins.genericattributes.business.Field;
 import fr.paris.lutece.plugins.genericattributes.business.GenericAttributeError;
 import fr.paris.lutece.plugins.genericattributes.business.MandatoryError;
 import fr.paris.lutece.plugins.genericattributes.business.Response;
+import fr.paris.lutece.plugins.genericattributes.util.DataUri;
 import fr.paris.lutece.plugins.genericattributes.util.FileAttributesUtils;
 import fr.paris.lutece.plugins.genericattributes.util.GenericAttributesUtils;
+import fr.paris.lutece.plugins.genericattributes.util.ImageHeader;
 import fr.paris.lutece.portal.business.file.File;
 import fr.paris.lutece.portal.business.physicalfile.PhysicalFile;
 import fr.paris.lutece.portal.service.i18n.I18nService;
@@ -200,14 +202,16 @@ public abstract class AbstractEntryTypeCamera extends AbstractEntryTypeImage
 
         if ( sourceBase != null )
         {
-            genAttError = doCheckforImages( sourceBase, entry, request.getLocale( ) );
+            // The capture is decoded once, then checked and stored from the same bytes
+            byte [ ] imageBytes = decodeImage( sourceBase );
+            genAttError = doCheckforImages( imageBytes, sourceBase, entry, request.getLocale( ) );
 
             if ( genAttError != null )
             {
                 return genAttError;
             }
 
-            listResponse.add( getResponseFromImage( request, sourceBase, entry, true ) );
+            listResponse.add( getResponseFromImage( request, sourceBase, imageBytes, entry, true ) );
 
             if ( !entry.isMandatory( ) )
             {
@@ -246,6 +250,26 @@ public abstract class AbstractEntryTypeCamera extends AbstractEntryTypeImage
      * @return The created response
      */
     protected Response getResponseFromImage( HttpServletRequest request, String imageSource, Entry entry, boolean bCreatePhysicalFile )
+    {
+        return getResponseFromImage( request, imageSource, bCreatePhysicalFile ? decodeImage( imageSource ) : null, entry, bCreatePhysicalFile );
+    }
+
+    /**
+     * Get a generic attributes response from a request
+     * 
+     * @param request
+     * @param imageSource
+     *            the image in base64 form
+     * @param imageBytes
+     *            the decoded image
+     * @param entry
+     *            The entry
+     * @param bCreatePhysicalFile
+     *            True to create the physical file associated with the file of the response, false otherwise. Note that the physical file will never be saved in
+     *            the database by this method, like any other created object.
+     * @return The created response
+     */
+    protected Response getResponseFromImage( HttpServletRequest request, String imageSource, byte [ ] imageBytes, Entry entry, boolean bCreatePhysicalFile )
     {
         Response response = new Response( );
         response.setEntry( entry );
@@ -288,9 +312,7 @@ public abstract class AbstractEntryTypeCamera extends AbstractEntryTypeImage
                 file.setMimeType( FileSystemUtil.getMIMEType( file.getTitle( ) ) );
 
                 PhysicalFile physicalFile = new PhysicalFile( );
-                String base64Image = imageSource.split( "," ) [1];
-                byte [ ] imageBytes = javax.xml.bind.DatatypeConverter.parseBase64Binary( base64Image );
-                physicalFile.setValue( imageBytes );
+                physicalFile.setValue( downscaleImage( imageBytes, entry ) );
                 file.setPhysicalFile( physicalFile );
             }
 
@@ -319,6 +341,18 @@ public abstract class AbstractEntryTypeCamera extends AbstractEntryTypeImage
         return StringUtils.EMPTY;
     }
 
+    /**
+     * Decode the image of a capture
+     * 
+     * @param imageSource
+     *            The image, as a data URL whose content is in base64
+     * @return The bytes of the image, or null if the source has no content
+     */
+    protected byte [ ] decodeImage( String imageSource )
+    {
+        return DataUri.decode( imageSource );
+    }
+
     /**
      * Do check that an uploaded source is an image
      * 
@@ -332,7 +366,26 @@ public abstract class AbstractEntryTypeCamera extends AbstractEntryTypeImage
      */
     public GenericAttributeError doCheckforImages( String imageSource, Entry entry, Locale locale )
     {
-        BufferedImage image = null;
+        return doCheckforImages( decodeImage( imageSource ), imageSource, entry, locale );
+    }
+
+    /**
+     * Do check that an uploaded source is an image. Only the header of the image is read, and the size checked is the one of the decoded bytes, which are the
+     * bytes stored.
+     * 
+     * @param imageBytes
+     *            The decoded image, or null if the source has no content
+     * @param imageSource
+     *            The file imageSource
+     * @param entry
+     *            the entry
+     * @param locale
+     *            The locale
+     * @return The error if any, or null if the file is a valid image
+     */
+    protected GenericAttributeError doCheckforImages( byte [ ] imageBytes, String imageSource, Entry entry, Locale locale )
+    {
+        ImageHeader header = null;
         GenericAttributeError genAttError = new GenericAttributeError( );
         genAttError.setMandatoryError( false );
 
@@ -342,16 +395,11 @@ public abstract class AbstractEntryTypeCamera extends AbstractEntryTypeImage
         genAttError.setErrorMessage( I18nService.getLocalizedString( MESSAGE_ERROR_NOT_AN_IMAGE, args, locale ) );
         genAttError.setTitleQuestion( entry.getTitle( ) );
 
-        if ( ( imageSource != null ) && ( imageSource.split( "," ).length > 1 ) )
+        if ( imageBytes != null )
         {
-            String base64Image = imageSource.split( "," ) [1];
-            byte [ ] imageBytes = javax.xml.bind.DatatypeConverter.parseBase64Binary( base64Image );
-            ByteArrayInputStream bis = new ByteArrayInputStream( imageBytes );
-
             try
             {
-                image = ImageIO.read( bis );
-                bis.close( );
+                header = ImageHeader.read( new ByteArrayInputStream( imageBytes ) );
             }
             catch( IOException e )
             {
@@ -359,12 +407,19 @@ public abstract class AbstractEntryTypeCamera extends AbstractEntryTypeImage
             }
         }
 
-        if ( ( image == null ) && StringUtils.isNotBlank( imageSource ) )
+        if ( header == null )
+        {
+            return StringUtils.isNotBlank( imageSource ) ? genAttError : null;
+        }
+
+        GenericAttributeError error = doCheckPixels( header, entry.getTitle( ), entry.getTitle( ), locale );
+
+        if ( error != null )
         {
-            return genAttError;
+            return error;
         }
 
-        return doCheckSize( image, entry, locale );
+        return doCheckSize( imageBytes.length, entry, locale );
     }
 
     /**
@@ -375,13 +430,55 @@ public abstract class AbstractEntryTypeCamera extends AbstractEntryTypeImage
      * @param locale
      *            The locale
      * @return The error if any, or null if not erroe
+     * @deprecated the image is encoded again to be measured, use {@link #doCheckSize(long, Entry, Locale)} with the size of the decoded bytes
      */
+    @Deprecated
     public GenericAttributeError doCheckSize( BufferedImage image, Entry entry, Locale locale )
     {
-        int nMaxSize = Integer.parseInt( entry.getFieldByCode( FIELD_MAX_FILES ).getValue( ) );
+        if ( image == null )
+        {
+            return null;
+        }
 
         Field imageTypeField = entry.getFieldByCode( FIELD_IMAGE_TYPE );
         String imageType = imageTypeField != null ? imageTypeField.getValue( ) : "png";
+        ByteArrayOutputStream tmp = new ByteArrayOutputStream( );
+
+        try
+        {
+            ImageIO.write( image, imageType, tmp );
+            tmp.close( );
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( e );
+
+            String strMessage = "IOException when reading Image Size";
+            GenericAttributeError error = new GenericAttributeError( );
+            error.setMandatoryError( false );
+            error.setTitleQuestion( entry.getTitle( ) );
+            error.setErrorMessage( strMessage );
+
+            return error;
+        }
+
+        return doCheckSize( tmp.size( ), entry, locale );
+    }
+
+    /**
+     * Do check the size of image
+     * 
+     * @param lSize
+     *            The size of the image, in bytes
+     * @param entry
+     *            the entry
+     * @param locale
+     *            The locale
+     * @return The error if any, or null if not erroe
+     */
+    public GenericAttributeError doCheckSize( long lSize, Entry entry, Locale locale )
+    {
+        int nMaxSize = Integer.parseInt( entry.getFieldByCode( FIELD_MAX_FILES ).getValue( ) );
 
         // If no max size defined in the db, then fetch the default max size from the
         // properties file
@@ -391,49 +488,18 @@ public abstract class AbstractEntryTypeCamera extends AbstractEntryTypeImage
         }
 
         // If nMaxSize == -1, then no size limit
-        if ( ( nMaxSize != GenericAttributesUtils.CONSTANT_ID_NULL ) && ( image != null ) )
+        if ( ( nMaxSize != GenericAttributesUtils.CONSTANT_ID_NULL ) && ( lSize > nMaxSize ) )
         {
-            boolean bHasFileMaxSizeError = false;
-            ByteArrayOutputStream tmp = new ByteArrayOutputStream( );
-
-            try
-            {
-                ImageIO.write( image, imageType, tmp );
-                tmp.close( );
-            }
-            catch( IOException e )
-            {
-                AppLogService.error( e );
-
-                String strMessage = "IOException when reading Image Size";
-                GenericAttributeError error = new GenericAttributeError( );
-                error.setMandatoryError( false );
-                error.setTitleQuestion( entry.getTitle( ) );
-                error.setErrorMessage( strMessage );
-
-                return error;
-            }
-
-            Integer contentLength = tmp.size( );
-
-            if ( contentLength > nMaxSize )
-            {
-                bHasFileMaxSizeError = true;
-            }
+            Object [ ] params = {
+                    nMaxSize
+            };
+            String strMessage = I18nService.getLocalizedString( FileAttributesUtils.PROPERTY_MESSAGE_ERROR_UPLOADING_FILE_FILE_MAX_SIZE, params, locale );
+            GenericAttributeError error = new GenericAttributeError( );
+            error.setMandatoryError( false );
+            error.setTitleQuestion( entry.getTitle( ) );
+            error.setErrorMessage( strMessage );
 
-            if ( bHasFileMaxSizeError )
-            {
-                Object [ ] params = {
-                        nMaxSize
-                };
-                String strMessage = I18nService.getLocalizedString( FileAttributesUtils.PROPERTY_MESSAGE_ERROR_UPLOADING_FILE_FILE_MAX_SIZE, params, locale );
-                GenericAttributeError error = new GenericAttributeError( );
-                error.setMandatoryError( false );
-                error.setTitleQuestion( entry.getTitle( ) );
-                error.setErrorMessage( strMessage );
-
-                return error;
-            }
+            return error;
         }
 
         return null;
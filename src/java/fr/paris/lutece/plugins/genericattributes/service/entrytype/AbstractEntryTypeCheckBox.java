@@ -197,6 +197,15 @@ public abstract class AbstractEntryTypeCheckBox extends EntryTypeService
         return null;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isResponseValueOfField( )
+    {
+        return true;
+    }
+
     /**
      * {@inheritDoc}
      */
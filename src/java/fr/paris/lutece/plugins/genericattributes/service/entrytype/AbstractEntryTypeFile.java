@@ -39,10 +39,10 @@ import fr.paris.lutece.plugins.genericattributes.business.GenericAttributeError;
 import fr.paris.lutece.plugins.genericattributes.business.MandatoryError;
 import fr.paris.lutece.plugins.genericattributes.business.Response;
 import fr.paris.lutece.plugins.genericattributes.business.ResponseHome;
+import fr.paris.lutece.plugins.genericattributes.business.UploadedPhysicalFile;
 import fr.paris.lutece.plugins.genericattributes.service.upload.AbstractGenAttUploadHandler;
 import fr.paris.lutece.portal.business.file.File;
 import fr.paris.lutece.portal.business.file.FileHome;
-import fr.paris.lutece.portal.business.physicalfile.PhysicalFile;
 import fr.paris.lutece.portal.web.upload.MultipartHttpServletRequest;
 import fr.paris.lutece.util.filesystem.FileSystemUtil;
 
@@ -218,9 +218,7 @@ public abstract class AbstractEntryTypeFile extends AbstractEntryTypeUpload
         {
             file.setMimeType( FileSystemUtil.getMIMEType( file.getTitle( ) ) );
 
-            PhysicalFile physicalFile = new PhysicalFile( );
-            physicalFile.setValue( fileItem.get( ) );
-            file.setPhysicalFile( physicalFile );
+            file.setPhysicalFile( new UploadedPhysicalFile( fileItem ) );
         }
 
         response.setFile( file );
@@ -37,12 +37,16 @@ import java.util.List;
 import java.util.Locale;
 
 import javax.servlet.http.HttpServletRequest;
-import javax.xml.bind.DatatypeConverter;
+
+import org.apache.commons.lang.math.NumberUtils;
 
 import fr.paris.lutece.plugins.genericattributes.business.Entry;
+import fr.paris.lutece.plugins.genericattributes.business.Field;
 import fr.paris.lutece.plugins.genericattributes.business.GenericAttributeError;
 import fr.paris.lutece.plugins.genericattributes.business.MandatoryError;
 import fr.paris.lutece.plugins.genericattributes.business.Response;
+import fr.paris.lutece.plugins.genericattributes.service.image.ImageIngestService;
+import fr.paris.lutece.plugins.genericattributes.util.DataUri;
 import fr.paris.lutece.portal.business.file.File;
 import fr.paris.lutece.portal.business.physicalfile.PhysicalFile;
 import fr.paris.lutece.portal.web.upload.MultipartHttpServletRequest;
@@ -103,7 +107,6 @@ public abstract class AbstractEntryTypeImage extends AbstractEntryTypeUpload
         response.setEntry( entry );
 
         File file = new File( );
-        DatatypeConverter.parseBase64Binary( imageSource );
 
         file.setTitle( "crop_" + entry.getTitle( ) );
 
@@ -112,7 +115,7 @@ public abstract class AbstractEntryTypeImage extends AbstractEntryTypeUpload
             file.setMimeType( FileSystemUtil.getMIMEType( file.getTitle( ) ) );
 
             PhysicalFile physicalFile = new PhysicalFile( );
-            physicalFile.setValue( DatatypeConverter.parseBase64Binary( imageSource ) );
+            physicalFile.setValue( downscaleImage( DataUri.decode( imageSource ), entry ) );
             file.setPhysicalFile( physicalFile );
         }
 
@@ -120,4 +123,28 @@ public abstract class AbstractEntryTypeImage extends AbstractEntryTypeUpload
 
         return response;
     }
+
+    /**
+     * Downscale an image to the width and height of an entry, when the downscaling of the images is enabled
+     * 
+     * @param imageBytes
+     *            The image
+     * @param entry
+     *            The entry
+     * @return The image to store
+     */
+    protected byte [ ] downscaleImage( byte [ ] imageBytes, Entry entry )
+    {
+        if ( ( imageBytes == null ) || !ImageIngestService.isEnabled( ) )
+        {
+            return imageBytes;
+        }
+
+        Field fieldWidth = entry.getFieldByCode( FIELD_WIDTH );
+        Field fieldHeight = entry.getFieldByCode( FIELD_HEIGHT );
+        int nMaxWidth = ( fieldWidth != null ) ? NumberUtils.toInt( fieldWidth.getValue( ), -1 ) : -1;
+        int nMaxHeight = ( fieldHeight != null ) ? NumberUtils.toInt( fieldHeight.getValue( ), -1 ) : -1;
+
+        return ImageIngestService.downscale( imageBytes, nMaxWidth, nMaxHeight );
+    }
 }
@@ -163,6 +163,15 @@ public abstract class AbstractEntryTypeRadioButton extends EntryTypeService
         return null;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isResponseValueOfField( )
+    {
+        return true;
+    }
+
     /**
      * {@inheritDoc}
      */
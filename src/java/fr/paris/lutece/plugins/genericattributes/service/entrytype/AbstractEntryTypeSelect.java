@@ -142,6 +142,15 @@ public abstract class AbstractEntryTypeSelect extends EntryTypeService
         return null;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isResponseValueOfField( )
+    {
+        return true;
+    }
+
     /**
      * {@inheritDoc}
      */
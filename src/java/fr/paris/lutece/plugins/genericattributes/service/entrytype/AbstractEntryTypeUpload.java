@@ -33,15 +33,14 @@
  */
 package fr.paris.lutece.plugins.genericattributes.service.entrytype;
 
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 
-import javax.imageio.ImageIO;
 import javax.servlet.http.HttpServletRequest;
 
 import org.apache.commons.fileupload.FileItem;
@@ -54,8 +53,11 @@ import fr.paris.lutece.plugins.genericattributes.business.Field;
 import fr.paris.lutece.plugins.genericattributes.business.FieldHome;
 import fr.paris.lutece.plugins.genericattributes.business.GenericAttributeError;
 import fr.paris.lutece.plugins.genericattributes.business.Response;
+import fr.paris.lutece.plugins.genericattributes.service.export.IResponseExportSink;
 import fr.paris.lutece.plugins.genericattributes.service.file.FileService;
+import fr.paris.lutece.plugins.genericattributes.service.upload.UploadPolicy;
 import fr.paris.lutece.plugins.genericattributes.util.FileAttributesUtils;
+import fr.paris.lutece.plugins.genericattributes.util.ImageHeader;
 import fr.paris.lutece.portal.business.file.File;
 import fr.paris.lutece.portal.business.regularexpression.RegularExpression;
 import fr.paris.lutece.portal.service.fileupload.FileUploadService;
@@ -65,6 +67,7 @@ import fr.paris.lutece.portal.service.regularexpression.RegularExpressionService
 import fr.paris.lutece.portal.service.spring.SpringContextService;
 import fr.paris.lutece.portal.service.util.AppLogService;
 import fr.paris.lutece.portal.service.util.AppPathService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
 import fr.paris.lutece.util.ReferenceList;
 import fr.paris.lutece.util.url.UrlItem;
 
@@ -91,6 +94,11 @@ public abstract class AbstractEntryTypeUpload extends EntryTypeService
 
     // MESSAGES
     protected static final String MESSAGE_ERROR_NOT_AN_IMAGE = "genericattributes.message.notAnImage";
+    protected static final String MESSAGE_ERROR_IMAGE_TOO_LARGE = "genericattributes.message.error.image_too_large";
+
+    // PROPERTIES
+    private static final String PROPERTY_IMAGE_MAX_PIXELS = "genericattributes.upload.image.maxPixels";
+    private static final long DEFAULT_IMAGE_MAX_PIXELS = 200000000L;
 
     /**
      * Get the asynchronous upload handler to use for entries of this type
@@ -117,6 +125,16 @@ public abstract class AbstractEntryTypeUpload extends EntryTypeService
      */
     protected abstract boolean checkForImages( );
 
+    /**
+     * Check whether this entry type allows only images or every file type
+     * 
+     * @return True if this entry type allows only images, false if it allow every file type
+     */
+    public boolean isImagesOnly( )
+    {
+        return checkForImages( );
+    }
+
     /**
      * Get the URL to download a file of a response throw the image servlet.
      * 
@@ -175,20 +193,62 @@ public abstract class AbstractEntryTypeUpload extends EntryTypeService
     }
 
     /**
-     * {@inheritDoc}
+     * Check if files can be uploaded to an entry with its compiled upload policy, without reading the entry
+     * 
+     * @param policy
+     *            The upload policy of the entry
+     * @param listUploadedFileItems
+     *            The files already uploaded
+     * @param listFileItemsToUpload
+     *            The files to upload
+     * @param locale
+     *            The locale
+     * @return The error if any, or null if the files can be uploaded
      */
-    @Override
-    public String getResponseValueForExport( Entry entry, HttpServletRequest request, Response response, Locale locale )
+    public GenericAttributeError canUploadFiles( UploadPolicy policy, List<FileItem> listUploadedFileItems, List<FileItem> listFileItemsToUpload,
+            Locale locale )
     {
-        // Check whether the binaries must be exported or just displaying an URL to download the file
-        if ( entry.getFields( ) == null )
+        GenericAttributeError error = policy.checkNumberFiles( listUploadedFileItems, listFileItemsToUpload, locale );
+        if ( error != null )
         {
-            entry.setFields( FieldHome.getFieldListByIdEntry( entry.getIdEntry( ) ) );
+            return error;
         }
 
-        Field field = entry.getFieldByCode( FIELD_FILE_BINARY );
+        error = policy.checkFileSize( listUploadedFileItems, listFileItemsToUpload, locale );
+        if ( error != null )
+        {
+            return error;
+        }
+
+        if ( listFileItemsToUpload != null )
+        {
+            for ( FileItem fileItem : listFileItemsToUpload )
+            {
+                error = policy.checkMimeType( fileItem );
+
+                if ( ( error == null ) && policy.isImagesOnly( ) )
+                {
+                    error = doCheckforImages( fileItem, policy.getTitle( ), locale );
+                }
+
+                if ( error != null )
+                {
+                    return error;
+                }
+            }
+        }
+
+        return null;
+    }
 
-        if ( ( field != null ) && StringUtils.isNotBlank( field.getValue( ) ) && Boolean.TRUE.equals( Boolean.valueOf( field.getValue( ) ) ) )
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getResponseValueForExport( Entry entry, HttpServletRequest request, Response response, Locale locale )
+    {
+        // Check whether the binaries must be exported or just displaying an URL to download the file
+        if ( isExportBinary( entry ) )
         {
             if ( response.getFile( ) != null )
             {
@@ -215,6 +275,60 @@ public abstract class AbstractEntryTypeUpload extends EntryTypeService
         return getUrlDownloadFile( response.getIdResponse( ), strBaseUrl );
     }
 
+    /**
+     * {@inheritDoc} When the binaries are exported, the content of the file is streamed from its storage to the sink instead of being held in memory.
+     */
+    @Override
+    public void writeResponseValueForExport( Entry entry, HttpServletRequest request, Response response, Locale locale, IResponseExportSink sink )
+            throws IOException
+    {
+        if ( !isExportBinary( entry ) )
+        {
+            sink.writeText( getResponseValueForExport( entry, request, response, locale ) );
+
+            return;
+        }
+
+        if ( response.getFile( ) != null )
+        {
+            FileService fileService = SpringContextService.getBean( FileService.BEAN_SERVICE );
+            File file = response.getFile( );
+
+            if ( file.getPhysicalFile( ) == null )
+            {
+                // The file of the response has not been resolved by the caller
+                file = fileService.findByPrimaryKey( file.getIdFile( ), false );
+            }
+
+            if ( file != null )
+            {
+                try ( OutputStream out = sink.openFile( file.getTitle( ) ) )
+                {
+                    fileService.writeContent( file, out );
+                }
+            }
+        }
+    }
+
+    /**
+     * Check whether the binaries of the files of an entry are exported, instead of the URL to download them
+     * 
+     * @param entry
+     *            The entry, whose fields are loaded if needed
+     * @return true if the binaries are exported
+     */
+    private boolean isExportBinary( Entry entry )
+    {
+        if ( entry.getFields( ) == null )
+        {
+            entry.setFields( FieldHome.getFieldListByIdEntry( entry.getIdEntry( ) ) );
+        }
+
+        Field field = entry.getFieldByCode( FIELD_FILE_BINARY );
+
+        return ( field != null ) && StringUtils.isNotBlank( field.getValue( ) ) && Boolean.TRUE.equals( Boolean.valueOf( field.getValue( ) ) );
+    }
+
     // CHECKS
 
     /**
@@ -402,23 +516,40 @@ public abstract class AbstractEntryTypeUpload extends EntryTypeService
      * @return The error if any, or null if the file is a valid image
      */
     public GenericAttributeError doCheckforImages( FileItem fileItem, Entry entry, Locale locale )
+    {
+        return doCheckforImages( fileItem, entry.getTitle( ), locale );
+    }
+
+    /**
+     * Do check that an uploaded file is an image
+     * 
+     * @param fileItem
+     *            The file item
+     * @param strTitle
+     *            the title of the entry
+     * @param locale
+     *            The locale
+     * @return The error if any, or null if the file is a valid image
+     */
+    protected GenericAttributeError doCheckforImages( FileItem fileItem, String strTitle, Locale locale )
     {
         String strFilename = FileUploadService.getFileNameOnly( fileItem );
-        BufferedImage image = null;
+        ImageHeader header = null;
 
-        try
+        // Only the header of the image is read: the format and the dimensions are enough to tell it is an image
+        if ( fileItem.getSize( ) > 0 )
         {
-            if ( fileItem.get( ) != null )
+            try ( InputStream inputStream = fileItem.getInputStream( ) )
             {
-                image = ImageIO.read( new ByteArrayInputStream( fileItem.get( ) ) );
+                header = ImageHeader.read( inputStream );
+            }
+            catch( IOException e )
+            {
+                AppLogService.error( e );
             }
-        }
-        catch( IOException e )
-        {
-            AppLogService.error( e );
         }
 
-        if ( ( image == null ) && StringUtils.isNotBlank( strFilename ) )
+        if ( ( header == null ) && StringUtils.isNotBlank( strFilename ) )
         {
             GenericAttributeError genAttError = new GenericAttributeError( );
             genAttError.setMandatoryError( false );
@@ -427,11 +558,55 @@ public abstract class AbstractEntryTypeUpload extends EntryTypeService
                     fileItem.getName( )
             };
             genAttError.setErrorMessage( I18nService.getLocalizedString( MESSAGE_ERROR_NOT_AN_IMAGE, args, locale ) );
-            genAttError.setTitleQuestion( entry.getTitle( ) );
+            genAttError.setTitleQuestion( strTitle );
+
+            return genAttError;
+        }
+
+        return doCheckPixels( header, fileItem.getName( ), strTitle, locale );
+    }
+
+    /**
+     * Do check that an image does not exceed the maximum number of pixels
+     * 
+     * @param header
+     *            The header of the image, or null if there is no image
+     * @param strName
+     *            The name of the image, displayed in the error
+     * @param strTitle
+     *            the title of the entry
+     * @param locale
+     *            The locale
+     * @return The error if any, or null if the image is not too large
+     */
+    protected GenericAttributeError doCheckPixels( ImageHeader header, String strName, String strTitle, Locale locale )
+    {
+        long lMaxPixels = getImageMaxPixels( );
+
+        if ( ( header != null ) && ( lMaxPixels > 0 ) && ( header.getPixelCount( ) > lMaxPixels ) )
+        {
+            GenericAttributeError genAttError = new GenericAttributeError( );
+            genAttError.setMandatoryError( false );
+
+            Object [ ] args = {
+                    strName, lMaxPixels
+            };
+            genAttError.setErrorMessage( I18nService.getLocalizedString( MESSAGE_ERROR_IMAGE_TOO_LARGE, args, locale ) );
+            genAttError.setTitleQuestion( strTitle );
 
             return genAttError;
         }
 
         return null;
     }
+
+    /**
+     * Get the maximum number of pixels of an uploaded image, which protects the server from the images that are small files but huge once decoded
+     * 
+     * @return The maximum number of pixels, 0 for no limit
+     */
+    protected static long getImageMaxPixels( )
+    {
+        return NumberUtils.toLong( AppPropertiesService.getProperty( PROPERTY_IMAGE_MAX_PIXELS ), DEFAULT_IMAGE_MAX_PIXELS );
+    }
 }
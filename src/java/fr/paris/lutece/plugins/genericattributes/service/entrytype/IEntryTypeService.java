@@ -36,11 +36,13 @@ package fr.paris.lutece.plugins.genericattributes.service.entrytype;
 import fr.paris.lutece.plugins.genericattributes.business.Entry;
 import fr.paris.lutece.plugins.genericattributes.business.GenericAttributeError;
 import fr.paris.lutece.plugins.genericattributes.business.Response;
+import fr.paris.lutece.plugins.genericattributes.service.export.IResponseExportSink;
 import fr.paris.lutece.portal.service.plugin.Plugin;
 import fr.paris.lutece.util.ReferenceList;
 
 import org.apache.commons.fileupload.FileItem;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Locale;
 
@@ -229,6 +231,30 @@ public interface IEntryTypeService
      */
     String getResponseValueForExport( Entry entry, HttpServletRequest request, Response response, Locale locale );
 
+    /**
+     * Write the response value associate to the entry to an export sink. The entry types with files stream their content to the sink, which writes it inline
+     * or as a separate entry of an archive, so that the memory used does not depend on the size of the files. By default, the value of
+     * {@link #getResponseValueForExport(Entry, HttpServletRequest, Response, Locale)} is written as a text.
+     * 
+     * @param entry
+     *            The entry
+     * @param request
+     *            the request
+     * @param response
+     *            the response associate to the entry
+     * @param locale
+     *            the locale
+     * @param sink
+     *            the sink of the value
+     * @throws IOException
+     *             if the value can not be written
+     */
+    default void writeResponseValueForExport( Entry entry, HttpServletRequest request, Response response, Locale locale, IResponseExportSink sink )
+            throws IOException
+    {
+        sink.writeText( getResponseValueForExport( entry, request, response, locale ) );
+    }
+
     /**
      * Get the response value associate to the entry to write in the recap
      * 
@@ -295,4 +321,14 @@ public interface IEntryTypeService
      * @return the template associated to an EntryType for read only uses
      */
     String getTemplateEntryReadOnly( boolean bDisplayFront );
+
+    /**
+     * Tell if the value of the responses of this entry type is always the value of their field, so that they can be stored as a reference to their field only
+     * 
+     * @return true if the value of a response is the value of its field
+     */
+    default boolean isResponseValueOfField( )
+    {
+        return false;
+    }
 }
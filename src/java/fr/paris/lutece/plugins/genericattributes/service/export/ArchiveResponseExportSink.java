@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.export;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Export sink writing the contents of the files as separate entries of a ZIP archive. The value written to the text writer is then the path of the entry
+ * in the archive. The text is written to its own writer, as an entry of an archive can not be written while another one is open: it can be added to the
+ * archive once all the files are written.
+ */
+public class ArchiveResponseExportSink implements IResponseExportSink
+{
+    private static final String DEFAULT_DIRECTORY = "files/";
+    private static final String SEPARATOR_NAME = "_";
+    private static final String PATTERN_UNSAFE_CHARACTERS = "[\\\\/:*?\"<>|\\p{Cntrl}]";
+
+    private final ZipOutputStream _zipOutputStream;
+    private final Writer _writer;
+    private final String _strDirectory;
+    private int _nFileCount;
+
+    /**
+     * Constructor, the files being written in the directory <code>files/</code> of the archive
+     * 
+     * @param zipOutputStream
+     *            The archive, not closed by the sink
+     * @param writer
+     *            The writer of the values, not closed by the sink
+     */
+    public ArchiveResponseExportSink( ZipOutputStream zipOutputStream, Writer writer )
+    {
+        this( zipOutputStream, writer, DEFAULT_DIRECTORY );
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param zipOutputStream
+     *            The archive, not closed by the sink
+     * @param writer
+     *            The writer of the values, not closed by the sink
+     * @param strDirectory
+     *            The directory of the files in the archive, ending with a slash
+     */
+    public ArchiveResponseExportSink( ZipOutputStream zipOutputStream, Writer writer, String strDirectory )
+    {
+        _zipOutputStream = zipOutputStream;
+        _writer = writer;
+        _strDirectory = strDirectory;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeText( String strValue ) throws IOException
+    {
+        if ( strValue != null )
+        {
+            _writer.write( strValue );
+        }
+    }
+
+    /**
+     * {@inheritDoc} The files are numbered so that files with the same name do not collide.
+     */
+    @Override
+    public OutputStream openFile( String strFileName ) throws IOException
+    {
+        String strSafeName = ( strFileName != null ) ? strFileName.replaceAll( PATTERN_UNSAFE_CHARACTERS, SEPARATOR_NAME ) : "";
+        String strPath = _strDirectory + ( ++_nFileCount ) + SEPARATOR_NAME + strSafeName;
+
+        _zipOutputStream.putNextEntry( new ZipEntry( strPath ) );
+        _writer.write( strPath );
+
+        return new FilterOutputStream( _zipOutputStream )
+        {
+            @Override
+            public void write( byte [ ] bytes, int nOffset, int nLength ) throws IOException
+            {
+                out.write( bytes, nOffset, nLength );
+            }
+
+            @Override
+            public void close( ) throws IOException
+            {
+                _zipOutputStream.closeEntry( );
+            }
+        };
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Base64;
+
+/**
+ * Export sink writing the values to a text writer, the contents of the files being encoded in base64 as they are streamed
+ */
+public class Base64ResponseExportSink implements IResponseExportSink
+{
+    private static final int BUFFER_SIZE = 4096;
+
+    private final Writer _writer;
+
+    /**
+     * Constructor
+     * 
+     * @param writer
+     *            The writer of the values, not closed by the sink
+     */
+    public Base64ResponseExportSink( Writer writer )
+    {
+        _writer = writer;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeText( String strValue ) throws IOException
+    {
+        if ( strValue != null )
+        {
+            _writer.write( strValue );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public OutputStream openFile( String strFileName ) throws IOException
+    {
+        return Base64.getEncoder( ).wrap( new WriterOutputStream( _writer ) );
+    }
+
+    /**
+     * Stream writing the ASCII characters of base64 to a writer, without closing it
+     */
+    private static final class WriterOutputStream extends OutputStream
+    {
+        private final Writer _writerOut;
+        private final char [ ] _buffer = new char [ BUFFER_SIZE];
+        private int _nLength;
+
+        /**
+         * Constructor
+         * 
+         * @param writer
+         *            The writer
+         */
+        WriterOutputStream( Writer writer )
+        {
+            _writerOut = writer;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void write( int nByte ) throws IOException
+        {
+            if ( _nLength == _buffer.length )
+            {
+                flush( );
+            }
+
+            _buffer [_nLength++] = (char) ( nByte & 0xFF );
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void write( byte [ ] bytes, int nOffset, int nLength ) throws IOException
+        {
+            for ( int nIndex = nOffset; nIndex < ( nOffset + nLength ); nIndex++ )
+            {
+                write( bytes [nIndex] );
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void flush( ) throws IOException
+        {
+            _writerOut.write( _buffer, 0, _nLength );
+            _nLength = 0;
+        }
+
+        /**
+         * {@inheritDoc} The writer is left open.
+         */
+        @Override
+        public void close( ) throws IOException
+        {
+            flush( );
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.export;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Constants and primitives of the columnar export format, shared by its writer and its reader. The integers are written as unsigned variable length
+ * integers, 7 bits by byte with the high bit set on all the bytes but the last, and the strings as their length in bytes followed by their UTF-8 bytes.
+ */
+final class ColumnarExportFormat
+{
+    /** The magic bytes at the start of a file */
+    static final byte [ ] MAGIC = {
+            'G', 'A', 'C', 'O', 'L'
+    };
+
+    /** The version of the format */
+    static final int VERSION = 1;
+
+    /** The kind of a column of text values */
+    static final int KIND_TEXT = 0;
+
+    /** The kind of a column of dictionary ids */
+    static final int KIND_DICTIONARY = 1;
+
+    /** The dictionary id written before a text value in a column of dictionary ids, the ids of the fields being positive */
+    static final int ID_TEXT_VALUE = 0;
+
+    /**
+     * Private constructor
+     */
+    private ColumnarExportFormat( )
+    {
+    }
+
+    /**
+     * Write a non negative integer
+     * 
+     * @param out
+     *            The stream
+     * @param nValue
+     *            The integer
+     * @throws IOException
+     *             if the integer can not be written
+     */
+    static void writeInt( OutputStream out, int nValue ) throws IOException
+    {
+        int nRemaining = nValue;
+
+        while ( ( nRemaining & ~0x7F ) != 0 )
+        {
+            out.write( ( nRemaining & 0x7F ) | 0x80 );
+            nRemaining >>>= 7;
+        }
+
+        out.write( nRemaining );
+    }
+
+    /**
+     * Read a non negative integer
+     * 
+     * @param in
+     *            The stream
+     * @return The integer
+     * @throws IOException
+     *             if the integer can not be read
+     */
+    static int readInt( InputStream in ) throws IOException
+    {
+        int nValue = 0;
+
+        for ( int nShift = 0; nShift < 32; nShift += 7 )
+        {
+            int nByte = in.read( );
+
+            if ( nByte < 0 )
+            {
+                throw new EOFException( );
+            }
+
+            nValue |= ( nByte & 0x7F ) << nShift;
+
+            if ( ( nByte & 0x80 ) == 0 )
+            {
+                return nValue;
+            }
+        }
+
+        throw new IOException( "Malformed integer in columnar export" );
+    }
+
+    /**
+     * Write a signed integer, zigzag encoded so that the small negative integers stay short
+     * 
+     * @param out
+     *            The stream
+     * @param nValue
+     *            The integer
+     * @throws IOException
+     *             if the integer can not be written
+     */
+    static void writeSignedInt( OutputStream out, int nValue ) throws IOException
+    {
+        writeInt( out, ( nValue << 1 ) ^ ( nValue >> 31 ) );
+    }
+
+    /**
+     * Read a signed integer
+     * 
+     * @param in
+     *            The stream
+     * @return The integer
+     * @throws IOException
+     *             if the integer can not be read
+     */
+    static int readSignedInt( InputStream in ) throws IOException
+    {
+        int nValue = readInt( in );
+
+        return ( nValue >>> 1 ) ^ -( nValue & 1 );
+    }
+
+    /**
+     * Write a string
+     * 
+     * @param out
+     *            The stream
+     * @param strValue
+     *            The string
+     * @throws IOException
+     *             if the string can not be written
+     */
+    static void writeString( OutputStream out, String strValue ) throws IOException
+    {
+        byte [ ] bytes = strValue.getBytes( StandardCharsets.UTF_8 );
+        writeInt( out, bytes.length );
+        out.write( bytes );
+    }
+
+    /**
+     * Read a string
+     * 
+     * @param in
+     *            The stream
+     * @return The string
+     * @throws IOException
+     *             if the string can not be read
+     */
+    static String readString( InputStream in ) throws IOException
+    {
+        return new String( readBytes( in, readInt( in ) ), StandardCharsets.UTF_8 );
+    }
+
+    /**
+     * Read a number of bytes
+     * 
+     * @param in
+     *            The stream
+     * @param nLength
+     *            The number of bytes
+     * @return The bytes
+     * @throws IOException
+     *             if the stream ends before the bytes
+     */
+    static byte [ ] readBytes( InputStream in, int nLength ) throws IOException
+    {
+        byte [ ] bytes = new byte [ nLength];
+        int nOffset = 0;
+
+        while ( nOffset < nLength )
+        {
+            int nRead = in.read( bytes, nOffset, nLength - nOffset );
+
+            if ( nRead < 0 )
+            {
+                throw new EOFException( );
+            }
+
+            nOffset += nRead;
+        }
+
+        return bytes;
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.export;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reader of the columnar files written by {@link ColumnarResponseExportWriter}, row by row. Only the rows of the current block are held in memory.
+ */
+public class ColumnarResponseExportReader implements Closeable
+{
+    private final InputStream _in;
+    private final Inflater _inflater = new Inflater( );
+    private final int [ ] _idEntries;
+    private final String [ ] _codes;
+    private final List<Map<Integer, String>> _listDictionaries = new ArrayList<>( );
+    private final Deque<Row> _rows = new ArrayDeque<>( );
+    private boolean _bEnd;
+
+    /**
+     * Constructor. The header of the file is read at once.
+     * 
+     * @param in
+     *            The stream of the file, closed with the reader
+     * @throws IOException
+     *             if the header can not be read or is not the header of a columnar export
+     */
+    public ColumnarResponseExportReader( InputStream in ) throws IOException
+    {
+        _in = in;
+
+        byte [ ] magic = ColumnarExportFormat.readBytes( in, ColumnarExportFormat.MAGIC.length );
+
+        if ( !Arrays.equals( magic, ColumnarExportFormat.MAGIC ) || ( in.read( ) != ColumnarExportFormat.VERSION ) )
+        {
+            throw new IOException( "Not a columnar export of version " + ColumnarExportFormat.VERSION );
+        }
+
+        int nColumns = ColumnarExportFormat.readInt( in );
+        _idEntries = new int [ nColumns];
+        _codes = new String [ nColumns];
+
+        for ( int nColumn = 0; nColumn < nColumns; nColumn++ )
+        {
+            _idEntries [nColumn] = ColumnarExportFormat.readInt( in );
+            _codes [nColumn] = ColumnarExportFormat.readString( in );
+
+            if ( in.read( ) == ColumnarExportFormat.KIND_DICTIONARY )
+            {
+                Map<Integer, String> mapDictionary = new HashMap<>( );
+                int nSize = ColumnarExportFormat.readInt( in );
+
+                for ( int nIndex = 0; nIndex < nSize; nIndex++ )
+                {
+                    int nIdField = ColumnarExportFormat.readInt( in );
+                    mapDictionary.put( nIdField, ColumnarExportFormat.readString( in ) );
+                }
+
+                _listDictionaries.add( mapDictionary );
+            }
+            else
+            {
+                _listDictionaries.add( null );
+            }
+        }
+    }
+
+    /**
+     * Get the number of columns
+     * 
+     * @return The number of columns
+     */
+    public int getColumnCount( )
+    {
+        return _idEntries.length;
+    }
+
+    /**
+     * Get the id of the entry of a column
+     * 
+     * @param nColumn
+     *            The index of the column
+     * @return The id of the entry
+     */
+    public int getIdEntry( int nColumn )
+    {
+        return _idEntries [nColumn];
+    }
+
+    /**
+     * Get the code of the entry of a column
+     * 
+     * @param nColumn
+     *            The index of the column
+     * @return The code of the entry
+     */
+    public String getCode( int nColumn )
+    {
+        return _codes [nColumn];
+    }
+
+    /**
+     * Get the dictionary of a column
+     * 
+     * @param nColumn
+     *            The index of the column
+     * @return The values of the fields by id, or null if the column holds strings
+     */
+    public Map<Integer, String> getDictionary( int nColumn )
+    {
+        Map<Integer, String> mapDictionary = _listDictionaries.get( nColumn );
+
+        return ( mapDictionary != null ) ? Collections.unmodifiableMap( mapDictionary ) : null;
+    }
+
+    /**
+     * Read the next row
+     * 
+     * @return The row, or null at the end of the file
+     * @throws IOException
+     *             if the file can not be read
+     */
+    public Row readRow( ) throws IOException
+    {
+        while ( _rows.isEmpty( ) && !_bEnd )
+        {
+            readBlock( );
+        }
+
+        return _rows.poll( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close( ) throws IOException
+    {
+        _inflater.end( );
+        _in.close( );
+    }
+
+    /**
+     * Read the next block, or the end of the file
+     * 
+     * @throws IOException
+     *             if the block can not be read
+     */
+    private void readBlock( ) throws IOException
+    {
+        int nCompressedLength = ColumnarExportFormat.readInt( _in );
+
+        if ( nCompressedLength == 0 )
+        {
+            _bEnd = true;
+
+            return;
+        }
+
+        int nRawLength = ColumnarExportFormat.readInt( _in );
+        byte [ ] raw = new byte [ nRawLength];
+
+        _inflater.reset( );
+        _inflater.setInput( ColumnarExportFormat.readBytes( _in, nCompressedLength ) );
+
+        try
+        {
+            if ( ( _inflater.inflate( raw ) != nRawLength ) || !_inflater.finished( ) )
+            {
+                throw new IOException( "Corrupted block in columnar export" );
+            }
+        }
+        catch( DataFormatException e )
+        {
+            throw new IOException( "Corrupted block in columnar export", e );
+        }
+
+        InputStream in = new ByteArrayInputStream( raw );
+        int nRows = ColumnarExportFormat.readInt( in );
+        List<Row> listRows = new ArrayList<>( nRows );
+        int nIdRow = 0;
+
+        for ( int nIndex = 0; nIndex < nRows; nIndex++ )
+        {
+            nIdRow += ColumnarExportFormat.readSignedInt( in );
+            listRows.add( new Row( nIdRow, _idEntries.length ) );
+        }
+
+        for ( int nColumn = 0; nColumn < _idEntries.length; nColumn++ )
+        {
+            Map<Integer, String> mapDictionary = _listDictionaries.get( nColumn );
+
+            for ( Row row : listRows )
+            {
+                int nValues = ColumnarExportFormat.readInt( in );
+
+                for ( int nValue = 0; nValue < nValues; nValue++ )
+                {
+                    int nIdField = ( mapDictionary != null ) ? ColumnarExportFormat.readInt( in ) : ColumnarExportFormat.ID_TEXT_VALUE;
+                    String strValue = ( nIdField != ColumnarExportFormat.ID_TEXT_VALUE ) ? mapDictionary.get( nIdField ) : ColumnarExportFormat.readString( in );
+                    row._listIds.get( nColumn ).add( nIdField );
+                    row._listValues.get( nColumn ).add( strValue );
+                }
+            }
+        }
+
+        _rows.addAll( listRows );
+    }
+
+    /**
+     * A row of a columnar export
+     */
+    public static class Row
+    {
+        private final int _nIdRow;
+        private final List<List<Integer>> _listIds;
+        private final List<List<String>> _listValues;
+
+        /**
+         * Constructor
+         * 
+         * @param nIdRow
+         *            The id of the row
+         * @param nColumns
+         *            The number of columns
+         */
+        Row( int nIdRow, int nColumns )
+        {
+            _nIdRow = nIdRow;
+            _listIds = new ArrayList<>( nColumns );
+            _listValues = new ArrayList<>( nColumns );
+
+            for ( int nColumn = 0; nColumn < nColumns; nColumn++ )
+            {
+                _listIds.add( new ArrayList<>( 1 ) );
+                _listValues.add( new ArrayList<>( 1 ) );
+            }
+        }
+
+        /**
+         * Get the id of the row
+         * 
+         * @return The id of the row
+         */
+        public int getIdRow( )
+        {
+            return _nIdRow;
+        }
+
+        /**
+         * Get the values of a cell, the values of the dictionary ids being resolved
+         * 
+         * @param nColumn
+         *            The index of the column
+         * @return The values of the cell
+         */
+        public List<String> getValues( int nColumn )
+        {
+            return Collections.unmodifiableList( _listValues.get( nColumn ) );
+        }
+
+        /**
+         * Get the dictionary ids of a cell, that is the ids of the fields of its values, 0 standing for a value which is not in the dictionary
+         * 
+         * @param nColumn
+         *            The index of the column
+         * @return The dictionary ids of the cell
+         */
+        public List<Integer> getIds( int nColumn )
+        {
+            return Collections.unmodifiableList( _listIds.get( nColumn ) );
+        }
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.export;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import fr.paris.lutece.plugins.genericattributes.business.Entry;
+import fr.paris.lutece.plugins.genericattributes.business.Field;
+import fr.paris.lutece.plugins.genericattributes.business.Response;
+import fr.paris.lutece.plugins.genericattributes.service.entrytype.EntryTypeServiceManager;
+import fr.paris.lutece.plugins.genericattributes.service.entrytype.IEntryTypeService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Writer of responses in a columnar file for the analytics tools, with one column per entry and one row per row key of the responses, for instance the id of
+ * the form response which holds them. The file is written block by block, so that only the rows of the current block are held in memory:
+ * <ul>
+ * <li>the header gives the id and the code of the entry of each column, and for the columns of choice entries their dictionary, made of the id and the value
+ * of the fields of the entry in <code>genatt_field</code>;</li>
+ * <li>each block holds up to a number of rows, column after column. A cell holds the values of all the responses of its row and its entry, as strings or,
+ * in the columns of choice entries, as the ids of their field. A block is compressed with deflate, and is preceded by its compressed and uncompressed
+ * lengths;</li>
+ * <li>a compressed length of 0 ends the file.</li>
+ * </ul>
+ * The responses of a row are expected to follow each other, the rows whose responses are interleaved being merged within a block only: a reader merges the
+ * rows with the same id when it needs to. The values are the values stored in the responses, or the title of their file.
+ * 
+ * @see ColumnarResponseExportReader
+ */
+public class ColumnarResponseExportWriter implements IResponseExportHandler
+{
+    // Properties
+    private static final String PROPERTY_BLOCK_SIZE = "genericattributes.export.columnar.blockSize";
+    private static final int DEFAULT_BLOCK_SIZE = 4096;
+
+    private final OutputStream _out;
+    private final ToIntFunction<Response> _rowKey;
+    private final int _nBlockSize;
+    private final Map<Integer, Integer> _mapColumns = new HashMap<>( );
+    private final List<Map<Integer, String>> _listDictionaries = new ArrayList<>( );
+    private final Map<Integer, List<List<Object>>> _mapRows = new LinkedHashMap<>( );
+    private final ByteArrayOutputStream _rawBlock = new ByteArrayOutputStream( );
+    private final ByteArrayOutputStream _compressedBlock = new ByteArrayOutputStream( );
+    private final Deflater _deflater = new Deflater( );
+
+    /**
+     * Constructor. The header of the file is written at once.
+     * 
+     * @param out
+     *            The stream of the file, not closed
+     * @param listEntries
+     *            The entries of the columns, in the order of the columns
+     * @param rowKey
+     *            The function giving the id of the row of a response
+     * @throws IOException
+     *             if the header can not be written
+     */
+    public ColumnarResponseExportWriter( OutputStream out, Collection<Entry> listEntries, ToIntFunction<Response> rowKey ) throws IOException
+    {
+        this( out, listEntries, ColumnarResponseExportWriter::isChoice, rowKey,
+                Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_BLOCK_SIZE, DEFAULT_BLOCK_SIZE ) ) );
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param out
+     *            The stream of the file, not closed
+     * @param listEntries
+     *            The entries of the columns, in the order of the columns
+     * @param choice
+     *            The predicate telling whether the responses of an entry are the values of its fields
+     * @param rowKey
+     *            The function giving the id of the row of a response
+     * @param nBlockSize
+     *            The maximum number of rows of a block
+     * @throws IOException
+     *             if the header can not be written
+     */
+    ColumnarResponseExportWriter( OutputStream out, Collection<Entry> listEntries, Predicate<Entry> choice, ToIntFunction<Response> rowKey, int nBlockSize )
+            throws IOException
+    {
+        _out = out;
+        _rowKey = rowKey;
+        _nBlockSize = nBlockSize;
+
+        out.write( ColumnarExportFormat.MAGIC );
+        out.write( ColumnarExportFormat.VERSION );
+        ColumnarExportFormat.writeInt( out, listEntries.size( ) );
+
+        for ( Entry entry : listEntries )
+        {
+            _mapColumns.put( entry.getIdEntry( ), _listDictionaries.size( ) );
+            ColumnarExportFormat.writeInt( out, entry.getIdEntry( ) );
+            ColumnarExportFormat.writeString( out, ( entry.getCode( ) != null ) ? entry.getCode( ) : "" );
+
+            if ( choice.test( entry ) && ( entry.getFields( ) != null ) )
+            {
+                Map<Integer, String> mapDictionary = new HashMap<>( );
+                out.write( ColumnarExportFormat.KIND_DICTIONARY );
+                ColumnarExportFormat.writeInt( out, entry.getFields( ).size( ) );
+
+                for ( Field field : entry.getFields( ) )
+                {
+                    String strValue = ( field.getValue( ) != null ) ? field.getValue( ) : "";
+                    mapDictionary.put( field.getIdField( ), strValue );
+                    ColumnarExportFormat.writeInt( out, field.getIdField( ) );
+                    ColumnarExportFormat.writeString( out, strValue );
+                }
+
+                _listDictionaries.add( mapDictionary );
+            }
+            else
+            {
+                out.write( ColumnarExportFormat.KIND_TEXT );
+                _listDictionaries.add( null );
+            }
+        }
+    }
+
+    /**
+     * Add a response to its row. The responses of the entries without column are skipped, as are the responses without value.
+     * 
+     * @param response
+     *            The response
+     * @throws IOException
+     *             if the block of the previous rows can not be written
+     */
+    @Override
+    public void exportResponse( Response response ) throws IOException
+    {
+        Integer nColumn = ( response.getEntry( ) != null ) ? _mapColumns.get( response.getEntry( ).getIdEntry( ) ) : null;
+
+        if ( nColumn == null )
+        {
+            return;
+        }
+
+        Object value = getValue( _listDictionaries.get( nColumn ), response );
+
+        if ( value == null )
+        {
+            return;
+        }
+
+        int nIdRow = _rowKey.applyAsInt( response );
+        List<List<Object>> row = _mapRows.get( nIdRow );
+
+        if ( row == null )
+        {
+            if ( _mapRows.size( ) >= _nBlockSize )
+            {
+                writeBlock( );
+            }
+
+            row = new ArrayList<>( _listDictionaries.size( ) );
+
+            for ( int nIndex = 0; nIndex < _listDictionaries.size( ); nIndex++ )
+            {
+                row.add( null );
+            }
+
+            _mapRows.put( nIdRow, row );
+        }
+
+        List<Object> listValues = row.get( nColumn );
+
+        if ( listValues == null )
+        {
+            listValues = new ArrayList<>( 1 );
+            row.set( nColumn, listValues );
+        }
+
+        listValues.add( value );
+    }
+
+    /**
+     * Write the last block and the end of the file. The stream is flushed but not closed.
+     * 
+     * @throws IOException
+     *             if the file can not be written
+     */
+    public void finish( ) throws IOException
+    {
+        try
+        {
+            if ( !_mapRows.isEmpty( ) )
+            {
+                writeBlock( );
+            }
+
+            ColumnarExportFormat.writeInt( _out, 0 );
+            _out.flush( );
+        }
+        finally
+        {
+            _deflater.end( );
+        }
+    }
+
+    /**
+     * Get the value of a response in its column
+     * 
+     * @param mapDictionary
+     *            The dictionary of the column, or null for a column of strings
+     * @param response
+     *            The response
+     * @return The id of the field of the response when it is in the dictionary and the response has its value, the value of the response otherwise
+     */
+    private static Object getValue( Map<Integer, String> mapDictionary, Response response )
+    {
+        Field field = response.getField( );
+
+        if ( ( mapDictionary != null ) && ( field != null ) )
+        {
+            String strDictionaryValue = mapDictionary.get( field.getIdField( ) );
+
+            if ( ( strDictionaryValue != null ) && ( ( response.getResponseValue( ) == null ) || strDictionaryValue.equals( response.getResponseValue( ) ) ) )
+            {
+                return field.getIdField( );
+            }
+        }
+
+        if ( response.getFile( ) != null )
+        {
+            return response.getFile( ).getTitle( );
+        }
+
+        return response.getResponseValue( );
+    }
+
+    /**
+     * Write the rows held in memory as a block
+     * 
+     * @throws IOException
+     *             if the block can not be written
+     */
+    private void writeBlock( ) throws IOException
+    {
+        _rawBlock.reset( );
+        ColumnarExportFormat.writeInt( _rawBlock, _mapRows.size( ) );
+
+        int nPreviousIdRow = 0;
+
+        for ( int nIdRow : _mapRows.keySet( ) )
+        {
+            ColumnarExportFormat.writeSignedInt( _rawBlock, nIdRow - nPreviousIdRow );
+            nPreviousIdRow = nIdRow;
+        }
+
+        for ( int nColumn = 0; nColumn < _listDictionaries.size( ); nColumn++ )
+        {
+            boolean bDictionary = _listDictionaries.get( nColumn ) != null;
+
+            for ( List<List<Object>> row : _mapRows.values( ) )
+            {
+                writeCell( row.get( nColumn ), bDictionary );
+            }
+        }
+
+        _compressedBlock.reset( );
+        _deflater.reset( );
+
+        DeflaterOutputStream deflaterOut = new DeflaterOutputStream( _compressedBlock, _deflater );
+        _rawBlock.writeTo( deflaterOut );
+        deflaterOut.finish( );
+
+        ColumnarExportFormat.writeInt( _out, _compressedBlock.size( ) );
+        ColumnarExportFormat.writeInt( _out, _rawBlock.size( ) );
+        _compressedBlock.writeTo( _out );
+        _mapRows.clear( );
+    }
+
+    /**
+     * Write a cell in the current block
+     * 
+     * @param listValues
+     *            The values of the cell, or null for an empty cell
+     * @param bDictionary
+     *            true if the cell is in a column of dictionary ids
+     * @throws IOException
+     *             if the cell can not be written
+     */
+    private void writeCell( List<Object> listValues, boolean bDictionary ) throws IOException
+    {
+        if ( listValues == null )
+        {
+            ColumnarExportFormat.writeInt( _rawBlock, 0 );
+
+            return;
+        }
+
+        ColumnarExportFormat.writeInt( _rawBlock, listValues.size( ) );
+
+        for ( Object value : listValues )
+        {
+            if ( value instanceof Integer )
+            {
+                ColumnarExportFormat.writeInt( _rawBlock, (Integer) value );
+            }
+            else
+            {
+                if ( bDictionary )
+                {
+                    ColumnarExportFormat.writeInt( _rawBlock, ColumnarExportFormat.ID_TEXT_VALUE );
+                }
+
+                ColumnarExportFormat.writeString( _rawBlock, (String) value );
+            }
+        }
+    }
+
+    /**
+     * Tell whether the responses of an entry are the values of its fields
+     * 
+     * @param entry
+     *            The entry
+     * @return true if the responses of the entry are the values of its fields
+     */
+    private static boolean isChoice( Entry entry )
+    {
+        IEntryTypeService entryTypeService = EntryTypeServiceManager.getEntryTypeService( entry );
+
+        return ( entryTypeService != null ) && entryTypeService.isResponseValueOfField( );
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.export;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writer of the value of a quoted CSV cell, doubling the quotes of the value. Closing it does not close the underlying writer.
+ */
+class CsvValueWriter extends FilterWriter
+{
+    private static final char QUOTE = '"';
+
+    /**
+     * Constructor
+     * 
+     * @param writer
+     *            The writer of the CSV file
+     */
+    CsvValueWriter( Writer writer )
+    {
+        super( writer );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write( int nChar ) throws IOException
+    {
+        if ( nChar == QUOTE )
+        {
+            out.write( QUOTE );
+        }
+
+        out.write( nChar );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write( char [ ] buffer, int nOffset, int nLength ) throws IOException
+    {
+        int nStart = nOffset;
+        int nEnd = nOffset + nLength;
+
+        for ( int nIndex = nOffset; nIndex < nEnd; nIndex++ )
+        {
+            if ( buffer [nIndex] == QUOTE )
+            {
+                // Write the value up to the quote included, then the quote again
+                out.write( buffer, nStart, ( nIndex + 1 ) - nStart );
+                nStart = nIndex;
+            }
+        }
+
+        out.write( buffer, nStart, nEnd - nStart );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write( String str, int nOffset, int nLength ) throws IOException
+    {
+        int nStart = nOffset;
+        int nEnd = nOffset + nLength;
+
+        for ( int nIndex = nOffset; nIndex < nEnd; nIndex++ )
+        {
+            if ( str.charAt( nIndex ) == QUOTE )
+            {
+                out.write( str, nStart, ( nIndex + 1 ) - nStart );
+                nStart = nIndex;
+            }
+        }
+
+        out.write( str, nStart, nEnd - nStart );
+    }
+
+    /**
+     * {@inheritDoc} The underlying writer is left open.
+     */
+    @Override
+    public void close( ) throws IOException
+    {
+        flush( );
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.export;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+import fr.paris.lutece.plugins.genericattributes.business.Entry;
+import fr.paris.lutece.plugins.genericattributes.business.EntryFilter;
+import fr.paris.lutece.plugins.genericattributes.business.EntryHome;
+import fr.paris.lutece.plugins.genericattributes.business.Field;
+import fr.paris.lutece.plugins.genericattributes.business.FieldHome;
+import fr.paris.lutece.plugins.genericattributes.business.Response;
+import fr.paris.lutece.plugins.genericattributes.business.ResponseHome;
+import fr.paris.lutece.plugins.genericattributes.service.entrytype.EntryTypeServiceManager;
+import fr.paris.lutece.plugins.genericattributes.service.entrytype.IEntryTypeService;
+import fr.paris.lutece.portal.business.file.File;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Export of all the responses of a resource with a bounded memory. The responses are read by batches in ascending order of id. The entries of the resource
+ * and their fields are loaded once before the first batch, and the files of the responses of a batch are resolved with a single query, so that the entry
+ * types do not query the database for each response.
+ */
+public final class ResponseExportEngine
+{
+    // Properties
+    private static final String PROPERTY_BATCH_SIZE = "genericattributes.export.batchSize";
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+
+    // Constants
+    private static final String CSV_HEADER = "id_response;id_entry;entry_code;iteration_number;value";
+    private static final char CSV_SEPARATOR = ';';
+    private static final char CSV_QUOTE = '"';
+    private static final String CSV_LINE_SEPARATOR = "\r\n";
+
+    /**
+     * Private constructor
+     */
+    private ResponseExportEngine( )
+    {
+    }
+
+    /**
+     * Read all the responses of a resource and give them to a handler, in ascending order of id
+     * 
+     * @param nIdResource
+     *            The id of the resource
+     * @param strResourceType
+     *            The type of the resource
+     * @param handler
+     *            The handler of the responses
+     * @return The number of responses read
+     * @throws IOException
+     *             if the handler fails to write a response
+     */
+    public static int forEachResponse( int nIdResource, String strResourceType, IResponseExportHandler handler ) throws IOException
+    {
+        return forEachResponse( nIdResource, loadEntries( nIdResource, strResourceType ), handler );
+    }
+
+    /**
+     * Read all the responses of the given entries of a resource and give them to a handler, in ascending order of id
+     * 
+     * @param nIdResource
+     *            The id of the resource
+     * @param mapEntries
+     *            The entries of the resource by id, with their fields
+     * @param handler
+     *            The handler of the responses
+     * @return The number of responses read
+     * @throws IOException
+     *             if the handler fails to write a response
+     */
+    private static int forEachResponse( int nIdResource, Map<Integer, Entry> mapEntries, IResponseExportHandler handler ) throws IOException
+    {
+        if ( mapEntries.isEmpty( ) )
+        {
+            return 0;
+        }
+
+        int nBatchSize = Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_BATCH_SIZE, DEFAULT_BATCH_SIZE ) );
+        int nIdResponseAfter = 0;
+        int nCount = 0;
+        List<Response> listResponse;
+
+        do
+        {
+            listResponse = ResponseHome.getResponseBatchByIdResource( nIdResource, nIdResponseAfter, nBatchSize );
+
+            if ( listResponse.isEmpty( ) )
+            {
+                break;
+            }
+
+            nIdResponseAfter = listResponse.get( listResponse.size( ) - 1 ).getIdResponse( );
+            resolveFiles( listResponse );
+
+            for ( Response response : listResponse )
+            {
+                // The entries of another type of resource with the same id are skipped
+                Entry entry = mapEntries.get( response.getEntry( ).getIdEntry( ) );
+
+                if ( entry != null )
+                {
+                    response.setEntry( entry );
+                    handler.exportResponse( response );
+                    nCount++;
+                }
+            }
+        }
+        while ( listResponse.size( ) == nBatchSize );
+
+        return nCount;
+    }
+
+    /**
+     * Export all the responses of a resource as CSV rows, one per response, with the export value of the response. The files are written in base64.
+     * 
+     * @param nIdResource
+     *            The id of the resource
+     * @param strResourceType
+     *            The type of the resource
+     * @param locale
+     *            The locale of the values
+     * @param out
+     *            The stream of the CSV file, in UTF-8, flushed but not closed
+     * @return The number of responses exported
+     * @throws IOException
+     *             if the file can not be written
+     */
+    public static int exportCsv( int nIdResource, String strResourceType, Locale locale, OutputStream out ) throws IOException
+    {
+        Writer writer = new BufferedWriter( new OutputStreamWriter( out, StandardCharsets.UTF_8 ) );
+        int nCount = exportCsv( nIdResource, strResourceType, locale, writer );
+        writer.flush( );
+
+        return nCount;
+    }
+
+    /**
+     * Export all the responses of a resource as CSV rows, one per response, with the export value of the response. The files are written in base64.
+     * 
+     * @param nIdResource
+     *            The id of the resource
+     * @param strResourceType
+     *            The type of the resource
+     * @param locale
+     *            The locale of the values
+     * @param writer
+     *            The writer of the CSV file, not closed
+     * @return The number of responses exported
+     * @throws IOException
+     *             if the file can not be written
+     */
+    public static int exportCsv( int nIdResource, String strResourceType, Locale locale, Writer writer ) throws IOException
+    {
+        IResponseExportSink sink = new Base64ResponseExportSink( new CsvValueWriter( writer ) );
+
+        writer.write( CSV_HEADER );
+        writer.write( CSV_LINE_SEPARATOR );
+
+        return forEachResponse( nIdResource, strResourceType, response -> writeCsvRow( writer, sink, response, locale ) );
+    }
+
+    /**
+     * Export all the responses of a resource in a columnar file, with one column per entry of the resource in ascending order of id, and one row per row key
+     * of the responses. The responses of the choice entries are written as the ids of their field.
+     * 
+     * @param nIdResource
+     *            The id of the resource
+     * @param strResourceType
+     *            The type of the resource
+     * @param rowKey
+     *            The function giving the id of the row of a response, for instance the id of the form response which holds it
+     * @param out
+     *            The stream of the file, flushed but not closed
+     * @return The number of responses read
+     * @throws IOException
+     *             if the file can not be written
+     * @see ColumnarResponseExportWriter
+     */
+    public static int exportColumnar( int nIdResource, String strResourceType, ToIntFunction<Response> rowKey, OutputStream out ) throws IOException
+    {
+        Map<Integer, Entry> mapEntries = loadEntries( nIdResource, strResourceType );
+        List<Entry> listEntries = new ArrayList<>( mapEntries.values( ) );
+        listEntries.sort( Comparator.comparingInt( Entry::getIdEntry ) );
+
+        ColumnarResponseExportWriter columnarWriter = new ColumnarResponseExportWriter( out, listEntries, rowKey );
+        int nCount = forEachResponse( nIdResource, mapEntries, columnarWriter );
+        columnarWriter.finish( );
+
+        return nCount;
+    }
+
+    /**
+     * Write the CSV row of a response
+     * 
+     * @param writer
+     *            The writer of the CSV file
+     * @param sink
+     *            The sink of the values, writing to the writer with the quotes of the values doubled
+     * @param response
+     *            The response
+     * @param locale
+     *            The locale of the values
+     * @throws IOException
+     *             if the row can not be written
+     */
+    private static void writeCsvRow( Writer writer, IResponseExportSink sink, Response response, Locale locale ) throws IOException
+    {
+        Entry entry = response.getEntry( );
+
+        writer.write( Integer.toString( response.getIdResponse( ) ) );
+        writer.write( CSV_SEPARATOR );
+        writer.write( Integer.toString( entry.getIdEntry( ) ) );
+        writer.write( CSV_SEPARATOR );
+        writer.write( CSV_QUOTE );
+        sink.writeText( entry.getCode( ) );
+        writer.write( CSV_QUOTE );
+        writer.write( CSV_SEPARATOR );
+        writer.write( Integer.toString( response.getIterationNumber( ) ) );
+        writer.write( CSV_SEPARATOR );
+        writer.write( CSV_QUOTE );
+
+        IEntryTypeService entryTypeService = EntryTypeServiceManager.getEntryTypeService( entry );
+
+        if ( entryTypeService != null )
+        {
+            entryTypeService.writeResponseValueForExport( entry, null, response, locale, sink );
+        }
+
+        writer.write( CSV_QUOTE );
+        writer.write( CSV_LINE_SEPARATOR );
+    }
+
+    /**
+     * Load the entries of a resource with their fields
+     * 
+     * @param nIdResource
+     *            The id of the resource
+     * @param strResourceType
+     *            The type of the resource
+     * @return The entries by id
+     */
+    private static Map<Integer, Entry> loadEntries( int nIdResource, String strResourceType )
+    {
+        EntryFilter filter = new EntryFilter( );
+        filter.setIdResource( nIdResource );
+        filter.setResourceType( strResourceType );
+
+        Map<Integer, Entry> mapEntries = new HashMap<>( );
+
+        for ( Entry entry : EntryHome.getEntryList( filter ) )
+        {
+            // An empty list of fields tells the entry types not to load them again
+            entry.setFields( new ArrayList<>( ) );
+            mapEntries.put( entry.getIdEntry( ), entry );
+        }
+
+        if ( !mapEntries.isEmpty( ) )
+        {
+            for ( Field field : FieldHome.getFieldListByListIdEntry( new ArrayList<>( mapEntries.keySet( ) ) ) )
+            {
+                Entry entry = ( field.getParentEntry( ) != null ) ? mapEntries.get( field.getParentEntry( ).getIdEntry( ) ) : null;
+
+                if ( entry != null )
+                {
+                    entry.getFields( ).add( field );
+                }
+            }
+        }
+
+        return mapEntries;
+    }
+
+    /**
+     * Resolve the files of a batch of responses, without their content
+     * 
+     * @param listResponse
+     *            The responses
+     */
+    private static void resolveFiles( List<Response> listResponse )
+    {
+        List<Integer> listIdFile = new ArrayList<>( );
+
+        for ( Response response : listResponse )
+        {
+            if ( response.getFile( ) != null )
+            {
+                listIdFile.add( response.getFile( ).getIdFile( ) );
+            }
+        }
+
+        if ( listIdFile.isEmpty( ) )
+        {
+            return;
+        }
+
+        Map<Integer, File> mapFiles = new HashMap<>( );
+
+        for ( File file : ResponseHome.getFileList( listIdFile ) )
+        {
+            mapFiles.put( file.getIdFile( ), file );
+        }
+
+        for ( Response response : listResponse )
+        {
+            if ( ( response.getFile( ) != null ) && mapFiles.containsKey( response.getFile( ).getIdFile( ) ) )
+            {
+                response.setFile( mapFiles.get( response.getFile( ).getIdFile( ) ) );
+            }
+        }
+    }
+}
@@ -33,10 +33,16 @@
  */
 package fr.paris.lutece.plugins.genericattributes.service.file;
 
+import fr.paris.lutece.plugins.genericattributes.business.ResponseBlobHome;
 import fr.paris.lutece.portal.business.file.File;
 import fr.paris.lutece.portal.business.file.FileHome;
+import fr.paris.lutece.portal.business.physicalfile.PhysicalFile;
 import fr.paris.lutece.portal.business.physicalfile.PhysicalFileHome;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
 /**
  *
  * FileService
@@ -69,4 +75,46 @@ public class FileService
 
         return file;
     }
+
+    /**
+     * Write the content of a file to a stream. A content stored in the blob store is streamed from it instead of being loaded in memory.
+     * 
+     * @param file
+     *            The file, with the identifier of its physical file
+     * @param out
+     *            The stream to write, not closed
+     * @return true if a content was written, false if the file has no content
+     * @throws IOException
+     *             if the content can not be written
+     */
+    public boolean writeContent( File file, OutputStream out ) throws IOException
+    {
+        if ( ( file == null ) || ( file.getPhysicalFile( ) == null ) )
+        {
+            return false;
+        }
+
+        String strBlobKey = ResponseBlobHome.findFileBlobKey( file.getPhysicalFile( ).getIdPhysicalFile( ) );
+
+        if ( strBlobKey != null )
+        {
+            try ( InputStream in = ResponseBlobService.openStream( strBlobKey ) )
+            {
+                ResponseBlobService.copy( in, out );
+            }
+
+            return true;
+        }
+
+        PhysicalFile physicalFile = PhysicalFileHome.findByPrimaryKey( file.getPhysicalFile( ).getIdPhysicalFile( ) );
+
+        if ( ( physicalFile == null ) || ( physicalFile.getValue( ) == null ) )
+        {
+            return false;
+        }
+
+        out.write( physicalFile.getValue( ) );
+
+        return true;
+    }
 }
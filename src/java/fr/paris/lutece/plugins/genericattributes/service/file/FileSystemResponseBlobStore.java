@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.file;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang.StringUtils;
+
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Store of the contents of the response files in a directory tree, on a local or network file system. A content is stored in
+ * <code>&lt;directory&gt;/ab/cd/abcd...</code> where <code>abcd...</code> is its key. Contents are written to a temporary file then moved, so a content is
+ * never read partially written.
+ */
+public class FileSystemResponseBlobStore implements IResponseBlobStore
+{
+    // Properties
+    private static final String PROPERTY_DIRECTORY = "genericattributes.blobStore.directory";
+
+    // Constants
+    private static final int PREFIX_LENGTH = 2;
+    private static final String SUFFIX_TEMPORARY = ".tmp";
+    private static final String PREFIX_TEMPORARY = "upload";
+    private static final String DIRECTORY_TEMPORARY = "tmp";
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private Path _pathRoot;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean exists( String strKey )
+    {
+        return Files.exists( getPath( strKey ) );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write( String strKey, byte [ ] content )
+    {
+        Path path = getPath( strKey );
+
+        if ( Files.exists( path ) )
+        {
+            return;
+        }
+
+        try
+        {
+            Files.createDirectories( path.getParent( ) );
+
+            Path pathTemporary = Files.createTempFile( path.getParent( ), strKey, SUFFIX_TEMPORARY );
+
+            try
+            {
+                Files.write( pathTemporary, content );
+                move( pathTemporary, path );
+            }
+            finally
+            {
+                Files.deleteIfExists( pathTemporary );
+            }
+        }
+        catch( IOException e )
+        {
+            throw new AppException( "Unable to write the blob " + strKey, e );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String write( InputStream inputStream, Consumer<String> beforeStore ) throws IOException
+    {
+        Path pathDirectory = getRoot( ).resolve( DIRECTORY_TEMPORARY );
+        Files.createDirectories( pathDirectory );
+
+        Path pathTemporary = Files.createTempFile( pathDirectory, PREFIX_TEMPORARY, SUFFIX_TEMPORARY );
+
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance( DIGEST_ALGORITHM );
+
+            try ( DigestInputStream digestInputStream = new DigestInputStream( inputStream, digest ) )
+            {
+                Files.copy( digestInputStream, pathTemporary, StandardCopyOption.REPLACE_EXISTING );
+            }
+
+            String strKey = ResponseBlobService.toHex( digest.digest( ) );
+            Path path = getPath( strKey );
+            beforeStore.accept( strKey );
+
+            if ( !Files.exists( path ) )
+            {
+                Files.createDirectories( path.getParent( ) );
+                move( pathTemporary, path );
+            }
+
+            return strKey;
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            throw new AppException( e.getMessage( ), e );
+        }
+        finally
+        {
+            Files.deleteIfExists( pathTemporary );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream openStream( String strKey ) throws IOException
+    {
+        return Files.newInputStream( getPath( strKey ) );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte [ ] read( String strKey )
+    {
+        try
+        {
+            return Files.readAllBytes( getPath( strKey ) );
+        }
+        catch( IOException e )
+        {
+            throw new AppException( "Unable to read the blob " + strKey, e );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void delete( String strKey )
+    {
+        try
+        {
+            Files.deleteIfExists( getPath( strKey ) );
+        }
+        catch( IOException e )
+        {
+            throw new AppException( "Unable to delete the blob " + strKey, e );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void forEachKey( long lModifiedBefore, Consumer<String> action ) throws IOException
+    {
+        Path pathRoot = getRoot( );
+
+        if ( !Files.isDirectory( pathRoot ) )
+        {
+            return;
+        }
+
+        List<Path> listPaths;
+
+        // The contents are at the third level of the tree, and the temporary files of the streamed writes at the second one
+        try ( Stream<Path> paths = Files.walk( pathRoot, 3 ) )
+        {
+            listPaths = paths.filter( Files::isRegularFile ).collect( Collectors.toList( ) );
+        }
+
+        for ( Path path : listPaths )
+        {
+            if ( Files.getLastModifiedTime( path ).toMillis( ) >= lModifiedBefore )
+            {
+                continue;
+            }
+
+            String strName = path.getFileName( ).toString( );
+
+            if ( strName.endsWith( SUFFIX_TEMPORARY ) )
+            {
+                Files.deleteIfExists( path );
+            }
+            else
+                if ( StringUtils.isAlphanumeric( strName ) && path.getParent( ).getParent( ).getParent( ).equals( pathRoot ) )
+                {
+                    action.accept( strName );
+                }
+        }
+    }
+
+    /**
+     * Move a temporary file to its final path, atomically if the file system supports it
+     * 
+     * @param pathTemporary
+     *            The temporary file
+     * @param path
+     *            The final path
+     * @throws IOException
+     *             if the file can not be moved
+     */
+    protected void move( Path pathTemporary, Path path ) throws IOException
+    {
+        try
+        {
+            Files.move( pathTemporary, path, StandardCopyOption.ATOMIC_MOVE );
+        }
+        catch( AtomicMoveNotSupportedException e )
+        {
+            Files.move( pathTemporary, path, StandardCopyOption.REPLACE_EXISTING );
+        }
+    }
+
+    /**
+     * Get the path of a content
+     * 
+     * @param strKey
+     *            The key of the content
+     * @return The path
+     */
+    protected Path getPath( String strKey )
+    {
+        if ( ( strKey == null ) || ( strKey.length( ) <= ( 2 * PREFIX_LENGTH ) ) || !StringUtils.isAlphanumeric( strKey ) )
+        {
+            throw new AppException( "Invalid blob key " + strKey );
+        }
+
+        return getRoot( ).resolve( strKey.substring( 0, PREFIX_LENGTH ) ).resolve( strKey.substring( PREFIX_LENGTH, 2 * PREFIX_LENGTH ) ).resolve( strKey );
+    }
+
+    /**
+     * Get the root directory of the store
+     * 
+     * @return The root directory
+     */
+    protected Path getRoot( )
+    {
+        if ( _pathRoot == null )
+        {
+            String strDirectory = AppPropertiesService.getProperty( PROPERTY_DIRECTORY );
+
+            if ( StringUtils.isBlank( strDirectory ) )
+            {
+                throw new AppException( "The property " + PROPERTY_DIRECTORY + " must define the directory of the blob store" );
+            }
+
+            _pathRoot = Paths.get( strDirectory );
+        }
+
+        return _pathRoot;
+    }
+}
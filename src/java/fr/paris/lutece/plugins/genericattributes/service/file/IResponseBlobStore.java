@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+/**
+ * Store of the contents of the response files, outside of the database. The contents are addressed by their SHA-256 digest, so identical contents are stored
+ * once. The references to the contents are counted by the plugin, see {@link ResponseBlobService}.
+ */
+public interface IResponseBlobStore
+{
+    /**
+     * Tell if a content is stored
+     * 
+     * @param strKey
+     *            The key of the content, its SHA-256 digest in hexadecimal
+     * @return true if the content is stored
+     */
+    boolean exists( String strKey );
+
+    /**
+     * Store a content. Nothing is done if the content is already stored.
+     * 
+     * @param strKey
+     *            The key of the content, its SHA-256 digest in hexadecimal
+     * @param content
+     *            The content
+     */
+    void write( String strKey, byte [ ] content );
+
+    /**
+     * Read a content
+     * 
+     * @param strKey
+     *            The key of the content
+     * @return The content
+     */
+    byte [ ] read( String strKey );
+
+    /**
+     * Delete a content
+     * 
+     * @param strKey
+     *            The key of the content
+     */
+    void delete( String strKey );
+
+    /**
+     * Store a content read from a stream, and compute its key. Nothing is written if the content is already stored. The default implementation reads the
+     * whole content in memory.
+     * 
+     * @param inputStream
+     *            The content, closed by this method
+     * @param beforeStore
+     *            The action called with the key once the content is read, before it is stored, for instance to lock the key against a concurrent purge
+     * @return The key of the content, its SHA-256 digest in hexadecimal
+     * @throws IOException
+     *             if the content can not be read or written
+     */
+    default String write( InputStream inputStream, Consumer<String> beforeStore ) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream( );
+
+        try ( InputStream in = inputStream )
+        {
+            ResponseBlobService.copy( in, out );
+        }
+
+        byte [ ] content = out.toByteArray( );
+        String strKey = ResponseBlobService.digest( content );
+        beforeStore.accept( strKey );
+        write( strKey, content );
+
+        return strKey;
+    }
+
+    /**
+     * Open a stream on a content. The default implementation reads the whole content in memory.
+     * 
+     * @param strKey
+     *            The key of the content
+     * @return The stream, to be closed by the caller
+     * @throws IOException
+     *             if the content can not be read
+     */
+    default InputStream openStream( String strKey ) throws IOException
+    {
+        return new ByteArrayInputStream( read( strKey ) );
+    }
+
+    /**
+     * Give the keys of the contents stored before a date to an action, in order to find the contents which are not referenced. The temporary files left by
+     * the interrupted writes are deleted on the way. The default implementation gives no key, the store being then never swept.
+     * 
+     * @param lModifiedBefore
+     *            The date in milliseconds before which the contents must have been stored
+     * @param action
+     *            The action called with each key
+     * @throws IOException
+     *             if the store can not be listed
+     */
+    default void forEachKey( long lModifiedBefore, Consumer<String> action ) throws IOException
+    {
+    }
+}
@@ -0,0 +1,444 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.file;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+import fr.paris.lutece.plugins.genericattributes.business.ResponseBlobHome;
+import fr.paris.lutece.plugins.genericattributes.util.GenericAttributesUtils;
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+import fr.paris.lutece.util.sql.TransactionManager;
+
+/**
+ * Storage of the contents of the response files. When the blob store is enabled, a content is written in the {@link IResponseBlobStore} declared as the
+ * <code>genericattributes.responseBlobStore</code> bean. Identical contents share the same blob, whose references are counted in the genatt_response_blob
+ * table. The physical file of a response keeps its content, read by the core and the other plugins, and its blob is recorded in the
+ * genatt_response_file_blob table. A thumbnail only holds a reference to its blob in its content.
+ */
+public final class ResponseBlobService
+{
+    // Properties
+    private static final String PROPERTY_ENABLED = "genericattributes.blobStore.enabled";
+
+    // Constants
+    private static final String BEAN_BLOB_STORE = "genericattributes.responseBlobStore";
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final byte [ ] MARKER_REFERENCE = {
+            0, 'G', 'A', 'B', 'S', 1
+    };
+    private static final int KEY_LENGTH = 64;
+    private static final char [ ] HEX_DIGITS = "0123456789abcdef".toCharArray( );
+    private static final int BUFFER_SIZE = 8192;
+
+    private static IResponseBlobStore _store;
+
+    /**
+     * Private constructor
+     */
+    private ResponseBlobService( )
+    {
+    }
+
+    /**
+     * Tell if the new contents are written in the blob store
+     * 
+     * @return true if the blob store is enabled
+     */
+    public static boolean isEnabled( )
+    {
+        return AppPropertiesService.getPropertyBoolean( PROPERTY_ENABLED, false );
+    }
+
+    /**
+     * Get the value to store in a thumbnail for a content. When the blob store is enabled, the content is written in it and referenced once more.
+     * 
+     * @param content
+     *            The content, can be null
+     * @return The value of the thumbnail
+     */
+    public static byte [ ] toStoredContent( byte [ ] content )
+    {
+        if ( ( content == null ) || !isEnabled( ) )
+        {
+            return content;
+        }
+
+        return getReference( write( content ) );
+    }
+
+    /**
+     * Write a content in the blob store, and reference it once more
+     * 
+     * @param content
+     *            The content
+     * @return The key of the blob
+     */
+    public static String write( byte [ ] content )
+    {
+        String strKey = digest( content );
+        Plugin plugin = GenericAttributesUtils.getPlugin( );
+
+        // The reference is added first: it locks the row of the blob until the end of the transaction, so that a concurrent purge can not delete the
+        // content once it has been found in the store
+        TransactionManager.beginTransaction( plugin );
+
+        try
+        {
+            ResponseBlobHome.addReference( strKey );
+            getStore( ).write( strKey, content );
+            TransactionManager.commitTransaction( plugin );
+        }
+        catch( RuntimeException e )
+        {
+            TransactionManager.rollBack( plugin );
+            throw e;
+        }
+
+        return strKey;
+    }
+
+    /**
+     * Write a content read from a stream in the blob store, without holding it in memory, and reference it once more
+     * 
+     * @param inputStream
+     *            The content, closed by this method
+     * @return The key of the blob
+     */
+    public static String write( InputStream inputStream )
+    {
+        Plugin plugin = GenericAttributesUtils.getPlugin( );
+        String strKey;
+
+        TransactionManager.beginTransaction( plugin );
+
+        try
+        {
+            strKey = getStore( ).write( inputStream, ResponseBlobHome::addReference );
+            TransactionManager.commitTransaction( plugin );
+        }
+        catch( IOException e )
+        {
+            TransactionManager.rollBack( plugin );
+            throw new AppException( e.getMessage( ), e );
+        }
+        catch( RuntimeException e )
+        {
+            TransactionManager.rollBack( plugin );
+            throw e;
+        }
+
+        return strKey;
+    }
+
+    /**
+     * Open a stream on the content of a blob
+     * 
+     * @param strKey
+     *            The key of the blob
+     * @return The stream, to be closed by the caller
+     */
+    public static InputStream openStream( String strKey )
+    {
+        try
+        {
+            return getStore( ).openStream( strKey );
+        }
+        catch( IOException e )
+        {
+            throw new AppException( "Unable to read the blob " + strKey, e );
+        }
+    }
+
+    /**
+     * Copy a stream to another one with a fixed size buffer
+     * 
+     * @param in
+     *            The stream to read, not closed
+     * @param out
+     *            The stream to write, not closed
+     * @return The number of bytes copied
+     * @throws IOException
+     *             if a stream can not be read or written
+     */
+    public static long copy( InputStream in, OutputStream out ) throws IOException
+    {
+        byte [ ] buffer = new byte [ BUFFER_SIZE];
+        long lCount = 0;
+        int nRead;
+
+        while ( ( nRead = in.read( buffer ) ) != -1 )
+        {
+            out.write( buffer, 0, nRead );
+            lCount += nRead;
+        }
+
+        return lCount;
+    }
+
+    /**
+     * Get the content of a thumbnail
+     * 
+     * @param storedContent
+     *            The value of the thumbnail, can be null
+     * @return The content
+     */
+    public static byte [ ] toContent( byte [ ] storedContent )
+    {
+        String strKey = getKey( storedContent );
+
+        if ( strKey != null )
+        {
+            return getStore( ).read( strKey );
+        }
+
+        return storedContent;
+    }
+
+    /**
+     * Remove the reference held by a thumbnail. The blob must then be purged once the transaction is committed, which deletes it if no other reference is
+     * left.
+     * 
+     * @param storedContent
+     *            The value of the thumbnail, can be null
+     * @return The key of the blob if a reference has been removed, null otherwise
+     */
+    public static String release( byte [ ] storedContent )
+    {
+        String strKey = getKey( storedContent );
+
+        if ( ( strKey != null ) && ResponseBlobHome.removeReference( strKey ) )
+        {
+            return strKey;
+        }
+
+        return null;
+    }
+
+    /**
+     * Delete a blob which is no longer referenced. Nothing is done inside a transaction, as it could still be rolled back: the blob is then left to the
+     * sweep. The row of the blob is locked while its content is deleted, so that a concurrent write of the same content waits for the purge to be over.
+     * 
+     * @param strKey
+     *            The key of the blob, can be null
+     * @return true if the blob has been deleted
+     */
+    public static boolean purge( String strKey )
+    {
+        Plugin plugin = GenericAttributesUtils.getPlugin( );
+
+        if ( ( strKey == null ) || ( TransactionManager.getCurrentTransaction( plugin ) != null ) )
+        {
+            return false;
+        }
+
+        boolean bPurged = false;
+        TransactionManager.beginTransaction( plugin );
+
+        try
+        {
+            if ( ResponseBlobHome.lockReferenceCount( strKey ) == 0 )
+            {
+                getStore( ).delete( strKey );
+                ResponseBlobHome.removeUnreferenced( strKey );
+                bPurged = true;
+            }
+
+            TransactionManager.commitTransaction( plugin );
+        }
+        catch( RuntimeException e )
+        {
+            TransactionManager.rollBack( plugin );
+            throw e;
+        }
+
+        return bPurged;
+    }
+
+    /**
+     * Delete the blobs which are not referenced: the blobs whose purge has been skipped, and the contents of the store without reference, left by the
+     * writes whose transaction has been rolled back. The contents written recently are kept, their reference being possibly not committed yet.
+     * 
+     * @param lModifiedBefore
+     *            The date in milliseconds before which the contents without reference must have been written to be deleted
+     * @return The number of blobs deleted
+     */
+    public static int sweep( long lModifiedBefore )
+    {
+        if ( !isEnabled( ) )
+        {
+            return 0;
+        }
+
+        int nPurged = 0;
+
+        for ( String strKey : ResponseBlobHome.getUnreferencedKeys( ) )
+        {
+            if ( purge( strKey ) )
+            {
+                nPurged++;
+            }
+        }
+
+        List<String> listOrphanKeys = new ArrayList<>( );
+
+        try
+        {
+            getStore( ).forEachKey( lModifiedBefore, strKey -> {
+                if ( !ResponseBlobHome.isReferenced( strKey ) )
+                {
+                    listOrphanKeys.add( strKey );
+                }
+            } );
+        }
+        catch( IOException e )
+        {
+            throw new AppException( "Unable to list the blob store", e );
+        }
+
+        for ( String strKey : listOrphanKeys )
+        {
+            if ( purge( strKey ) )
+            {
+                nPurged++;
+            }
+        }
+
+        return nPurged;
+    }
+
+    /**
+     * Get the key of the blob referenced by the value of a thumbnail
+     * 
+     * @param storedContent
+     *            The value of the thumbnail, can be null
+     * @return The key, or null if the value is not a reference
+     */
+    private static String getKey( byte [ ] storedContent )
+    {
+        if ( ( storedContent == null ) || ( storedContent.length != ( MARKER_REFERENCE.length + KEY_LENGTH ) ) )
+        {
+            return null;
+        }
+
+        for ( int nIndex = 0; nIndex < MARKER_REFERENCE.length; nIndex++ )
+        {
+            if ( storedContent [nIndex] != MARKER_REFERENCE [nIndex] )
+            {
+                return null;
+            }
+        }
+
+        return new String( storedContent, MARKER_REFERENCE.length, KEY_LENGTH, StandardCharsets.US_ASCII );
+    }
+
+    /**
+     * Get the value of a thumbnail referencing a blob
+     * 
+     * @param strKey
+     *            The key of the blob
+     * @return The value of the thumbnail
+     */
+    private static byte [ ] getReference( String strKey )
+    {
+        byte [ ] reference = new byte [ MARKER_REFERENCE.length + KEY_LENGTH];
+        System.arraycopy( MARKER_REFERENCE, 0, reference, 0, MARKER_REFERENCE.length );
+        System.arraycopy( strKey.getBytes( StandardCharsets.US_ASCII ), 0, reference, MARKER_REFERENCE.length, KEY_LENGTH );
+
+        return reference;
+    }
+
+    /**
+     * Compute the key of a content
+     * 
+     * @param content
+     *            The content
+     * @return The SHA-256 digest of the content, in hexadecimal
+     */
+    public static String digest( byte [ ] content )
+    {
+        try
+        {
+            return toHex( MessageDigest.getInstance( DIGEST_ALGORITHM ).digest( content ) );
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            throw new AppException( e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Convert bytes to hexadecimal
+     * 
+     * @param bytes
+     *            The bytes
+     * @return The hexadecimal string
+     */
+    public static String toHex( byte [ ] bytes )
+    {
+        char [ ] hex = new char [ bytes.length * 2];
+
+        for ( int nIndex = 0; nIndex < bytes.length; nIndex++ )
+        {
+            hex [2 * nIndex] = HEX_DIGITS [( bytes [nIndex] >> 4 ) & 0xF];
+            hex [( 2 * nIndex ) + 1] = HEX_DIGITS [bytes [nIndex] & 0xF];
+        }
+
+        return new String( hex );
+    }
+
+    /**
+     * Get the blob store
+     * 
+     * @return The blob store
+     */
+    private static synchronized IResponseBlobStore getStore( )
+    {
+        if ( _store == null )
+        {
+            _store = SpringContextService.getBean( BEAN_BLOB_STORE );
+        }
+
+        return _store;
+    }
+}
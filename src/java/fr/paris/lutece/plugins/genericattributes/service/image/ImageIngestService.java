@@ -0,0 +1,371 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.image;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import fr.paris.lutece.plugins.genericattributes.util.ImageHeader;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Downscaling of the images of the responses before they are stored. An image larger than the bounds of its entry is decoded with subsampling, so that only
+ * about the pixels kept are held in memory, then scaled to the bounds and encoded again in its format at the configured quality. The images are processed by
+ * a bounded pool of workers: when the pool is busy or the processing fails, the image is stored unchanged.
+ */
+public final class ImageIngestService
+{
+    // Properties
+    private static final String PROPERTY_ENABLED = "genericattributes.image.ingest.enabled";
+    private static final String PROPERTY_QUALITY = "genericattributes.image.ingest.quality";
+    private static final String PROPERTY_THREADS = "genericattributes.image.ingest.threads";
+    private static final String PROPERTY_QUEUE_SIZE = "genericattributes.image.ingest.queueSize";
+    private static final String PROPERTY_TIMEOUT = "genericattributes.image.ingest.timeout";
+    private static final float DEFAULT_QUALITY = 0.85f;
+    private static final int DEFAULT_THREADS = 2;
+    private static final int DEFAULT_QUEUE_SIZE = 16;
+    private static final int DEFAULT_TIMEOUT = 30;
+
+    // Constants
+    private static final String THREAD_NAME = "genericattributes-image-ingest-";
+
+    private static ExecutorService _executor;
+
+    /**
+     * Private constructor
+     */
+    private ImageIngestService( )
+    {
+    }
+
+    /**
+     * Tell if the images are downscaled before they are stored
+     * 
+     * @return true if the images are downscaled
+     */
+    public static boolean isEnabled( )
+    {
+        return AppPropertiesService.getPropertyBoolean( PROPERTY_ENABLED, false );
+    }
+
+    /**
+     * Downscale an image to bounds, if the downscaling is enabled
+     * 
+     * @param content
+     *            The image
+     * @param nMaxWidth
+     *            The maximum width, 0 or less for no limit
+     * @param nMaxHeight
+     *            The maximum height, 0 or less for no limit
+     * @return The downscaled image, or the image unchanged if it is within the bounds, is not an image, or can not be downscaled now
+     */
+    public static byte [ ] downscale( byte [ ] content, int nMaxWidth, int nMaxHeight )
+    {
+        if ( ( content == null ) || ( ( nMaxWidth <= 0 ) && ( nMaxHeight <= 0 ) ) || !isEnabled( ) )
+        {
+            return content;
+        }
+
+        Future<byte [ ]> future;
+
+        try
+        {
+            future = getExecutor( ).submit( ( ) -> resize( content, nMaxWidth, nMaxHeight, getQuality( ) ) );
+        }
+        catch( RejectedExecutionException e )
+        {
+            AppLogService.info( "The image ingest workers are busy, an image of " + content.length + " bytes is stored unchanged" );
+
+            return content;
+        }
+
+        try
+        {
+            byte [ ] result = future.get( AppPropertiesService.getPropertyInt( PROPERTY_TIMEOUT, DEFAULT_TIMEOUT ), TimeUnit.SECONDS );
+
+            return ( result != null ) ? result : content;
+        }
+        catch( InterruptedException e )
+        {
+            future.cancel( true );
+            Thread.currentThread( ).interrupt( );
+        }
+        catch( ExecutionException | TimeoutException e )
+        {
+            future.cancel( true );
+            AppLogService.error( "An image of " + content.length + " bytes can not be downscaled, it is stored unchanged", e );
+        }
+
+        return content;
+    }
+
+    /**
+     * Downscale an image to bounds in the current thread
+     * 
+     * @param content
+     *            The image
+     * @param nMaxWidth
+     *            The maximum width, 0 or less for no limit
+     * @param nMaxHeight
+     *            The maximum height, 0 or less for no limit
+     * @param fQuality
+     *            The quality of the lossy formats, between 0 and 1
+     * @return The downscaled image, or null if the image is within the bounds, is not an image, or would not be smaller
+     * @throws IOException
+     *             if the image can not be decoded or encoded
+     */
+    static byte [ ] resize( byte [ ] content, int nMaxWidth, int nMaxHeight, float fQuality ) throws IOException
+    {
+        ImageHeader header = ImageHeader.read( new ByteArrayInputStream( content ) );
+
+        if ( header == null )
+        {
+            return null;
+        }
+
+        double dScale = Math.min( ( nMaxWidth > 0 ) ? ( (double) nMaxWidth / header.getWidth( ) ) : 1d,
+                ( nMaxHeight > 0 ) ? ( (double) nMaxHeight / header.getHeight( ) ) : 1d );
+
+        if ( dScale >= 1d )
+        {
+            return null;
+        }
+
+        int nWidth = Math.max( 1, (int) Math.round( header.getWidth( ) * dScale ) );
+        int nHeight = Math.max( 1, (int) Math.round( header.getHeight( ) * dScale ) );
+        Iterator<ImageReader> iterator = ImageIO.getImageReadersByFormatName( header.getFormat( ) );
+
+        if ( !iterator.hasNext( ) )
+        {
+            return null;
+        }
+
+        ImageReader reader = iterator.next( );
+        ImageWriter writer = ImageIO.getImageWriter( reader );
+
+        if ( writer == null )
+        {
+            reader.dispose( );
+
+            return null;
+        }
+
+        try
+        {
+            BufferedImage image = read( reader, content, Math.max( 1, Math.min( header.getWidth( ) / nWidth, header.getHeight( ) / nHeight ) ) );
+            byte [ ] result = write( writer, scale( image, nWidth, nHeight, ImageHeader.FORMAT_JPEG.equals( header.getFormat( ) ) ), fQuality );
+
+            return ( result.length < content.length ) ? result : null;
+        }
+        finally
+        {
+            reader.dispose( );
+            writer.dispose( );
+        }
+    }
+
+    /**
+     * Decode an image, keeping one pixel out of a subsampling factor in each direction
+     * 
+     * @param reader
+     *            The reader of the format of the image
+     * @param content
+     *            The image
+     * @param nSubsampling
+     *            The subsampling factor
+     * @return The decoded image
+     * @throws IOException
+     *             if the image can not be decoded
+     */
+    private static BufferedImage read( ImageReader reader, byte [ ] content, int nSubsampling ) throws IOException
+    {
+        try ( ImageInputStream imageInputStream = new MemoryCacheImageInputStream( new ByteArrayInputStream( content ) ) )
+        {
+            reader.setInput( imageInputStream, true, true );
+
+            ImageReadParam param = reader.getDefaultReadParam( );
+            param.setSourceSubsampling( nSubsampling, nSubsampling, 0, 0 );
+
+            return reader.read( 0, param );
+        }
+    }
+
+    /**
+     * Scale an image to its final dimensions
+     * 
+     * @param image
+     *            The image
+     * @param nWidth
+     *            The width
+     * @param nHeight
+     *            The height
+     * @param bOpaque
+     *            true if the scaled image has no transparency
+     * @return The scaled image
+     */
+    private static BufferedImage scale( BufferedImage image, int nWidth, int nHeight, boolean bOpaque )
+    {
+        int nType = ( bOpaque || !image.getColorModel( ).hasAlpha( ) ) ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+        BufferedImage scaled = new BufferedImage( nWidth, nHeight, nType );
+        Graphics2D graphics = scaled.createGraphics( );
+
+        try
+        {
+            graphics.setRenderingHint( RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR );
+            graphics.setRenderingHint( RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY );
+            graphics.drawImage( image, 0, 0, nWidth, nHeight, null );
+        }
+        finally
+        {
+            graphics.dispose( );
+        }
+
+        return scaled;
+    }
+
+    /**
+     * Encode an image
+     * 
+     * @param writer
+     *            The writer of the format of the image
+     * @param image
+     *            The image
+     * @param fQuality
+     *            The quality of the lossy formats, between 0 and 1
+     * @return The encoded image
+     * @throws IOException
+     *             if the image can not be encoded
+     */
+    private static byte [ ] write( ImageWriter writer, BufferedImage image, float fQuality ) throws IOException
+    {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream( );
+        ImageWriteParam param = writer.getDefaultWriteParam( );
+
+        if ( param.canWriteCompressed( ) )
+        {
+            param.setCompressionMode( ImageWriteParam.MODE_EXPLICIT );
+
+            if ( ( param.getCompressionType( ) == null ) && ( param.getCompressionTypes( ) != null ) )
+            {
+                param.setCompressionType( param.getCompressionTypes( ) [0] );
+            }
+
+            if ( !param.isCompressionLossless( ) )
+            {
+                param.setCompressionQuality( fQuality );
+            }
+        }
+
+        try ( ImageOutputStream imageOutputStream = new MemoryCacheImageOutputStream( outputStream ) )
+        {
+            writer.setOutput( imageOutputStream );
+            writer.write( null, new IIOImage( image, null, null ), param );
+        }
+
+        return outputStream.toByteArray( );
+    }
+
+    /**
+     * Get the quality of the lossy formats
+     * 
+     * @return The quality, between 0 and 1
+     */
+    static float getQuality( )
+    {
+        float fQuality = DEFAULT_QUALITY;
+
+        try
+        {
+            fQuality = Float.parseFloat( AppPropertiesService.getProperty( PROPERTY_QUALITY, String.valueOf( DEFAULT_QUALITY ) ) );
+        }
+        catch( NumberFormatException e )
+        {
+            AppLogService.error( "The property " + PROPERTY_QUALITY + " is not a number", e );
+        }
+
+        return Math.max( 0f, Math.min( 1f, fQuality ) );
+    }
+
+    /**
+     * Get the pool of workers
+     * 
+     * @return The pool of workers
+     */
+    private static synchronized ExecutorService getExecutor( )
+    {
+        if ( _executor == null )
+        {
+            int nThreads = Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_THREADS, DEFAULT_THREADS ) );
+            int nQueueSize = Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_QUEUE_SIZE, DEFAULT_QUEUE_SIZE ) );
+            AtomicInteger nThreadCount = new AtomicInteger( );
+            ThreadFactory threadFactory = runnable -> {
+                Thread thread = new Thread( runnable, THREAD_NAME + nThreadCount.incrementAndGet( ) );
+                thread.setDaemon( true );
+
+                return thread;
+            };
+
+            _executor = new ThreadPoolExecutor( nThreads, nThreads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>( nQueueSize ), threadFactory );
+        }
+
+        return _executor;
+    }
+}
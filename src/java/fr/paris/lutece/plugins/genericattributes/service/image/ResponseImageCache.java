@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.image;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import fr.paris.lutece.plugins.genericattributes.business.ResponseHome;
+import fr.paris.lutece.plugins.genericattributes.business.ResponseImage;
+import fr.paris.lutece.plugins.genericattributes.service.file.ResponseBlobService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Cache of the images of the responses, with the metadata used to validate the copies of the browsers. The cache is bounded by the total size of the
+ * contents it holds: the least recently used images are evicted first, and the images larger than a maximum size are never cached. An image is removed
+ * from the cache when its response is updated or removed on this node, and is loaded again after a time to live for the changes made by the other nodes.
+ */
+public final class ResponseImageCache
+{
+    // Properties
+    private static final String PROPERTY_MAX_SIZE = "genericattributes.image.cache.maxSize";
+    private static final String PROPERTY_MAX_ENTRY_SIZE = "genericattributes.image.cache.maxEntrySize";
+    private static final String PROPERTY_TIME_TO_LIVE = "genericattributes.image.cache.timeToLive";
+    private static final int DEFAULT_MAX_SIZE = 33554432;
+    private static final int DEFAULT_MAX_ENTRY_SIZE = 1048576;
+    private static final int DEFAULT_TIME_TO_LIVE = 300;
+
+    // Constants
+    private static final long MILLISECONDS_PER_SECOND = 1000L;
+
+    private static ResponseImageCache _instance;
+
+    private final Map<Integer, CachedImage> _mapImages = new LinkedHashMap<>( 16, 0.75f, true );
+    private final long _lMaxSize;
+    private final long _lMaxEntrySize;
+    private final long _lTimeToLive;
+    private final IntFunction<ResponseImage> _loader;
+    private long _lSize;
+    private long _lInvalidationCount;
+
+    /**
+     * Constructor
+     * 
+     * @param lMaxSize
+     *            The maximum total size of the cached contents, 0 or less to disable the cache
+     * @param lMaxEntrySize
+     *            The maximum size of a cached content
+     * @param lTimeToLive
+     *            The time to live of a cached image in milliseconds, 0 or less for no limit
+     * @param loader
+     *            The loader of the image of a response, with its content
+     */
+    ResponseImageCache( long lMaxSize, long lMaxEntrySize, long lTimeToLive, IntFunction<ResponseImage> loader )
+    {
+        _lMaxSize = lMaxSize;
+        _lMaxEntrySize = Math.min( lMaxSize, lMaxEntrySize );
+        _lTimeToLive = lTimeToLive;
+        _loader = loader;
+    }
+
+    /**
+     * Get the image of a response, from the cache or else from the database
+     * 
+     * @param nIdResponse
+     *            The id of the response
+     * @return The image, with its entity tag, or null if the response has no file
+     */
+    public static ResponseImage getImage( int nIdResponse )
+    {
+        return getInstance( ).get( nIdResponse );
+    }
+
+    /**
+     * Remove the image of a response from the cache
+     * 
+     * @param nIdResponse
+     *            The id of the response
+     */
+    public static void invalidate( int nIdResponse )
+    {
+        getInstance( ).remove( nIdResponse );
+    }
+
+    /**
+     * Get the image of a response
+     * 
+     * @param nIdResponse
+     *            The id of the response
+     * @return The image, with its entity tag, or null if the response has no file
+     */
+    ResponseImage get( int nIdResponse )
+    {
+        long lInvalidationCount;
+
+        synchronized( _mapImages )
+        {
+            lInvalidationCount = _lInvalidationCount;
+            CachedImage cachedImage = _mapImages.get( nIdResponse );
+
+            if ( cachedImage != null )
+            {
+                if ( ( _lTimeToLive <= 0 ) || ( ( System.currentTimeMillis( ) - cachedImage._lLoadTime ) < _lTimeToLive ) )
+                {
+                    return cachedImage._image;
+                }
+
+                removeImage( nIdResponse );
+            }
+        }
+
+        ResponseImage image = _loader.apply( nIdResponse );
+
+        if ( ( image == null ) || ( image.getContent( ) == null ) )
+        {
+            return image;
+        }
+
+        image.setETag( ResponseBlobService.digest( image.getContent( ) ) );
+
+        if ( image.getContent( ).length <= _lMaxEntrySize )
+        {
+            put( nIdResponse, image, lInvalidationCount );
+        }
+
+        return image;
+    }
+
+    /**
+     * Remove an image
+     * 
+     * @param nIdResponse
+     *            The id of the response
+     */
+    void remove( int nIdResponse )
+    {
+        synchronized( _mapImages )
+        {
+            removeImage( nIdResponse );
+            _lInvalidationCount++;
+        }
+    }
+
+    /**
+     * Get the total size of the cached contents
+     * 
+     * @return The size in bytes
+     */
+    long getSize( )
+    {
+        synchronized( _mapImages )
+        {
+            return _lSize;
+        }
+    }
+
+    /**
+     * Add an image, evicting the least recently used images while the maximum size is exceeded
+     * 
+     * @param nIdResponse
+     *            The id of the response
+     * @param image
+     *            The image
+     * @param lInvalidationCount
+     *            The number of invalidations when the image started loading: the image is not added if it may have been invalidated since
+     */
+    private void put( int nIdResponse, ResponseImage image, long lInvalidationCount )
+    {
+        synchronized( _mapImages )
+        {
+            if ( lInvalidationCount != _lInvalidationCount )
+            {
+                return;
+            }
+
+            removeImage( nIdResponse );
+            _mapImages.put( nIdResponse, new CachedImage( image, System.currentTimeMillis( ) ) );
+            _lSize += image.getContent( ).length;
+
+            Iterator<CachedImage> iterator = _mapImages.values( ).iterator( );
+
+            while ( ( _lSize > _lMaxSize ) && iterator.hasNext( ) )
+            {
+                _lSize -= iterator.next( )._image.getContent( ).length;
+                iterator.remove( );
+            }
+        }
+    }
+
+    /**
+     * Remove an image, the lock being held
+     * 
+     * @param nIdResponse
+     *            The id of the response
+     */
+    private void removeImage( int nIdResponse )
+    {
+        CachedImage cachedImage = _mapImages.remove( nIdResponse );
+
+        if ( cachedImage != null )
+        {
+            _lSize -= cachedImage._image.getContent( ).length;
+        }
+    }
+
+    /**
+     * Get the cache configured by the properties
+     * 
+     * @return The cache
+     */
+    private static synchronized ResponseImageCache getInstance( )
+    {
+        if ( _instance == null )
+        {
+            _instance = new ResponseImageCache( AppPropertiesService.getPropertyInt( PROPERTY_MAX_SIZE, DEFAULT_MAX_SIZE ),
+                    AppPropertiesService.getPropertyInt( PROPERTY_MAX_ENTRY_SIZE, DEFAULT_MAX_ENTRY_SIZE ),
+                    AppPropertiesService.getPropertyInt( PROPERTY_TIME_TO_LIVE, DEFAULT_TIME_TO_LIVE ) * MILLISECONDS_PER_SECOND,
+                    ResponseHome::findImageByPrimaryKey );
+        }
+
+        return _instance;
+    }
+
+    /**
+     * An image with its loading time
+     */
+    private static final class CachedImage
+    {
+        private final ResponseImage _image;
+        private final long _lLoadTime;
+
+        /**
+         * Constructor
+         * 
+         * @param image
+         *            The image
+         * @param lLoadTime
+         *            The loading time
+         */
+        CachedImage( ResponseImage image, long lLoadTime )
+        {
+            _image = image;
+            _lLoadTime = lLoadTime;
+        }
+    }
+}
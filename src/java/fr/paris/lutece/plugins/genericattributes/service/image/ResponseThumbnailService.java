@@ -0,0 +1,363 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.image;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.commons.lang.math.NumberUtils;
+
+import fr.paris.lutece.plugins.genericattributes.business.ResponseThumbnail;
+import fr.paris.lutece.plugins.genericattributes.business.ResponseThumbnailHome;
+import fr.paris.lutece.portal.service.image.ImageResource;
+import fr.paris.lutece.portal.service.image.ImageResourceProvider;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Thumbnails of the images of the responses. A thumbnail is generated from the image the first time it is requested at one of the configured sizes, and
+ * stored with the response so that the next requests read it as is. Concurrent requests of a thumbnail being generated wait for its generation instead of
+ * generating it again. A thumbnail whose generation has started before the response was updated or removed on this node is not stored, and the thumbnails
+ * stored meanwhile are removed.
+ */
+public final class ResponseThumbnailService
+{
+    // Properties
+    private static final String PROPERTY_SIZES = "genericattributes.image.thumbnail.sizes";
+    private static final String DEFAULT_SIZES = "64,160,320";
+
+    // Constants
+    private static final String SEPARATOR_SIZES = ",";
+    private static final String SEPARATOR_KEY = "-";
+
+    private static final ConcurrentMap<String, FutureTask<ImageResource>> _mapGenerations = new ConcurrentHashMap<>( );
+    private static final Object _lockStore = new Object( );
+    private static int [ ] _sizes;
+    private static long _lInvalidationCount;
+
+    /**
+     * Private constructor
+     */
+    private ResponseThumbnailService( )
+    {
+    }
+
+    /**
+     * Get the sizes of the thumbnails, in ascending order
+     * 
+     * @return The sizes, empty if the thumbnails are disabled
+     */
+    public static synchronized int [ ] getSizes( )
+    {
+        if ( _sizes == null )
+        {
+            _sizes = parseSizes( AppPropertiesService.getProperty( PROPERTY_SIZES, DEFAULT_SIZES ) );
+        }
+
+        return _sizes.clone( );
+    }
+
+    /**
+     * Get the configured size of thumbnail to use for a display size: the smallest size at least as large, or else the largest size
+     * 
+     * @param nSize
+     *            The display size
+     * @return The size of the thumbnail, or 0 if the thumbnails are disabled
+     */
+    public static int getThumbnailSize( int nSize )
+    {
+        return getThumbnailSize( getSizes( ), nSize );
+    }
+
+    /**
+     * Get a thumbnail of the image of a response, generated and stored if it is requested for the first time
+     * 
+     * @param nIdResponse
+     *            The id of the response
+     * @param nSize
+     *            The size of the thumbnail, one of the configured sizes
+     * @param imageProvider
+     *            The provider of the image of the responses
+     * @return The thumbnail, or null if the response has no image
+     */
+    public static ImageResource getThumbnail( int nIdResponse, int nSize, ImageResourceProvider imageProvider )
+    {
+        ImageResource thumbnail = findThumbnail( nIdResponse, nSize );
+
+        if ( thumbnail != null )
+        {
+            return thumbnail;
+        }
+
+        return generateOnce( nIdResponse + SEPARATOR_KEY + nSize, ( ) -> generate( nIdResponse, nSize, imageProvider ) );
+    }
+
+    /**
+     * Remove the thumbnails of a response once its update or its removal is committed, and prevent the generations already started from storing a thumbnail
+     * of the previous image
+     * 
+     * @param nIdResponse
+     *            The id of the response
+     */
+    public static void invalidate( int nIdResponse )
+    {
+        synchronized( _lockStore )
+        {
+            _lInvalidationCount++;
+            ResponseThumbnailHome.remove( nIdResponse );
+        }
+    }
+
+    /**
+     * Run a generation unless the same generation is already running, in which case its result is awaited
+     * 
+     * @param strKey
+     *            The key of the generation
+     * @param generation
+     *            The generation
+     * @return The result of the generation
+     */
+    static ImageResource generateOnce( String strKey, Callable<ImageResource> generation )
+    {
+        FutureTask<ImageResource> task = new FutureTask<>( generation );
+        FutureTask<ImageResource> taskRunning = _mapGenerations.putIfAbsent( strKey, task );
+
+        if ( taskRunning == null )
+        {
+            try
+            {
+                task.run( );
+            }
+            finally
+            {
+                _mapGenerations.remove( strKey, task );
+            }
+        }
+        else
+        {
+            task = taskRunning;
+        }
+
+        try
+        {
+            return task.get( );
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread( ).interrupt( );
+            throw new AppException( "Interrupted while waiting for the generation of the thumbnail " + strKey, e );
+        }
+        catch( ExecutionException e )
+        {
+            throw new AppException( "The thumbnail " + strKey + " can not be generated", e.getCause( ) );
+        }
+    }
+
+    /**
+     * Generate and store a thumbnail, unless a generation that has just ended stored it. The image is served as is, without storing a thumbnail, if it is
+     * already within the size of the thumbnail or can not be resized.
+     * 
+     * @param nIdResponse
+     *            The id of the response
+     * @param nSize
+     *            The size of the thumbnail
+     * @param imageProvider
+     *            The provider of the image of the responses
+     * @return The thumbnail, or null if the response has no image
+     */
+    private static ImageResource generate( int nIdResponse, int nSize, ImageResourceProvider imageProvider )
+    {
+        ImageResource thumbnail = findThumbnail( nIdResponse, nSize );
+
+        if ( thumbnail != null )
+        {
+            return thumbnail;
+        }
+
+        long lInvalidationCount = getInvalidationCount( );
+        ImageResource image = imageProvider.getImageResource( nIdResponse );
+
+        if ( ( image == null ) || ( image.getImage( ) == null ) )
+        {
+            return null;
+        }
+
+        byte [ ] content;
+
+        try
+        {
+            content = ImageIngestService.resize( image.getImage( ), nSize, nSize, ImageIngestService.getQuality( ) );
+        }
+        catch( IOException | RuntimeException e )
+        {
+            AppLogService.error( "The image of the response " + nIdResponse + " can not be resized, it is served as a thumbnail", e );
+
+            return image;
+        }
+
+        if ( content == null )
+        {
+            return image;
+        }
+
+        ResponseThumbnail responseThumbnail = new ResponseThumbnail( );
+        responseThumbnail.setIdResponse( nIdResponse );
+        responseThumbnail.setSize( nSize );
+        responseThumbnail.setMimeType( image.getMimeType( ) );
+        responseThumbnail.setContent( content );
+        store( responseThumbnail, lInvalidationCount );
+
+        return toImageResource( responseThumbnail );
+    }
+
+    /**
+     * Store a thumbnail, unless its response has been updated or removed since its image has started loading
+     * 
+     * @param thumbnail
+     *            The thumbnail
+     * @param lInvalidationCount
+     *            The number of invalidations when the image started loading
+     */
+    private static void store( ResponseThumbnail thumbnail, long lInvalidationCount )
+    {
+        synchronized( _lockStore )
+        {
+            if ( lInvalidationCount != _lInvalidationCount )
+            {
+                return;
+            }
+
+            try
+            {
+                ResponseThumbnailHome.create( thumbnail );
+            }
+            catch( AppException e )
+            {
+                // Another node may have stored the thumbnail in the meantime
+                AppLogService.error( "The thumbnail " + thumbnail.getSize( ) + " of the response " + thumbnail.getIdResponse( ) + " can not be stored", e );
+            }
+        }
+    }
+
+    /**
+     * Get the number of invalidations
+     * 
+     * @return The number of invalidations
+     */
+    private static long getInvalidationCount( )
+    {
+        synchronized( _lockStore )
+        {
+            return _lInvalidationCount;
+        }
+    }
+
+    /**
+     * Find a stored thumbnail
+     * 
+     * @param nIdResponse
+     *            The id of the response
+     * @param nSize
+     *            The size of the thumbnail
+     * @return The thumbnail, or null if it has not been generated
+     */
+    private static ImageResource findThumbnail( int nIdResponse, int nSize )
+    {
+        ResponseThumbnail thumbnail = ResponseThumbnailHome.findByPrimaryKey( nIdResponse, nSize );
+
+        return ( thumbnail != null ) ? toImageResource( thumbnail ) : null;
+    }
+
+    /**
+     * Convert a thumbnail to an image resource
+     * 
+     * @param thumbnail
+     *            The thumbnail
+     * @return The image resource
+     */
+    private static ImageResource toImageResource( ResponseThumbnail thumbnail )
+    {
+        ImageResource image = new ImageResource( );
+        image.setImage( thumbnail.getContent( ) );
+        image.setMimeType( thumbnail.getMimeType( ) );
+
+        return image;
+    }
+
+    /**
+     * Get the configured size of thumbnail to use for a display size
+     * 
+     * @param sizes
+     *            The configured sizes, in ascending order
+     * @param nSize
+     *            The display size
+     * @return The smallest size at least as large, or else the largest size, or 0 if there is no size
+     */
+    static int getThumbnailSize( int [ ] sizes, int nSize )
+    {
+        for ( int nThumbnailSize : sizes )
+        {
+            if ( nThumbnailSize >= nSize )
+            {
+                return nThumbnailSize;
+            }
+        }
+
+        return ( sizes.length > 0 ) ? sizes [sizes.length - 1] : 0;
+    }
+
+    /**
+     * Parse the configured sizes
+     * 
+     * @param strSizes
+     *            The sizes, separated by commas
+     * @return The distinct positive sizes, in ascending order
+     */
+    static int [ ] parseSizes( String strSizes )
+    {
+        if ( strSizes == null )
+        {
+            return new int [ 0];
+        }
+
+        return Arrays.stream( strSizes.split( SEPARATOR_SIZES ) ).mapToInt( strSize -> NumberUtils.toInt( strSize.trim( ), 0 ) ).filter( nSize -> nSize > 0 )
+                .distinct( ).sorted( ).toArray( );
+    }
+}
@@ -33,32 +33,40 @@
  */
 package fr.paris.lutece.plugins.genericattributes.service.upload;
 
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
 import org.apache.commons.fileupload.FileItem;
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
 
 import fr.paris.lutece.plugins.asynchronousupload.service.AbstractAsynchronousUploadHandler;
 import fr.paris.lutece.plugins.genericattributes.business.Entry;
 import fr.paris.lutece.plugins.genericattributes.business.EntryHome;
 import fr.paris.lutece.plugins.genericattributes.business.GenericAttributeError;
-import fr.paris.lutece.plugins.genericattributes.service.entrytype.EntryTypeServiceManager;
+import fr.paris.lutece.plugins.genericattributes.service.entrytype.AbstractEntryTypeUpload;
 import fr.paris.lutece.plugins.genericattributes.service.entrytype.IEntryTypeService;
+import fr.paris.lutece.plugins.genericattributes.service.upload.ChunkedUploadException.Reason;
+import fr.paris.lutece.plugins.genericattributes.service.upload.IUploadStagingStore.Status;
 import fr.paris.lutece.portal.service.i18n.I18nService;
+import fr.paris.lutece.portal.service.spring.SpringContextService;
 import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppLogService;
 import fr.paris.lutece.util.filesystem.UploadUtil;
 
+import net.sf.json.JSONObject;
+
 /**
  * Abstract class to manage uploaded files for generic attributes entries of type files
  */
@@ -67,13 +75,35 @@ public abstract class AbstractGenAttUploadHandler extends AbstractAsynchronousUp
     private static final String PREFIX_ENTRY_ID = IEntryTypeService.PREFIX_ATTRIBUTE;
     private static final Pattern PATTERN_PREFIX_ENTRY_ID = Pattern.compile( "[^0-9]+([0-9]+)$" );
     private static final String PARAM_CUSTOM_SESSION_ID = "CUSTOM_SESSION";
+    private static final String BEAN_STAGING_STORE = "genericattributes.uploadStagingStore";
+
+    // Chunked uploads
+    private static final String PARAMETER_ACTION = "action";
+    private static final String PARAMETER_FIELD_NAME = "fieldname";
+    private static final String PARAMETER_FILE_NAME = "file_name";
+    private static final String PARAMETER_SIZE = "size";
+    private static final String PARAMETER_UPLOAD_ID = "upload_id";
+    private static final String PARAMETER_OFFSET = "offset";
+    private static final String PARAMETER_CHECKSUM = "checksum";
+    private static final String ACTION_START = "start";
+    private static final String ACTION_OFFSET = "offset";
+    private static final String ACTION_APPEND = "append";
+    private static final String ACTION_FINISH = "finish";
+    private static final String ACTION_CANCEL = "cancel";
+    private static final String JSON_KEY_UPLOAD_ID = "upload_id";
+    private static final String JSON_KEY_OFFSET = "offset";
+    private static final String JSON_KEY_REASON = "reason";
+    private static final String JSON_KEY_ERROR = "error";
+    private static final String CONTENT_TYPE_JSON = "application/json";
 
     // Error messages
     private static final String ERROR_MESSAGE_UNKNOWN_ERROR = "genericattributes.message.unknownError";
+    private static final String ERROR_MESSAGE_SESSION_QUOTA = "genericattributes.message.error.uploading_file.session_quota";
+    private static final String ERROR_MESSAGE_GLOBAL_QUOTA = "genericattributes.message.error.uploading_file.global_quota";
 
-    /** <sessionId,<fieldName,fileItems>> */
-    /** contains uploaded file items */
-    private static Map<String, Map<String, List<FileItem>>> _mapAsynchronousUpload = new ConcurrentHashMap<>( );
+    /** contains uploaded file items, by session and field name */
+    private static IUploadStagingStore _stagingStore;
+    private static ChunkedUploadService _chunkedUploadService;
 
     /**
      * {@inheritDoc}
@@ -84,31 +114,20 @@ public abstract class AbstractGenAttUploadHandler extends AbstractAsynchronousUp
         if ( StringUtils.isNotBlank( strFieldName ) && ( strFieldName.length( ) > PREFIX_ENTRY_ID.length( ) ) )
         {
             String sessionId = getCustomSessionId( request.getSession( ) );
-            initMap( sessionId, strFieldName );
-
-            String strIdEntry = getEntryIdFromFieldName( strFieldName );
-
-            if ( StringUtils.isEmpty( strIdEntry ) || !StringUtils.isNumeric( strIdEntry ) )
-            {
-                return I18nService.getLocalizedString( ERROR_MESSAGE_UNKNOWN_ERROR, locale );
-            }
-
-            int nIdEntry = Integer.parseInt( strIdEntry );
-            Entry entry = EntryHome.findByPrimaryKey( nIdEntry );
 
-            List<FileItem> listUploadedFileItems = getListUploadedFiles( strFieldName, request.getSession( ) );
+            UploadPolicy policy = getUploadPolicy( strFieldName );
 
-            if ( entry != null )
+            if ( policy != null )
             {
-                GenericAttributeError error = EntryTypeServiceManager.getEntryTypeService( entry ).canUploadFiles( entry, listUploadedFileItems,
-                        listFileItemsToUpload, locale );
+                List<FileItem> listUploadedFileItems = getListUploadedFiles( strFieldName, request.getSession( ) );
+                GenericAttributeError error = checkUploadPolicy( policy, listUploadedFileItems, listFileItemsToUpload, locale );
 
                 if ( error != null )
                 {
                     return error.getErrorMessage( );
                 }
 
-                return null;
+                return checkQuotas( sessionId, listFileItemsToUpload, locale );
             }
         }
 
@@ -128,12 +147,7 @@ public abstract class AbstractGenAttUploadHandler extends AbstractAsynchronousUp
         
         String sessionId = getCustomSessionId( session );
 
-        initMap( sessionId, strFieldName );
-
-        // find session-related files in the map
-        Map<String, List<FileItem>> mapFileItemsSession = _mapAsynchronousUpload.get( sessionId );
-
-        return mapFileItemsSession.get( strFieldName );
+        return getStagingStore( ).getFileItems( sessionId, strFieldName );
     }
     
     private String getCustomSessionId( HttpSession session )
@@ -158,35 +172,283 @@ public abstract class AbstractGenAttUploadHandler extends AbstractAsynchronousUp
         String strFileName = UploadUtil.cleanFileName( fileItem.getName( ).trim( ) );
 
         String sessionId = getCustomSessionId( request.getSession( ) );
-        initMap( sessionId, strFieldName );
+        Status status = stageFileItem( sessionId, strFieldName, fileItem );
+
+        if ( status != Status.STAGED )
+        {
+            if ( status != Status.DUPLICATE )
+            {
+                AppLogService.error( "The uploaded file " + strFileName + " is rejected by the staging store : " + status );
+            }
+
+            fileItem.delete( );
+        }
+    }
+
+    /**
+     * Start a chunked upload of a file. The chunks are then sent with {@link #appendChunk(HttpServletRequest, String, long, InputStream, String)}, and the
+     * upload is finished by {@link #finishChunkedUpload(HttpServletRequest, String, Locale)}. An interrupted upload is resumed from the offset given by
+     * {@link #getChunkedUploadOffset(HttpServletRequest, String)}. Over HTTP, these steps are requested through
+     * {@link #process(HttpServletRequest, HttpServletResponse)}.
+     * 
+     * @param request
+     *            The HTTP request
+     * @param strFieldName
+     *            The name of the field
+     * @param strFileName
+     *            The name of the file
+     * @param lSize
+     *            The size of the file
+     * @return The id of the upload
+     * @throws ChunkedUploadException
+     *             if the file can not be uploaded to this field
+     */
+    public String startChunkedUpload( HttpServletRequest request, String strFieldName, String strFileName, long lSize ) throws ChunkedUploadException
+    {
+        String strSessionId = getCustomSessionId( request.getSession( ) );
+        UploadPolicy policy = getUploadPolicy( strFieldName );
 
-        // Check if this file has not already been uploaded
-        List<FileItem> uploadedFiles = getListUploadedFiles( strFieldName, request.getSession( ) );
+        if ( ( policy == null ) || StringUtils.isBlank( strFileName ) )
+        {
+            throw new ChunkedUploadException( Reason.REJECTED, 0L, "No file can be uploaded to the field " + strFieldName );
+        }
+
+        long lMaxSize = policy.getMaxSize( );
 
-        if ( uploadedFiles != null )
+        if ( ( lSize < 0 ) || ( ( lMaxSize >= 0 ) && ( lSize > lMaxSize ) ) )
         {
-            boolean bNew = true;
+            throw new ChunkedUploadException( Reason.SIZE_EXCEEDED, 0L, "The file exceeds " + lMaxSize + " bytes" );
+        }
 
-            if ( !uploadedFiles.isEmpty( ) )
-            {
-                Iterator<FileItem> iterUploadedFiles = uploadedFiles.iterator( );
+        if ( policy.isMaxFilesDefined( ) && ( getStagingStore( ).getFileItems( strSessionId, strFieldName ).size( ) >= policy.getMaxFiles( ) ) )
+        {
+            throw new ChunkedUploadException( Reason.MAX_FILES_EXCEEDED, 0L, "The field " + strFieldName + " has its maximum number of files" );
+        }
 
-                while ( bNew && iterUploadedFiles.hasNext( ) )
-                {
-                    FileItem uploadedFile = iterUploadedFiles.next( );
-                    String strUploadedFileName = UploadUtil.cleanFileName( uploadedFile.getName( ).trim( ) );
-                    // If we find a file with the same name and the same
-                    // length, we consider that the current file has
-                    // already been uploaded
-                    bNew = !( StringUtils.equals( strUploadedFileName, strFileName ) && ( uploadedFile.getSize( ) == fileItem.getSize( ) ) );
-                }
-            }
+        if ( getStagingStore( ).isSessionQuotaExceeded( strSessionId, lSize ) || getStagingStore( ).isGlobalQuotaExceeded( lSize ) )
+        {
+            throw new ChunkedUploadException( Reason.QUOTA_EXCEEDED, 0L, "The upload staging quota would be exceeded" );
+        }
 
-            if ( bNew )
+        return getChunkedUploadService( ).start( strSessionId, strFieldName, UploadUtil.cleanFileName( strFileName.trim( ) ), lSize );
+    }
+
+    /**
+     * Get the offset of a chunked upload, i.e. the number of bytes received, from which the upload is resumed
+     * 
+     * @param request
+     *            The HTTP request
+     * @param strUploadId
+     *            The id of the upload
+     * @return The offset
+     * @throws ChunkedUploadException
+     *             if the upload is unknown
+     */
+    public long getChunkedUploadOffset( HttpServletRequest request, String strUploadId ) throws ChunkedUploadException
+    {
+        return getChunkedUploadService( ).getOffset( strUploadId, getCustomSessionId( request.getSession( ) ) );
+    }
+
+    /**
+     * Append a chunk to a chunked upload
+     * 
+     * @param request
+     *            The HTTP request
+     * @param strUploadId
+     *            The id of the upload
+     * @param lOffset
+     *            The offset of the chunk in the file
+     * @param inputStream
+     *            The content of the chunk, not closed
+     * @param strChecksum
+     *            The SHA-256 checksum of the chunk, in hexadecimal
+     * @return The new offset of the upload
+     * @throws ChunkedUploadException
+     *             if the chunk is refused
+     * @throws IOException
+     *             if the chunk can not be read or written, in which case the upload can be resumed from its offset
+     */
+    public long appendChunk( HttpServletRequest request, String strUploadId, long lOffset, InputStream inputStream, String strChecksum )
+            throws ChunkedUploadException, IOException
+    {
+        return getChunkedUploadService( ).append( strUploadId, getCustomSessionId( request.getSession( ) ), lOffset, inputStream, strChecksum );
+    }
+
+    /**
+     * Finish a chunked upload whose bytes are all received. The file is checked by the entry, then staged as an uploaded file of its field.
+     * 
+     * @param request
+     *            The HTTP request
+     * @param strUploadId
+     *            The id of the upload
+     * @param locale
+     *            The locale
+     * @throws ChunkedUploadException
+     *             if the upload is incomplete or the file is refused
+     */
+    public void finishChunkedUpload( HttpServletRequest request, String strUploadId, Locale locale ) throws ChunkedUploadException
+    {
+        String strSessionId = getCustomSessionId( request.getSession( ) );
+        StagedFileItem fileItem = getChunkedUploadService( ).finish( strUploadId, strSessionId );
+        String strFieldName = fileItem.getFieldName( );
+        String strError = canUploadFiles( request, strFieldName, Collections.singletonList( fileItem ), locale );
+
+        if ( strError != null )
+        {
+            fileItem.delete( );
+            throw new ChunkedUploadException( Reason.REJECTED, fileItem.getSize( ), strError );
+        }
+
+        Status status = stageFileItem( strSessionId, strFieldName, fileItem );
+
+        if ( status == Status.STAGED )
+        {
+            return;
+        }
+
+        fileItem.delete( );
+
+        if ( status == Status.QUOTA_EXCEEDED )
+        {
+            throw new ChunkedUploadException( Reason.QUOTA_EXCEEDED, fileItem.getSize( ), "The upload staging quota would be exceeded" );
+        }
+
+        if ( status == Status.MAX_FILES_EXCEEDED )
+        {
+            throw new ChunkedUploadException( Reason.MAX_FILES_EXCEEDED, fileItem.getSize( ), "The field " + strFieldName + " has its maximum number of files" );
+        }
+
+        if ( status == Status.SIZE_EXCEEDED )
+        {
+            throw new ChunkedUploadException( Reason.SIZE_EXCEEDED, fileItem.getSize( ), "The file exceeds the maximum size of the field" );
+        }
+    }
+
+    /**
+     * Cancel a chunked upload
+     * 
+     * @param request
+     *            The HTTP request
+     * @param strUploadId
+     *            The id of the upload
+     * @throws ChunkedUploadException
+     *             if the upload is unknown
+     */
+    public void cancelChunkedUpload( HttpServletRequest request, String strUploadId ) throws ChunkedUploadException
+    {
+        getChunkedUploadService( ).cancel( strUploadId, getCustomSessionId( request.getSession( ) ) );
+    }
+
+    /**
+     * Process a request of the chunked uploads, received by {@link fr.paris.lutece.plugins.genericattributes.web.ChunkedUploadServlet}. The step is given by
+     * the parameter <code>action</code>:
+     * <ul>
+     * <li><code>start</code>, with the parameters <code>fieldname</code>, <code>file_name</code> and <code>size</code>, gives the <code>upload_id</code> of
+     * the new upload;</li>
+     * <li><code>offset</code>, with <code>upload_id</code>, gives the <code>offset</code> from which the upload is resumed;</li>
+     * <li><code>append</code>, with <code>upload_id</code>, the <code>offset</code> of the chunk and its SHA-256 <code>checksum</code> in hexadecimal, takes
+     * the chunk from the body of the request and gives the new <code>offset</code>;</li>
+     * <li><code>finish</code> and <code>cancel</code>, with <code>upload_id</code>, end the upload.</li>
+     * </ul>
+     * The answer is a JSON object. A refused step is answered with an error status, the <code>reason</code> of the refusal and the <code>offset</code> from
+     * which the upload is resumed.
+     * 
+     * @param request
+     *            The HTTP request
+     * @param response
+     *            The HTTP response
+     * @throws IOException
+     *             if the answer can not be written
+     */
+    public void process( HttpServletRequest request, HttpServletResponse response ) throws IOException
+    {
+        String strAction = request.getParameter( PARAMETER_ACTION );
+        String strUploadId = request.getParameter( PARAMETER_UPLOAD_ID );
+        JSONObject json = new JSONObject( );
+        int nStatus = HttpServletResponse.SC_OK;
+
+        try
+        {
+            if ( ACTION_START.equals( strAction ) )
             {
-                uploadedFiles.add( fileItem );
+                strUploadId = startChunkedUpload( request, request.getParameter( PARAMETER_FIELD_NAME ), request.getParameter( PARAMETER_FILE_NAME ),
+                        NumberUtils.toLong( request.getParameter( PARAMETER_SIZE ), -1L ) );
+                json.element( JSON_KEY_UPLOAD_ID, strUploadId );
+                json.element( JSON_KEY_OFFSET, 0L );
             }
+            else
+                if ( ACTION_OFFSET.equals( strAction ) )
+                {
+                    json.element( JSON_KEY_OFFSET, getChunkedUploadOffset( request, strUploadId ) );
+                }
+                else
+                    if ( ACTION_APPEND.equals( strAction ) )
+                    {
+                        json.element( JSON_KEY_OFFSET, appendChunk( request, strUploadId, NumberUtils.toLong( request.getParameter( PARAMETER_OFFSET ), -1L ),
+                                request.getInputStream( ), request.getParameter( PARAMETER_CHECKSUM ) ) );
+                    }
+                    else
+                        if ( ACTION_FINISH.equals( strAction ) )
+                        {
+                            finishChunkedUpload( request, strUploadId, request.getLocale( ) );
+                        }
+                        else
+                            if ( ACTION_CANCEL.equals( strAction ) )
+                            {
+                                cancelChunkedUpload( request, strUploadId );
+                            }
+                            else
+                            {
+                                nStatus = HttpServletResponse.SC_BAD_REQUEST;
+                                json.element( JSON_KEY_ERROR, "Unknown action " + strAction );
+                            }
+        }
+        catch( ChunkedUploadException e )
+        {
+            nStatus = getHttpStatus( e.getReason( ) );
+            json.element( JSON_KEY_REASON, e.getReason( ).name( ) );
+            json.element( JSON_KEY_OFFSET, e.getOffset( ) );
+            json.element( JSON_KEY_ERROR, e.getMessage( ) );
+        }
+        catch( IOException e )
+        {
+            // The chunk is discarded : the client gets the offset of the upload and resumes from it
+            AppLogService.info( "Chunk of the upload " + strUploadId + " interrupted : " + e.getMessage( ) );
+            nStatus = HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+            json.element( JSON_KEY_ERROR, e.getMessage( ) );
         }
+
+        response.setStatus( nStatus );
+        response.setContentType( CONTENT_TYPE_JSON );
+        response.setCharacterEncoding( StandardCharsets.UTF_8.name( ) );
+        response.getWriter( ).print( json.toString( ) );
+    }
+
+    /**
+     * Get the HTTP status answering a refused step of a chunked upload
+     * 
+     * @param reason
+     *            The reason of the refusal
+     * @return The HTTP status
+     */
+    static int getHttpStatus( Reason reason )
+    {
+        if ( reason == Reason.UNKNOWN_UPLOAD )
+        {
+            return HttpServletResponse.SC_NOT_FOUND;
+        }
+
+        if ( ( reason == Reason.OFFSET_MISMATCH ) || ( reason == Reason.INCOMPLETE ) || ( reason == Reason.MAX_FILES_EXCEEDED ) )
+        {
+            return HttpServletResponse.SC_CONFLICT;
+        }
+
+        if ( ( reason == Reason.SIZE_EXCEEDED ) || ( reason == Reason.QUOTA_EXCEEDED ) )
+        {
+            return HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE;
+        }
+
+        return HttpServletResponse.SC_BAD_REQUEST;
     }
 
     /**
@@ -196,14 +458,7 @@ public abstract class AbstractGenAttUploadHandler extends AbstractAsynchronousUp
     public void removeFileItem( String strFieldName, HttpSession session, int nIndex )
     {
         // Remove the file (this will also delete the file physically)
-        List<FileItem> uploadedFiles = getListUploadedFiles( strFieldName, session );
-
-        if ( ( uploadedFiles != null ) && !uploadedFiles.isEmpty( ) && ( uploadedFiles.size( ) > nIndex ) )
-        {
-            // Remove the object from the Hashmap
-            FileItem fileItem = uploadedFiles.remove( nIndex );
-            fileItem.delete( );
-        }
+        getStagingStore( ).remove( getCustomSessionId( session ), strFieldName, nIndex );
     }
 
     /**
@@ -217,7 +472,7 @@ public abstract class AbstractGenAttUploadHandler extends AbstractAsynchronousUp
         String sessionId = (String) session.getAttribute( PARAM_CUSTOM_SESSION_ID );
         if ( sessionId != null) 
         {
-            _mapAsynchronousUpload.remove( sessionId );
+            getStagingStore( ).removeSession( sessionId );
         }
        
     }
@@ -258,28 +513,155 @@ public abstract class AbstractGenAttUploadHandler extends AbstractAsynchronousUp
     }
 
     /**
-     * Init the map
+     * Get the store of the uploaded files, whose gauges give the bytes and files staged
+     * 
+     * @return The staging store
+     */
+    public static synchronized IUploadStagingStore getStagingStore( )
+    {
+        if ( _stagingStore == null )
+        {
+            _stagingStore = SpringContextService.getBean( BEAN_STAGING_STORE );
+        }
+
+        return _stagingStore;
+    }
+
+    /**
+     * Get the service of the chunked uploads
+     * 
+     * @return The chunked upload service
+     */
+    public static synchronized ChunkedUploadService getChunkedUploadService( )
+    {
+        if ( _chunkedUploadService == null )
+        {
+            _chunkedUploadService = new ChunkedUploadService( );
+        }
+
+        return _chunkedUploadService;
+    }
+
+    /**
+     * Stage a file with the limits of the entry of its field. The limits are enforced while the file is copied to the staging store, and a file whose content
+     * is already staged for the field is ignored.
      * 
      * @param strSessionId
-     *            the session id
+     *            The id of the session
+     * @param strFieldName
+     *            The name of the field
+     * @param fileItem
+     *            The file item
+     * @return The outcome of the staging
+     */
+    private Status stageFileItem( String strSessionId, String strFieldName, FileItem fileItem )
+    {
+        long lMaxSize = -1L;
+        int nMaxFiles = -1;
+        UploadPolicy policy = getUploadPolicy( strFieldName );
+
+        if ( policy != null )
+        {
+            lMaxSize = policy.getMaxSize( );
+
+            if ( policy.isMaxFilesDefined( ) )
+            {
+                nMaxFiles = policy.getMaxFiles( );
+            }
+        }
+
+        return getStagingStore( ).add( strSessionId, strFieldName, fileItem, lMaxSize, nMaxFiles );
+    }
+
+    /**
+     * Get the upload policy of the entry of a field
+     * 
      * @param strFieldName
-     *            the field name
+     *            The name of the field
+     * @return The upload policy, or null if the field is not the one of an entry
      */
-    private void initMap( String strSessionId, String strFieldName )
+    private UploadPolicy getUploadPolicy( String strFieldName )
     {
-        // find session-related files in the map
-        Map<String, List<FileItem>> mapFileItemsSession = _mapAsynchronousUpload.get( strSessionId );
+        String strIdEntry = getEntryIdFromFieldName( strFieldName );
 
-        // create map if not exists
-        if ( mapFileItemsSession == null )
+        if ( StringUtils.isEmpty( strIdEntry ) || !StringUtils.isNumeric( strIdEntry ) )
         {
-            synchronized( this )
+            return null;
+        }
+
+        return UploadPolicyService.getPolicy( Integer.parseInt( strIdEntry ) );
+    }
+
+    /**
+     * Check the files to upload with the upload policy of their entry. The entry is read only if its entry type does not check the files with a policy.
+     * 
+     * @param policy
+     *            The upload policy of the entry
+     * @param listUploadedFileItems
+     *            The files already uploaded
+     * @param listFileItemsToUpload
+     *            The files to upload
+     * @param locale
+     *            The locale
+     * @return The error if any, or null if the files can be uploaded
+     */
+    private GenericAttributeError checkUploadPolicy( UploadPolicy policy, List<FileItem> listUploadedFileItems, List<FileItem> listFileItemsToUpload,
+            Locale locale )
+    {
+        IEntryTypeService entryTypeService = policy.getEntryTypeService( );
+
+        if ( entryTypeService instanceof AbstractEntryTypeUpload )
+        {
+            return ( (AbstractEntryTypeUpload) entryTypeService ).canUploadFiles( policy, listUploadedFileItems, listFileItemsToUpload, locale );
+        }
+
+        Entry entry = EntryHome.findByPrimaryKey( policy.getIdEntry( ) );
+
+        if ( ( entry == null ) || ( entryTypeService == null ) )
+        {
+            return null;
+        }
+
+        return entryTypeService.canUploadFiles( entry, listUploadedFileItems, listFileItemsToUpload, locale );
+    }
+
+    /**
+     * Check that the files to upload do not exceed the staging quotas
+     * 
+     * @param strSessionId
+     *            The id of the session
+     * @param listFileItemsToUpload
+     *            The files to upload
+     * @param locale
+     *            The locale
+     * @return The error message, or null if the files can be staged
+     */
+    private String checkQuotas( String strSessionId, List<FileItem> listFileItemsToUpload, Locale locale )
+    {
+        long lSize = 0L;
+
+        if ( listFileItemsToUpload != null )
+        {
+            for ( FileItem fileItem : listFileItemsToUpload )
             {
-                // Ignore double check locking error : assignation and instanciation of objects are separated.
-                mapFileItemsSession = _mapAsynchronousUpload.computeIfAbsent( strSessionId, s -> new ConcurrentHashMap<>( ) );
+                lSize += fileItem.getSize( );
             }
         }
 
-        mapFileItemsSession.computeIfAbsent( strFieldName, s -> new ArrayList<>( ) );
+        if ( getStagingStore( ).isSessionQuotaExceeded( strSessionId, lSize ) )
+        {
+            Object [ ] args = {
+                    getStagingStore( ).getSessionQuota( )
+            };
+
+            return I18nService.getLocalizedString( ERROR_MESSAGE_SESSION_QUOTA, args, locale );
+        }
+
+        if ( getStagingStore( ).isGlobalQuotaExceeded( lSize ) )
+        {
+            return I18nService.getLocalizedString( ERROR_MESSAGE_GLOBAL_QUOTA, locale );
+        }
+
+        return null;
     }
 }
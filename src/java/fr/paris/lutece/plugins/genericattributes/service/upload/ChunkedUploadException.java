@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.upload;
+
+/**
+ * Exception thrown when a step of a chunked upload is refused. The offset tells the client where to resume.
+ */
+public class ChunkedUploadException extends Exception
+{
+    private static final long serialVersionUID = -3716249120358417305L;
+
+    /**
+     * Reason of the refusal
+     */
+    public enum Reason
+    {
+        /** The upload is unknown, finished or expired */
+        UNKNOWN_UPLOAD,
+        /** The chunk does not start at the current offset of the upload */
+        OFFSET_MISMATCH,
+        /** The checksum of the chunk does not match its content */
+        CHECKSUM_MISMATCH,
+        /** The file exceeds its announced size or the maximum size of the field */
+        SIZE_EXCEEDED,
+        /** The field already has its maximum number of files */
+        MAX_FILES_EXCEEDED,
+        /** The quota of the session or the global quota would be exceeded */
+        QUOTA_EXCEEDED,
+        /** The upload is finished before all its bytes are received */
+        INCOMPLETE,
+        /** The file is refused by the entry */
+        REJECTED
+    }
+
+    private final Reason _reason;
+    private final long _lOffset;
+
+    /**
+     * Constructor
+     * 
+     * @param reason
+     *            The reason of the refusal
+     * @param lOffset
+     *            The current offset of the upload
+     * @param strMessage
+     *            The message
+     */
+    public ChunkedUploadException( Reason reason, long lOffset, String strMessage )
+    {
+        super( strMessage );
+        _reason = reason;
+        _lOffset = lOffset;
+    }
+
+    /**
+     * Get the reason of the refusal
+     * 
+     * @return The reason
+     */
+    public Reason getReason( )
+    {
+        return _reason;
+    }
+
+    /**
+     * Get the current offset of the upload, from which the client can resume
+     * 
+     * @return The offset
+     */
+    public long getOffset( )
+    {
+        return _lOffset;
+    }
+}
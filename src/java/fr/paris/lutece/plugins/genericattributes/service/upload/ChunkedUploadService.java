@@ -0,0 +1,802 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.upload;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import fr.paris.lutece.plugins.genericattributes.service.file.ResponseBlobService;
+import fr.paris.lutece.plugins.genericattributes.service.upload.ChunkedUploadException.Reason;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+/**
+ * Resumable uploads of a file in chunks. Each chunk is given with its offset in the file and its SHA-256 checksum, and is appended to a staging file as it is
+ * received, so the file is never held in memory. A chunk which is interrupted or does not match its checksum is discarded, and the client resumes from the
+ * offset of the upload. Once all the bytes are received, the staging file is moved out of the directory of the chunks to the staging directory, where the
+ * reaper of the chunks does not see it, and becomes a {@link StagedFileItem}.
+ * <p>
+ * The state of an upload (session, field, file name, size and offset) is stored in a small file next to its staging file, and rewritten by each chunk, so
+ * that the chunks of an upload can be sent to any node sharing the staging directory. The chunks are written under a lock of the staging file. The digest
+ * of the file can not be stored, so a node recomputes it from the staging file when another node has received the previous chunks.
+ * </p>
+ */
+public class ChunkedUploadService
+{
+    // Constants
+    // Reserved directory of the staging directory, which the staging stores do not take for a session
+    private static final String DIRECTORY_CHUNKS = ".chunks";
+    private static final String SUFFIX_PART = ".part";
+    private static final String SUFFIX_STATE = ".upload";
+    private static final String SUFFIX_TEMPORARY = ".tmp";
+    private static final String PREFIX_FINISHED = "staged";
+    private static final String SUFFIX_FINISHED = ".tmp";
+    private static final String KEY_SESSION_ID = "sessionId";
+    private static final String KEY_FIELD_NAME = "fieldName";
+    private static final String KEY_FILE_NAME = "fileName";
+    private static final String KEY_SIZE = "size";
+    private static final String KEY_OFFSET = "offset";
+    private static final Pattern PATTERN_UPLOAD_ID = Pattern.compile( "[0-9a-f-]{36}" );
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final int BUFFER_SIZE = 8192;
+
+    // The uploads known by this node
+    private final Map<String, ChunkedUpload> _mapUploads = new ConcurrentHashMap<>( );
+    private final Path _pathDirectory;
+
+    /**
+     * Constructor, with the staging directory of the plugin properties
+     */
+    public ChunkedUploadService( )
+    {
+        this( UploadStagingStore.getDirectoryProperty( ).resolve( DIRECTORY_CHUNKS ) );
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param pathDirectory
+     *            The directory of the staging files, whose parent receives the finished files
+     */
+    ChunkedUploadService( Path pathDirectory )
+    {
+        _pathDirectory = pathDirectory;
+    }
+
+    /**
+     * Start an upload
+     * 
+     * @param strSessionId
+     *            The id of the session
+     * @param strFieldName
+     *            The name of the field
+     * @param strFileName
+     *            The name of the file
+     * @param lSize
+     *            The size of the file
+     * @return The id of the upload
+     */
+    public String start( String strSessionId, String strFieldName, String strFileName, long lSize )
+    {
+        ChunkedUpload upload = new ChunkedUpload( _pathDirectory, UUID.randomUUID( ).toString( ), strSessionId, strFieldName, strFileName, lSize );
+        upload._lOffset = 0L;
+        upload._digest = newDigest( );
+
+        try
+        {
+            Files.createDirectories( _pathDirectory );
+            Files.createFile( upload._pathPart );
+            writeState( upload, 0L );
+            _mapUploads.put( upload._strUploadId, upload );
+        }
+        catch( IOException e )
+        {
+            deleteQuietly( upload._pathPart );
+            throw new AppException( "Unable to start the upload of " + strFileName, e );
+        }
+
+        return upload._strUploadId;
+    }
+
+    /**
+     * Get the offset of an upload, i.e. the number of bytes received
+     * 
+     * @param strUploadId
+     *            The id of the upload
+     * @param strSessionId
+     *            The id of the session
+     * @return The offset
+     * @throws ChunkedUploadException
+     *             if the upload is unknown
+     */
+    public long getOffset( String strUploadId, String strSessionId ) throws ChunkedUploadException
+    {
+        ChunkedUpload upload = getUpload( strUploadId, strSessionId );
+
+        synchronized( upload )
+        {
+            Properties state = readState( upload._pathState );
+
+            if ( state == null )
+            {
+                throw forget( upload );
+            }
+
+            try
+            {
+                // The state is the last access of the upload for the reapers of all the nodes
+                Files.setLastModifiedTime( upload._pathState, FileTime.fromMillis( System.currentTimeMillis( ) ) );
+            }
+            catch( IOException e )
+            {
+                AppLogService.error( "Unable to touch the chunked upload " + upload._pathState, e );
+            }
+
+            return Long.parseLong( state.getProperty( KEY_OFFSET ) );
+        }
+    }
+
+    /**
+     * Append a chunk to an upload
+     * 
+     * @param strUploadId
+     *            The id of the upload
+     * @param strSessionId
+     *            The id of the session
+     * @param lOffset
+     *            The offset of the chunk in the file
+     * @param inputStream
+     *            The content of the chunk, not closed
+     * @param strChecksum
+     *            The SHA-256 checksum of the chunk, in hexadecimal
+     * @return The new offset of the upload
+     * @throws ChunkedUploadException
+     *             if the chunk is refused
+     * @throws IOException
+     *             if the chunk can not be read or written, in which case the upload can be resumed from its offset
+     */
+    public long append( String strUploadId, String strSessionId, long lOffset, InputStream inputStream, String strChecksum )
+            throws ChunkedUploadException, IOException
+    {
+        ChunkedUpload upload = getUpload( strUploadId, strSessionId );
+
+        synchronized( upload )
+        {
+            try ( FileChannel channel = FileChannel.open( upload._pathPart, StandardOpenOption.READ, StandardOpenOption.WRITE );
+                    FileLock lock = channel.lock( ) )
+            {
+                synchronize( upload, channel );
+
+                if ( lOffset != upload._lOffset )
+                {
+                    throw new ChunkedUploadException( Reason.OFFSET_MISMATCH, upload._lOffset, "The upload is at offset " + upload._lOffset );
+                }
+
+                // The bytes of a chunk interrupted on any node are dropped
+                channel.truncate( lOffset );
+
+                MessageDigest digestFile = cloneDigest( upload._digest );
+                LimitedDigestInputStream in = new LimitedDigestInputStream( inputStream, upload._lSize - lOffset );
+
+                try
+                {
+                    write( in, channel, lOffset, digestFile );
+                }
+                catch( LimitedDigestInputStream.LimitExceededException e )
+                {
+                    channel.truncate( lOffset );
+                    throw new ChunkedUploadException( Reason.SIZE_EXCEEDED, lOffset, e.getMessage( ) );
+                }
+                catch( IOException | RuntimeException e )
+                {
+                    channel.truncate( lOffset );
+                    throw e;
+                }
+
+                if ( ( strChecksum == null ) || !strChecksum.equalsIgnoreCase( in.getHash( ) ) )
+                {
+                    channel.truncate( lOffset );
+                    throw new ChunkedUploadException( Reason.CHECKSUM_MISMATCH, lOffset, "The checksum of the chunk does not match its content" );
+                }
+
+                long lNewOffset = lOffset + in.getSize( );
+                writeState( upload, lNewOffset );
+                upload._lOffset = lNewOffset;
+                upload._digest = digestFile;
+
+                return lNewOffset;
+            }
+            catch( NoSuchFileException e )
+            {
+                throw forget( upload );
+            }
+        }
+    }
+
+    /**
+     * Finish an upload whose bytes are all received
+     * 
+     * @param strUploadId
+     *            The id of the upload
+     * @param strSessionId
+     *            The id of the session
+     * @return The staged file, to be deleted by the caller
+     * @throws ChunkedUploadException
+     *             if the upload is unknown or incomplete
+     */
+    public StagedFileItem finish( String strUploadId, String strSessionId ) throws ChunkedUploadException
+    {
+        ChunkedUpload upload = getUpload( strUploadId, strSessionId );
+
+        synchronized( upload )
+        {
+            try ( FileChannel channel = FileChannel.open( upload._pathPart, StandardOpenOption.READ, StandardOpenOption.WRITE );
+                    FileLock lock = channel.lock( ) )
+            {
+                synchronize( upload, channel );
+
+                if ( upload._lOffset != upload._lSize )
+                {
+                    throw new ChunkedUploadException( Reason.INCOMPLETE, upload._lOffset, "The upload is at offset " + upload._lOffset + " of " + upload._lSize );
+                }
+
+                // Only the node which deletes the state finishes the upload
+                Files.delete( upload._pathState );
+                _mapUploads.remove( strUploadId, upload );
+            }
+            catch( NoSuchFileException e )
+            {
+                throw forget( upload );
+            }
+            catch( IOException e )
+            {
+                throw new AppException( "Unable to finish the upload " + strUploadId, e );
+            }
+
+            // The staging file left in the directory of the chunks without its state would be reaped while the file is still staged
+            Path pathFinished = _pathDirectory.resolveSibling( PREFIX_FINISHED + strUploadId + SUFFIX_FINISHED );
+
+            try
+            {
+                Files.move( upload._pathPart, pathFinished, StandardCopyOption.ATOMIC_MOVE );
+            }
+            catch( IOException e )
+            {
+                deleteQuietly( upload._pathPart );
+                throw new AppException( "Unable to finish the upload " + strUploadId, e );
+            }
+
+            return new StagedFileItem( pathFinished.toFile( ), upload._lSize, ResponseBlobService.toHex( upload._digest.digest( ) ),
+                    upload._strFileName, upload._strFieldName, 0 );
+        }
+    }
+
+    /**
+     * Cancel an upload and delete its staging file
+     * 
+     * @param strUploadId
+     *            The id of the upload
+     * @param strSessionId
+     *            The id of the session
+     * @throws ChunkedUploadException
+     *             if the upload is unknown
+     */
+    public void cancel( String strUploadId, String strSessionId ) throws ChunkedUploadException
+    {
+        ChunkedUpload upload = getUpload( strUploadId, strSessionId );
+
+        synchronized( upload )
+        {
+            _mapUploads.remove( strUploadId, upload );
+
+            try ( FileChannel channel = FileChannel.open( upload._pathPart, StandardOpenOption.WRITE ); FileLock lock = channel.lock( ) )
+            {
+                Files.deleteIfExists( upload._pathState );
+            }
+            catch( NoSuchFileException e )
+            {
+                // already finished or cancelled
+            }
+            catch( IOException e )
+            {
+                AppLogService.error( "Unable to cancel the chunked upload " + upload._pathState, e );
+            }
+
+            deleteQuietly( upload._pathState );
+            deleteQuietly( upload._pathPart );
+        }
+    }
+
+    /**
+     * Cancel the uploads last accessed before a time, and delete the staging files left without a state
+     * 
+     * @param lLimit
+     *            The time, in milliseconds
+     * @return The number of uploads cancelled
+     */
+    public int reap( long lLimit )
+    {
+        int nUploads = 0;
+
+        for ( Path pathState : listFiles( SUFFIX_STATE ) )
+        {
+            if ( getLastModifiedTime( pathState ) < lLimit )
+            {
+                String strUploadId = getUploadId( pathState, SUFFIX_STATE );
+                _mapUploads.remove( strUploadId );
+                deleteQuietly( pathState );
+                deleteQuietly( _pathDirectory.resolve( strUploadId + SUFFIX_PART ) );
+                nUploads++;
+            }
+        }
+
+        // The uploads finished or cancelled by the other nodes
+        _mapUploads.values( ).removeIf( upload -> !Files.exists( upload._pathState ) );
+
+        for ( Path pathPart : listFiles( SUFFIX_PART ) )
+        {
+            if ( !Files.exists( _pathDirectory.resolve( getUploadId( pathPart, SUFFIX_PART ) + SUFFIX_STATE ) ) && ( getLastModifiedTime( pathPart ) < lLimit ) )
+            {
+                deleteQuietly( pathPart );
+            }
+        }
+
+        for ( Path pathTemporary : listFiles( SUFFIX_TEMPORARY ) )
+        {
+            if ( getLastModifiedTime( pathTemporary ) < lLimit )
+            {
+                deleteQuietly( pathTemporary );
+            }
+        }
+
+        return nUploads;
+    }
+
+    /**
+     * Get the number of uploads in progress known by this node
+     * 
+     * @return The number of uploads
+     */
+    public int getUploadCount( )
+    {
+        return _mapUploads.size( );
+    }
+
+    /**
+     * Get an upload of a session, loading its state if it was started on another node
+     * 
+     * @param strUploadId
+     *            The id of the upload
+     * @param strSessionId
+     *            The id of the session
+     * @return The upload
+     * @throws ChunkedUploadException
+     *             if the upload is unknown for this session
+     */
+    private ChunkedUpload getUpload( String strUploadId, String strSessionId ) throws ChunkedUploadException
+    {
+        // The id names the files of the upload
+        if ( ( strUploadId == null ) || !PATTERN_UPLOAD_ID.matcher( strUploadId ).matches( ) )
+        {
+            throw new ChunkedUploadException( Reason.UNKNOWN_UPLOAD, 0L, "Unknown upload " + strUploadId );
+        }
+
+        ChunkedUpload upload = _mapUploads.get( strUploadId );
+
+        if ( upload == null )
+        {
+            Properties state = readState( _pathDirectory.resolve( strUploadId + SUFFIX_STATE ) );
+
+            if ( state != null )
+            {
+                ChunkedUpload uploadLoaded = new ChunkedUpload( _pathDirectory, strUploadId, state.getProperty( KEY_SESSION_ID ),
+                        state.getProperty( KEY_FIELD_NAME ), state.getProperty( KEY_FILE_NAME ), Long.parseLong( state.getProperty( KEY_SIZE ) ) );
+                upload = _mapUploads.putIfAbsent( strUploadId, uploadLoaded );
+
+                if ( upload == null )
+                {
+                    upload = uploadLoaded;
+                }
+            }
+        }
+
+        if ( ( upload == null ) || !upload._strSessionId.equals( strSessionId ) )
+        {
+            throw new ChunkedUploadException( Reason.UNKNOWN_UPLOAD, 0L, "Unknown upload " + strUploadId );
+        }
+
+        return upload;
+    }
+
+    /**
+     * Forget an upload finished, cancelled or reaped by another node
+     * 
+     * @param upload
+     *            The upload
+     * @return The exception to throw
+     */
+    private ChunkedUploadException forget( ChunkedUpload upload )
+    {
+        _mapUploads.remove( upload._strUploadId, upload );
+
+        return new ChunkedUploadException( Reason.UNKNOWN_UPLOAD, 0L, "Unknown upload " + upload._strUploadId );
+    }
+
+    /**
+     * Bring an upload up to date with its state, which may have been changed by another node. Called under the lock of the staging file.
+     * 
+     * @param upload
+     *            The upload
+     * @param channel
+     *            The staging file
+     * @throws ChunkedUploadException
+     *             if the upload is no longer in progress
+     * @throws IOException
+     *             if the staging file can not be read
+     */
+    private void synchronize( ChunkedUpload upload, FileChannel channel ) throws ChunkedUploadException, IOException
+    {
+        Properties state = readState( upload._pathState );
+
+        if ( state == null )
+        {
+            throw forget( upload );
+        }
+
+        long lOffset = Long.parseLong( state.getProperty( KEY_OFFSET ) );
+
+        if ( lOffset != upload._lOffset )
+        {
+            upload._digest = digest( channel, lOffset );
+            upload._lOffset = lOffset;
+        }
+    }
+
+    /**
+     * Write the state of an upload, through a temporary file renamed over the previous state
+     * 
+     * @param upload
+     *            The upload
+     * @param lOffset
+     *            The offset of the upload
+     * @throws IOException
+     *             if the state can not be written
+     */
+    private void writeState( ChunkedUpload upload, long lOffset ) throws IOException
+    {
+        Properties state = new Properties( );
+        state.setProperty( KEY_SESSION_ID, upload._strSessionId );
+        state.setProperty( KEY_FIELD_NAME, upload._strFieldName );
+        state.setProperty( KEY_FILE_NAME, upload._strFileName );
+        state.setProperty( KEY_SIZE, String.valueOf( upload._lSize ) );
+        state.setProperty( KEY_OFFSET, String.valueOf( lOffset ) );
+
+        Path pathTemporary = Files.createTempFile( _pathDirectory, upload._strUploadId, SUFFIX_TEMPORARY );
+
+        try
+        {
+            try ( Writer writer = Files.newBufferedWriter( pathTemporary, StandardCharsets.UTF_8 ) )
+            {
+                state.store( writer, null );
+            }
+
+            Files.move( pathTemporary, upload._pathState, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+        }
+        catch( IOException | RuntimeException e )
+        {
+            deleteQuietly( pathTemporary );
+            throw e;
+        }
+    }
+
+    /**
+     * Read the state of an upload
+     * 
+     * @param pathState
+     *            The state file
+     * @return The state, or null if the upload is not in progress
+     */
+    private static Properties readState( Path pathState )
+    {
+        Properties state = new Properties( );
+
+        try ( Reader reader = Files.newBufferedReader( pathState, StandardCharsets.UTF_8 ) )
+        {
+            state.load( reader );
+        }
+        catch( NoSuchFileException e )
+        {
+            return null;
+        }
+        catch( IOException e )
+        {
+            throw new AppException( "Unable to read the chunked upload " + pathState, e );
+        }
+
+        return state;
+    }
+
+    /**
+     * List the files of the uploads with a suffix
+     * 
+     * @param strSuffix
+     *            The suffix
+     * @return The files, empty if there is no upload
+     */
+    private List<Path> listFiles( String strSuffix )
+    {
+        List<Path> listFiles = new ArrayList<>( );
+
+        try ( DirectoryStream<Path> stream = Files.newDirectoryStream( _pathDirectory, "*" + strSuffix ) )
+        {
+            for ( Path path : stream )
+            {
+                listFiles.add( path );
+            }
+        }
+        catch( NoSuchFileException e )
+        {
+            // no upload yet
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Unable to list the chunked uploads of " + _pathDirectory, e );
+        }
+
+        return listFiles;
+    }
+
+    /**
+     * Get the id of the upload of a file
+     * 
+     * @param path
+     *            The file
+     * @param strSuffix
+     *            The suffix of the file
+     * @return The id of the upload
+     */
+    private static String getUploadId( Path path, String strSuffix )
+    {
+        String strFileName = path.getFileName( ).toString( );
+
+        return strFileName.substring( 0, strFileName.length( ) - strSuffix.length( ) );
+    }
+
+    /**
+     * Get the last modification time of a file
+     * 
+     * @param path
+     *            The file
+     * @return The time, in milliseconds, or {@link Long#MAX_VALUE} if the file is gone
+     */
+    private static long getLastModifiedTime( Path path )
+    {
+        try
+        {
+            return Files.getLastModifiedTime( path ).toMillis( );
+        }
+        catch( IOException e )
+        {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Copy a chunk at an offset of a staging file
+     * 
+     * @param in
+     *            The chunk
+     * @param channel
+     *            The staging file
+     * @param lOffset
+     *            The offset
+     * @param digestFile
+     *            The digest of the file, updated with the chunk
+     * @throws IOException
+     *             if the chunk can not be copied
+     */
+    private static void write( InputStream in, FileChannel channel, long lOffset, MessageDigest digestFile ) throws IOException
+    {
+        byte [ ] buffer = new byte [ BUFFER_SIZE];
+        long lPosition = lOffset;
+        int nRead;
+
+        while ( ( nRead = in.read( buffer ) ) != -1 )
+        {
+            digestFile.update( buffer, 0, nRead );
+
+            ByteBuffer byteBuffer = ByteBuffer.wrap( buffer, 0, nRead );
+
+            while ( byteBuffer.hasRemaining( ) )
+            {
+                lPosition += channel.write( byteBuffer, lPosition );
+            }
+        }
+    }
+
+    /**
+     * Compute the digest of the beginning of a staging file
+     * 
+     * @param channel
+     *            The staging file
+     * @param lLength
+     *            The number of bytes to digest
+     * @return The digest
+     * @throws IOException
+     *             if the staging file can not be read or is shorter than the length
+     */
+    private static MessageDigest digest( FileChannel channel, long lLength ) throws IOException
+    {
+        MessageDigest digest = newDigest( );
+        ByteBuffer buffer = ByteBuffer.allocate( BUFFER_SIZE );
+        long lPosition = 0L;
+
+        while ( lPosition < lLength )
+        {
+            buffer.clear( );
+            buffer.limit( (int) Math.min( BUFFER_SIZE, lLength - lPosition ) );
+
+            int nRead = channel.read( buffer, lPosition );
+
+            if ( nRead < 0 )
+            {
+                throw new IOException( "The staging file is shorter than the offset of its upload" );
+            }
+
+            digest.update( buffer.array( ), 0, nRead );
+            lPosition += nRead;
+        }
+
+        return digest;
+    }
+
+    /**
+     * Create the digest of a file
+     * 
+     * @return The digest
+     */
+    private static MessageDigest newDigest( )
+    {
+        try
+        {
+            return MessageDigest.getInstance( DIGEST_ALGORITHM );
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            throw new AppException( e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Clone a digest, so that a chunk can be discarded from it
+     * 
+     * @param digest
+     *            The digest
+     * @return The clone
+     */
+    private static MessageDigest cloneDigest( MessageDigest digest )
+    {
+        try
+        {
+            return (MessageDigest) digest.clone( );
+        }
+        catch( CloneNotSupportedException e )
+        {
+            throw new AppException( e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Delete a file, logging the errors
+     * 
+     * @param path
+     *            The file
+     */
+    private static void deleteQuietly( Path path )
+    {
+        try
+        {
+            Files.deleteIfExists( path );
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Unable to delete the chunked upload " + path, e );
+        }
+    }
+
+    /**
+     * Upload known by this node. Its offset and digest are only valid under the lock of the staging file, once synchronized with its state.
+     */
+    private static final class ChunkedUpload
+    {
+        private final String _strUploadId;
+        private final String _strSessionId;
+        private final String _strFieldName;
+        private final String _strFileName;
+        private final long _lSize;
+        private final Path _pathPart;
+        private final Path _pathState;
+        private MessageDigest _digest;
+        private long _lOffset = -1L;
+
+        /**
+         * Constructor
+         * 
+         * @param pathDirectory
+         *            The directory of the staging files
+         * @param strUploadId
+         *            The id of the upload
+         * @param strSessionId
+         *            The id of the session
+         * @param strFieldName
+         *            The name of the field
+         * @param strFileName
+         *            The name of the file
+         * @param lSize
+         *            The size of the file
+         */
+        ChunkedUpload( Path pathDirectory, String strUploadId, String strSessionId, String strFieldName, String strFileName, long lSize )
+        {
+            _strUploadId = strUploadId;
+            _strSessionId = strSessionId;
+            _strFieldName = strFieldName;
+            _strFileName = strFileName;
+            _lSize = lSize;
+            _pathPart = pathDirectory.resolve( strUploadId + SUFFIX_PART );
+            _pathState = pathDirectory.resolve( strUploadId + SUFFIX_STATE );
+        }
+    }
+}
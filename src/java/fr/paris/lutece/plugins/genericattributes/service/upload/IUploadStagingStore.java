@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.upload;
+
+import java.util.List;
+
+import org.apache.commons.fileupload.FileItem;
+
+/**
+ * Staging store of the files uploaded asynchronously, by session and field name, until the form is submitted
+ */
+public interface IUploadStagingStore
+{
+    /**
+     * Outcome of the staging of a file
+     */
+    enum Status
+    {
+        /** The file is staged */
+        STAGED,
+        /** The same content is already staged for the field, the file is ignored */
+        DUPLICATE,
+        /** The quota of the session or the global quota would be exceeded */
+        QUOTA_EXCEEDED,
+        /** The file exceeds the maximum size of the field */
+        SIZE_EXCEEDED,
+        /** The field already has its maximum number of files */
+        MAX_FILES_EXCEEDED
+    }
+
+    /**
+     * Get the files staged for a field of a session. The list must only be changed through {@link #add(String, String, FileItem, long, int)} and
+     * {@link #remove(String, String, int)}.
+     * 
+     * @param strSessionId
+     *            The id of the session
+     * @param strFieldName
+     *            The name of the field
+     * @return The list of the staged files
+     */
+    List<FileItem> getFileItems( String strSessionId, String strFieldName );
+
+    /**
+     * Tell if staging some more bytes for a session would exceed its quota
+     * 
+     * @param strSessionId
+     *            The id of the session
+     * @param lSize
+     *            The number of bytes to stage
+     * @return true if the quota of the session would be exceeded
+     */
+    boolean isSessionQuotaExceeded( String strSessionId, long lSize );
+
+    /**
+     * Tell if staging some more bytes would exceed the global quota
+     * 
+     * @param lSize
+     *            The number of bytes to stage
+     * @return true if the global quota would be exceeded
+     */
+    boolean isGlobalQuotaExceeded( long lSize );
+
+    /**
+     * Get the maximum number of bytes staged by a session
+     * 
+     * @return The number of bytes, 0 for no limit
+     */
+    long getSessionQuota( );
+
+    /**
+     * Stage a file for a field of a session. The limits are checked before the content is read, then while it is copied, so that the copy of an oversized
+     * content stops early. A content already staged for the field, as identified by its hash, is not staged twice. The original file item is deleted once
+     * its content is copied by the store.
+     * 
+     * @param strSessionId
+     *            The id of the session
+     * @param strFieldName
+     *            The name of the field
+     * @param fileItem
+     *            The file item
+     * @param lMaxSize
+     *            The maximum size of a file of the field, negative for no limit
+     * @param nMaxFiles
+     *            The maximum number of files of the field, negative for no limit
+     * @return The outcome of the staging. The file item is left unchanged if it is not staged
+     */
+    Status add( String strSessionId, String strFieldName, FileItem fileItem, long lMaxSize, int nMaxFiles );
+
+    /**
+     * Remove a staged file and delete it
+     * 
+     * @param strSessionId
+     *            The id of the session
+     * @param strFieldName
+     *            The name of the field
+     * @param nIndex
+     *            The index of the file in the list of the field
+     * @return The removed file, or null if there is no file at this index
+     */
+    FileItem remove( String strSessionId, String strFieldName, int nIndex );
+
+    /**
+     * Remove and delete all the files staged by a session
+     * 
+     * @param strSessionId
+     *            The id of the session
+     */
+    void removeSession( String strSessionId );
+
+    /**
+     * Remove and delete the files of the fields not accessed for longer than the time to live
+     * 
+     * @return The number of files reaped
+     */
+    int reapExpired( );
+
+    /**
+     * Get the number of bytes staged, in memory and on disk
+     * 
+     * @return The number of bytes
+     */
+    long getBytesHeld( );
+
+    /**
+     * Get the number of bytes staged in memory
+     * 
+     * @return The number of bytes
+     */
+    long getBytesInMemory( );
+
+    /**
+     * Get the number of bytes staged on disk
+     * 
+     * @return The number of bytes
+     */
+    long getBytesOnDisk( );
+
+    /**
+     * Get the number of files staged
+     * 
+     * @return The number of files
+     */
+    long getItemsStaged( );
+
+    /**
+     * Get the number of files reaped since the start
+     * 
+     * @return The number of files
+     */
+    long getItemsReaped( );
+
+    /**
+     * Get the number of bytes of the files reaped since the start
+     * 
+     * @return The number of bytes
+     */
+    long getBytesReaped( );
+
+    /**
+     * Get the number of sessions having staged files
+     * 
+     * @return The number of sessions
+     */
+    int getSessionCount( );
+}
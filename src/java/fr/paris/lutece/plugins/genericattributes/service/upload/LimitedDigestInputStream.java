@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.upload;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import fr.paris.lutece.plugins.genericattributes.service.file.ResponseBlobService;
+import fr.paris.lutece.portal.service.util.AppException;
+
+/**
+ * Input stream computing the SHA-256 digest of the bytes read, and failing as soon as more bytes than a limit are read
+ */
+final class LimitedDigestInputStream extends FilterInputStream
+{
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private final MessageDigest _digest;
+    private final long _lMaxSize;
+    private long _lSize;
+
+    /**
+     * Constructor
+     * 
+     * @param in
+     *            The stream to read
+     * @param lMaxSize
+     *            The maximum number of bytes to read, negative for no limit
+     */
+    LimitedDigestInputStream( InputStream in, long lMaxSize )
+    {
+        super( in );
+        _lMaxSize = lMaxSize;
+
+        try
+        {
+            _digest = MessageDigest.getInstance( DIGEST_ALGORITHM );
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            throw new AppException( e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read( ) throws IOException
+    {
+        int nByte = super.read( );
+
+        if ( nByte != -1 )
+        {
+            _digest.update( (byte) nByte );
+            count( 1 );
+        }
+
+        return nByte;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read( byte [ ] buffer, int nOffset, int nLength ) throws IOException
+    {
+        int nRead = super.read( buffer, nOffset, nLength );
+
+        if ( nRead > 0 )
+        {
+            _digest.update( buffer, nOffset, nRead );
+            count( nRead );
+        }
+
+        return nRead;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long skip( long lLength ) throws IOException
+    {
+        throw new IOException( "skip is not supported while computing a digest" );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean markSupported( )
+    {
+        return false;
+    }
+
+    /**
+     * Get the number of bytes read
+     * 
+     * @return The number of bytes
+     */
+    long getSize( )
+    {
+        return _lSize;
+    }
+
+    /**
+     * Get the digest of the bytes read, once the stream is read up to its end
+     * 
+     * @return The SHA-256 digest, in hexadecimal
+     */
+    String getHash( )
+    {
+        return ResponseBlobService.toHex( _digest.digest( ) );
+    }
+
+    /**
+     * Count bytes read and check the limit
+     * 
+     * @param nRead
+     *            The number of bytes read
+     * @throws LimitExceededException
+     *             if the limit is exceeded
+     */
+    private void count( int nRead ) throws LimitExceededException
+    {
+        _lSize += nRead;
+
+        if ( ( _lMaxSize >= 0 ) && ( _lSize > _lMaxSize ) )
+        {
+            throw new LimitExceededException( _lMaxSize );
+        }
+    }
+
+    /**
+     * Exception thrown when a stream holds more bytes than its limit
+     */
+    static final class LimitExceededException extends IOException
+    {
+        private static final long serialVersionUID = 5304197216471946587L;
+
+        /**
+         * Constructor
+         * 
+         * @param lMaxSize
+         *            The maximum number of bytes
+         */
+        LimitExceededException( long lMaxSize )
+        {
+            super( "The uploaded file exceeds " + lMaxSize + " bytes" );
+        }
+    }
+}
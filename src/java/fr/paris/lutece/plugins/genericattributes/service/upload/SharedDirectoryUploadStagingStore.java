@@ -0,0 +1,923 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.upload;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.lang.math.NumberUtils;
+
+import fr.paris.lutece.plugins.genericattributes.business.GenAttFileItem;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+/**
+ * Staging store of the files uploaded asynchronously in a directory shared by the nodes of a cluster, so that a form can be submitted to another node than
+ * the one which received its files. The files of a field are stored in <code>&lt;directory&gt;/&lt;session id&gt;/&lt;field name&gt;/</code>, each one as a
+ * data file and a small index file describing it. Both are written to a temporary file then renamed, the index file last, so a file is never listed
+ * partially written. The contents are read as streams from the shared directory. The directories whose name starts with a dot, such as the one of the
+ * chunked uploads, are not sessions and are left alone: the names of the sessions are escaped, so they never start with a dot.
+ * <p>
+ * The quota of a session is checked against the files listed in the shared directory. The global quota and the gauges are refreshed from the whole
+ * directory by {@link #reapExpired()}, and updated in between by the changes of this node.
+ * </p>
+ */
+public class SharedDirectoryUploadStagingStore implements IUploadStagingStore
+{
+    // Constants
+    private static final String DIRECTORY_TEMPORARY = ".tmp";
+    private static final String PREFIX_RESERVED = ".";
+    private static final String PREFIX_TEMPORARY = "staging";
+    private static final String SUFFIX_TEMPORARY = ".tmp";
+    private static final String SUFFIX_DATA = ".data";
+    private static final String SUFFIX_INDEX = ".index";
+    private static final String FORMAT_ITEM_ID = "%013d-%s";
+    private static final String KEY_NAME = "name";
+    private static final String KEY_FIELD_NAME = "fieldName";
+    private static final String KEY_ID_RESPONSE = "idResponse";
+    private static final String KEY_SIZE = "size";
+    private static final String KEY_CONTENT_HASH = "contentHash";
+    private static final char ESCAPE_CHARACTER = '~';
+    private static final String FORMAT_ESCAPED_CHARACTER = "%04x";
+
+    private final AtomicLong _lBytesHeld = new AtomicLong( );
+    private final AtomicLong _lItemsStaged = new AtomicLong( );
+    private final AtomicLong _lItemsReaped = new AtomicLong( );
+    private final AtomicLong _lBytesReaped = new AtomicLong( );
+    private final Path _pathRoot;
+    private final long _lSessionQuota;
+    private final long _lGlobalQuota;
+    private final long _lTimeToLive;
+
+    /**
+     * Constructor, with the settings of the plugin properties
+     */
+    public SharedDirectoryUploadStagingStore( )
+    {
+        this( UploadStagingStore.getDirectoryProperty( ), UploadStagingStore.getSessionQuotaProperty( ), UploadStagingStore.getGlobalQuotaProperty( ),
+                UploadStagingStore.getTimeToLiveProperty( ) );
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param pathRoot
+     *            The shared directory
+     * @param lSessionQuota
+     *            The maximum number of bytes staged by a session, 0 for no limit
+     * @param lGlobalQuota
+     *            The maximum number of bytes staged by all the sessions, 0 for no limit
+     * @param lTimeToLive
+     *            The time in milliseconds after which the files of a field not accessed are reaped, 0 to keep them
+     */
+    SharedDirectoryUploadStagingStore( Path pathRoot, long lSessionQuota, long lGlobalQuota, long lTimeToLive )
+    {
+        _pathRoot = pathRoot;
+        _lSessionQuota = lSessionQuota;
+        _lGlobalQuota = lGlobalQuota;
+        _lTimeToLive = lTimeToLive;
+        refreshGauges( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<FileItem> getFileItems( String strSessionId, String strFieldName )
+    {
+        Path pathField = getFieldPath( strSessionId, strFieldName );
+        List<FileItem> listFileItems = new ArrayList<>( );
+
+        for ( Path pathIndex : listIndexFiles( pathField ) )
+        {
+            FileItem fileItem = readItem( pathIndex );
+
+            if ( fileItem != null )
+            {
+                listFileItems.add( fileItem );
+            }
+        }
+
+        touch( pathField );
+
+        return listFileItems;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isSessionQuotaExceeded( String strSessionId, long lSize )
+    {
+        return ( _lSessionQuota > 0 ) && ( ( getBytes( getSessionPath( strSessionId ) ) + lSize ) > _lSessionQuota );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isGlobalQuotaExceeded( long lSize )
+    {
+        return ( _lGlobalQuota > 0 ) && ( ( _lBytesHeld.get( ) + lSize ) > _lGlobalQuota );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getSessionQuota( )
+    {
+        return _lSessionQuota;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Status add( String strSessionId, String strFieldName, FileItem fileItem, long lMaxSize, int nMaxFiles )
+    {
+        long lDeclaredSize = fileItem.getSize( );
+        Path pathField = getFieldPath( strSessionId, strFieldName );
+
+        if ( ( lMaxSize >= 0 ) && ( lDeclaredSize > lMaxSize ) )
+        {
+            return Status.SIZE_EXCEEDED;
+        }
+
+        if ( ( nMaxFiles >= 0 ) && ( listIndexFiles( pathField ).size( ) >= nMaxFiles ) )
+        {
+            return Status.MAX_FILES_EXCEEDED;
+        }
+
+        synchronized( this )
+        {
+            if ( isGlobalQuotaExceeded( lDeclaredSize ) || isSessionQuotaExceeded( strSessionId, lDeclaredSize ) )
+            {
+                return Status.QUOTA_EXCEEDED;
+            }
+
+            _lBytesHeld.addAndGet( lDeclaredSize );
+        }
+
+        Status status = Status.SIZE_EXCEEDED;
+        long lSize = 0L;
+
+        try
+        {
+            Path pathTemporary = createTemporaryFile( );
+
+            try
+            {
+                String strContentHash;
+
+                try ( LimitedDigestInputStream in = new LimitedDigestInputStream( fileItem.getInputStream( ), lMaxSize ) )
+                {
+                    lSize = Files.copy( in, pathTemporary, StandardCopyOption.REPLACE_EXISTING );
+                    strContentHash = in.getHash( );
+                }
+
+                status = store( pathField, pathTemporary, fileItem, strFieldName, lSize, strContentHash, nMaxFiles );
+            }
+            finally
+            {
+                Files.deleteIfExists( pathTemporary );
+            }
+        }
+        catch( LimitedDigestInputStream.LimitExceededException e )
+        {
+            AppLogService.debug( e.getMessage( ) );
+        }
+        catch( IOException e )
+        {
+            _lBytesHeld.addAndGet( -lDeclaredSize );
+            throw new AppException( "Unable to stage the uploaded file " + fileItem.getName( ), e );
+        }
+        catch( RuntimeException e )
+        {
+            _lBytesHeld.addAndGet( -lDeclaredSize );
+            throw e;
+        }
+
+        if ( status != Status.STAGED )
+        {
+            _lBytesHeld.addAndGet( -lDeclaredSize );
+
+            return status;
+        }
+
+        _lBytesHeld.addAndGet( lSize - lDeclaredSize );
+        _lItemsStaged.incrementAndGet( );
+        fileItem.delete( );
+
+        return status;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public FileItem remove( String strSessionId, String strFieldName, int nIndex )
+    {
+        Path pathField = getFieldPath( strSessionId, strFieldName );
+        List<Path> listIndexFiles = listIndexFiles( pathField );
+
+        if ( ( nIndex < 0 ) || ( nIndex >= listIndexFiles.size( ) ) )
+        {
+            return null;
+        }
+
+        Path pathIndex = listIndexFiles.get( nIndex );
+        StagedFileItem fileItem = readItem( pathIndex );
+
+        if ( ( fileItem != null ) && deleteItem( pathIndex, fileItem ) )
+        {
+            _lBytesHeld.addAndGet( -fileItem.getSize( ) );
+            _lItemsStaged.decrementAndGet( );
+        }
+
+        touch( pathField );
+
+        return fileItem;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeSession( String strSessionId )
+    {
+        Path pathSession = getSessionPath( strSessionId );
+
+        long lOrphanLimit = ( _lTimeToLive > 0 ) ? ( System.currentTimeMillis( ) - _lTimeToLive ) : Long.MIN_VALUE;
+
+        for ( Path pathField : listDirectories( pathSession ) )
+        {
+            removeField( pathField, false, lOrphanLimit );
+        }
+
+        deleteIfEmpty( pathSession );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int reapExpired( )
+    {
+        return ( _lTimeToLive > 0 ) ? reap( System.currentTimeMillis( ) - _lTimeToLive ) : 0;
+    }
+
+    /**
+     * Remove and delete the files of the fields last accessed before a time, then refresh the gauges from the shared directory
+     * 
+     * @param lLimit
+     *            The time, in milliseconds
+     * @return The number of files reaped
+     */
+    int reap( long lLimit )
+    {
+        int nItems = 0;
+
+        for ( Path pathSession : listDirectories( _pathRoot ) )
+        {
+            for ( Path pathField : listDirectories( pathSession ) )
+            {
+                if ( getLastModifiedTime( pathField ) < lLimit )
+                {
+                    nItems += removeField( pathField, true, lLimit );
+                }
+            }
+
+            deleteIfEmpty( pathSession );
+        }
+
+        for ( Path pathTemporary : listFiles( _pathRoot.resolve( DIRECTORY_TEMPORARY ), SUFFIX_TEMPORARY ) )
+        {
+            if ( getLastModifiedTime( pathTemporary ) < lLimit )
+            {
+                deleteQuietly( pathTemporary );
+            }
+        }
+
+        refreshGauges( );
+
+        return nItems;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBytesHeld( )
+    {
+        return _lBytesHeld.get( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBytesInMemory( )
+    {
+        return 0L;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBytesOnDisk( )
+    {
+        return _lBytesHeld.get( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getItemsStaged( )
+    {
+        return _lItemsStaged.get( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getItemsReaped( )
+    {
+        return _lItemsReaped.get( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBytesReaped( )
+    {
+        return _lBytesReaped.get( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getSessionCount( )
+    {
+        return listDirectories( _pathRoot ).size( );
+    }
+
+    /**
+     * Remove and delete the files of a field. A data file without index may be a file being stored by another node, which writes the index last, so it is only
+     * deleted once it is older than the time to live.
+     * 
+     * @param pathField
+     *            The directory of the field
+     * @param bReaped
+     *            true if the files are reaped
+     * @param lOrphanLimit
+     *            The time, in milliseconds, before which the data files without index were written to be deleted
+     * @return The number of files removed
+     */
+    private int removeField( Path pathField, boolean bReaped, long lOrphanLimit )
+    {
+        int nItems = 0;
+
+        for ( Path pathIndex : listIndexFiles( pathField ) )
+        {
+            StagedFileItem fileItem = readItem( pathIndex );
+
+            if ( ( fileItem != null ) && deleteItem( pathIndex, fileItem ) )
+            {
+                _lBytesHeld.addAndGet( -fileItem.getSize( ) );
+                _lItemsStaged.decrementAndGet( );
+                nItems++;
+
+                if ( bReaped )
+                {
+                    _lItemsReaped.incrementAndGet( );
+                    _lBytesReaped.addAndGet( fileItem.getSize( ) );
+                }
+            }
+        }
+
+        for ( Path pathData : listFiles( pathField, SUFFIX_DATA ) )
+        {
+            String strDataName = pathData.getFileName( ).toString( );
+            Path pathIndex = pathField.resolve( strDataName.substring( 0, strDataName.length( ) - SUFFIX_DATA.length( ) ) + SUFFIX_INDEX );
+
+            // data files whose index was never written
+            if ( !Files.exists( pathIndex ) && ( getLastModifiedTime( pathData ) < lOrphanLimit ) )
+            {
+                deleteQuietly( pathData );
+            }
+        }
+
+        deleteIfEmpty( pathField );
+
+        return nItems;
+    }
+
+    /**
+     * Delete a staged file, its index first so that it is no longer listed
+     * 
+     * @param pathIndex
+     *            The index file
+     * @param fileItem
+     *            The staged file
+     * @return true if the file was deleted by this call, false if it was already deleted
+     */
+    private boolean deleteItem( Path pathIndex, StagedFileItem fileItem )
+    {
+        boolean bDeleted = deleteQuietly( pathIndex );
+        deleteQuietly( fileItem.getFile( ).toPath( ) );
+
+        return bDeleted;
+    }
+
+    /**
+     * Move a copied content to the directory of its field and write its index, unless the field already has its maximum number of files or the same
+     * content. The changes of this node are serialized, those of other nodes may race.
+     * 
+     * @param pathField
+     *            The directory of the field
+     * @param pathTemporary
+     *            The temporary copy of the content
+     * @param fileItem
+     *            The uploaded file item
+     * @param strFieldName
+     *            The name of the field
+     * @param lSize
+     *            The size of the content
+     * @param strContentHash
+     *            The hash of the content
+     * @param nMaxFiles
+     *            The maximum number of files of the field, negative for no limit
+     * @return The outcome of the staging
+     * @throws IOException
+     *             if the content can not be moved or its index written
+     */
+    private synchronized Status store( Path pathField, Path pathTemporary, FileItem fileItem, String strFieldName, long lSize, String strContentHash,
+            int nMaxFiles ) throws IOException
+    {
+        List<Path> listIndexFiles = listIndexFiles( pathField );
+
+        if ( ( nMaxFiles >= 0 ) && ( listIndexFiles.size( ) >= nMaxFiles ) )
+        {
+            return Status.MAX_FILES_EXCEEDED;
+        }
+
+        for ( Path pathIndex : listIndexFiles )
+        {
+            StagedFileItem fileItemStaged = readItem( pathIndex );
+
+            if ( ( fileItemStaged != null ) && strContentHash.equals( fileItemStaged.getContentHash( ) ) )
+            {
+                return Status.DUPLICATE;
+            }
+        }
+
+        Files.createDirectories( pathField );
+
+        String strItemId = String.format( FORMAT_ITEM_ID, System.currentTimeMillis( ), UUID.randomUUID( ) );
+        Path pathData = pathField.resolve( strItemId + SUFFIX_DATA );
+
+        try
+        {
+            move( pathTemporary, pathData );
+            writeIndex( pathField.resolve( strItemId + SUFFIX_INDEX ), fileItem, strFieldName, lSize, strContentHash );
+        }
+        catch( IOException | RuntimeException e )
+        {
+            Files.deleteIfExists( pathData );
+            throw e;
+        }
+
+        return Status.STAGED;
+    }
+
+    /**
+     * Write the index file of a staged file
+     * 
+     * @param pathIndex
+     *            The index file
+     * @param fileItem
+     *            The uploaded file item
+     * @param strFieldName
+     *            The name of the field
+     * @param lSize
+     *            The size of the content
+     * @param strContentHash
+     *            The hash of the content
+     * @throws IOException
+     *             if the index file can not be written
+     */
+    private void writeIndex( Path pathIndex, FileItem fileItem, String strFieldName, long lSize, String strContentHash ) throws IOException
+    {
+        Properties properties = new Properties( );
+        properties.setProperty( KEY_NAME, fileItem.getName( ) );
+        properties.setProperty( KEY_FIELD_NAME, strFieldName );
+        properties.setProperty( KEY_SIZE, Long.toString( lSize ) );
+        properties.setProperty( KEY_CONTENT_HASH, strContentHash );
+
+        if ( fileItem instanceof GenAttFileItem )
+        {
+            properties.setProperty( KEY_ID_RESPONSE, Integer.toString( ( (GenAttFileItem) fileItem ).getIdResponse( ) ) );
+        }
+
+        Path pathTemporary = createTemporaryFile( );
+
+        try
+        {
+            try ( OutputStream out = Files.newOutputStream( pathTemporary ) )
+            {
+                properties.store( out, null );
+            }
+
+            move( pathTemporary, pathIndex );
+        }
+        finally
+        {
+            Files.deleteIfExists( pathTemporary );
+        }
+    }
+
+    /**
+     * Read a staged file from its index file
+     * 
+     * @param pathIndex
+     *            The index file
+     * @return The staged file, or null if it has been removed meanwhile
+     */
+    private StagedFileItem readItem( Path pathIndex )
+    {
+        Properties properties = new Properties( );
+
+        try ( InputStream in = Files.newInputStream( pathIndex ) )
+        {
+            properties.load( in );
+        }
+        catch( NoSuchFileException e )
+        {
+            return null;
+        }
+        catch( IOException e )
+        {
+            throw new AppException( "Unable to read the staging index " + pathIndex, e );
+        }
+
+        String strIndexFileName = pathIndex.getFileName( ).toString( );
+        Path pathData = pathIndex.resolveSibling( strIndexFileName.substring( 0, strIndexFileName.length( ) - SUFFIX_INDEX.length( ) ) + SUFFIX_DATA );
+
+        return new StagedFileItem( pathData.toFile( ), NumberUtils.toLong( properties.getProperty( KEY_SIZE ) ), properties.getProperty( KEY_CONTENT_HASH ),
+                properties.getProperty( KEY_NAME ), properties.getProperty( KEY_FIELD_NAME ), NumberUtils.toInt( properties.getProperty( KEY_ID_RESPONSE ) ) );
+    }
+
+    /**
+     * Get the number of bytes staged in a directory, from its index files
+     * 
+     * @param path
+     *            The directory of a session
+     * @return The number of bytes
+     */
+    private long getBytes( Path path )
+    {
+        long lBytes = 0L;
+
+        for ( Path pathField : listDirectories( path ) )
+        {
+            for ( Path pathIndex : listIndexFiles( pathField ) )
+            {
+                StagedFileItem fileItem = readItem( pathIndex );
+                lBytes += ( fileItem != null ) ? fileItem.getSize( ) : 0L;
+            }
+        }
+
+        return lBytes;
+    }
+
+    /**
+     * Set the gauges from the files listed in the shared directory
+     */
+    private void refreshGauges( )
+    {
+        long lBytes = 0L;
+        long lItems = 0L;
+
+        for ( Path pathSession : listDirectories( _pathRoot ) )
+        {
+            for ( Path pathField : listDirectories( pathSession ) )
+            {
+                List<Path> listIndexFiles = listIndexFiles( pathField );
+                lItems += listIndexFiles.size( );
+
+                for ( Path pathIndex : listIndexFiles )
+                {
+                    StagedFileItem fileItem = readItem( pathIndex );
+                    lBytes += ( fileItem != null ) ? fileItem.getSize( ) : 0L;
+                }
+            }
+        }
+
+        _lBytesHeld.set( lBytes );
+        _lItemsStaged.set( lItems );
+    }
+
+    /**
+     * Get the directory of a session
+     * 
+     * @param strSessionId
+     *            The id of the session
+     * @return The directory
+     */
+    private Path getSessionPath( String strSessionId )
+    {
+        return _pathRoot.resolve( toFileName( strSessionId ) );
+    }
+
+    /**
+     * Get the directory of a field of a session
+     * 
+     * @param strSessionId
+     *            The id of the session
+     * @param strFieldName
+     *            The name of the field
+     * @return The directory
+     */
+    private Path getFieldPath( String strSessionId, String strFieldName )
+    {
+        return getSessionPath( strSessionId ).resolve( toFileName( strFieldName ) );
+    }
+
+    /**
+     * Create a temporary file in the shared directory, so that it can be renamed to its final path
+     * 
+     * @return The temporary file
+     * @throws IOException
+     *             if the file can not be created
+     */
+    private Path createTemporaryFile( ) throws IOException
+    {
+        Path pathDirectory = _pathRoot.resolve( DIRECTORY_TEMPORARY );
+        Files.createDirectories( pathDirectory );
+
+        return Files.createTempFile( pathDirectory, PREFIX_TEMPORARY, SUFFIX_TEMPORARY );
+    }
+
+    /**
+     * List the index files of a field, in the order the files were staged
+     * 
+     * @param pathField
+     *            The directory of the field
+     * @return The index files
+     */
+    private static List<Path> listIndexFiles( Path pathField )
+    {
+        List<Path> listIndexFiles = listFiles( pathField, SUFFIX_INDEX );
+        Collections.sort( listIndexFiles, Comparator.comparing( path -> path.getFileName( ).toString( ) ) );
+
+        return listIndexFiles;
+    }
+
+    /**
+     * List the files of a directory with a suffix
+     * 
+     * @param pathDirectory
+     *            The directory
+     * @param strSuffix
+     *            The suffix
+     * @return The files, empty if the directory does not exist
+     */
+    private static List<Path> listFiles( Path pathDirectory, String strSuffix )
+    {
+        List<Path> listFiles = new ArrayList<>( );
+
+        try ( DirectoryStream<Path> stream = Files.newDirectoryStream( pathDirectory, "*" + strSuffix ) )
+        {
+            for ( Path path : stream )
+            {
+                listFiles.add( path );
+            }
+        }
+        catch( NoSuchFileException e )
+        {
+            // nothing staged
+        }
+        catch( IOException e )
+        {
+            throw new AppException( "Unable to list the staging directory " + pathDirectory, e );
+        }
+
+        return listFiles;
+    }
+
+    /**
+     * List the sub-directories of a directory, except the reserved ones, whose name starts with a dot
+     * 
+     * @param pathDirectory
+     *            The directory
+     * @return The sub-directories, empty if the directory does not exist
+     */
+    private static List<Path> listDirectories( Path pathDirectory )
+    {
+        List<Path> listDirectories = new ArrayList<>( );
+
+        try ( DirectoryStream<Path> stream = Files.newDirectoryStream( pathDirectory,
+                path -> Files.isDirectory( path ) && !path.getFileName( ).toString( ).startsWith( PREFIX_RESERVED ) ) )
+        {
+            for ( Path path : stream )
+            {
+                listDirectories.add( path );
+            }
+        }
+        catch( NoSuchFileException e )
+        {
+            // nothing staged
+        }
+        catch( IOException e )
+        {
+            throw new AppException( "Unable to list the staging directory " + pathDirectory, e );
+        }
+
+        return listDirectories;
+    }
+
+    /**
+     * Move a temporary file to its final path, atomically if the file system supports it
+     * 
+     * @param pathTemporary
+     *            The temporary file
+     * @param path
+     *            The final path
+     * @throws IOException
+     *             if the file can not be moved
+     */
+    private static void move( Path pathTemporary, Path path ) throws IOException
+    {
+        try
+        {
+            Files.move( pathTemporary, path, StandardCopyOption.ATOMIC_MOVE );
+        }
+        catch( AtomicMoveNotSupportedException e )
+        {
+            Files.move( pathTemporary, path, StandardCopyOption.REPLACE_EXISTING );
+        }
+    }
+
+    /**
+     * Mark a field directory as accessed
+     * 
+     * @param pathField
+     *            The directory of the field
+     */
+    private static void touch( Path pathField )
+    {
+        try
+        {
+            Files.setLastModifiedTime( pathField, FileTime.fromMillis( System.currentTimeMillis( ) ) );
+        }
+        catch( NoSuchFileException e )
+        {
+            // nothing staged yet
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Unable to mark the staging directory " + pathField + " as accessed", e );
+        }
+    }
+
+    /**
+     * Get the last modification time of a file
+     * 
+     * @param path
+     *            The file
+     * @return The time in milliseconds, or the current time if the file can not be read
+     */
+    private static long getLastModifiedTime( Path path )
+    {
+        try
+        {
+            return Files.getLastModifiedTime( path ).toMillis( );
+        }
+        catch( IOException e )
+        {
+            return System.currentTimeMillis( );
+        }
+    }
+
+    /**
+     * Delete a directory if it is empty
+     * 
+     * @param pathDirectory
+     *            The directory
+     */
+    private static void deleteIfEmpty( Path pathDirectory )
+    {
+        try ( Stream<Path> stream = Files.list( pathDirectory ) )
+        {
+            if ( !stream.findAny( ).isPresent( ) )
+            {
+                Files.deleteIfExists( pathDirectory );
+            }
+        }
+        catch( IOException e )
+        {
+            // not empty or already deleted by another node
+        }
+    }
+
+    /**
+     * Delete a file, logging the errors
+     * 
+     * @param path
+     *            The file
+     * @return true if the file was deleted by this call
+     */
+    private static boolean deleteQuietly( Path path )
+    {
+        try
+        {
+            return Files.deleteIfExists( path );
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Unable to delete the staged file " + path, e );
+
+            return false;
+        }
+    }
+
+    /**
+     * Get a file name for a session id or a field name, whose characters other than letters, digits, '-' and '_' are escaped
+     * 
+     * @param strName
+     *            The session id or field name
+     * @return The file name
+     */
+    static String toFileName( String strName )
+    {
+        StringBuilder sbFileName = new StringBuilder( strName.length( ) );
+
+        for ( char c : strName.toCharArray( ) )
+        {
+            if ( ( ( c >= 'a' ) && ( c <= 'z' ) ) || ( ( c >= 'A' ) && ( c <= 'Z' ) ) || ( ( c >= '0' ) && ( c <= '9' ) ) || ( c == '-' ) || ( c == '_' ) )
+            {
+                sbFileName.append( c );
+            }
+            else
+            {
+                sbFileName.append( ESCAPE_CHARACTER ).append( String.format( FORMAT_ESCAPED_CHARACTER, (int) c ) );
+            }
+        }
+
+        return sbFileName.toString( );
+    }
+}
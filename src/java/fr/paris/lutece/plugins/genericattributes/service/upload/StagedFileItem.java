@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.upload;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.commons.fileupload.FileItem;
+
+import fr.paris.lutece.plugins.genericattributes.business.GenAttFileItem;
+import fr.paris.lutece.portal.service.util.AppException;
+
+/**
+ * File item staged in a temporary file instead of in memory. Its content is read from the file each time it is requested, and its hash is computed while it
+ * is staged.
+ */
+public class StagedFileItem extends GenAttFileItem
+{
+    private static final long serialVersionUID = 2687320453896180318L;
+    private static final String PREFIX_FILE = "staged";
+    private static final String SUFFIX_FILE = ".tmp";
+
+    private final File _file;
+    private final long _lSize;
+    private final String _strContentHash;
+
+    /**
+     * Constructor
+     * 
+     * @param file
+     *            The temporary file holding the content
+     * @param lSize
+     *            The size of the content
+     * @param strContentHash
+     *            The SHA-256 digest of the content, in hexadecimal
+     * @param strFileName
+     *            The file name
+     * @param strFieldName
+     *            The name of the HTML field associated with this file, if any
+     * @param nIdResponse
+     *            The id of the response associated with this file item if any
+     */
+    public StagedFileItem( File file, long lSize, String strContentHash, String strFileName, String strFieldName, int nIdResponse )
+    {
+        super( null, strFileName, strFieldName, nIdResponse );
+        _file = file;
+        _lSize = lSize;
+        _strContentHash = strContentHash;
+    }
+
+    /**
+     * Copy the content of a file item to a new temporary file of a directory, computing its hash. The copy stops as soon as the content exceeds the maximum
+     * size. The file item itself is left unchanged.
+     * 
+     * @param fileItem
+     *            The file item
+     * @param pathDirectory
+     *            The directory of the temporary file
+     * @param lMaxSize
+     *            The maximum size of the content, negative for no limit
+     * @return The staged file item
+     * @throws IOException
+     *             if the file item can not be copied or exceeds the maximum size
+     */
+    public static StagedFileItem create( FileItem fileItem, Path pathDirectory, long lMaxSize ) throws IOException
+    {
+        Files.createDirectories( pathDirectory );
+
+        Path path = Files.createTempFile( pathDirectory, PREFIX_FILE, SUFFIX_FILE );
+
+        try ( LimitedDigestInputStream in = new LimitedDigestInputStream( fileItem.getInputStream( ), lMaxSize ) )
+        {
+            long lSize = Files.copy( in, path, StandardCopyOption.REPLACE_EXISTING );
+            int nIdResponse = ( fileItem instanceof GenAttFileItem ) ? ( (GenAttFileItem) fileItem ).getIdResponse( ) : 0;
+
+            return new StagedFileItem( path.toFile( ), lSize, in.getHash( ), fileItem.getName( ), fileItem.getFieldName( ), nIdResponse );
+        }
+        catch( IOException | RuntimeException e )
+        {
+            Files.deleteIfExists( path );
+            throw e;
+        }
+    }
+
+    /**
+     * Get the temporary file holding the content
+     * 
+     * @return The temporary file
+     */
+    public File getFile( )
+    {
+        return _file;
+    }
+
+    /**
+     * Get the hash of the content
+     * 
+     * @return The SHA-256 digest of the content, in hexadecimal
+     */
+    public String getContentHash( )
+    {
+        return _strContentHash;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void delete( )
+    {
+        try
+        {
+            Files.deleteIfExists( _file.toPath( ) );
+        }
+        catch( IOException e )
+        {
+            throw new AppException( "Unable to delete the staged file " + _file, e );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte [ ] get( )
+    {
+        try
+        {
+            return Files.readAllBytes( _file.toPath( ) );
+        }
+        catch( IOException e )
+        {
+            throw new AppException( "Unable to read the staged file " + _file, e );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream getInputStream( ) throws IOException
+    {
+        return Files.newInputStream( _file.toPath( ) );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getSize( )
+    {
+        return _lSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getString( )
+    {
+        return new String( get( ) );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getString( String encoding ) throws UnsupportedEncodingException
+    {
+        return new String( get( ), encoding );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isInMemory( )
+    {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write( File file ) throws Exception
+    {
+        Files.copy( _file.toPath( ), file.toPath( ), StandardCopyOption.REPLACE_EXISTING );
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.upload;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.lang.StringUtils;
+
+import fr.paris.lutece.plugins.genericattributes.business.Entry;
+import fr.paris.lutece.plugins.genericattributes.business.GenericAttributeError;
+import fr.paris.lutece.plugins.genericattributes.service.entrytype.IEntryTypeService;
+import fr.paris.lutece.plugins.genericattributes.util.FileAttributesUtils;
+import fr.paris.lutece.portal.business.regularexpression.RegularExpression;
+import fr.paris.lutece.portal.service.fileupload.FileUploadService;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.util.filesystem.FileSystemUtil;
+
+/**
+ * Upload rules of an entry, compiled once from its fields so that the uploaded files are checked without reading the entry again. A policy is immutable: it is
+ * replaced by a new one when the entry or its fields change.
+ */
+public final class UploadPolicy
+{
+    private final int _nIdEntry;
+    private final String _strTitle;
+    private final int _nMaxFiles;
+    private final boolean _bMaxFilesDefined;
+    private final long _lMaxSize;
+    private final boolean _bImagesOnly;
+    private final List<Integer> _listIdFields;
+    private final List<MimeTypeRule> _listMimeTypeRules;
+    private final IEntryTypeService _entryTypeService;
+    private final long _lCompilationTime;
+
+    /**
+     * Constructor
+     * 
+     * @param entry
+     *            The entry
+     * @param entryTypeService
+     *            The entry type service of the entry
+     * @param bImagesOnly
+     *            true if the entry accepts only images
+     * @param listRegularExpression
+     *            The regular expressions the MIME type of the files must match
+     */
+    private UploadPolicy( Entry entry, IEntryTypeService entryTypeService, boolean bImagesOnly, List<RegularExpression> listRegularExpression )
+    {
+        _nIdEntry = entry.getIdEntry( );
+        _strTitle = entry.getTitle( );
+        _nMaxFiles = FileAttributesUtils.getMaxFiles( entry );
+        _bMaxFilesDefined = entry.getFieldByCode( IEntryTypeService.FIELD_MAX_FILES ) != null;
+        _lMaxSize = FileAttributesUtils.getFileMaxSize( entry );
+        _bImagesOnly = bImagesOnly;
+        _entryTypeService = entryTypeService;
+        _lCompilationTime = System.currentTimeMillis( );
+
+        List<Integer> listIdFields = new ArrayList<>( );
+
+        if ( entry.getFields( ) != null )
+        {
+            entry.getFields( ).forEach( field -> listIdFields.add( field.getIdField( ) ) );
+        }
+
+        _listIdFields = Collections.unmodifiableList( listIdFields );
+
+        List<MimeTypeRule> listRules = new ArrayList<>( );
+
+        if ( listRegularExpression != null )
+        {
+            for ( RegularExpression regularExpression : listRegularExpression )
+            {
+                try
+                {
+                    listRules.add( new MimeTypeRule( Pattern.compile( regularExpression.getValue( ) ), regularExpression.getErrorMessage( ) ) );
+                }
+                catch( PatternSyntaxException e )
+                {
+                    AppLogService.error( "The regular expression " + regularExpression.getIdExpression( ) + " of the entry " + _nIdEntry + " is invalid", e );
+                }
+            }
+        }
+
+        _listMimeTypeRules = Collections.unmodifiableList( listRules );
+    }
+
+    /**
+     * Compile the upload policy of an entry
+     * 
+     * @param entry
+     *            The entry, with its fields
+     * @param entryTypeService
+     *            The entry type service of the entry
+     * @param bImagesOnly
+     *            true if the entry accepts only images
+     * @param listRegularExpression
+     *            The regular expressions the MIME type of the files must match
+     * @return The upload policy
+     */
+    public static UploadPolicy compile( Entry entry, IEntryTypeService entryTypeService, boolean bImagesOnly, List<RegularExpression> listRegularExpression )
+    {
+        return new UploadPolicy( entry, entryTypeService, bImagesOnly, listRegularExpression );
+    }
+
+    /**
+     * Get the id of the entry
+     * 
+     * @return The id of the entry
+     */
+    public int getIdEntry( )
+    {
+        return _nIdEntry;
+    }
+
+    /**
+     * Get the title of the entry, displayed with the errors
+     * 
+     * @return The title of the entry
+     */
+    public String getTitle( )
+    {
+        return _strTitle;
+    }
+
+    /**
+     * Get the maximum number of files of the entry
+     * 
+     * @return The maximum number of files
+     */
+    public int getMaxFiles( )
+    {
+        return _nMaxFiles;
+    }
+
+    /**
+     * Tell if the maximum number of files is set by a field of the entry, or is the default one
+     * 
+     * @return true if the maximum number of files is set by the entry
+     */
+    public boolean isMaxFilesDefined( )
+    {
+        return _bMaxFilesDefined;
+    }
+
+    /**
+     * Get the maximum size of a file of the entry
+     * 
+     * @return The maximum size in bytes, -1 for no limit
+     */
+    public long getMaxSize( )
+    {
+        return _lMaxSize;
+    }
+
+    /**
+     * Tell if the entry accepts only images
+     * 
+     * @return true if the entry accepts only images
+     */
+    public boolean isImagesOnly( )
+    {
+        return _bImagesOnly;
+    }
+
+    /**
+     * Get the entry type service of the entry
+     * 
+     * @return The entry type service
+     */
+    public IEntryTypeService getEntryTypeService( )
+    {
+        return _entryTypeService;
+    }
+
+    /**
+     * Tell if the policy is compiled from a field
+     * 
+     * @param nIdField
+     *            The id of the field
+     * @return true if the field is one of the fields of the entry
+     */
+    public boolean hasField( int nIdField )
+    {
+        return _listIdFields.contains( nIdField );
+    }
+
+    /**
+     * Tell if the policy was compiled before a given time
+     * 
+     * @param lTime
+     *            The time, in milliseconds
+     * @return true if the policy was compiled before the time
+     */
+    public boolean isCompiledBefore( long lTime )
+    {
+        return _lCompilationTime < lTime;
+    }
+
+    /**
+     * Check the number of files of the entry
+     * 
+     * @param listUploadedFileItems
+     *            The files already uploaded
+     * @param listFileItemsToUpload
+     *            The files to upload
+     * @param locale
+     *            The locale
+     * @return The error if there is any
+     */
+    public GenericAttributeError checkNumberFiles( List<FileItem> listUploadedFileItems, List<FileItem> listFileItemsToUpload, Locale locale )
+    {
+        return FileAttributesUtils.checkNumberFiles( _strTitle, _nMaxFiles, listUploadedFileItems, listFileItemsToUpload, locale );
+    }
+
+    /**
+     * Check the size of the files of the entry
+     * 
+     * @param listUploadedFileItems
+     *            The files already uploaded
+     * @param listFileItemsToUpload
+     *            The files to upload
+     * @param locale
+     *            The locale
+     * @return The error if there is any
+     */
+    public GenericAttributeError checkFileSize( List<FileItem> listUploadedFileItems, List<FileItem> listFileItemsToUpload, Locale locale )
+    {
+        return FileAttributesUtils.checkFileSize( _strTitle, _lMaxSize, listUploadedFileItems, listFileItemsToUpload, locale );
+    }
+
+    /**
+     * Check the MIME type of a file, guessed from its name, against the regular expressions of the entry
+     * 
+     * @param fileItem
+     *            The file
+     * @return The error if there is any
+     */
+    public GenericAttributeError checkMimeType( FileItem fileItem )
+    {
+        String strFileName = FileUploadService.getFileNameOnly( fileItem );
+
+        if ( _listMimeTypeRules.isEmpty( ) || StringUtils.isBlank( strFileName ) )
+        {
+            return null;
+        }
+
+        String strMimeType = FileSystemUtil.getMIMEType( strFileName );
+
+        for ( MimeTypeRule rule : _listMimeTypeRules )
+        {
+            if ( ( strMimeType == null ) || !rule._pattern.matcher( strMimeType ).matches( ) )
+            {
+                GenericAttributeError error = new GenericAttributeError( );
+                error.setMandatoryError( false );
+                error.setTitleQuestion( _strTitle );
+                error.setErrorMessage( rule._strErrorMessage );
+
+                return error;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Regular expression the MIME type of the files must match
+     */
+    private static final class MimeTypeRule
+    {
+        private final Pattern _pattern;
+        private final String _strErrorMessage;
+
+        /**
+         * Constructor
+         * 
+         * @param pattern
+         *            The compiled regular expression
+         * @param strErrorMessage
+         *            The error message if the MIME type does not match
+         */
+        MimeTypeRule( Pattern pattern, String strErrorMessage )
+        {
+            _pattern = pattern;
+            _strErrorMessage = strErrorMessage;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.upload;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fr.paris.lutece.plugins.genericattributes.business.Entry;
+import fr.paris.lutece.plugins.genericattributes.business.EntryHome;
+import fr.paris.lutece.plugins.genericattributes.business.Field;
+import fr.paris.lutece.plugins.genericattributes.business.FieldHome;
+import fr.paris.lutece.plugins.genericattributes.service.entrytype.AbstractEntryTypeUpload;
+import fr.paris.lutece.plugins.genericattributes.service.entrytype.EntryTypeServiceManager;
+import fr.paris.lutece.plugins.genericattributes.service.entrytype.IEntryTypeService;
+import fr.paris.lutece.portal.business.regularexpression.RegularExpression;
+import fr.paris.lutece.portal.service.regularexpression.RegularExpressionService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Cache of the upload policies of the entries. A policy is compiled the first time a file is uploaded to its entry, and is removed when the entry or one of
+ * its fields is changed, as notified by the {@link UploadPolicyEntryChangeListener}. The regular expressions are managed outside of the plugin, so a policy is also compiled again after timeToLive seconds.
+ */
+public final class UploadPolicyService
+{
+    private static final String PROPERTY_TIME_TO_LIVE = "genericattributes.upload.policy.timeToLive";
+    private static final int DEFAULT_TIME_TO_LIVE = 300;
+    private static final Map<Integer, UploadPolicy> _mapPolicies = new ConcurrentHashMap<>( );
+    private static final AtomicLong _lInvalidations = new AtomicLong( );
+
+    /**
+     * Private constructor
+     */
+    private UploadPolicyService( )
+    {
+    }
+
+    /**
+     * Get the upload policy of an entry
+     * 
+     * @param nIdEntry
+     *            The id of the entry
+     * @return The upload policy, or null if the entry does not exist
+     */
+    public static UploadPolicy getPolicy( int nIdEntry )
+    {
+        UploadPolicy policy = _mapPolicies.get( nIdEntry );
+        long lTimeToLive = AppPropertiesService.getPropertyInt( PROPERTY_TIME_TO_LIVE, DEFAULT_TIME_TO_LIVE ) * 1000L;
+
+        if ( ( policy != null ) && ( ( lTimeToLive <= 0 ) || !policy.isCompiledBefore( System.currentTimeMillis( ) - lTimeToLive ) ) )
+        {
+            return policy;
+        }
+
+        long lInvalidations = _lInvalidations.get( );
+        policy = compile( nIdEntry );
+
+        if ( policy == null )
+        {
+            _mapPolicies.remove( nIdEntry );
+        }
+        else
+        {
+            _mapPolicies.put( nIdEntry, policy );
+
+            // A policy compiled before a concurrent invalidation may be stale
+            if ( _lInvalidations.get( ) != lInvalidations )
+            {
+                _mapPolicies.remove( nIdEntry, policy );
+            }
+        }
+
+        return policy;
+    }
+
+    /**
+     * Remove the upload policy of an entry from the cache
+     * 
+     * @param nIdEntry
+     *            The id of the entry
+     */
+    public static void invalidate( int nIdEntry )
+    {
+        _lInvalidations.incrementAndGet( );
+        _mapPolicies.remove( nIdEntry );
+    }
+
+    /**
+     * Remove the upload policy compiled from a field from the cache
+     * 
+     * @param nIdField
+     *            The id of the field
+     */
+    public static void invalidateField( int nIdField )
+    {
+        _lInvalidations.incrementAndGet( );
+        _mapPolicies.values( ).removeIf( policy -> policy.hasField( nIdField ) );
+    }
+
+    /**
+     * Remove all the upload policies from the cache
+     */
+    public static void invalidateAll( )
+    {
+        _lInvalidations.incrementAndGet( );
+        _mapPolicies.clear( );
+    }
+
+    /**
+     * Compile the upload policy of an entry
+     * 
+     * @param nIdEntry
+     *            The id of the entry
+     * @return The upload policy, or null if the entry does not exist
+     */
+    private static UploadPolicy compile( int nIdEntry )
+    {
+        Entry entry = EntryHome.findByPrimaryKey( nIdEntry );
+
+        if ( entry == null )
+        {
+            return null;
+        }
+
+        IEntryTypeService entryTypeService = EntryTypeServiceManager.getEntryTypeService( entry );
+        boolean bImagesOnly = ( entryTypeService instanceof AbstractEntryTypeUpload ) && ( (AbstractEntryTypeUpload) entryTypeService ).isImagesOnly( );
+
+        return UploadPolicy.compile( entry, entryTypeService, bImagesOnly, getRegularExpressions( entry ) );
+    }
+
+    /**
+     * Get the regular expressions of the fields of an entry
+     * 
+     * @param entry
+     *            The entry, with its fields
+     * @return The regular expressions
+     */
+    private static List<RegularExpression> getRegularExpressions( Entry entry )
+    {
+        List<RegularExpression> listRegularExpression = new ArrayList<>( );
+
+        if ( ( entry.getFields( ) == null ) || !RegularExpressionService.getInstance( ).isAvailable( ) )
+        {
+            return listRegularExpression;
+        }
+
+        for ( Field field : entry.getFields( ) )
+        {
+            for ( Integer nKey : FieldHome.getListRegularExpressionKeyByIdField( field.getIdField( ) ) )
+            {
+                RegularExpression regularExpression = RegularExpressionService.getInstance( ).getRegularExpressionByKey( nKey );
+
+                if ( regularExpression != null )
+                {
+                    listRegularExpression.add( regularExpression );
+                }
+            }
+        }
+
+        return listRegularExpression;
+    }
+}
@@ -0,0 +1,822 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.upload;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+
+import fr.paris.lutece.plugins.genericattributes.service.file.ResponseBlobService;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Staging store of the files uploaded asynchronously, in the memory and on the local disk of the node. Small files are kept in memory, larger ones are
+ * copied to a temporary directory. The bytes staged are bounded by a quota per session and a global quota. The files of a field not accessed for longer
+ * than a time to live are reaped by {@link #reapExpired()}, in case the end of their session is missed.
+ */
+public class UploadStagingStore implements IUploadStagingStore
+{
+    // Properties
+    private static final String PROPERTY_DIRECTORY = "genericattributes.upload.staging.directory";
+    private static final String PROPERTY_MEMORY_THRESHOLD = "genericattributes.upload.staging.memoryThreshold";
+    private static final String PROPERTY_SESSION_QUOTA = "genericattributes.upload.staging.sessionQuota";
+    private static final String PROPERTY_GLOBAL_QUOTA = "genericattributes.upload.staging.globalQuota";
+    private static final String PROPERTY_TIME_TO_LIVE = "genericattributes.upload.staging.timeToLive";
+
+    // Constants
+    private static final String PROPERTY_JAVA_TEMPORARY_DIRECTORY = "java.io.tmpdir";
+    private static final String DIRECTORY_DEFAULT = "genatt-staging";
+    private static final long DEFAULT_MEMORY_THRESHOLD = 65536L;
+    private static final long DEFAULT_SESSION_QUOTA = 104857600L;
+    private static final long DEFAULT_GLOBAL_QUOTA = 1073741824L;
+    private static final long DEFAULT_TIME_TO_LIVE = 7200L;
+    private static final long MILLISECONDS_PER_SECOND = 1000L;
+
+    private final Map<String, SessionStaging> _mapSessions = new ConcurrentHashMap<>( );
+    private final AtomicLong _lBytesInMemory = new AtomicLong( );
+    private final AtomicLong _lBytesOnDisk = new AtomicLong( );
+    private final AtomicLong _lItemsStaged = new AtomicLong( );
+    private final AtomicLong _lBytesReserved = new AtomicLong( );
+    private final AtomicLong _lItemsReaped = new AtomicLong( );
+    private final AtomicLong _lBytesReaped = new AtomicLong( );
+    private final Path _pathDirectory;
+    private final long _lMemoryThreshold;
+    private final long _lSessionQuota;
+    private final long _lGlobalQuota;
+    private final long _lTimeToLive;
+
+    /**
+     * Constructor, with the settings of the plugin properties
+     */
+    public UploadStagingStore( )
+    {
+        this( getDirectoryProperty( ), getLongProperty( PROPERTY_MEMORY_THRESHOLD, DEFAULT_MEMORY_THRESHOLD ), getSessionQuotaProperty( ),
+                getGlobalQuotaProperty( ), getTimeToLiveProperty( ) );
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param pathDirectory
+     *            The directory of the files staged on disk
+     * @param lMemoryThreshold
+     *            The size up to which a file is kept in memory
+     * @param lSessionQuota
+     *            The maximum number of bytes staged by a session, 0 for no limit
+     * @param lGlobalQuota
+     *            The maximum number of bytes staged by all the sessions, 0 for no limit
+     * @param lTimeToLive
+     *            The time in milliseconds after which the files of a field not accessed are reaped, 0 to keep them
+     */
+    UploadStagingStore( Path pathDirectory, long lMemoryThreshold, long lSessionQuota, long lGlobalQuota, long lTimeToLive )
+    {
+        _pathDirectory = pathDirectory;
+        _lMemoryThreshold = lMemoryThreshold;
+        _lSessionQuota = lSessionQuota;
+        _lGlobalQuota = lGlobalQuota;
+        _lTimeToLive = lTimeToLive;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<FileItem> getFileItems( String strSessionId, String strFieldName )
+    {
+        return getSession( strSessionId ).getFileItems( strFieldName );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isSessionQuotaExceeded( String strSessionId, long lSize )
+    {
+        SessionStaging session = _mapSessions.get( strSessionId );
+        long lBytes = ( session != null ) ? session.getBytes( ) : 0L;
+
+        return ( _lSessionQuota > 0 ) && ( ( lBytes + lSize ) > _lSessionQuota );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isGlobalQuotaExceeded( long lSize )
+    {
+        return ( _lGlobalQuota > 0 ) && ( ( _lBytesReserved.get( ) + lSize ) > _lGlobalQuota );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Status add( String strSessionId, String strFieldName, FileItem fileItem, long lMaxSize, int nMaxFiles )
+    {
+        long lSize = fileItem.getSize( );
+
+        if ( ( lMaxSize >= 0 ) && ( lSize > lMaxSize ) )
+        {
+            return Status.SIZE_EXCEEDED;
+        }
+
+        SessionStaging session = getSession( strSessionId );
+
+        if ( ( nMaxFiles >= 0 ) && ( session.getFileItems( strFieldName ).size( ) >= nMaxFiles ) )
+        {
+            return Status.MAX_FILES_EXCEEDED;
+        }
+
+        if ( !reserve( session, lSize ) )
+        {
+            return Status.QUOTA_EXCEEDED;
+        }
+
+        FileItem fileItemStaged;
+        String strContentHash;
+
+        try
+        {
+            fileItemStaged = stage( fileItem, lMaxSize );
+            strContentHash = getContentHash( fileItemStaged );
+        }
+        catch( LimitedDigestInputStream.LimitExceededException e )
+        {
+            AppLogService.debug( e.getMessage( ) );
+            release( session, lSize );
+
+            return Status.SIZE_EXCEEDED;
+        }
+        catch( IOException e )
+        {
+            release( session, lSize );
+            throw new AppException( "Unable to stage the uploaded file " + fileItem.getName( ), e );
+        }
+        catch( RuntimeException e )
+        {
+            release( session, lSize );
+            throw e;
+        }
+
+        Status status = addToSession( strSessionId, session, strFieldName, fileItemStaged, lSize, strContentHash, nMaxFiles );
+
+        if ( status != Status.STAGED )
+        {
+            if ( fileItemStaged != fileItem )
+            {
+                fileItemStaged.delete( );
+            }
+
+            return status;
+        }
+
+        ( ( fileItemStaged instanceof StagedFileItem ) ? _lBytesOnDisk : _lBytesInMemory ).addAndGet( lSize );
+        _lItemsStaged.incrementAndGet( );
+
+        if ( fileItemStaged != fileItem )
+        {
+            fileItem.delete( );
+        }
+
+        return status;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public FileItem remove( String strSessionId, String strFieldName, int nIndex )
+    {
+        SessionStaging session = _mapSessions.get( strSessionId );
+
+        if ( session == null )
+        {
+            return null;
+        }
+
+        FileItem fileItem = session.remove( strFieldName, nIndex );
+
+        if ( fileItem != null )
+        {
+            delete( fileItem, session.unregister( fileItem ) );
+        }
+
+        return fileItem;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeSession( String strSessionId )
+    {
+        SessionStaging session = _mapSessions.remove( strSessionId );
+
+        if ( session != null )
+        {
+            for ( FileItem fileItem : session.close( ) )
+            {
+                delete( fileItem, session.unregister( fileItem ) );
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int reapExpired( )
+    {
+        return ( _lTimeToLive > 0 ) ? reap( System.currentTimeMillis( ) - _lTimeToLive ) : 0;
+    }
+
+    /**
+     * Remove and delete the files of the fields last accessed before a time
+     * 
+     * @param lLimit
+     *            The time, in milliseconds
+     * @return The number of files reaped
+     */
+    int reap( long lLimit )
+    {
+        int nItems = 0;
+
+        for ( Map.Entry<String, SessionStaging> entry : _mapSessions.entrySet( ) )
+        {
+            SessionStaging session = entry.getValue( );
+
+            for ( FileItem fileItem : session.removeExpired( lLimit ) )
+            {
+                long lSize = session.unregister( fileItem );
+                delete( fileItem, lSize );
+                nItems++;
+                _lItemsReaped.incrementAndGet( );
+                _lBytesReaped.addAndGet( Math.max( lSize, 0L ) );
+            }
+
+            _mapSessions.computeIfPresent( entry.getKey( ), ( strSessionId, s ) -> s.closeIfEmpty( ) ? null : s );
+        }
+
+        return nItems;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getSessionQuota( )
+    {
+        return _lSessionQuota;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBytesHeld( )
+    {
+        return _lBytesInMemory.get( ) + _lBytesOnDisk.get( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBytesInMemory( )
+    {
+        return _lBytesInMemory.get( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBytesOnDisk( )
+    {
+        return _lBytesOnDisk.get( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getItemsStaged( )
+    {
+        return _lItemsStaged.get( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getItemsReaped( )
+    {
+        return _lItemsReaped.get( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBytesReaped( )
+    {
+        return _lBytesReaped.get( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getSessionCount( )
+    {
+        return _mapSessions.size( );
+    }
+
+    /**
+     * Get the staging of a session, created if needed
+     * 
+     * @param strSessionId
+     *            The id of the session
+     * @return The staging of the session
+     */
+    private SessionStaging getSession( String strSessionId )
+    {
+        return _mapSessions.computeIfAbsent( strSessionId, s -> new SessionStaging( ) );
+    }
+
+    /**
+     * Reserve some bytes in the quota of a session and in the global quota
+     * 
+     * @param session
+     *            The staging of the session
+     * @param lSize
+     *            The number of bytes
+     * @return true if the bytes were reserved, false if a quota would be exceeded
+     */
+    private boolean reserve( SessionStaging session, long lSize )
+    {
+        synchronized( this )
+        {
+            if ( isGlobalQuotaExceeded( lSize ) || !session.reserve( lSize, _lSessionQuota ) )
+            {
+                return false;
+            }
+
+            _lBytesReserved.addAndGet( lSize );
+
+            return true;
+        }
+    }
+
+    /**
+     * Add a staged file to the staging of its session, with its bytes reserved. The bytes are released if the file is not added. If the staging was closed
+     * meanwhile by the removal of the session, the file is added to a new staging of the session.
+     * 
+     * @param strSessionId
+     *            The id of the session
+     * @param session
+     *            The staging of the session, where the bytes are reserved
+     * @param strFieldName
+     *            The name of the field
+     * @param fileItem
+     *            The staged file
+     * @param lSize
+     *            The number of bytes reserved
+     * @param strContentHash
+     *            The hash of the content of the file
+     * @param nMaxFiles
+     *            The maximum number of files of the field, negative for no limit
+     * @return The outcome of the staging
+     */
+    private Status addToSession( String strSessionId, SessionStaging session, String strFieldName, FileItem fileItem, long lSize, String strContentHash,
+            int nMaxFiles )
+    {
+        SessionStaging sessionCurrent = session;
+        Status status = sessionCurrent.add( strFieldName, fileItem, lSize, strContentHash, nMaxFiles );
+
+        while ( status == null )
+        {
+            release( sessionCurrent, lSize );
+            sessionCurrent = getSession( strSessionId );
+
+            if ( !reserve( sessionCurrent, lSize ) )
+            {
+                return Status.QUOTA_EXCEEDED;
+            }
+
+            status = sessionCurrent.add( strFieldName, fileItem, lSize, strContentHash, nMaxFiles );
+        }
+
+        if ( status != Status.STAGED )
+        {
+            release( sessionCurrent, lSize );
+        }
+
+        return status;
+    }
+
+    /**
+     * Release some bytes reserved in the quota of a session and in the global quota
+     * 
+     * @param session
+     *            The staging of the session
+     * @param lSize
+     *            The number of bytes
+     */
+    private void release( SessionStaging session, long lSize )
+    {
+        session.release( lSize );
+        _lBytesReserved.addAndGet( -lSize );
+    }
+
+    /**
+     * Get the file item to stage for an uploaded file item
+     * 
+     * @param fileItem
+     *            The uploaded file item
+     * @param lMaxSize
+     *            The maximum size of the content, negative for no limit
+     * @return The file item itself if it is small enough to be kept in memory, a copy staged on disk otherwise
+     * @throws IOException
+     *             if the file item can not be copied or exceeds the maximum size
+     */
+    private FileItem stage( FileItem fileItem, long lMaxSize ) throws IOException
+    {
+        if ( ( fileItem instanceof StagedFileItem ) || ( fileItem.getSize( ) <= _lMemoryThreshold ) )
+        {
+            return fileItem;
+        }
+
+        return StagedFileItem.create( fileItem, _pathDirectory, lMaxSize );
+    }
+
+    /**
+     * Get the hash of the content of a staged file
+     * 
+     * @param fileItem
+     *            The staged file
+     * @return The SHA-256 digest of the content, in hexadecimal
+     */
+    private static String getContentHash( FileItem fileItem )
+    {
+        if ( fileItem instanceof StagedFileItem )
+        {
+            return ( (StagedFileItem) fileItem ).getContentHash( );
+        }
+
+        return ResponseBlobService.digest( fileItem.get( ) );
+    }
+
+    /**
+     * Delete a staged file and release its bytes
+     * 
+     * @param fileItem
+     *            The file item
+     * @param lSize
+     *            The number of bytes staged for the file, negative if it was not staged by this store
+     */
+    private void delete( FileItem fileItem, long lSize )
+    {
+        if ( lSize >= 0 )
+        {
+            ( ( fileItem instanceof StagedFileItem ) ? _lBytesOnDisk : _lBytesInMemory ).addAndGet( -lSize );
+            _lBytesReserved.addAndGet( -lSize );
+            _lItemsStaged.decrementAndGet( );
+        }
+
+        try
+        {
+            fileItem.delete( );
+        }
+        catch( RuntimeException e )
+        {
+            AppLogService.error( "Unable to delete the staged file " + fileItem.getName( ), e );
+        }
+    }
+
+    /**
+     * Get the directory of the files staged on disk
+     * 
+     * @return The directory
+     */
+    static Path getDirectoryProperty( )
+    {
+        String strDirectory = AppPropertiesService.getProperty( PROPERTY_DIRECTORY );
+
+        if ( StringUtils.isBlank( strDirectory ) )
+        {
+            return Paths.get( System.getProperty( PROPERTY_JAVA_TEMPORARY_DIRECTORY ), DIRECTORY_DEFAULT );
+        }
+
+        return Paths.get( strDirectory );
+    }
+
+    /**
+     * Get the maximum number of bytes staged by a session
+     * 
+     * @return The number of bytes, 0 for no limit
+     */
+    static long getSessionQuotaProperty( )
+    {
+        return getLongProperty( PROPERTY_SESSION_QUOTA, DEFAULT_SESSION_QUOTA );
+    }
+
+    /**
+     * Get the maximum number of bytes staged by all the sessions
+     * 
+     * @return The number of bytes, 0 for no limit
+     */
+    static long getGlobalQuotaProperty( )
+    {
+        return getLongProperty( PROPERTY_GLOBAL_QUOTA, DEFAULT_GLOBAL_QUOTA );
+    }
+
+    /**
+     * Get the time after which the files of a field not accessed are reaped
+     * 
+     * @return The time in milliseconds, 0 to keep them
+     */
+    static long getTimeToLiveProperty( )
+    {
+        return getLongProperty( PROPERTY_TIME_TO_LIVE, DEFAULT_TIME_TO_LIVE ) * MILLISECONDS_PER_SECOND;
+    }
+
+    /**
+     * Get a property holding a number
+     * 
+     * @param strProperty
+     *            The name of the property
+     * @param lDefault
+     *            The default value
+     * @return The value of the property
+     */
+    private static long getLongProperty( String strProperty, long lDefault )
+    {
+        return NumberUtils.toLong( StringUtils.trim( AppPropertiesService.getProperty( strProperty ) ), lDefault );
+    }
+
+    /**
+     * Files staged by a session. The lists of the fields are copied on write, so they can be read while files are uploaded in parallel, and are changed
+     * under the lock of the session.
+     */
+    private static final class SessionStaging
+    {
+        private final Map<String, List<FileItem>> _mapFileItems = new ConcurrentHashMap<>( );
+        private final Map<String, Long> _mapLastAccess = new ConcurrentHashMap<>( );
+        private final Map<FileItem, Long> _mapSizes = new IdentityHashMap<>( );
+        private final Map<FileItem, String> _mapContentHashes = new IdentityHashMap<>( );
+        private long _lReserved;
+        private boolean _bClosed;
+
+        /**
+         * Get the files staged for a field, created if needed
+         * 
+         * @param strFieldName
+         *            The name of the field
+         * @return The list of the files
+         */
+        List<FileItem> getFileItems( String strFieldName )
+        {
+            _mapLastAccess.put( strFieldName, System.currentTimeMillis( ) );
+
+            return _mapFileItems.computeIfAbsent( strFieldName, s -> new CopyOnWriteArrayList<>( ) );
+        }
+
+        /**
+         * Remove the files of the fields last accessed before a time
+         * 
+         * @param lLimit
+         *            The time, in milliseconds
+         * @return The removed files
+         */
+        synchronized List<FileItem> removeExpired( long lLimit )
+        {
+            List<FileItem> listFileItems = new ArrayList<>( );
+
+            for ( Map.Entry<String, Long> entry : _mapLastAccess.entrySet( ) )
+            {
+                if ( ( entry.getValue( ) < lLimit ) && _mapLastAccess.remove( entry.getKey( ), entry.getValue( ) ) )
+                {
+                    List<FileItem> listFieldFileItems = _mapFileItems.remove( entry.getKey( ) );
+
+                    if ( listFieldFileItems != null )
+                    {
+                        listFileItems.addAll( listFieldFileItems );
+                    }
+                }
+            }
+
+            return listFileItems;
+        }
+
+        /**
+         * Close the staging if it has no field left, so that no file is added to it any more
+         * 
+         * @return true if the staging is closed
+         */
+        synchronized boolean closeIfEmpty( )
+        {
+            if ( _mapFileItems.isEmpty( ) )
+            {
+                _bClosed = true;
+            }
+
+            return _bClosed;
+        }
+
+        /**
+         * Close the staging, so that no file is added to it any more
+         * 
+         * @return All the files staged by the session
+         */
+        synchronized List<FileItem> close( )
+        {
+            List<FileItem> listFileItems = new ArrayList<>( );
+
+            for ( List<FileItem> listFieldFileItems : _mapFileItems.values( ) )
+            {
+                listFileItems.addAll( listFieldFileItems );
+            }
+
+            _mapFileItems.clear( );
+            _bClosed = true;
+
+            return listFileItems;
+        }
+
+        /**
+         * Add a staged file, whose bytes are already reserved, unless the field already has its maximum number of files or the same content
+         * 
+         * @param strFieldName
+         *            The name of the field
+         * @param fileItem
+         *            The staged file
+         * @param lSize
+         *            The number of bytes reserved for the file
+         * @param strContentHash
+         *            The hash of the content of the file
+         * @param nMaxFiles
+         *            The maximum number of files of the field, negative for no limit
+         * @return The outcome of the staging, or null if the staging is closed
+         */
+        synchronized Status add( String strFieldName, FileItem fileItem, long lSize, String strContentHash, int nMaxFiles )
+        {
+            if ( _bClosed )
+            {
+                return null;
+            }
+
+            List<FileItem> listFileItems = getFileItems( strFieldName );
+
+            if ( ( nMaxFiles >= 0 ) && ( listFileItems.size( ) >= nMaxFiles ) )
+            {
+                return Status.MAX_FILES_EXCEEDED;
+            }
+
+            for ( FileItem fileItemStaged : listFileItems )
+            {
+                if ( strContentHash.equals( _mapContentHashes.get( fileItemStaged ) ) )
+                {
+                    return Status.DUPLICATE;
+                }
+            }
+
+            _mapSizes.put( fileItem, lSize );
+            _mapContentHashes.put( fileItem, strContentHash );
+            listFileItems.add( fileItem );
+
+            return Status.STAGED;
+        }
+
+        /**
+         * Remove a file from the list of a field
+         * 
+         * @param strFieldName
+         *            The name of the field
+         * @param nIndex
+         *            The index of the file
+         * @return The removed file, or null if there is no file at this index
+         */
+        synchronized FileItem remove( String strFieldName, int nIndex )
+        {
+            _mapLastAccess.put( strFieldName, System.currentTimeMillis( ) );
+
+            List<FileItem> listFileItems = _mapFileItems.get( strFieldName );
+
+            if ( ( listFileItems == null ) || ( nIndex < 0 ) || ( nIndex >= listFileItems.size( ) ) )
+            {
+                return null;
+            }
+
+            return listFileItems.remove( nIndex );
+        }
+
+        /**
+         * Forget a file and release the bytes reserved for it
+         * 
+         * @param fileItem
+         *            The file
+         * @return The number of bytes released, -1 if the file was not staged through the store
+         */
+        synchronized long unregister( FileItem fileItem )
+        {
+            Long lSize = _mapSizes.remove( fileItem );
+            _mapContentHashes.remove( fileItem );
+
+            if ( lSize == null )
+            {
+                return -1L;
+            }
+
+            _lReserved -= lSize;
+
+            return lSize;
+        }
+
+        /**
+         * Reserve some bytes in the quota of the session
+         * 
+         * @param lSize
+         *            The number of bytes
+         * @param lQuota
+         *            The quota of the session, 0 for no limit
+         * @return true if the bytes were reserved
+         */
+        synchronized boolean reserve( long lSize, long lQuota )
+        {
+            if ( ( lQuota > 0 ) && ( ( _lReserved + lSize ) > lQuota ) )
+            {
+                return false;
+            }
+
+            _lReserved += lSize;
+
+            return true;
+        }
+
+        /**
+         * Release some reserved bytes
+         * 
+         * @param lSize
+         *            The number of bytes
+         */
+        synchronized void release( long lSize )
+        {
+            _lReserved -= lSize;
+        }
+
+        /**
+         * Get the number of bytes reserved by the session
+         * 
+         * @return The number of bytes
+         */
+        synchronized long getBytes( )
+        {
+            return _lReserved;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.util;
+
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Decoder of the images posted as data URIs (<code>data:image/png;base64,...</code>) or as raw base64. The payload is read in place from the posted string,
+ * and decoded by chunks into an array of the exact size of the content: the string is neither split nor copied as a whole.
+ */
+public final class DataUri
+{
+    private static final String SCHEME = "data:";
+    private static final char SEPARATOR = ',';
+    private static final char PADDING = '=';
+    private static final int CHUNK_DIGITS = 8192;
+    private static final byte [ ] DIGITS = new byte [ 128];
+
+    static
+    {
+        for ( char c : "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray( ) )
+        {
+            DIGITS [c] = 1;
+        }
+    }
+
+    /**
+     * Private constructor
+     */
+    private DataUri( )
+    {
+    }
+
+    /**
+     * Get the offset of the base64 payload of a source
+     * 
+     * @param strSource
+     *            The data URI, or the raw base64 content
+     * @return The offset of the payload, or -1 if the source is a data URI without payload
+     */
+    public static int getDataOffset( String strSource )
+    {
+        if ( !strSource.regionMatches( true, 0, SCHEME, 0, SCHEME.length( ) ) )
+        {
+            return 0;
+        }
+
+        int nSeparator = strSource.indexOf( SEPARATOR, SCHEME.length( ) );
+
+        return ( nSeparator < 0 ) ? -1 : ( nSeparator + 1 );
+    }
+
+    /**
+     * Decode the content of a data URI. The characters which are not base64 digits, like line breaks, are ignored, and the content ends at the first padding
+     * character.
+     * 
+     * @param strSource
+     *            The data URI, or the raw base64 content
+     * @return The decoded content, or null if the source has no content
+     */
+    public static byte [ ] decode( String strSource )
+    {
+        if ( strSource == null )
+        {
+            return null;
+        }
+
+        int nOffset = getDataOffset( strSource );
+
+        if ( nOffset < 0 )
+        {
+            return null;
+        }
+
+        int nDigits = countDigits( strSource, nOffset );
+        // A last single digit does not hold a whole byte
+        int nLength = ( ( nDigits / 4 ) * 3 ) + ( Math.max( ( nDigits % 4 ) - 1, 0 ) );
+
+        if ( nLength == 0 )
+        {
+            return null;
+        }
+
+        byte [ ] content = new byte [ nLength];
+        byte [ ] digits = new byte [ CHUNK_DIGITS];
+        byte [ ] decoded = new byte [ ( CHUNK_DIGITS / 4 ) * 3];
+        Base64.Decoder decoder = Base64.getDecoder( );
+        int nPosition = nOffset;
+        int nWritten = 0;
+
+        // The digits are gathered by chunks in a buffer reused for the whole payload
+        while ( nWritten < nLength )
+        {
+            int nCount = 0;
+
+            while ( ( nCount < CHUNK_DIGITS ) && ( nPosition < strSource.length( ) ) )
+            {
+                char c = strSource.charAt( nPosition++ );
+
+                if ( c == PADDING )
+                {
+                    break;
+                }
+
+                // Written in any case, but kept only if it is a digit
+                digits [nCount] = (byte) c;
+                nCount += getDigitCount( c );
+            }
+
+            if ( nCount < CHUNK_DIGITS )
+            {
+                // Last chunk, without its dangling digit if any
+                int nDecoded = decoder.decode( Arrays.copyOf( digits, nCount - ( nCount % 4 == 1 ? 1 : 0 ) ), decoded );
+                System.arraycopy( decoded, 0, content, nWritten, nDecoded );
+                nWritten += nDecoded;
+
+                break;
+            }
+
+            int nDecoded = decoder.decode( digits, decoded );
+            System.arraycopy( decoded, 0, content, nWritten, nDecoded );
+            nWritten += nDecoded;
+        }
+
+        return content;
+    }
+
+    /**
+     * Count the base64 digits of a payload
+     * 
+     * @param strSource
+     *            The source
+     * @param nOffset
+     *            The offset of the payload
+     * @return The number of base64 digits before the padding
+     */
+    private static int countDigits( String strSource, int nOffset )
+    {
+        int nDigits = 0;
+
+        for ( int i = nOffset; i < strSource.length( ); i++ )
+        {
+            char c = strSource.charAt( i );
+
+            if ( c == PADDING )
+            {
+                break;
+            }
+
+            nDigits += getDigitCount( c );
+        }
+
+        return nDigits;
+    }
+
+    /**
+     * Count a character as a base64 digit. A lookup is used rather than tests, whose branches would be unpredictable on base64 content.
+     * 
+     * @param c
+     *            The character
+     * @return 1 if the character is a base64 digit, 0 otherwise
+     */
+    private static int getDigitCount( char c )
+    {
+        return ( c < DIGITS.length ) ? DIGITS [c] : 0;
+    }
+}
@@ -74,24 +74,31 @@ public final class FileAttributesUtils
 
     public static GenericAttributeError checkFileSize( Entry entry, List<FileItem> listUploadedFileItems, List<FileItem> listFileItemsToUpload, Locale locale )
     {
-        GenericAttributeError error = null;
-        Field fieldFileMaxSize = entry.getFieldByCode( IEntryTypeService.FIELD_FILE_MAX_SIZE );
-        int nMaxSize = GenericAttributesUtils.CONSTANT_ID_NULL;
-
-        if ( ( fieldFileMaxSize != null ) && StringUtils.isNotBlank( fieldFileMaxSize.getValue( ) ) && StringUtils.isNumeric( fieldFileMaxSize.getValue( ) ) )
-        {
-            nMaxSize = GenericAttributesUtils.convertStringToInt( fieldFileMaxSize.getValue( ) );
-        }
+        return checkFileSize( entry.getTitle( ), getFileMaxSize( entry ), listUploadedFileItems, listFileItemsToUpload, locale );
+    }
 
-        // If no max size defined in the db, then fetch the default max size from the
-        // properties file
-        if ( nMaxSize == GenericAttributesUtils.CONSTANT_ID_NULL )
-        {
-            nMaxSize = AppPropertiesService.getPropertyInt( PROPERTY_UPLOAD_FILE_DEFAULT_MAX_SIZE, 5242880 );
-        }
+    /**
+     * Check the size of the files of an entry
+     * 
+     * @param strTitle
+     *            The title of the entry
+     * @param lMaxSize
+     *            The maximum size of a file, -1 for no limit
+     * @param listUploadedFileItems
+     *            The files already uploaded
+     * @param listFileItemsToUpload
+     *            The files to upload
+     * @param locale
+     *            The locale
+     * @return The error if there is any
+     */
+    public static GenericAttributeError checkFileSize( String strTitle, long lMaxSize, List<FileItem> listUploadedFileItems,
+            List<FileItem> listFileItemsToUpload, Locale locale )
+    {
+        GenericAttributeError error = null;
 
-        // If nMaxSize == -1, then no size limit
-        if ( ( nMaxSize != GenericAttributesUtils.CONSTANT_ID_NULL ) && ( listFileItemsToUpload != null ) && ( listUploadedFileItems != null ) )
+        // If lMaxSize == -1, then no size limit
+        if ( ( lMaxSize != GenericAttributesUtils.CONSTANT_ID_NULL ) && ( listFileItemsToUpload != null ) && ( listUploadedFileItems != null ) )
         {
             boolean bHasFileMaxSizeError = false;
             List<FileItem> listFileItems = new ArrayList<>( );
@@ -100,7 +107,7 @@ public final class FileAttributesUtils
 
             for ( FileItem fileItem : listFileItems )
             {
-                if ( fileItem.getSize( ) > nMaxSize )
+                if ( fileItem.getSize( ) > lMaxSize )
                 {
                     bHasFileMaxSizeError = true;
 
@@ -111,12 +118,12 @@ public final class FileAttributesUtils
             if ( bHasFileMaxSizeError )
             {
                 Object [ ] params = {
-                        nMaxSize
+                        lMaxSize
                 };
                 String strMessage = I18nService.getLocalizedString( PROPERTY_MESSAGE_ERROR_UPLOADING_FILE_FILE_MAX_SIZE, params, locale );
                 error = new GenericAttributeError( );
                 error.setMandatoryError( false );
-                error.setTitleQuestion( entry.getTitle( ) );
+                error.setTitleQuestion( strTitle );
                 error.setErrorMessage( strMessage );
             }
         }
@@ -126,16 +133,28 @@ public final class FileAttributesUtils
     public static GenericAttributeError checkNumberFiles( Entry entry, List<FileItem> listUploadedFileItems, List<FileItem> listFileItemsToUpload,
             Locale locale )
     {
-        GenericAttributeError error = null;
-        Field fieldMaxFiles = entry.getFieldByCode( IEntryTypeService.FIELD_MAX_FILES );
-
-        // By default, max file is set at 1
-        int nMaxFiles = 1;
+        return checkNumberFiles( entry.getTitle( ), getMaxFiles( entry ), listUploadedFileItems, listFileItemsToUpload, locale );
+    }
 
-        if ( ( fieldMaxFiles != null ) && StringUtils.isNotBlank( fieldMaxFiles.getValue( ) ) && StringUtils.isNumeric( fieldMaxFiles.getValue( ) ) )
-        {
-            nMaxFiles = GenericAttributesUtils.convertStringToInt( fieldMaxFiles.getValue( ) );
-        }
+    /**
+     * Check the number of files of an entry
+     * 
+     * @param strTitle
+     *            The title of the entry
+     * @param nMaxFiles
+     *            The maximum number of files
+     * @param listUploadedFileItems
+     *            The files already uploaded
+     * @param listFileItemsToUpload
+     *            The files to upload
+     * @param locale
+     *            The locale
+     * @return The error if there is any
+     */
+    public static GenericAttributeError checkNumberFiles( String strTitle, int nMaxFiles, List<FileItem> listUploadedFileItems,
+            List<FileItem> listFileItemsToUpload, Locale locale )
+    {
+        GenericAttributeError error = null;
 
         if ( ( listUploadedFileItems != null ) && ( listFileItemsToUpload != null ) )
         {
@@ -149,7 +168,7 @@ public final class FileAttributesUtils
                 String strMessage = I18nService.getLocalizedString( PROPERTY_MESSAGE_ERROR_UPLOADING_FILE_MAX_FILES, params, locale );
                 error = new GenericAttributeError( );
                 error.setMandatoryError( false );
-                error.setTitleQuestion( entry.getTitle( ) );
+                error.setTitleQuestion( strTitle );
                 error.setErrorMessage( strMessage );
 
                 return error;
@@ -159,6 +178,55 @@ public final class FileAttributesUtils
         return error;
     }
 
+    /**
+     * Get the maximum size of a file of an entry
+     * 
+     * @param entry
+     *            The entry
+     * @return The maximum size in bytes, -1 for no limit
+     */
+    public static int getFileMaxSize( Entry entry )
+    {
+        Field fieldFileMaxSize = entry.getFieldByCode( IEntryTypeService.FIELD_FILE_MAX_SIZE );
+        int nMaxSize = GenericAttributesUtils.CONSTANT_ID_NULL;
+
+        if ( ( fieldFileMaxSize != null ) && StringUtils.isNotBlank( fieldFileMaxSize.getValue( ) ) && StringUtils.isNumeric( fieldFileMaxSize.getValue( ) ) )
+        {
+            nMaxSize = GenericAttributesUtils.convertStringToInt( fieldFileMaxSize.getValue( ) );
+        }
+
+        // If no max size defined in the db, then fetch the default max size from the
+        // properties file
+        if ( nMaxSize == GenericAttributesUtils.CONSTANT_ID_NULL )
+        {
+            nMaxSize = AppPropertiesService.getPropertyInt( PROPERTY_UPLOAD_FILE_DEFAULT_MAX_SIZE, 5242880 );
+        }
+
+        return nMaxSize;
+    }
+
+    /**
+     * Get the maximum number of files of an entry
+     * 
+     * @param entry
+     *            The entry
+     * @return The maximum number of files
+     */
+    public static int getMaxFiles( Entry entry )
+    {
+        Field fieldMaxFiles = entry.getFieldByCode( IEntryTypeService.FIELD_MAX_FILES );
+
+        // By default, max file is set at 1
+        int nMaxFiles = 1;
+
+        if ( ( fieldMaxFiles != null ) && StringUtils.isNotBlank( fieldMaxFiles.getValue( ) ) && StringUtils.isNumeric( fieldMaxFiles.getValue( ) ) )
+        {
+            nMaxFiles = GenericAttributesUtils.convertStringToInt( fieldMaxFiles.getValue( ) );
+        }
+
+        return nMaxFiles;
+    }
+
     /**
      * Check the entry data
      * 
@@ -140,6 +140,22 @@ public final class GenericAttributesUtils
         return PluginService.getPlugin( GenericAttributesPlugin.PLUGIN_NAME );
     }
 
+    /**
+     * Create a plugin instance whose connection service uses a given pool. The DAOs use it to run their queries on a pool other than the one of the generic
+     * attributes plugin.
+     * 
+     * @param strPoolName
+     *            The name of the pool
+     * @return The plugin
+     */
+    public static Plugin createPoolPlugin( String strPoolName )
+    {
+        Plugin plugin = new GenericAttributesPlugin( );
+        plugin.initConnectionService( strPoolName );
+
+        return plugin;
+    }
+
     /**
      * Convert a string to int
      * 
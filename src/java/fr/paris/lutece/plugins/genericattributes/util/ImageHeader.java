@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+/**
+ * Format and dimensions of an image, read from its header without decoding its pixels. The format is recognized from the first bytes of the content, then the
+ * dimensions are read by the image reader of this format. Only the bytes up to the dimensions are read from the stream.
+ */
+public final class ImageHeader
+{
+    // Formats
+    public static final String FORMAT_JPEG = "jpeg";
+    public static final String FORMAT_PNG = "png";
+    public static final String FORMAT_GIF = "gif";
+    public static final String FORMAT_BMP = "bmp";
+    public static final String FORMAT_TIFF = "tiff";
+    public static final String FORMAT_WEBP = "webp";
+
+    private static final int MAGIC_LENGTH = 12;
+    private static final byte [ ] MAGIC_JPEG = {
+            (byte) 0xFF, (byte) 0xD8, (byte) 0xFF
+    };
+    private static final byte [ ] MAGIC_PNG = {
+            (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'
+    };
+    private static final byte [ ] MAGIC_GIF = {
+            'G', 'I', 'F', '8'
+    };
+    private static final byte [ ] MAGIC_BMP = {
+            'B', 'M'
+    };
+    private static final byte [ ] MAGIC_TIFF_LITTLE_ENDIAN = {
+            'I', 'I', '*', 0
+    };
+    private static final byte [ ] MAGIC_TIFF_BIG_ENDIAN = {
+            'M', 'M', 0, '*'
+    };
+    private static final byte [ ] MAGIC_RIFF = {
+            'R', 'I', 'F', 'F'
+    };
+    private static final byte [ ] MAGIC_WEBP = {
+            'W', 'E', 'B', 'P'
+    };
+
+    private final String _strFormat;
+    private final int _nWidth;
+    private final int _nHeight;
+
+    /**
+     * Constructor
+     * 
+     * @param strFormat
+     *            The format
+     * @param nWidth
+     *            The width
+     * @param nHeight
+     *            The height
+     */
+    private ImageHeader( String strFormat, int nWidth, int nHeight )
+    {
+        _strFormat = strFormat;
+        _nWidth = nWidth;
+        _nHeight = nHeight;
+    }
+
+    /**
+     * Read the header of an image
+     * 
+     * @param inputStream
+     *            The content of the image, which is not closed
+     * @return The header, or null if the content is not an image of a format readable by ImageIO
+     * @throws IOException
+     *             if the content can not be read
+     */
+    public static ImageHeader read( InputStream inputStream ) throws IOException
+    {
+        if ( inputStream == null )
+        {
+            return null;
+        }
+
+        ImageInputStream imageInputStream = new MemoryCacheImageInputStream( inputStream );
+
+        try
+        {
+            return read( imageInputStream );
+        }
+        finally
+        {
+            imageInputStream.close( );
+        }
+    }
+
+    /**
+     * Read the header of an image
+     * 
+     * @param imageInputStream
+     *            The content of the image, which is not closed
+     * @return The header, or null if the content is not an image of a format readable by ImageIO
+     * @throws IOException
+     *             if the content can not be read
+     */
+    public static ImageHeader read( ImageInputStream imageInputStream ) throws IOException
+    {
+        byte [ ] magic = new byte [ MAGIC_LENGTH];
+        int nLength = 0;
+        int nRead = 0;
+        imageInputStream.mark( );
+
+        while ( ( nLength < MAGIC_LENGTH ) && ( ( nRead = imageInputStream.read( magic, nLength, MAGIC_LENGTH - nLength ) ) > 0 ) )
+        {
+            nLength += nRead;
+        }
+
+        imageInputStream.reset( );
+
+        String strFormat = getFormat( magic, nLength );
+
+        if ( strFormat == null )
+        {
+            return null;
+        }
+
+        Iterator<ImageReader> iterator = ImageIO.getImageReadersByFormatName( strFormat );
+
+        if ( !iterator.hasNext( ) )
+        {
+            return null;
+        }
+
+        ImageReader reader = iterator.next( );
+
+        try
+        {
+            reader.setInput( imageInputStream, true, true );
+
+            return new ImageHeader( strFormat, reader.getWidth( 0 ), reader.getHeight( 0 ) );
+        }
+        catch( IOException | RuntimeException e )
+        {
+            // The content starts like an image but its header is invalid
+            return null;
+        }
+        finally
+        {
+            reader.dispose( );
+        }
+    }
+
+    /**
+     * Get the format of an image from its first bytes
+     * 
+     * @param magic
+     *            The first bytes of the content
+     * @param nLength
+     *            The number of bytes read
+     * @return The format, or null if the content is not an image
+     */
+    static String getFormat( byte [ ] magic, int nLength )
+    {
+        if ( startsWith( magic, nLength, 0, MAGIC_JPEG ) )
+        {
+            return FORMAT_JPEG;
+        }
+
+        if ( startsWith( magic, nLength, 0, MAGIC_PNG ) )
+        {
+            return FORMAT_PNG;
+        }
+
+        if ( startsWith( magic, nLength, 0, MAGIC_GIF ) )
+        {
+            return FORMAT_GIF;
+        }
+
+        if ( startsWith( magic, nLength, 0, MAGIC_BMP ) )
+        {
+            return FORMAT_BMP;
+        }
+
+        if ( startsWith( magic, nLength, 0, MAGIC_TIFF_LITTLE_ENDIAN ) || startsWith( magic, nLength, 0, MAGIC_TIFF_BIG_ENDIAN ) )
+        {
+            return FORMAT_TIFF;
+        }
+
+        if ( startsWith( magic, nLength, 0, MAGIC_RIFF ) && startsWith( magic, nLength, 8, MAGIC_WEBP ) )
+        {
+            return FORMAT_WEBP;
+        }
+
+        return null;
+    }
+
+    /**
+     * Tell if bytes contain a magic number at an offset
+     * 
+     * @param bytes
+     *            The bytes
+     * @param nLength
+     *            The number of bytes
+     * @param nOffset
+     *            The offset
+     * @param magic
+     *            The magic number
+     * @return true if the bytes contain the magic number at the offset
+     */
+    private static boolean startsWith( byte [ ] bytes, int nLength, int nOffset, byte [ ] magic )
+    {
+        if ( nLength < nOffset + magic.length )
+        {
+            return false;
+        }
+
+        for ( int i = 0; i < magic.length; i++ )
+        {
+            if ( bytes [nOffset + i] != magic [i] )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Get the format of the image, as an ImageIO format name
+     * 
+     * @return The format
+     */
+    public String getFormat( )
+    {
+        return _strFormat;
+    }
+
+    /**
+     * Get the width of the image
+     * 
+     * @return The width, in pixels
+     */
+    public int getWidth( )
+    {
+        return _nWidth;
+    }
+
+    /**
+     * Get the height of the image
+     * 
+     * @return The height, in pixels
+     */
+    public int getHeight( )
+    {
+        return _nHeight;
+    }
+
+    /**
+     * Get the number of pixels of the image
+     * 
+     * @return The number of pixels
+     */
+    public long getPixelCount( )
+    {
+        return (long) _nWidth * _nHeight;
+    }
+}
@@ -0,0 +1,392 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Transparent compression of the response values stored by the plugin. A stored value is compressed with deflate when it is larger than a threshold and
+ * compression makes it smaller. Compressed values start with a text marker followed by the base64 of the deflated UTF-8 bytes. A value which already starts
+ * with the marker is always compressed, so that reading it back is never ambiguous. Values stored before compression was enabled are read unchanged.
+ * <p>
+ * The file contents are not compressed: the physical files are shared with the core and the other plugins, which read them as they are.
+ * </p>
+ */
+public final class StorageCompression
+{
+    // Properties
+    private static final String PROPERTY_ENABLED = "genericattributes.storage.compression.enabled";
+    private static final String PROPERTY_THRESHOLD = "genericattributes.storage.compression.threshold";
+    private static final int DEFAULT_THRESHOLD = 4096;
+
+    // Constants
+    private static final String MARKER_VALUE = "{genatt:deflate}";
+    private static final int BUFFER_SIZE = 8192;
+
+    // Statistics
+    private static final AtomicLong _lCompressedCount = new AtomicLong( );
+    private static final AtomicLong _lOriginalBytes = new AtomicLong( );
+    private static final AtomicLong _lStoredBytes = new AtomicLong( );
+    private static final AtomicLong _lCompressionNanos = new AtomicLong( );
+    private static final AtomicLong _lDecompressedCount = new AtomicLong( );
+    private static final AtomicLong _lDecompressionNanos = new AtomicLong( );
+
+    /**
+     * Private constructor
+     */
+    private StorageCompression( )
+    {
+    }
+
+    /**
+     * Compress a response value before it is stored, if it is worth it
+     * 
+     * @param strValue
+     *            The value, can be null
+     * @return The value to store
+     */
+    public static String compressValue( String strValue )
+    {
+        if ( strValue == null )
+        {
+            return null;
+        }
+
+        boolean bMarked = strValue.startsWith( MARKER_VALUE );
+
+        if ( !bMarked && ( !isEnabled( ) || ( strValue.length( ) < getThreshold( ) ) ) )
+        {
+            return strValue;
+        }
+
+        long lStart = System.nanoTime( );
+        byte [ ] value = strValue.getBytes( StandardCharsets.UTF_8 );
+        String strCompressed = MARKER_VALUE + Base64.getEncoder( ).encodeToString( deflate( value ) );
+
+        if ( !bMarked && ( strCompressed.length( ) >= strValue.length( ) ) )
+        {
+            _lCompressionNanos.addAndGet( System.nanoTime( ) - lStart );
+
+            return strValue;
+        }
+
+        record( value.length, strCompressed.length( ), lStart );
+
+        return strCompressed;
+    }
+
+    /**
+     * Get back a response value read from the database
+     * 
+     * @param strStoredValue
+     *            The stored value, can be null
+     * @return The value
+     */
+    public static String decompressValue( String strStoredValue )
+    {
+        if ( ( strStoredValue == null ) || !strStoredValue.startsWith( MARKER_VALUE ) )
+        {
+            return strStoredValue;
+        }
+
+        long lStart = System.nanoTime( );
+        byte [ ] value = inflate( Base64.getDecoder( ).decode( strStoredValue.substring( MARKER_VALUE.length( ) ) ) );
+        recordDecompression( lStart );
+
+        return new String( value, StandardCharsets.UTF_8 );
+    }
+
+    /**
+     * Get a report of the compression done since the start or the last reset
+     * 
+     * @return The report
+     */
+    public static Report getReport( )
+    {
+        return new Report( _lCompressedCount.get( ), _lOriginalBytes.get( ), _lStoredBytes.get( ), _lCompressionNanos.get( ), _lDecompressedCount.get( ),
+                _lDecompressionNanos.get( ) );
+    }
+
+    /**
+     * Reset the statistics of the report
+     */
+    public static void resetReport( )
+    {
+        _lCompressedCount.set( 0 );
+        _lOriginalBytes.set( 0 );
+        _lStoredBytes.set( 0 );
+        _lCompressionNanos.set( 0 );
+        _lDecompressedCount.set( 0 );
+        _lDecompressionNanos.set( 0 );
+    }
+
+    /**
+     * Tell if the compression of the new values is enabled
+     * 
+     * @return true if enabled
+     */
+    private static boolean isEnabled( )
+    {
+        return AppPropertiesService.getPropertyBoolean( PROPERTY_ENABLED, false );
+    }
+
+    /**
+     * Get the size from which values are compressed
+     * 
+     * @return The threshold
+     */
+    private static int getThreshold( )
+    {
+        return AppPropertiesService.getPropertyInt( PROPERTY_THRESHOLD, DEFAULT_THRESHOLD );
+    }
+
+    /**
+     * Deflate bytes
+     * 
+     * @param data
+     *            The bytes
+     * @return The deflated bytes
+     */
+    private static byte [ ] deflate( byte [ ] data )
+    {
+        Deflater deflater = new Deflater( Deflater.DEFAULT_COMPRESSION );
+
+        try
+        {
+            deflater.setInput( data );
+            deflater.finish( );
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream( Math.max( 64, data.length / 2 ) );
+            byte [ ] buffer = new byte [ BUFFER_SIZE];
+
+            while ( !deflater.finished( ) )
+            {
+                out.write( buffer, 0, deflater.deflate( buffer ) );
+            }
+
+            return out.toByteArray( );
+        }
+        finally
+        {
+            deflater.end( );
+        }
+    }
+
+    /**
+     * Inflate bytes
+     * 
+     * @param data
+     *            The deflated bytes
+     * @return The bytes
+     */
+    private static byte [ ] inflate( byte [ ] data )
+    {
+        Inflater inflater = new Inflater( );
+
+        try
+        {
+            inflater.setInput( data );
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream( data.length * 4 );
+            byte [ ] buffer = new byte [ BUFFER_SIZE];
+
+            while ( !inflater.finished( ) )
+            {
+                int nInflated = inflater.inflate( buffer );
+
+                if ( ( nInflated == 0 ) && ( inflater.needsInput( ) || inflater.needsDictionary( ) ) )
+                {
+                    throw new AppException( "Truncated compressed value" );
+                }
+
+                out.write( buffer, 0, nInflated );
+            }
+
+            return out.toByteArray( );
+        }
+        catch( DataFormatException e )
+        {
+            throw new AppException( e.getMessage( ), e );
+        }
+        finally
+        {
+            inflater.end( );
+        }
+    }
+
+    /**
+     * Record a compression in the statistics
+     * 
+     * @param nOriginalBytes
+     *            The size of the value
+     * @param nStoredBytes
+     *            The size of the stored value
+     * @param lStart
+     *            The start of the compression, in nanoseconds
+     */
+    private static void record( int nOriginalBytes, int nStoredBytes, long lStart )
+    {
+        _lCompressionNanos.addAndGet( System.nanoTime( ) - lStart );
+        _lCompressedCount.incrementAndGet( );
+        _lOriginalBytes.addAndGet( nOriginalBytes );
+        _lStoredBytes.addAndGet( nStoredBytes );
+    }
+
+    /**
+     * Record a decompression in the statistics
+     * 
+     * @param lStart
+     *            The start of the decompression, in nanoseconds
+     */
+    private static void recordDecompression( long lStart )
+    {
+        _lDecompressionNanos.addAndGet( System.nanoTime( ) - lStart );
+        _lDecompressedCount.incrementAndGet( );
+    }
+
+    /**
+     * Storage report: the bytes saved by the compression and the CPU time spent on it
+     */
+    public static final class Report
+    {
+        private final long _lCompressedCount;
+        private final long _lOriginalBytes;
+        private final long _lStoredBytes;
+        private final long _lCompressionNanos;
+        private final long _lDecompressedCount;
+        private final long _lDecompressionNanos;
+
+        /**
+         * Constructor
+         * 
+         * @param lCompressedCount
+         *            The number of values compressed
+         * @param lOriginalBytes
+         *            The size of these values
+         * @param lStoredBytes
+         *            The size of these values once compressed
+         * @param lCompressionNanos
+         *            The time spent compressing, including the values which were not worth it
+         * @param lDecompressedCount
+         *            The number of values decompressed
+         * @param lDecompressionNanos
+         *            The time spent decompressing
+         */
+        Report( long lCompressedCount, long lOriginalBytes, long lStoredBytes, long lCompressionNanos, long lDecompressedCount, long lDecompressionNanos )
+        {
+            _lCompressedCount = lCompressedCount;
+            _lOriginalBytes = lOriginalBytes;
+            _lStoredBytes = lStoredBytes;
+            _lCompressionNanos = lCompressionNanos;
+            _lDecompressedCount = lDecompressedCount;
+            _lDecompressionNanos = lDecompressionNanos;
+        }
+
+        /**
+         * @return The number of values compressed
+         */
+        public long getCompressedCount( )
+        {
+            return _lCompressedCount;
+        }
+
+        /**
+         * @return The size of the compressed values before compression
+         */
+        public long getOriginalBytes( )
+        {
+            return _lOriginalBytes;
+        }
+
+        /**
+         * @return The size of the compressed values once stored
+         */
+        public long getStoredBytes( )
+        {
+            return _lStoredBytes;
+        }
+
+        /**
+         * @return The bytes saved by the compression
+         */
+        public long getSavedBytes( )
+        {
+            return _lOriginalBytes - _lStoredBytes;
+        }
+
+        /**
+         * @return The time spent compressing, in nanoseconds
+         */
+        public long getCompressionNanos( )
+        {
+            return _lCompressionNanos;
+        }
+
+        /**
+         * @return The number of values decompressed
+         */
+        public long getDecompressedCount( )
+        {
+            return _lDecompressedCount;
+        }
+
+        /**
+         * @return The time spent decompressing, in nanoseconds
+         */
+        public long getDecompressionNanos( )
+        {
+            return _lDecompressionNanos;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString( )
+        {
+            return "compressed=" + _lCompressedCount + " original=" + _lOriginalBytes + "B stored=" + _lStoredBytes + "B compressionTime="
+                    + ( _lCompressionNanos / 1000000 ) + "ms decompressed=" + _lDecompressedCount + " decompressionTime=" + ( _lDecompressionNanos / 1000000 )
+                    + "ms";
+        }
+    }
+}
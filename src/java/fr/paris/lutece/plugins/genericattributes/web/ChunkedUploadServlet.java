@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.web;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import fr.paris.lutece.plugins.genericattributes.service.upload.AbstractGenAttUploadHandler;
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+
+/**
+ * Servlet receiving the steps of the chunked uploads. The request is passed to the upload handler named by its <code>handler</code> parameter, whose
+ * {@link AbstractGenAttUploadHandler#process(HttpServletRequest, HttpServletResponse)} describes the parameters. The offset of an upload can be read with a
+ * GET, the other steps are sent with a POST.
+ */
+public class ChunkedUploadServlet extends HttpServlet
+{
+    /**
+     * Path of the servlet, relative to the base URL of the webapp
+     */
+    public static final String URL_SERVLET = "servlet/plugins/genericattributes/upload";
+
+    private static final long serialVersionUID = 4018731924685526381L;
+
+    // Parameters
+    private static final String PARAMETER_ACTION = "action";
+    private static final String ACTION_OFFSET = "offset";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doGet( HttpServletRequest request, HttpServletResponse response ) throws IOException
+    {
+        if ( ACTION_OFFSET.equals( request.getParameter( PARAMETER_ACTION ) ) )
+        {
+            doPost( request, response );
+        }
+        else
+        {
+            response.sendError( HttpServletResponse.SC_METHOD_NOT_ALLOWED );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doPost( HttpServletRequest request, HttpServletResponse response ) throws IOException
+    {
+        for ( AbstractGenAttUploadHandler handler : SpringContextService.getBeansOfType( AbstractGenAttUploadHandler.class ) )
+        {
+            if ( handler.isInvoked( request ) )
+            {
+                handler.process( request, response );
+
+                return;
+            }
+        }
+
+        response.sendError( HttpServletResponse.SC_NOT_FOUND );
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.web;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang.math.NumberUtils;
+
+import fr.paris.lutece.plugins.genericattributes.business.ResponseImage;
+import fr.paris.lutece.plugins.genericattributes.service.image.ResponseImageCache;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+import fr.paris.lutece.util.file.FileUtil;
+import fr.paris.lutece.util.url.UrlItem;
+
+/**
+ * Servlet serving the image responses with validators: the browsers revalidate their copy with its entity tag or modification date, and get a
+ * <code>304 Not Modified</code> response while the image is unchanged. Like the image resource of the responses, it is only enabled by the property
+ * <code>genericattributes.insecureImageResourceEnable</code>.
+ */
+public class ResponseImageServlet extends HttpServlet
+{
+    /**
+     * Path of the servlet, relative to the base URL of the webapp
+     */
+    public static final String URL_SERVLET = "servlet/plugins/genericattributes/image";
+
+    private static final long serialVersionUID = -2516237628537245614L;
+
+    // Properties
+    private static final String PROPERTY_INSECURE_IMAGES_ENABLE = "genericattributes.insecureImageResourceEnable";
+
+    // Parameters
+    private static final String PARAMETER_ID = "id";
+
+    // Headers
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    private static final String CACHE_CONTROL = "private, no-cache";
+
+    // Constants
+    private static final String ETAG_ANY = "*";
+    private static final String ETAG_WEAK_PREFIX = "W/";
+    private static final String ETAG_SEPARATOR = ",";
+    private static final String QUOTE = "\"";
+    private static final long MILLISECONDS_PER_SECOND = 1000L;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doGet( HttpServletRequest request, HttpServletResponse response ) throws IOException
+    {
+        int nIdResponse = NumberUtils.toInt( request.getParameter( PARAMETER_ID ), -1 );
+        ResponseImage image = null;
+
+        if ( ( nIdResponse > 0 ) && AppPropertiesService.getPropertyBoolean( PROPERTY_INSECURE_IMAGES_ENABLE, false ) )
+        {
+            image = ResponseImageCache.getImage( nIdResponse );
+        }
+
+        if ( ( image == null ) || ( image.getContent( ) == null ) || !FileUtil.hasImageExtension( image.getTitle( ) ) )
+        {
+            response.sendError( HttpServletResponse.SC_NOT_FOUND );
+
+            return;
+        }
+
+        String strETag = QUOTE + image.getETag( ) + QUOTE;
+        long lLastModified = ( image.getDateCreation( ) != null ) ? image.getDateCreation( ).getTime( ) : -1;
+
+        response.setHeader( HEADER_ETAG, strETag );
+        response.setHeader( HEADER_CACHE_CONTROL, CACHE_CONTROL );
+
+        if ( lLastModified >= 0 )
+        {
+            response.setDateHeader( HEADER_LAST_MODIFIED, lLastModified );
+        }
+
+        if ( isNotModified( request.getHeader( HEADER_IF_NONE_MATCH ), getDateHeader( request, HEADER_IF_MODIFIED_SINCE ), strETag, lLastModified ) )
+        {
+            response.setStatus( HttpServletResponse.SC_NOT_MODIFIED );
+
+            return;
+        }
+
+        response.setContentType( image.getMimeType( ) );
+        response.setContentLength( image.getContent( ).length );
+        response.getOutputStream( ).write( image.getContent( ) );
+    }
+
+    /**
+     * Tell if the copy of the browser is still valid. The entity tags take precedence over the modification date.
+     * 
+     * @param strIfNoneMatch
+     *            The entity tags of the copies of the browser, null if none
+     * @param lIfModifiedSince
+     *            The modification date of the copy of the browser, -1 if none
+     * @param strETag
+     *            The entity tag of the image, quoted
+     * @param lLastModified
+     *            The modification date of the image, -1 if unknown
+     * @return true if the image is not modified
+     */
+    static boolean isNotModified( String strIfNoneMatch, long lIfModifiedSince, String strETag, long lLastModified )
+    {
+        if ( strIfNoneMatch != null )
+        {
+            for ( String strMatch : strIfNoneMatch.split( ETAG_SEPARATOR ) )
+            {
+                String strTag = strMatch.trim( );
+
+                if ( strTag.startsWith( ETAG_WEAK_PREFIX ) )
+                {
+                    strTag = strTag.substring( ETAG_WEAK_PREFIX.length( ) );
+                }
+
+                if ( ETAG_ANY.equals( strTag ) || strETag.equals( strTag ) )
+                {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        // The HTTP dates have a precision of one second
+        return ( lIfModifiedSince >= 0 ) && ( lLastModified >= 0 )
+                && ( ( lLastModified / MILLISECONDS_PER_SECOND ) <= ( lIfModifiedSince / MILLISECONDS_PER_SECOND ) );
+    }
+
+    /**
+     * Get a date header of a request
+     * 
+     * @param request
+     *            The request
+     * @param strHeader
+     *            The name of the header
+     * @return The date, or -1 if the header is missing or malformed
+     */
+    private static long getDateHeader( HttpServletRequest request, String strHeader )
+    {
+        try
+        {
+            return request.getDateHeader( strHeader );
+        }
+        catch( IllegalArgumentException e )
+        {
+            return -1;
+        }
+    }
+
+    /**
+     * Get the URL of an image response served with validators
+     * 
+     * @param nIdResponse
+     *            The id of the response
+     * @return The URL of the image, relative to the base URL of the webapp
+     */
+    public static String getUrlImageResponse( int nIdResponse )
+    {
+        UrlItem urlItem = new UrlItem( URL_SERVLET );
+        urlItem.addParameter( PARAMETER_ID, nIdResponse );
+
+        return urlItem.getUrl( );
+    }
+}
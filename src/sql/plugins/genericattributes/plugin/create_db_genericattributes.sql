@@ -1,8 +1,15 @@
+DROP TABLE IF EXISTS genatt_response_thumbnail;
+DROP TABLE IF EXISTS genatt_response_file_blob;
+DROP TABLE IF EXISTS genatt_response_blob;
+DROP TABLE IF EXISTS genatt_response_shard_resource;
+DROP TABLE IF EXISTS genatt_response_index;
+DROP TABLE IF EXISTS genatt_id_list;
 DROP TABLE IF EXISTS genatt_verify_by;
 DROP TABLE IF EXISTS genatt_field;
 DROP TABLE IF EXISTS genatt_response;
 DROP TABLE IF EXISTS genatt_entry;
 DROP TABLE IF EXISTS genatt_entry_type;
+DROP TABLE IF EXISTS genatt_resource_type;
 
 --
 -- Table structure for table genatt_entry_type
@@ -22,12 +29,25 @@ CREATE TABLE genatt_entry_type (
 CREATE INDEX index_genatt_entry_type_plugin ON genatt_entry_type (plugin);
 
 
+--
+-- Table structure for table genatt_resource_type
+--
+CREATE TABLE genatt_resource_type (
+	id_resource_type int AUTO_INCREMENT NOT NULL,
+	resource_type VARCHAR(255) NOT NULL,
+	PRIMARY KEY (id_resource_type)
+);
+
+CREATE UNIQUE INDEX index_genatt_resource_type ON genatt_resource_type (resource_type);
+
+
 --
 -- Table structure for table genatt_entry
 --
 CREATE TABLE genatt_entry (
 	id_entry int AUTO_INCREMENT NOT NULL,
 	id_resource int default 0 NOT NULL,
+	id_resource_type int default 0 NOT NULL,
 	resource_type VARCHAR(255) NOT NULL,
 	id_type int default 0 NOT NULL,
 	id_parent int default NULL,
@@ -49,7 +69,7 @@ CREATE TABLE genatt_entry (
     PRIMARY KEY (id_entry)
 );
 
-CREATE INDEX index_genatt_entry_resource ON genatt_entry (id_resource);
+CREATE INDEX index_genatt_entry_resource ON genatt_entry (id_resource, id_resource_type, id_parent);
 CREATE INDEX index_genatt_entry_parent ON genatt_entry (id_parent);
 CREATE INDEX index_genatt_code ON genatt_entry ( code);
 
@@ -111,4 +131,82 @@ CREATE INDEX index_genatt_verify_by_field ON genatt_verify_by (id_field);
 	
 ALTER TABLE genatt_verify_by ADD CONSTRAINT fk_genatt_verify_by_field FOREIGN KEY (id_field)
 	REFERENCES genatt_field (id_field);
-	
+
+--
+-- Table structure for table genatt_id_list
+--
+CREATE TABLE genatt_id_list (
+	list_key varchar(36) NOT NULL,
+	id int NOT NULL
+);
+
+CREATE INDEX index_genatt_id_list_key ON genatt_id_list (list_key, id);
+
+--
+-- Table structure for table genatt_response_index
+-- Used when the responses are sharded, gives the resource of each response
+--
+CREATE TABLE genatt_response_index (
+	id_response int AUTO_INCREMENT,
+	id_resource int NOT NULL,
+	PRIMARY KEY (id_response)
+);
+
+--
+-- Table structure for table genatt_response_shard_resource
+-- Used when the responses are sharded, attaches a resource to a shard other than its hashed one
+--
+CREATE TABLE genatt_response_shard_resource (
+	id_resource int NOT NULL,
+	shard_name varchar(50) NOT NULL,
+	previous_shard_name varchar(50) default NULL,
+	PRIMARY KEY (id_resource)
+);
+
+--
+-- Each response shard holds a copy of genatt_id_list and a response table, named genatt_response
+-- followed by the tableSuffix of the shard, whose ids are given by genatt_response_index:
+--
+-- CREATE TABLE genatt_response_<suffix> (
+-- 	id_response int NOT NULL,
+-- 	response_value long VARCHAR DEFAULT NULL,
+-- 	id_entry int default NULL,
+-- 	iteration_number int default -1,
+-- 	id_field int default NULL,
+-- 	id_file int default NULL,
+-- 	status smallint default 1,
+-- 	PRIMARY KEY (id_response)
+-- );
+-- CREATE INDEX index_genatt_response_<suffix>_entry ON genatt_response_<suffix> (id_entry);
+
+--
+-- Table structure for table genatt_response_blob
+-- Reference counts of the contents of the response files written in the blob store
+--
+CREATE TABLE genatt_response_blob (
+	blob_key varchar(64) NOT NULL,
+	ref_count int default 0 NOT NULL,
+	PRIMARY KEY (blob_key)
+);
+
+--
+-- Table structure for table genatt_response_file_blob
+-- Blobs of the contents of the response files written in the blob store. The physical file keeps its content, readable through the core API
+--
+CREATE TABLE genatt_response_file_blob (
+	id_physical_file int NOT NULL,
+	blob_key varchar(64) NOT NULL,
+	PRIMARY KEY (id_physical_file)
+);
+
+--
+-- Table structure for table genatt_response_thumbnail
+-- Thumbnails of the image responses, generated on their first request. The content is a reference to the blob store when it is enabled
+--
+CREATE TABLE genatt_response_thumbnail (
+	id_response int NOT NULL,
+	thumbnail_size int NOT NULL,
+	mime_type varchar(255) default NULL,
+	content long varbinary,
+	PRIMARY KEY (id_response, thumbnail_size)
+);
@@ -0,0 +1,103 @@
+--
+-- Table structure for table genatt_id_list
+--
+CREATE TABLE genatt_id_list (
+	list_key varchar(36) NOT NULL,
+	id int NOT NULL
+);
+
+CREATE INDEX index_genatt_id_list_key ON genatt_id_list (list_key, id);
+
+--
+-- Table structure for table genatt_response_index
+-- Used when the responses are sharded, gives the resource of each response.
+-- The responses of genatt_response are indexed with their id by the plugin the first time the sharded DAO is used,
+-- which moves the AUTO_INCREMENT of the index above them, when a shard uses genatt_response (a shard without tableSuffix)
+--
+CREATE TABLE genatt_response_index (
+	id_response int AUTO_INCREMENT,
+	id_resource int NOT NULL,
+	PRIMARY KEY (id_response)
+);
+
+--
+-- Table structure for table genatt_response_shard_resource
+-- Used when the responses are sharded, attaches a resource to a shard other than its hashed one
+--
+CREATE TABLE genatt_response_shard_resource (
+	id_resource int NOT NULL,
+	shard_name varchar(50) NOT NULL,
+	previous_shard_name varchar(50) default NULL,
+	PRIMARY KEY (id_resource)
+);
+
+--
+-- Each response shard holds a copy of genatt_id_list and a response table, named genatt_response
+-- followed by the tableSuffix of the shard, whose ids are given by genatt_response_index:
+--
+-- CREATE TABLE genatt_response_<suffix> (
+-- 	id_response int NOT NULL,
+-- 	response_value long VARCHAR DEFAULT NULL,
+-- 	id_entry int default NULL,
+-- 	iteration_number int default -1,
+-- 	id_field int default NULL,
+-- 	id_file int default NULL,
+-- 	status smallint default 1,
+-- 	PRIMARY KEY (id_response)
+-- );
+-- CREATE INDEX index_genatt_response_<suffix>_entry ON genatt_response_<suffix> (id_entry);
+
+--
+-- Dictionary of the resource types of the entries
+--
+CREATE TABLE genatt_resource_type (
+	id_resource_type int AUTO_INCREMENT NOT NULL,
+	resource_type VARCHAR(255) NOT NULL,
+	PRIMARY KEY (id_resource_type)
+);
+
+CREATE UNIQUE INDEX index_genatt_resource_type ON genatt_resource_type (resource_type);
+
+INSERT INTO genatt_resource_type ( resource_type ) SELECT DISTINCT resource_type FROM genatt_entry;
+
+ALTER TABLE genatt_entry ADD COLUMN id_resource_type int default 0 NOT NULL AFTER id_resource;
+UPDATE genatt_entry SET id_resource_type = ( SELECT rt.id_resource_type FROM genatt_resource_type rt WHERE rt.resource_type = genatt_entry.resource_type );
+-- The resource_type column is kept and still written, for the scripts and the readers of other plugins.
+-- The entries inserted later with only their resource_type keep id_resource_type = 0 : the finders still match them
+-- by their resource_type, and the plugin resolves their id_resource_type when it starts.
+-- It will only be dropped in a later major version.
+
+DROP INDEX index_genatt_entry_resource ON genatt_entry;
+CREATE INDEX index_genatt_entry_resource ON genatt_entry (id_resource, id_resource_type, id_parent);
+
+--
+-- Table structure for table genatt_response_blob
+-- Reference counts of the contents of the response files written in the blob store
+--
+CREATE TABLE genatt_response_blob (
+	blob_key varchar(64) NOT NULL,
+	ref_count int default 0 NOT NULL,
+	PRIMARY KEY (blob_key)
+);
+
+--
+-- Table structure for table genatt_response_file_blob
+-- Blobs of the contents of the response files written in the blob store. The physical file keeps its content, readable through the core API
+--
+CREATE TABLE genatt_response_file_blob (
+	id_physical_file int NOT NULL,
+	blob_key varchar(64) NOT NULL,
+	PRIMARY KEY (id_physical_file)
+);
+
+--
+-- Table structure for table genatt_response_thumbnail
+-- Thumbnails of the image responses, generated on their first request. The content is a reference to the blob store when it is enabled
+--
+CREATE TABLE genatt_response_thumbnail (
+	id_response int NOT NULL,
+	thumbnail_size int NOT NULL,
+	mime_type varchar(255) default NULL,
+	content long varbinary,
+	PRIMARY KEY (id_response, thumbnail_size)
+);
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.business;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.math.NumberUtils;
+
+import fr.paris.lutece.plugins.genericattributes.util.StorageCompression;
+import fr.paris.lutece.util.sql.DAOUtil;
+
+/**
+ * Test class for the ChoiceResponseStorage
+ */
+public class ChoiceResponseStorageTest extends AbstractEntryTest
+{
+    private static final String ENTRY_TYPE_CHOICE_TITLE = "Choice";
+    private static final String ENTRY_TYPE_CHOICE_BEAN = "genericattributes.test.entryTypeChoice";
+    private static final String FIELD_VALUE = "choice_a";
+    private static final String FIELD_VALUE_NEW = "choice_b";
+    private static final String OTHER_VALUE = "other";
+    private static final int NUMBER_OF_RESPONSES = 5;
+    private static final String SQL_QUERY_SELECT_STORED_VALUE = "SELECT response_value FROM genatt_response WHERE id_response = ? ";
+
+    private int _nEntryTypeChoicePrimaryKey;
+    private Entry _entry;
+    private Field _field;
+    private final List<Integer> _listIdResponse = new ArrayList<>( );
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setUp( ) throws Exception
+    {
+        super.setUp( );
+
+        _nEntryTypeChoicePrimaryKey = createEntryType( ENTRY_TYPE_CHOICE_TITLE, NumberUtils.INTEGER_ZERO, ENTRY_TYPE_CHOICE_BEAN, ENTRY_TYPE_CHOICE_TITLE );
+        ChoiceResponseStorage.setChoiceEntry( entry -> ENTRY_TYPE_CHOICE_BEAN.equals( entry.getEntryType( ).getBeanName( ) ) );
+        ChoiceResponseStorage.setEnabled( Boolean.TRUE );
+
+        _entry = createEntry( null, ENTRY_TYPE_CHOICE_TITLE, EntryTypeHome.findByPrimaryKey( _nEntryTypeChoicePrimaryKey ) );
+
+        _field = new Field( );
+        _field.setParentEntry( _entry );
+        _field.setTitle( ENTRY_TYPE_CHOICE_TITLE );
+        _field.setValue( FIELD_VALUE );
+        _field.setIdField( FieldHome.create( _field ) );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void tearDown( ) throws Exception
+    {
+        for ( int nIdResponse : _listIdResponse )
+        {
+            ResponseHome.remove( nIdResponse );
+        }
+
+        FieldHome.remove( _field.getIdField( ) );
+        _entryDAO.delete( _entry.getIdEntry( ), _plugin );
+        removeEntryType( _nEntryTypeChoicePrimaryKey );
+        removeEntryType( _nEntryTypeGroupPrimaryKey );
+        removeEntryType( _nEntryTypeTextPrimaryKey );
+        ChoiceResponseStorage.setEnabled( null );
+        ChoiceResponseStorage.setChoiceEntry( null );
+        super.tearDown( );
+    }
+
+    public void testCompactionAndResolutionOnRead( )
+    {
+        int nIdCompacted = createChoiceResponse( FIELD_VALUE );
+        int nIdOther = createChoiceResponse( OTHER_VALUE );
+
+        // Only the value equal to the value of the field is left out
+        assertNull( getStoredValue( nIdCompacted ) );
+        assertEquals( StorageCompression.compressValue( OTHER_VALUE ), getStoredValue( nIdOther ) );
+
+        assertEquals( FIELD_VALUE, ResponseHome.findByPrimaryKey( nIdCompacted ).getResponseValue( ) );
+        assertEquals( OTHER_VALUE, ResponseHome.findByPrimaryKey( nIdOther ).getResponseValue( ) );
+    }
+
+    public void testFieldChangeMaterializesValues( )
+    {
+        int nIdResponse = createChoiceResponse( FIELD_VALUE );
+        assertNull( getStoredValue( nIdResponse ) );
+
+        _field.setValue( FIELD_VALUE_NEW );
+        FieldHome.update( _field );
+
+        // The response keeps the value it was given, stored in the same form as the other values
+        assertEquals( StorageCompression.compressValue( FIELD_VALUE ), getStoredValue( nIdResponse ) );
+        assertEquals( FIELD_VALUE, ResponseHome.findByPrimaryKey( nIdResponse ).getResponseValue( ) );
+
+        // The new responses are compacted against the new value
+        int nIdNewResponse = createChoiceResponse( FIELD_VALUE_NEW );
+        assertNull( getStoredValue( nIdNewResponse ) );
+        assertEquals( FIELD_VALUE_NEW, ResponseHome.findByPrimaryKey( nIdNewResponse ).getResponseValue( ) );
+    }
+
+    public void testChunkedMigration( )
+    {
+        ChoiceResponseStorage.setEnabled( Boolean.FALSE );
+
+        List<Integer> listIdStored = new ArrayList<>( );
+
+        for ( int i = 0; i < NUMBER_OF_RESPONSES; i++ )
+        {
+            listIdStored.add( createChoiceResponse( FIELD_VALUE ) );
+        }
+
+        int nIdOther = createChoiceResponse( OTHER_VALUE );
+
+        for ( int nIdResponse : listIdStored )
+        {
+            assertNotNull( getStoredValue( nIdResponse ) );
+        }
+
+        ChoiceResponseStorage.setEnabled( Boolean.TRUE );
+
+        // Chunks of 2 responses, the other responses of the database may be compacted too
+        assertTrue( ChoiceResponseStorage.compactExistingResponses( 2 ) >= NUMBER_OF_RESPONSES );
+
+        for ( int nIdResponse : listIdStored )
+        {
+            assertNull( getStoredValue( nIdResponse ) );
+            assertEquals( FIELD_VALUE, ResponseHome.findByPrimaryKey( nIdResponse ).getResponseValue( ) );
+        }
+
+        assertEquals( StorageCompression.compressValue( OTHER_VALUE ), getStoredValue( nIdOther ) );
+
+        // Nothing is left to compact
+        ChoiceResponseStorage.setChoiceEntry( entry -> ENTRY_TYPE_CHOICE_BEAN.equals( entry.getEntryType( ).getBeanName( ) )
+                && ( entry.getIdEntry( ) == _entry.getIdEntry( ) ) );
+        assertEquals( 0, ChoiceResponseStorage.compactExistingResponses( 2 ) );
+    }
+
+    /**
+     * Create a response to the field of the choice entry
+     * 
+     * @param strValue
+     *            The value of the response
+     * @return The id of the response
+     */
+    private int createChoiceResponse( String strValue )
+    {
+        Response response = new Response( );
+        response.setEntry( _entry );
+        response.setField( _field );
+        response.setResponseValue( strValue );
+        ResponseHome.create( response );
+        _listIdResponse.add( response.getIdResponse( ) );
+
+        return response.getIdResponse( );
+    }
+
+    /**
+     * Read the value of a response as it is stored
+     * 
+     * @param nIdResponse
+     *            The id of the response
+     * @return The stored value
+     */
+    private String getStoredValue( int nIdResponse )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_STORED_VALUE, _plugin ) )
+        {
+            daoUtil.setInt( 1, nIdResponse );
+            daoUtil.executeQuery( );
+            assertTrue( daoUtil.next( ) );
+
+            return daoUtil.getString( 1 );
+        }
+    }
+}
@@ -39,6 +39,7 @@ import java.util.List;
 import fr.paris.lutece.plugins.genericattributes.service.GenericAttributesPlugin;
 import fr.paris.lutece.portal.service.plugin.Plugin;
 import fr.paris.lutece.portal.service.plugin.PluginService;
+import fr.paris.lutece.util.sql.DAOUtil;
 
 /**
  * Test class for the EntryHome
@@ -53,6 +54,12 @@ public class EntryHomeTest extends AbstractEntryTest
 
     private static final String TITLE_1 = "Title 1";
     private static final String TITLE_2 = "Title 2";
+    private static final String RESOURCE_TYPE = "GENATT_TEST_RESOURCE";
+    private static final String RESOURCE_TYPE_UNKNOWN = "GENATT_TEST_UNKNOWN_RESOURCE";
+    private static final String RESOURCE_TYPE_SCRIPT = "GENATT_TEST_SCRIPT_RESOURCE";
+    private static final String SQL_QUERY_UPDATE_RESOURCE_TYPE_ONLY = "UPDATE genatt_entry SET id_resource_type = 0, resource_type = ? WHERE id_entry = ? ";
+    private static final String SQL_QUERY_COUNT_ID_LIST = "SELECT COUNT(*) FROM genatt_id_list ";
+    private static final int NUMBER_UNKNOWN_IDS = 6000;
 
     // Variables
     private static int _nIdEntry;
@@ -207,6 +214,83 @@ public class EntryHomeTest extends AbstractEntryTest
         assertEquals( 2, list.size( ) );
     }
 
+    public void testFindByPrimaryKeyListWithDuplicates( )
+    {
+        List<Integer> idList = new ArrayList<>( );
+        idList.add( _nIdEntry );
+        idList.add( _nIdEntry2 );
+        idList.add( _nIdEntry );
+
+        List<Entry> list = EntryHome.findByPrimaryKeyList( idList );
+        assertEquals( 2, list.size( ) );
+    }
+
+    public void testFindByPrimaryKeyListWithIdTable( )
+    {
+        List<Integer> idList = new ArrayList<>( );
+        idList.add( _nIdEntry );
+        idList.add( _nIdEntry2 );
+
+        // Ids of no entry, so that the list is written in the id table
+        for ( int i = 1; i <= NUMBER_UNKNOWN_IDS; i++ )
+        {
+            idList.add( -i );
+        }
+
+        assertTrue( IdListQueryHelper.isIdTableRequired( idList ) );
+
+        List<Entry> list = EntryHome.findByPrimaryKeyList( idList );
+        assertEquals( 2, list.size( ) );
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_COUNT_ID_LIST, _plugin ) )
+        {
+            daoUtil.executeQuery( );
+            assertTrue( daoUtil.next( ) );
+            assertEquals( "The ids written in the id table have not been removed !", 0, daoUtil.getInt( 1 ) );
+        }
+    }
+
+    public void testResourceType( )
+    {
+        Entry entry = EntryHome.findByPrimaryKey( _nIdEntry );
+        entry.setResourceType( RESOURCE_TYPE );
+        EntryHome.update( entry );
+
+        entry = EntryHome.findByPrimaryKey( _nIdEntry );
+        assertEquals( RESOURCE_TYPE, entry.getResourceType( ) );
+
+        EntryFilter filter = new EntryFilter( );
+        filter.setIdResource( entry.getIdResource( ) );
+        filter.setResourceType( RESOURCE_TYPE );
+        assertEquals( 1, EntryHome.getEntryList( filter ).size( ) );
+
+        filter.setResourceType( RESOURCE_TYPE_UNKNOWN );
+        assertTrue( EntryHome.getEntryList( filter ).isEmpty( ) );
+    }
+
+    public void testEntryWithOnlyResourceType( )
+    {
+        // Entry written by a script which does not know the id_resource_type column
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_UPDATE_RESOURCE_TYPE_ONLY, _plugin ) )
+        {
+            daoUtil.setString( 1, RESOURCE_TYPE_SCRIPT );
+            daoUtil.setInt( 2, _nIdEntry );
+            daoUtil.executeUpdate( );
+        }
+
+        Entry entry = EntryHome.findByPrimaryKey( _nIdEntry );
+        assertEquals( RESOURCE_TYPE_SCRIPT, entry.getResourceType( ) );
+
+        EntryFilter filter = new EntryFilter( );
+        filter.setIdResource( entry.getIdResource( ) );
+        filter.setResourceType( RESOURCE_TYPE_SCRIPT );
+        assertEquals( 1, EntryHome.getEntryList( filter ).size( ) );
+
+        assertTrue( EntryHome.resolveResourceTypes( ) >= 1 );
+        assertEquals( 0, EntryHome.resolveResourceTypes( ) );
+        assertEquals( 1, EntryHome.getEntryList( filter ).size( ) );
+    }
+
     public void testUpdate( )
     {
         Entry entry = EntryHome.findByPrimaryKey( _nIdEntry );
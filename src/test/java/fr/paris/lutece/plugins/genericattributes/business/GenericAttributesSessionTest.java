@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.business;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fr.paris.lutece.portal.service.plugin.PluginConnectionService;
+import fr.paris.lutece.util.sql.TransactionManager;
+
+/**
+ * Test class for the GenericAttributesSession
+ */
+public class GenericAttributesSessionTest extends AbstractEntryTest
+{
+    private static final String TITLE = "Title";
+    private static final int NUMBER_FIELDS = 3;
+
+    private Entry _entryGroup;
+    private Entry _entry;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setUp( ) throws Exception
+    {
+        super.setUp( );
+
+        _entryGroup = createEntryGroup( );
+        _entry = manageCreateEntry( _entryGroup, TITLE, NUMBER_FIELDS, 0 );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void tearDown( ) throws Exception
+    {
+        EntryHome.remove( _entryGroup.getIdEntry( ) );
+        removeEntryType( _nEntryTypeGroupPrimaryKey );
+        removeEntryType( _nEntryTypeTextPrimaryKey );
+
+        super.tearDown( );
+    }
+
+    public void testNestedOperationsShareOneConnection( )
+    {
+        PluginConnectionService connectionService = _plugin.getConnectionService( );
+        AtomicInteger nBorrowed = new AtomicInteger( );
+
+        // Count the connections really borrowed from the pool
+        _plugin.setConnectionService( new PluginConnectionService( connectionService.getPoolName( ) )
+        {
+            @Override
+            public Connection getConnection( )
+            {
+                nBorrowed.incrementAndGet( );
+
+                return connectionService.getConnection( );
+            }
+
+            @Override
+            public void freeConnection( Connection connection )
+            {
+                connectionService.freeConnection( connection );
+            }
+        } );
+
+        try
+        {
+            // Without a unit of work, each statement borrows a connection
+            ReadReplicaRouter.readYourWrites( ( ) -> EntryHome.findByPrimaryKey( _entry.getIdEntry( ) ) );
+            assertTrue( nBorrowed.get( ) > 1 );
+
+            nBorrowed.set( 0 );
+            GenericAttributesSession.resetStatistics( );
+
+            Entry entry = GenericAttributesSession.call( ( ) -> {
+                Entry entryGroup = EntryHome.findByPrimaryKey( _entryGroup.getIdEntry( ) );
+                assertTrue( GenericAttributesSession.isActive( ) );
+
+                return GenericAttributesSession.call( ( ) -> EntryHome.findByPrimaryKey( entryGroup.getChildren( ).get( 0 ).getIdEntry( ) ) );
+            } );
+
+            assertEquals( _entry.getIdEntry( ), entry.getIdEntry( ) );
+            assertEquals( NUMBER_FIELDS, entry.getFields( ).size( ) );
+            assertEquals( 1, nBorrowed.get( ) );
+            assertEquals( 1, GenericAttributesSession.getUnitOfWorkCount( ) );
+            assertEquals( 1, GenericAttributesSession.getJoinedCount( ) );
+            assertFalse( GenericAttributesSession.isActive( ) );
+        }
+        finally
+        {
+            _plugin.setConnectionService( connectionService );
+        }
+    }
+
+    public void testFailureRollsBack( )
+    {
+        IllegalStateException exception = new IllegalStateException( );
+
+        try
+        {
+            GenericAttributesSession.run( ( ) -> {
+                createField( _entry );
+                throw exception;
+            } );
+            fail( );
+        }
+        catch( RuntimeException e )
+        {
+            // The failure reaches the caller unchanged
+            assertSame( exception, e );
+
+            List<Field> listField = FieldHome.getFieldListByIdEntry( _entry.getIdEntry( ) );
+            assertEquals( NUMBER_FIELDS, listField.size( ) );
+        }
+    }
+
+    public void testErrorRollsBack( )
+    {
+        Error error = new Error( );
+
+        try
+        {
+            GenericAttributesSession.run( ( ) -> {
+                createField( _entry );
+                throw error;
+            } );
+            fail( );
+        }
+        catch( Error e )
+        {
+            assertSame( error, e );
+            assertNull( TransactionManager.getCurrentTransaction( _plugin ) );
+            assertFalse( GenericAttributesSession.isActive( ) );
+
+            List<Field> listField = FieldHome.getFieldListByIdEntry( _entry.getIdEntry( ) );
+            assertEquals( NUMBER_FIELDS, listField.size( ) );
+        }
+    }
+}
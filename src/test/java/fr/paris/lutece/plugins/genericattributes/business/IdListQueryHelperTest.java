@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.business;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+
+import fr.paris.lutece.test.LuteceTestCase;
+
+/**
+ * Test class for the IdListQueryHelper
+ */
+public class IdListQueryHelperTest extends LuteceTestCase
+{
+    private static final String COLUMN = "resp.id_response";
+
+    public void testDistinctKeepsOrder( )
+    {
+        List<Integer> listId = IdListQueryHelper.distinct( Arrays.asList( 3, 1, 3, 2, 1 ) );
+
+        assertEquals( Arrays.asList( 3, 1, 2 ), listId );
+    }
+
+    public void testInClauseDependsOnlyOnChunkCount( )
+    {
+        int nChunkSize = IdListQueryHelper.getChunkSize( );
+
+        String strOneId = IdListQueryHelper.buildInClause( COLUMN, 1 );
+        String strFullChunk = IdListQueryHelper.buildInClause( COLUMN, nChunkSize );
+        String strTwoChunks = IdListQueryHelper.buildInClause( COLUMN, nChunkSize + 1 );
+
+        assertEquals( strOneId, strFullChunk );
+        assertEquals( nChunkSize, StringUtils.countMatches( strOneId, "?" ) );
+        assertEquals( 2 * nChunkSize, StringUtils.countMatches( strTwoChunks, "?" ) );
+    }
+
+    public void testIdTableThreshold( )
+    {
+        List<Integer> listId = new ArrayList<>( );
+
+        for ( int i = 0; i < 50000; i++ )
+        {
+            listId.add( i );
+        }
+
+        assertTrue( IdListQueryHelper.isIdTableRequired( listId ) );
+        assertFalse( IdListQueryHelper.isIdTableRequired( listId.subList( 0, 10 ) ) );
+    }
+
+    public void testPartitionBelowIdTableThreshold( )
+    {
+        List<Integer> listId = new ArrayList<>( );
+
+        for ( int i = 0; i < 50000; i++ )
+        {
+            listId.add( i );
+        }
+
+        List<Integer> listIdRead = new ArrayList<>( );
+
+        for ( List<Integer> listPartition : IdListQueryHelper.partition( listId ) )
+        {
+            assertFalse( IdListQueryHelper.isIdTableRequired( listPartition ) );
+            listIdRead.addAll( listPartition );
+        }
+
+        assertEquals( listId, listIdRead );
+        assertTrue( IdListQueryHelper.partition( new ArrayList<>( ) ).isEmpty( ) );
+    }
+}
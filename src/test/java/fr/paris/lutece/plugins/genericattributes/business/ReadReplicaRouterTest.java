@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.business;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import fr.paris.lutece.plugins.genericattributes.service.GenericAttributesPlugin;
+import fr.paris.lutece.plugins.genericattributes.util.GenericAttributesUtils;
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.plugin.PluginService;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.test.LuteceTestCase;
+
+/**
+ * Test class for the ReadReplicaRouter
+ */
+public class ReadReplicaRouterTest extends LuteceTestCase
+{
+    private final Plugin _plugin = PluginService.getPlugin( GenericAttributesPlugin.PLUGIN_NAME );
+    private Plugin _pluginReplica;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setUp( ) throws Exception
+    {
+        super.setUp( );
+        _pluginReplica = ReadReplicaRouter.getReplicaPlugin( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void tearDown( ) throws Exception
+    {
+        ReadReplicaRouter.setClock( System::currentTimeMillis );
+        ReadReplicaRouter.setReplicaPlugin( _pluginReplica );
+        super.tearDown( );
+    }
+
+    public void testReadYourWrites( )
+    {
+        assertFalse( ReadReplicaRouter.isReadYourWrites( ) );
+
+        boolean bReadYourWrites = ReadReplicaRouter.readYourWrites( ( ) -> ReadReplicaRouter.readYourWrites( ReadReplicaRouter::isReadYourWrites ) );
+
+        assertTrue( bReadYourWrites );
+        assertFalse( ReadReplicaRouter.isReadYourWrites( ) );
+    }
+
+    public void testPrimaryWithinReadYourWritesAndSession( )
+    {
+        assertSame( _plugin, ReadReplicaRouter.readYourWrites( ( ) -> ReadReplicaRouter.selectPlugin( _plugin ) ) );
+        assertSame( _plugin, GenericAttributesSession.call( ( ) -> ReadReplicaRouter.selectPlugin( _plugin ) ) );
+    }
+
+    public void testPrimaryWithoutReplica( )
+    {
+        ReadReplicaRouter.setReplicaPlugin( null );
+
+        assertFalse( ReadReplicaRouter.isReplicaEnabled( ) );
+        assertSame( _plugin, ReadReplicaRouter.selectPlugin( _plugin ) );
+        assertEquals( _plugin.getName( ), ReadReplicaRouter.read( _plugin, Plugin::getName ) );
+    }
+
+    public void testFallbackToPrimaryWhenReplicaFails( )
+    {
+        Plugin pluginReplica = GenericAttributesUtils.createPoolPlugin( _plugin.getDbPoolName( ) );
+        AtomicLong lNow = new AtomicLong( 1000000L );
+        List<Plugin> listQueried = new ArrayList<>( );
+        Function<Plugin, String> query = plugin -> {
+            listQueried.add( plugin );
+
+            if ( plugin == pluginReplica )
+            {
+                throw new AppException( "Replica pool unavailable" );
+            }
+
+            return plugin.getName( );
+        };
+
+        ReadReplicaRouter.setReplicaPlugin( pluginReplica );
+        ReadReplicaRouter.setClock( lNow::get );
+        assertSame( pluginReplica, ReadReplicaRouter.selectPlugin( _plugin ) );
+
+        // The failed read is run again on the primary pool
+        assertEquals( _plugin.getName( ), ReadReplicaRouter.read( _plugin, query ) );
+        assertEquals( Arrays.asList( pluginReplica, _plugin ), listQueried );
+
+        // The replica is left alone until the retry delay has elapsed
+        lNow.addAndGet( ReadReplicaRouter.getRetryDelay( ) - 1 );
+        listQueried.clear( );
+        assertEquals( _plugin.getName( ), ReadReplicaRouter.read( _plugin, query ) );
+        assertEquals( Arrays.asList( _plugin ), listQueried );
+
+        // Then it is tried again
+        lNow.incrementAndGet( );
+        listQueried.clear( );
+        assertSame( pluginReplica, ReadReplicaRouter.selectPlugin( _plugin ) );
+        assertEquals( _plugin.getName( ), ReadReplicaRouter.read( _plugin, query ) );
+        assertEquals( Arrays.asList( pluginReplica, _plugin ), listQueried );
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.business;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import fr.paris.lutece.util.sql.DAOUtil;
+
+/**
+ * Test class for the ShardedResponseDAO, the ResponseShardRing and the ResponseShardRebalancer, with two shard tables in the pool of the plugin
+ */
+public class ShardedResponseDAOTest extends AbstractEntryTest
+{
+    private static final int ID_RESOURCE = 987654;
+    private static final int NUMBER_OF_RESPONSES = 5;
+    private static final String [ ] SUFFIXES = {
+            "_gatest1", "_gatest2"
+    };
+    private static final String SQL_QUERY_CREATE_TABLE = "CREATE TABLE genatt_response%s ( id_response int NOT NULL, response_value long VARCHAR DEFAULT NULL, "
+            + " id_entry int default NULL, iteration_number int default -1, id_field int default NULL, id_file int default NULL, status smallint default 1, "
+            + " PRIMARY KEY (id_response) )";
+    private static final String SQL_QUERY_DROP_TABLE = "DROP TABLE genatt_response%s";
+    private static final String SQL_QUERY_COUNT = "SELECT COUNT(*) FROM %s";
+    private static final String SQL_QUERY_INSERT_RESOURCE_SHARD = "INSERT INTO genatt_response_shard_resource ( id_resource, shard_name, previous_shard_name ) VALUES ( ?,?,? ) ";
+    private static final String SQL_QUERY_DELETE_RESOURCE_SHARD = "DELETE FROM genatt_response_shard_resource WHERE id_resource = ? ";
+    private static final String SQL_QUERY_DELETE_INDEX = "DELETE FROM genatt_response_index WHERE id_resource = ? ";
+    private static final String SQL_QUERY_CLEAR_VALUE = "UPDATE %s SET response_value = NULL WHERE id_response = %d";
+    private static final String CHOICE_VALUE = "choice_a";
+
+    private final ShardedResponseDAO _dao = new ShardedResponseDAO( );
+    private Entry _entry;
+    private ResponseShardRing _ring;
+    private ResponseShard _shardSource;
+    private ResponseShard _shardTarget;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setUp( ) throws Exception
+    {
+        super.setUp( );
+
+        List<ResponseShard> listShards = new ArrayList<>( );
+
+        for ( String strSuffix : SUFFIXES )
+        {
+            execute( String.format( SQL_QUERY_CREATE_TABLE, strSuffix ) );
+            listShards.add( new ResponseShard( "shard" + strSuffix, _plugin, strSuffix ) );
+        }
+
+        _ring = new ResponseShardRing( listShards, 64 );
+        ResponseShardRing.setInstance( _ring );
+        _shardSource = _ring.getHashedShard( ID_RESOURCE );
+        _shardTarget = ( _shardSource == listShards.get( 0 ) ) ? listShards.get( 1 ) : listShards.get( 0 );
+
+        _entry = new Entry( );
+        _entry.setEntryType( EntryTypeHome.findByPrimaryKey( _nEntryTypeTextPrimaryKey ) );
+        _entry.setResourceType( "GENATT_TEST_SHARD" );
+        _entry.setIdResource( ID_RESOURCE );
+        _entry.setIdEntry( _entryDAO.insert( _entry, _plugin ) );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void tearDown( ) throws Exception
+    {
+        ResponseShardRing.setInstance( null );
+
+        for ( String strSuffix : SUFFIXES )
+        {
+            execute( String.format( SQL_QUERY_DROP_TABLE, strSuffix ) );
+        }
+
+        executeWithResource( SQL_QUERY_DELETE_RESOURCE_SHARD );
+        executeWithResource( SQL_QUERY_DELETE_INDEX );
+        _entryDAO.delete( _entry.getIdEntry( ), _plugin );
+        removeEntryType( _nEntryTypeGroupPrimaryKey );
+        removeEntryType( _nEntryTypeTextPrimaryKey );
+        super.tearDown( );
+    }
+
+    public void testRingStability( )
+    {
+        ResponseShard shard1 = new ResponseShard( "shard1", _plugin, SUFFIXES [0] );
+        ResponseShard shard2 = new ResponseShard( "shard2", _plugin, SUFFIXES [1] );
+        ResponseShard shard3 = new ResponseShard( "shard3", _plugin, "_gatest3" );
+        ResponseShardRing ring = new ResponseShardRing( Arrays.asList( shard1, shard2 ), 64 );
+        ResponseShardRing ringRebuilt = new ResponseShardRing( Arrays.asList( shard2, shard1 ), 64 );
+        ResponseShardRing ringGrown = new ResponseShardRing( Arrays.asList( shard1, shard2, shard3 ), 64 );
+        int nResources = 3000;
+        int nOnShard1 = 0;
+        int nMoved = 0;
+
+        for ( int nIdResource = 1; nIdResource <= nResources; nIdResource++ )
+        {
+            ResponseShard shard = ring.getHashedShard( nIdResource );
+            ResponseShard shardGrown = ringGrown.getHashedShard( nIdResource );
+
+            // The shard of a resource does not depend on the order of the shards
+            assertSame( shard, ringRebuilt.getHashedShard( nIdResource ) );
+
+            if ( shard == shard1 )
+            {
+                nOnShard1++;
+            }
+
+            // A shard added only takes resources, the others stay where they are
+            if ( shardGrown != shard )
+            {
+                assertSame( shard3, shardGrown );
+                nMoved++;
+            }
+        }
+
+        assertTrue( "Unbalanced ring : " + nOnShard1, ( nOnShard1 > nResources / 3 ) && ( nOnShard1 < ( 2 * nResources ) / 3 ) );
+        assertTrue( "Moved : " + nMoved, ( nMoved > nResources / 6 ) && ( nMoved < nResources / 2 ) );
+    }
+
+    public void testFanOutMergeDuringMove( )
+    {
+        List<Response> listCreated = createResponses( );
+
+        // A chunk has been copied to the target while the source still holds it
+        ShardedResponseDAO.insertInShard( listCreated.get( 1 ), _shardTarget );
+        ShardedResponseDAO.insertInShard( listCreated.get( 3 ), _shardTarget );
+        setResourceShard( _shardTarget, _shardSource );
+        assertEquals( 2, _ring.getShards( ID_RESOURCE, _plugin ).size( ) );
+
+        ResponseFilter filter = new ResponseFilter( );
+        filter.setIdResource( ID_RESOURCE );
+
+        List<Response> listResponse = _dao.selectListByFilter( filter, _plugin );
+        assertEquals( NUMBER_OF_RESPONSES, listResponse.size( ) );
+
+        for ( int nIndex = 0; nIndex < NUMBER_OF_RESPONSES; nIndex++ )
+        {
+            // Each response once, ordered by id
+            assertEquals( listCreated.get( nIndex ).getIdResponse( ), listResponse.get( nIndex ).getIdResponse( ) );
+        }
+
+        // The responses merged from both shards are sorted again, by id in the direction of the filter
+        filter.setOrderBy( "resp.response_value" );
+        filter.setOrderByAsc( false );
+        listResponse = _dao.selectListByFilter( filter, _plugin );
+
+        for ( int nIndex = 0; nIndex < NUMBER_OF_RESPONSES; nIndex++ )
+        {
+            assertEquals( listCreated.get( NUMBER_OF_RESPONSES - 1 - nIndex ).getIdResponse( ), listResponse.get( nIndex ).getIdResponse( ) );
+        }
+
+        filter.setOrderBy( null );
+        filter.setOrderByAsc( true );
+
+        assertNotNull( _dao.load( listCreated.get( 1 ).getIdResponse( ), _plugin ) );
+        assertNotNull( _dao.load( listCreated.get( 2 ).getIdResponse( ), _plugin ) );
+
+        // An update reaches both copies
+        Response response = listCreated.get( 3 );
+        response.setResponseValue( "updated" );
+        _dao.store( response, _plugin );
+
+        for ( Response responseFound : _dao.selectListByFilter( filter, _plugin ) )
+        {
+            if ( responseFound.getIdResponse( ) == response.getIdResponse( ) )
+            {
+                assertEquals( "updated", responseFound.getResponseValue( ) );
+            }
+        }
+    }
+
+    public void testChunkedMove( )
+    {
+        List<Response> listCreated = createResponses( );
+        assertEquals( NUMBER_OF_RESPONSES, count( _shardSource ) );
+
+        // Three chunks of 2, 2 and 1 responses
+        assertEquals( NUMBER_OF_RESPONSES, ResponseShardRebalancer.moveResource( ID_RESOURCE, _shardTarget.getName( ), 2 ) );
+
+        assertEquals( 0, count( _shardSource ) );
+        assertEquals( NUMBER_OF_RESPONSES, count( _shardTarget ) );
+        assertEquals( Arrays.asList( _shardTarget ), _ring.getShards( ID_RESOURCE, _plugin ) );
+
+        Response response = _dao.load( listCreated.get( 4 ).getIdResponse( ), _plugin );
+        assertNotNull( response );
+        assertEquals( listCreated.get( 4 ).getResponseValue( ), response.getResponseValue( ) );
+
+        // Moving again does nothing
+        assertEquals( 0, ResponseShardRebalancer.moveResource( ID_RESOURCE, _shardTarget.getName( ), 2 ) );
+    }
+
+    public void testChoiceResponsesStoredWithoutValue( )
+    {
+        Field field = new Field( );
+        field.setParentEntry( _entry );
+        field.setTitle( CHOICE_VALUE );
+        field.setValue( CHOICE_VALUE );
+        field.setIdField( FieldHome.create( field ) );
+        ChoiceResponseStorage.setChoiceEntry( entry -> entry.getIdEntry( ) == _entry.getIdEntry( ) );
+
+        try
+        {
+            Response response = new Response( );
+            response.setEntry( _entry );
+            response.setField( field );
+            response.setResponseValue( CHOICE_VALUE );
+            _dao.insert( response, _plugin );
+
+            // The response is stored without its value, as compacted by the ChoiceResponseStorage
+            execute( String.format( SQL_QUERY_CLEAR_VALUE, _shardSource.getTable( ), response.getIdResponse( ) ) );
+            assertEquals( CHOICE_VALUE, _dao.load( response.getIdResponse( ), _plugin ).getResponseValue( ) );
+
+            ResponseFilter filter = new ResponseFilter( );
+            filter.setIdResource( ID_RESOURCE );
+            filter.setResponseValue( CHOICE_VALUE );
+
+            List<Response> listResponse = _dao.selectListByFilter( filter, _plugin );
+            assertEquals( 1, listResponse.size( ) );
+            assertEquals( response.getIdResponse( ), listResponse.get( 0 ).getIdResponse( ) );
+            assertEquals( CHOICE_VALUE, listResponse.get( 0 ).getResponseValue( ) );
+        }
+        finally
+        {
+            ChoiceResponseStorage.setChoiceEntry( null );
+            FieldHome.remove( field.getIdField( ) );
+        }
+    }
+
+    private List<Response> createResponses( )
+    {
+        List<Response> listCreated = new ArrayList<>( );
+
+        for ( int nIndex = 0; nIndex < NUMBER_OF_RESPONSES; nIndex++ )
+        {
+            Response response = new Response( );
+            response.setEntry( _entry );
+            response.setResponseValue( "value " + nIndex );
+            _dao.insert( response, _plugin );
+            listCreated.add( response );
+        }
+
+        return listCreated;
+    }
+
+    private void setResourceShard( ResponseShard shard, ResponseShard shardPrevious )
+    {
+        executeWithResource( SQL_QUERY_DELETE_RESOURCE_SHARD );
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT_RESOURCE_SHARD, _plugin ) )
+        {
+            daoUtil.setInt( 1, ID_RESOURCE );
+            daoUtil.setString( 2, shard.getName( ) );
+            daoUtil.setString( 3, shardPrevious.getName( ) );
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    private int count( ResponseShard shard )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( String.format( SQL_QUERY_COUNT, shard.getTable( ) ), _plugin ) )
+        {
+            daoUtil.executeQuery( );
+            daoUtil.next( );
+
+            return daoUtil.getInt( 1 );
+        }
+    }
+
+    private void execute( String strSQL )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( strSQL, _plugin ) )
+        {
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    private void executeWithResource( String strSQL )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( strSQL, _plugin ) )
+        {
+            daoUtil.setInt( 1, ID_RESOURCE );
+            daoUtil.executeUpdate( );
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.entrytype;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+
+import javax.imageio.ImageIO;
+
+import fr.paris.lutece.plugins.asynchronousupload.service.IAsyncUploadHandler;
+import fr.paris.lutece.plugins.genericattributes.business.Entry;
+import fr.paris.lutece.plugins.genericattributes.business.Field;
+import fr.paris.lutece.test.LuteceTestCase;
+
+/**
+ * Test class for the checks of the captures of the AbstractEntryTypeCamera
+ */
+public class AbstractEntryTypeCameraTest extends LuteceTestCase
+{
+    private static final String PREFIX_DATA_URL = "data:image/png;base64,";
+
+    public void testCaptureCheckedFromDecodedBytes( ) throws IOException
+    {
+        byte [ ] image = createImage( 30, 20 );
+        String strSource = PREFIX_DATA_URL + Base64.getEncoder( ).encodeToString( image );
+        CameraEntryType entryType = new CameraEntryType( );
+
+        byte [ ] imageBytes = entryType.decodeImage( strSource );
+        assertTrue( Arrays.equals( image, imageBytes ) );
+
+        // The size checked is the length of the decoded bytes, which are stored as they are
+        assertNull( entryType.doCheckforImages( imageBytes, strSource, createEntry( image.length ), Locale.FRENCH ) );
+        assertNotNull( entryType.doCheckforImages( imageBytes, strSource, createEntry( image.length - 1 ), Locale.FRENCH ) );
+        assertNull( entryType.doCheckSize( image.length, createEntry( image.length ), Locale.FRENCH ) );
+        assertNotNull( entryType.doCheckSize( image.length + 1L, createEntry( image.length ), Locale.FRENCH ) );
+
+        // The capture is decoded once
+        entryType._nDecoded = 0;
+        assertNotNull( entryType.doCheckforImages( strSource, createEntry( image.length - 1 ), Locale.FRENCH ) );
+        assertEquals( 1, entryType._nDecoded );
+    }
+
+    public void testCaptureOverPixelLimitRejected( ) throws IOException
+    {
+        // The header of a PNG whose dimensions exceed the default maximum number of pixels
+        byte [ ] header = Arrays.copyOf( createImage( 4, 4 ), 33 );
+        ByteBuffer.wrap( header ).putInt( 16, 20000 ).putInt( 20, 20000 );
+        String strSource = PREFIX_DATA_URL + Base64.getEncoder( ).encodeToString( header );
+        CameraEntryType entryType = new CameraEntryType( );
+
+        byte [ ] imageBytes = entryType.decodeImage( strSource );
+        assertTrue( AbstractEntryTypeUpload.getImageMaxPixels( ) < 20000L * 20000L );
+        assertNotNull( entryType.doCheckforImages( imageBytes, strSource, createEntry( -1 ), Locale.FRENCH ) );
+    }
+
+    public void testCaptureNotAnImageRejected( )
+    {
+        String strSource = PREFIX_DATA_URL + Base64.getEncoder( ).encodeToString( new byte [ 64] );
+        CameraEntryType entryType = new CameraEntryType( );
+
+        assertNotNull( entryType.doCheckforImages( strSource, createEntry( -1 ), Locale.FRENCH ) );
+        assertNull( entryType.doCheckforImages( null, null, createEntry( -1 ), Locale.FRENCH ) );
+    }
+
+    /**
+     * Create a camera entry
+     * 
+     * @param nMaxSize
+     *            The maximum size of a capture, -1 for no limit
+     * @return The entry
+     */
+    private Entry createEntry( int nMaxSize )
+    {
+        Field fieldMaxSize = new Field( );
+        fieldMaxSize.setCode( IEntryTypeService.FIELD_MAX_FILES );
+        fieldMaxSize.setValue( String.valueOf( nMaxSize ) );
+
+        List<Field> listFields = new ArrayList<>( );
+        listFields.add( fieldMaxSize );
+
+        Entry entry = new Entry( );
+        entry.setTitle( "camera" );
+        entry.setFields( listFields );
+
+        return entry;
+    }
+
+    private byte [ ] createImage( int nWidth, int nHeight ) throws IOException
+    {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream( );
+        ImageIO.write( new BufferedImage( nWidth, nHeight, BufferedImage.TYPE_INT_RGB ), "png", outputStream );
+
+        return outputStream.toByteArray( );
+    }
+
+    /**
+     * Camera entry type counting the decoded captures
+     */
+    private static class CameraEntryType extends AbstractEntryTypeCamera
+    {
+        private int _nDecoded;
+
+        @Override
+        protected byte [ ] decodeImage( String imageSource )
+        {
+            _nDecoded++;
+
+            return super.decodeImage( imageSource );
+        }
+
+        @Override
+        public IAsyncUploadHandler getAsynchronousUploadHandler( )
+        {
+            return null;
+        }
+
+        @Override
+        public String getUrlDownloadFile( int nResponseId, String strBaseUrl )
+        {
+            return null;
+        }
+
+        @Override
+        protected boolean checkForImages( )
+        {
+            return true;
+        }
+
+        @Override
+        public String getTemplateHtmlForm( Entry entry, boolean bDisplayFront )
+        {
+            return null;
+        }
+
+        @Override
+        public String getTemplateCreate( Entry entry, boolean bDisplayFront )
+        {
+            return null;
+        }
+
+        @Override
+        public String getTemplateModify( Entry entry, boolean bDisplayFront )
+        {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.export;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import fr.paris.lutece.test.LuteceTestCase;
+
+public class ArchiveResponseExportSinkTest extends LuteceTestCase
+{
+    public void testWriteFiles( ) throws IOException
+    {
+        ByteArrayOutputStream archive = new ByteArrayOutputStream( );
+        StringWriter writer = new StringWriter( );
+
+        try ( ZipOutputStream zipOutputStream = new ZipOutputStream( archive ) )
+        {
+            IResponseExportSink sink = new ArchiveResponseExportSink( zipOutputStream, writer );
+
+            try ( OutputStream out = sink.openFile( "photo.jpg" ) )
+            {
+                out.write( "first".getBytes( StandardCharsets.UTF_8 ) );
+            }
+
+            writer.write( ";" );
+
+            try ( OutputStream out = sink.openFile( "../photo.jpg" ) )
+            {
+                out.write( "second".getBytes( StandardCharsets.UTF_8 ) );
+            }
+        }
+
+        assertEquals( "files/1_photo.jpg;files/2_.._photo.jpg", writer.toString( ) );
+
+        try ( ZipInputStream zipInputStream = new ZipInputStream( new ByteArrayInputStream( archive.toByteArray( ) ) ) )
+        {
+            assertEntry( zipInputStream, "files/1_photo.jpg", "first" );
+            assertEntry( zipInputStream, "files/2_.._photo.jpg", "second" );
+            assertNull( zipInputStream.getNextEntry( ) );
+        }
+    }
+
+    private static void assertEntry( ZipInputStream zipInputStream, String strName, String strContent ) throws IOException
+    {
+        ZipEntry entry = zipInputStream.getNextEntry( );
+        assertEquals( strName, entry.getName( ) );
+
+        ByteArrayOutputStream content = new ByteArrayOutputStream( );
+        byte [ ] buffer = new byte [ 1024];
+        int nRead;
+
+        while ( ( nRead = zipInputStream.read( buffer ) ) != -1 )
+        {
+            content.write( buffer, 0, nRead );
+        }
+
+        assertEquals( strContent, new String( content.toByteArray( ), StandardCharsets.UTF_8 ) );
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.Base64;
+import java.util.Random;
+
+import fr.paris.lutece.test.LuteceTestCase;
+
+public class Base64ResponseExportSinkTest extends LuteceTestCase
+{
+    public void testWriteFile( ) throws IOException
+    {
+        for ( int nSize : new int [ ] {
+                0, 1, 2, 3, 4095, 4096, 100000
+        } )
+        {
+            byte [ ] content = new byte [ nSize];
+            new Random( nSize ).nextBytes( content );
+
+            StringWriter writer = new StringWriter( );
+            IResponseExportSink sink = new Base64ResponseExportSink( writer );
+            sink.writeText( "[" );
+
+            try ( OutputStream out = sink.openFile( "file.bin" ) )
+            {
+                // Written in uneven chunks
+                for ( int nOffset = 0; nOffset < nSize; nOffset += 1000 )
+                {
+                    out.write( content, nOffset, Math.min( 1000, nSize - nOffset ) );
+                }
+            }
+
+            sink.writeText( "]" );
+
+            assertEquals( "[" + Base64.getEncoder( ).encodeToString( content ) + "]", writer.toString( ) );
+        }
+    }
+
+    public void testWriteText( ) throws IOException
+    {
+        StringWriter writer = new StringWriter( );
+        IResponseExportSink sink = new Base64ResponseExportSink( writer );
+        sink.writeText( "value" );
+        sink.writeText( null );
+
+        assertEquals( "value", writer.toString( ) );
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.export;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fr.paris.lutece.plugins.genericattributes.business.Entry;
+import fr.paris.lutece.plugins.genericattributes.business.Field;
+import fr.paris.lutece.plugins.genericattributes.business.Response;
+import fr.paris.lutece.portal.business.file.File;
+import fr.paris.lutece.test.LuteceTestCase;
+
+public class ColumnarResponseExportTest extends LuteceTestCase
+{
+    private static final int ID_ENTRY_NAME = 10;
+    private static final int ID_ENTRY_COLOR = 20;
+    private static final int ID_FIELD_RED = 201;
+    private static final int ID_FIELD_BLUE = 202;
+
+    private final Map<Integer, Integer> _mapRowKeys = new HashMap<>( );
+    private Entry _entryName;
+    private Entry _entryColor;
+
+    @Override
+    public void setUp( ) throws Exception
+    {
+        super.setUp( );
+        _entryName = new Entry( );
+        _entryName.setIdEntry( ID_ENTRY_NAME );
+        _entryName.setCode( "name" );
+        _entryName.setFields( new ArrayList<>( ) );
+
+        _entryColor = new Entry( );
+        _entryColor.setIdEntry( ID_ENTRY_COLOR );
+        _entryColor.setCode( "color" );
+        _entryColor.setFields( Arrays.asList( field( ID_FIELD_RED, "red" ), field( ID_FIELD_BLUE, "blue" ) ) );
+    }
+
+    public void testRoundTrip( ) throws IOException
+    {
+        Entry entryUnknown = new Entry( );
+        entryUnknown.setIdEntry( 30 );
+
+        List<Response> listResponses = new ArrayList<>( );
+        listResponses.add( response( 1, 7, _entryName, "Alice", null ) );
+        listResponses.add( response( 2, 5, _entryName, "Bob", null ) );
+        // Interleaved with the responses of the row 5, and merged with the first response of the row 7
+        listResponses.add( response( 3, 7, _entryColor, "red", ID_FIELD_RED ) );
+        listResponses.add( response( 4, 7, _entryColor, null, ID_FIELD_BLUE ) );
+        // A value which differs from the value of its field is kept as a string
+        listResponses.add( response( 5, 5, _entryColor, "green", ID_FIELD_RED ) );
+        listResponses.add( response( 6, 5, entryUnknown, "skipped", null ) );
+        listResponses.add( response( 7, 2, _entryName, null, null ) );
+        listResponses.get( 6 ).setFile( file( "photo.jpg" ) );
+        listResponses.add( response( 8, 3, _entryName, "\u00e9t\u00e9", null ) );
+
+        try ( ColumnarResponseExportReader reader = new ColumnarResponseExportReader( new ByteArrayInputStream( write( listResponses, 2 ) ) ) )
+        {
+            assertEquals( 2, reader.getColumnCount( ) );
+            assertEquals( ID_ENTRY_NAME, reader.getIdEntry( 0 ) );
+            assertEquals( "name", reader.getCode( 0 ) );
+            assertNull( reader.getDictionary( 0 ) );
+            assertEquals( ID_ENTRY_COLOR, reader.getIdEntry( 1 ) );
+            assertEquals( "color", reader.getCode( 1 ) );
+            assertEquals( "blue", reader.getDictionary( 1 ).get( ID_FIELD_BLUE ) );
+
+            ColumnarResponseExportReader.Row row = reader.readRow( );
+            assertEquals( 7, row.getIdRow( ) );
+            assertEquals( Collections.singletonList( "Alice" ), row.getValues( 0 ) );
+            assertEquals( Arrays.asList( "red", "blue" ), row.getValues( 1 ) );
+            assertEquals( Arrays.asList( ID_FIELD_RED, ID_FIELD_BLUE ), row.getIds( 1 ) );
+
+            row = reader.readRow( );
+            assertEquals( 5, row.getIdRow( ) );
+            assertEquals( Collections.singletonList( "Bob" ), row.getValues( 0 ) );
+            assertEquals( Collections.singletonList( "green" ), row.getValues( 1 ) );
+            assertEquals( Collections.singletonList( 0 ), row.getIds( 1 ) );
+
+            // Second block
+            row = reader.readRow( );
+            assertEquals( 2, row.getIdRow( ) );
+            assertEquals( Collections.singletonList( "photo.jpg" ), row.getValues( 0 ) );
+            assertTrue( row.getValues( 1 ).isEmpty( ) );
+
+            row = reader.readRow( );
+            assertEquals( 3, row.getIdRow( ) );
+            assertEquals( Collections.singletonList( "\u00e9t\u00e9" ), row.getValues( 0 ) );
+
+            assertNull( reader.readRow( ) );
+            assertNull( reader.readRow( ) );
+        }
+    }
+
+    public void testEmptyExport( ) throws IOException
+    {
+        try ( ColumnarResponseExportReader reader = new ColumnarResponseExportReader( new ByteArrayInputStream( write( new ArrayList<>( ), 10 ) ) ) )
+        {
+            assertEquals( 2, reader.getColumnCount( ) );
+            assertNull( reader.readRow( ) );
+        }
+    }
+
+    public void testBlocksAreCompressed( ) throws IOException
+    {
+        List<Response> listResponses = new ArrayList<>( );
+
+        for ( int nRow = 1; nRow <= 1000; nRow++ )
+        {
+            listResponses.add( response( 2 * nRow, nRow, _entryName, "The same answer to the same question", null ) );
+            listResponses.add( response( ( 2 * nRow ) + 1, nRow, _entryColor, "red", ID_FIELD_RED ) );
+        }
+
+        byte [ ] export = write( listResponses, 4096 );
+        assertTrue( export.length < 1000 );
+
+        int nRows = 0;
+
+        try ( ColumnarResponseExportReader reader = new ColumnarResponseExportReader( new ByteArrayInputStream( export ) ) )
+        {
+            for ( ColumnarResponseExportReader.Row row = reader.readRow( ); row != null; row = reader.readRow( ) )
+            {
+                nRows++;
+                assertEquals( nRows, row.getIdRow( ) );
+                assertEquals( Collections.singletonList( ID_FIELD_RED ), row.getIds( 1 ) );
+            }
+        }
+
+        assertEquals( 1000, nRows );
+    }
+
+    public void testRejectsOtherFiles( )
+    {
+        try
+        {
+            new ColumnarResponseExportReader( new ByteArrayInputStream( "id_response;id_entry".getBytes( ) ) );
+            fail( "Expected an IOException" );
+        }
+        catch( IOException e )
+        {
+            // Expected
+        }
+    }
+
+    private byte [ ] write( List<Response> listResponses, int nBlockSize ) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream( );
+        ColumnarResponseExportWriter writer = new ColumnarResponseExportWriter( out, Arrays.asList( _entryName, _entryColor ),
+                entry -> entry.getIdEntry( ) == ID_ENTRY_COLOR, response -> _mapRowKeys.get( response.getIdResponse( ) ), nBlockSize );
+
+        for ( Response response : listResponses )
+        {
+            writer.exportResponse( response );
+        }
+
+        writer.finish( );
+
+        return out.toByteArray( );
+    }
+
+    private Response response( int nIdResponse, int nIdRow, Entry entry, String strValue, Integer nIdField )
+    {
+        Response response = new Response( );
+        response.setIdResponse( nIdResponse );
+        response.setEntry( entry );
+        response.setResponseValue( strValue );
+
+        if ( nIdField != null )
+        {
+            response.setField( field( nIdField, null ) );
+        }
+
+        _mapRowKeys.put( nIdResponse, nIdRow );
+
+        return response;
+    }
+
+    private static Field field( int nIdField, String strValue )
+    {
+        Field field = new Field( );
+        field.setIdField( nIdField );
+        field.setValue( strValue );
+
+        return field;
+    }
+
+    private static File file( String strTitle )
+    {
+        File file = new File( );
+        file.setTitle( strTitle );
+
+        return file;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.export;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import fr.paris.lutece.test.LuteceTestCase;
+
+public class CsvValueWriterTest extends LuteceTestCase
+{
+    public void testDoublesQuotes( ) throws IOException
+    {
+        assertEquals( "", write( "" ) );
+        assertEquals( "no quote", write( "no quote" ) );
+        assertEquals( "\"\"", write( "\"" ) );
+        assertEquals( "a \"\"quoted\"\" value\"\"", write( "a \"quoted\" value\"" ) );
+    }
+
+    public void testWriteChars( ) throws IOException
+    {
+        StringWriter stringWriter = new StringWriter( );
+        Writer writer = new CsvValueWriter( stringWriter );
+        char [ ] buffer = "x\"y\"\"z".toCharArray( );
+        writer.write( buffer, 1, 4 );
+        writer.write( '"' );
+        writer.close( );
+
+        assertEquals( "\"\"y\"\"\"\"\"\"", stringWriter.toString( ) );
+
+        // The underlying writer is still open
+        stringWriter.write( "end" );
+    }
+
+    private static String write( String strValue ) throws IOException
+    {
+        StringWriter stringWriter = new StringWriter( );
+
+        try ( Writer writer = new CsvValueWriter( stringWriter ) )
+        {
+            writer.write( strValue );
+        }
+
+        return stringWriter.toString( );
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import fr.paris.lutece.test.LuteceTestCase;
+
+/**
+ * Test class for the FileSystemResponseBlobStore
+ */
+public class FileSystemResponseBlobStoreTest extends LuteceTestCase
+{
+    private static final byte [ ] CONTENT = "The content of a response file".getBytes( StandardCharsets.UTF_8 );
+
+    public void testWriteReadDelete( ) throws IOException
+    {
+        FileSystemResponseBlobStore store = createStore( Files.createTempDirectory( "genatt-blobs" ) );
+
+        String strKey = ResponseBlobService.digest( CONTENT );
+        assertEquals( 64, strKey.length( ) );
+        assertFalse( store.exists( strKey ) );
+
+        store.write( strKey, CONTENT );
+        store.write( strKey, CONTENT );
+        assertTrue( store.exists( strKey ) );
+        assertTrue( Arrays.equals( CONTENT, store.read( strKey ) ) );
+
+        store.delete( strKey );
+        assertFalse( store.exists( strKey ) );
+    }
+
+    public void testStreamedWriteCallsBackBeforeStoring( ) throws IOException
+    {
+        FileSystemResponseBlobStore store = createStore( Files.createTempDirectory( "genatt-blobs" ) );
+        List<String> listKeys = new ArrayList<>( );
+
+        String strKey = store.write( new ByteArrayInputStream( CONTENT ), strKeyBeforeStore -> {
+            // The content is not stored yet when the key is locked
+            assertFalse( store.exists( strKeyBeforeStore ) );
+            listKeys.add( strKeyBeforeStore );
+        } );
+
+        assertEquals( Collections.singletonList( ResponseBlobService.digest( CONTENT ) ), listKeys );
+        assertEquals( listKeys.get( 0 ), strKey );
+        assertTrue( store.exists( strKey ) );
+    }
+
+    public void testForEachKey( ) throws IOException
+    {
+        Path pathRoot = Files.createTempDirectory( "genatt-blobs" );
+        FileSystemResponseBlobStore store = createStore( pathRoot );
+        String strKey = ResponseBlobService.digest( CONTENT );
+        store.write( strKey, CONTENT );
+
+        Path pathTemporary = pathRoot.resolve( "tmp" ).resolve( "upload123.tmp" );
+        Files.createDirectories( pathTemporary.getParent( ) );
+        Files.write( pathTemporary, CONTENT );
+
+        List<String> listKeys = new ArrayList<>( );
+        store.forEachKey( System.currentTimeMillis( ) - 60000L, listKeys::add );
+
+        // The recent contents are kept
+        assertTrue( listKeys.isEmpty( ) );
+        assertTrue( Files.exists( pathTemporary ) );
+
+        store.forEachKey( System.currentTimeMillis( ) + 60000L, listKeys::add );
+
+        assertEquals( Collections.singletonList( strKey ), listKeys );
+        assertFalse( Files.exists( pathTemporary ) );
+        assertTrue( store.exists( strKey ) );
+    }
+
+    private static FileSystemResponseBlobStore createStore( Path pathRoot )
+    {
+        return new FileSystemResponseBlobStore( )
+        {
+            @Override
+            protected Path getRoot( )
+            {
+                return pathRoot;
+            }
+        };
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.image;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.imageio.ImageIO;
+
+import fr.paris.lutece.plugins.genericattributes.util.ImageHeader;
+import fr.paris.lutece.test.LuteceTestCase;
+
+public class ImageIngestServiceTest extends LuteceTestCase
+{
+    public void testResizeJpeg( ) throws IOException
+    {
+        byte [ ] content = createImage( "jpg", 4000, 3000 );
+        byte [ ] result = ImageIngestService.resize( content, 1600, -1, 0.85f );
+
+        assertNotNull( result );
+        assertTrue( result.length < content.length );
+
+        ImageHeader header = ImageHeader.read( new ByteArrayInputStream( result ) );
+        assertEquals( ImageHeader.FORMAT_JPEG, header.getFormat( ) );
+        assertEquals( 1600, header.getWidth( ) );
+        assertEquals( 1200, header.getHeight( ) );
+    }
+
+    public void testResizePngToBothBounds( ) throws IOException
+    {
+        byte [ ] result = ImageIngestService.resize( createImage( "png", 1000, 2000 ), 800, 600, 0.85f );
+
+        assertNotNull( result );
+
+        ImageHeader header = ImageHeader.read( new ByteArrayInputStream( result ) );
+        assertEquals( ImageHeader.FORMAT_PNG, header.getFormat( ) );
+        assertEquals( 300, header.getWidth( ) );
+        assertEquals( 600, header.getHeight( ) );
+    }
+
+    public void testResizeWithinBounds( ) throws IOException
+    {
+        assertNull( ImageIngestService.resize( createImage( "jpg", 800, 600 ), 1600, 1200, 0.85f ) );
+        assertNull( ImageIngestService.resize( "not an image".getBytes( StandardCharsets.UTF_8 ), 1600, 1200, 0.85f ) );
+    }
+
+    private byte [ ] createImage( String strFormat, int nWidth, int nHeight ) throws IOException
+    {
+        BufferedImage image = new BufferedImage( nWidth, nHeight, BufferedImage.TYPE_INT_RGB );
+        Graphics2D graphics = image.createGraphics( );
+
+        for ( int i = 0; i < 50; i++ )
+        {
+            graphics.setColor( new Color( i * 5, 255 - i * 5, ( i * 37 ) % 256 ) );
+            graphics.fillOval( ( i * 97 ) % nWidth, ( i * 61 ) % nHeight, nWidth / 5, nHeight / 5 );
+        }
+
+        graphics.dispose( );
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream( );
+        ImageIO.write( image, strFormat, outputStream );
+
+        return outputStream.toByteArray( );
+    }
+}
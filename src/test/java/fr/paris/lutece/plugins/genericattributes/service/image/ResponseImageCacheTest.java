@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.image;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fr.paris.lutece.plugins.genericattributes.business.ResponseImage;
+import fr.paris.lutece.test.LuteceTestCase;
+
+public class ResponseImageCacheTest extends LuteceTestCase
+{
+    private final AtomicInteger _nLoadCount = new AtomicInteger( );
+
+    public void testGetLoadsOnce( )
+    {
+        ResponseImageCache cache = new ResponseImageCache( 1000, 1000, 0, this::load );
+
+        ResponseImage image = cache.get( 100 );
+        assertNotNull( image.getETag( ) );
+        assertSame( image, cache.get( 100 ) );
+        assertEquals( 1, _nLoadCount.get( ) );
+        assertEquals( 100, cache.getSize( ) );
+
+        assertNull( cache.get( -1 ) );
+    }
+
+    public void testEvictsLeastRecentlyUsed( )
+    {
+        ResponseImageCache cache = new ResponseImageCache( 1000, 1000, 0, this::load );
+
+        cache.get( 400 );
+        cache.get( 300 );
+        cache.get( 400 );
+        cache.get( 500 );
+        assertEquals( 900, cache.getSize( ) );
+        assertEquals( 3, _nLoadCount.get( ) );
+
+        // 300 was the least recently used
+        cache.get( 400 );
+        cache.get( 500 );
+        assertEquals( 3, _nLoadCount.get( ) );
+        cache.get( 300 );
+        assertEquals( 4, _nLoadCount.get( ) );
+    }
+
+    public void testLargeImagesAreNotCached( )
+    {
+        ResponseImageCache cache = new ResponseImageCache( 1000, 200, 0, this::load );
+
+        assertEquals( 300, cache.get( 300 ).getContent( ).length );
+        cache.get( 300 );
+        assertEquals( 2, _nLoadCount.get( ) );
+        assertEquals( 0, cache.getSize( ) );
+    }
+
+    public void testInvalidate( )
+    {
+        ResponseImageCache cache = new ResponseImageCache( 1000, 1000, 0, this::load );
+
+        ResponseImage image = cache.get( 100 );
+        cache.remove( 100 );
+        assertEquals( 0, cache.getSize( ) );
+        assertNotSame( image, cache.get( 100 ) );
+        assertEquals( 2, _nLoadCount.get( ) );
+    }
+
+    public void testInvalidateWhileLoading( )
+    {
+        ResponseImageCache [ ] cache = new ResponseImageCache [ 1];
+        cache [0] = new ResponseImageCache( 1000, 1000, 0, nSize -> {
+            // The response is updated while its image is loaded
+            cache [0].remove( nSize );
+
+            return load( nSize );
+        } );
+
+        assertNotNull( cache [0].get( 100 ) );
+        assertEquals( 0, cache [0].getSize( ) );
+    }
+
+    public void testTimeToLive( ) throws InterruptedException
+    {
+        ResponseImageCache cache = new ResponseImageCache( 1000, 1000, 50, this::load );
+
+        cache.get( 100 );
+        cache.get( 100 );
+        assertEquals( 1, _nLoadCount.get( ) );
+        Thread.sleep( 100 );
+        cache.get( 100 );
+        assertEquals( 2, _nLoadCount.get( ) );
+        assertEquals( 100, cache.getSize( ) );
+    }
+
+    public void testDisabled( )
+    {
+        ResponseImageCache cache = new ResponseImageCache( 0, 1000, 0, this::load );
+
+        cache.get( 100 );
+        cache.get( 100 );
+        assertEquals( 2, _nLoadCount.get( ) );
+        assertEquals( 0, cache.getSize( ) );
+    }
+
+    /**
+     * Load an image whose response id is its size
+     */
+    private ResponseImage load( int nSize )
+    {
+        if ( nSize < 0 )
+        {
+            return null;
+        }
+
+        _nLoadCount.incrementAndGet( );
+
+        ResponseImage image = new ResponseImage( );
+        image.setIdResponse( nSize );
+        image.setTitle( "image.png" );
+        image.setContent( new byte [ nSize] );
+
+        return image;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.image;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fr.paris.lutece.portal.service.image.ImageResource;
+import fr.paris.lutece.test.LuteceTestCase;
+
+public class ResponseThumbnailServiceTest extends LuteceTestCase
+{
+    public void testParseSizes( )
+    {
+        assertEquals( "[64, 160, 320]", Arrays.toString( ResponseThumbnailService.parseSizes( "320, 64,160,64" ) ) );
+        assertEquals( "[100]", Arrays.toString( ResponseThumbnailService.parseSizes( "0,-5,abc,100" ) ) );
+        assertEquals( 0, ResponseThumbnailService.parseSizes( "" ).length );
+        assertEquals( 0, ResponseThumbnailService.parseSizes( null ).length );
+    }
+
+    public void testGetThumbnailSize( )
+    {
+        int [ ] sizes = {
+                64, 160, 320
+        };
+
+        assertEquals( 64, ResponseThumbnailService.getThumbnailSize( sizes, 10 ) );
+        assertEquals( 160, ResponseThumbnailService.getThumbnailSize( sizes, 64 + 1 ) );
+        assertEquals( 160, ResponseThumbnailService.getThumbnailSize( sizes, 160 ) );
+        assertEquals( 320, ResponseThumbnailService.getThumbnailSize( sizes, 2000 ) );
+        assertEquals( 0, ResponseThumbnailService.getThumbnailSize( new int [ 0], 100 ) );
+    }
+
+    public void testGenerateOnce( ) throws InterruptedException
+    {
+        int nThreads = 8;
+        AtomicInteger nGenerations = new AtomicInteger( );
+        CountDownLatch latchStart = new CountDownLatch( 1 );
+        CountDownLatch latchGeneration = new CountDownLatch( 1 );
+        List<ImageResource> listResults = new ArrayList<>( );
+        List<Thread> listThreads = new ArrayList<>( );
+
+        for ( int nIndex = 0; nIndex < nThreads; nIndex++ )
+        {
+            Thread thread = new Thread( ( ) -> {
+                try
+                {
+                    latchStart.await( );
+                }
+                catch( InterruptedException e )
+                {
+                    return;
+                }
+
+                ImageResource result = ResponseThumbnailService.generateOnce( "1-64", ( ) -> {
+                    nGenerations.incrementAndGet( );
+                    // Keep the generation running until all the threads have requested it
+                    latchGeneration.await( );
+
+                    return new ImageResource( );
+                } );
+
+                synchronized( listResults )
+                {
+                    listResults.add( result );
+                }
+            } );
+            thread.start( );
+            listThreads.add( thread );
+        }
+
+        latchStart.countDown( );
+        Thread.sleep( 200 );
+        latchGeneration.countDown( );
+
+        for ( Thread thread : listThreads )
+        {
+            thread.join( );
+        }
+
+        assertEquals( 1, nGenerations.get( ) );
+        assertEquals( nThreads, listResults.size( ) );
+
+        for ( ImageResource result : listResults )
+        {
+            assertSame( listResults.get( 0 ), result );
+        }
+
+        // The generation is run again once it has ended
+        ResponseThumbnailService.generateOnce( "1-64", ( ) -> {
+            nGenerations.incrementAndGet( );
+
+            return null;
+        } );
+        assertEquals( 2, nGenerations.get( ) );
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.upload;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.fileupload.FileItem;
+
+import fr.paris.lutece.plugins.genericattributes.service.file.ResponseBlobService;
+import fr.paris.lutece.plugins.genericattributes.service.upload.ChunkedUploadException.Reason;
+import fr.paris.lutece.plugins.genericattributes.service.upload.IUploadStagingStore.Status;
+import fr.paris.lutece.test.LuteceTestCase;
+
+/**
+ * Test class for the ChunkedUploadService
+ */
+public class ChunkedUploadServiceTest extends LuteceTestCase
+{
+    private static final String SESSION_ID = "session";
+    private static final String FIELD_NAME = "attribute1";
+    private static final byte [ ] CONTENT = "first chunk,second chunk".getBytes( StandardCharsets.UTF_8 );
+    private static final int CHUNK_SIZE = 12;
+
+    public void testResumedUpload( ) throws IOException, ChunkedUploadException
+    {
+        ChunkedUploadService service = new ChunkedUploadService( Files.createTempDirectory( "genatt-chunks" ) );
+        String strUploadId = service.start( SESSION_ID, FIELD_NAME, "scan.pdf", CONTENT.length );
+
+        assertEquals( CHUNK_SIZE, service.append( strUploadId, SESSION_ID, 0, chunk( 0, CHUNK_SIZE ), checksum( 0, CHUNK_SIZE ) ) );
+
+        // an interrupted chunk is discarded
+        InputStream inInterrupted = new ByteArrayInputStream( CONTENT, CHUNK_SIZE, CHUNK_SIZE )
+        {
+            @Override
+            public synchronized int read( byte [ ] buffer, int nOffset, int nLength )
+            {
+                throw new IllegalStateException( "connection lost" );
+            }
+        };
+
+        try
+        {
+            service.append( strUploadId, SESSION_ID, CHUNK_SIZE, inInterrupted, checksum( CHUNK_SIZE, CONTENT.length ) );
+            fail( "The chunk should be interrupted" );
+        }
+        catch( IllegalStateException e )
+        {
+            assertEquals( CHUNK_SIZE, service.getOffset( strUploadId, SESSION_ID ) );
+        }
+
+        assertRefused( Reason.CHECKSUM_MISMATCH, service, strUploadId, CHUNK_SIZE, checksum( 0, CHUNK_SIZE ) );
+        assertRefused( Reason.OFFSET_MISMATCH, service, strUploadId, 0, checksum( CHUNK_SIZE, CONTENT.length ) );
+
+        try
+        {
+            service.finish( strUploadId, SESSION_ID );
+            fail( "The upload should be incomplete" );
+        }
+        catch( ChunkedUploadException e )
+        {
+            assertEquals( Reason.INCOMPLETE, e.getReason( ) );
+        }
+
+        assertEquals( CONTENT.length,
+                service.append( strUploadId, SESSION_ID, CHUNK_SIZE, chunk( CHUNK_SIZE, CONTENT.length ), checksum( CHUNK_SIZE, CONTENT.length ) ) );
+
+        StagedFileItem fileItem = service.finish( strUploadId, SESSION_ID );
+        assertEquals( "scan.pdf", fileItem.getName( ) );
+        assertEquals( FIELD_NAME, fileItem.getFieldName( ) );
+        assertEquals( ResponseBlobService.digest( CONTENT ), fileItem.getContentHash( ) );
+        assertTrue( Arrays.equals( CONTENT, fileItem.get( ) ) );
+        assertEquals( 0, service.getUploadCount( ) );
+        fileItem.delete( );
+    }
+
+    public void testSizeAndSession( ) throws IOException, ChunkedUploadException
+    {
+        ChunkedUploadService service = new ChunkedUploadService( Files.createTempDirectory( "genatt-chunks" ) );
+        String strUploadId = service.start( SESSION_ID, FIELD_NAME, "scan.pdf", CHUNK_SIZE );
+
+        assertRefused( Reason.SIZE_EXCEEDED, service, strUploadId, 0, ResponseBlobService.digest( CONTENT ) );
+
+        try
+        {
+            service.getOffset( strUploadId, "other" );
+            fail( "The upload should be unknown in another session" );
+        }
+        catch( ChunkedUploadException e )
+        {
+            assertEquals( Reason.UNKNOWN_UPLOAD, e.getReason( ) );
+        }
+
+        assertEquals( 0, service.reap( 0L ) );
+        assertEquals( 1, service.reap( Long.MAX_VALUE ) );
+        assertEquals( 0, service.getUploadCount( ) );
+    }
+
+    public void testUploadAcrossNodes( ) throws IOException, ChunkedUploadException
+    {
+        Path pathDirectory = Files.createTempDirectory( "genatt-chunks" );
+        ChunkedUploadService serviceNodeA = new ChunkedUploadService( pathDirectory );
+        ChunkedUploadService serviceNodeB = new ChunkedUploadService( pathDirectory );
+        String strUploadId = serviceNodeA.start( SESSION_ID, FIELD_NAME, "scan.pdf", CONTENT.length );
+
+        assertEquals( CHUNK_SIZE, serviceNodeA.append( strUploadId, SESSION_ID, 0, chunk( 0, CHUNK_SIZE ), checksum( 0, CHUNK_SIZE ) ) );
+        assertEquals( CHUNK_SIZE, serviceNodeB.getOffset( strUploadId, SESSION_ID ) );
+        assertEquals( CONTENT.length,
+                serviceNodeB.append( strUploadId, SESSION_ID, CHUNK_SIZE, chunk( CHUNK_SIZE, CONTENT.length ), checksum( CHUNK_SIZE, CONTENT.length ) ) );
+
+        // the node which started the upload catches up with the chunk received by the other one
+        StagedFileItem fileItem = serviceNodeA.finish( strUploadId, SESSION_ID );
+        assertEquals( ResponseBlobService.digest( CONTENT ), fileItem.getContentHash( ) );
+        assertTrue( Arrays.equals( CONTENT, fileItem.get( ) ) );
+
+        try
+        {
+            serviceNodeB.finish( strUploadId, SESSION_ID );
+            fail( "The upload should be finished" );
+        }
+        catch( ChunkedUploadException e )
+        {
+            assertEquals( Reason.UNKNOWN_UPLOAD, e.getReason( ) );
+        }
+
+        assertEquals( 0, serviceNodeB.getUploadCount( ) );
+        fileItem.delete( );
+    }
+
+    public void testFinishedUploadKeptByReaper( ) throws IOException, ChunkedUploadException
+    {
+        Path pathStaging = Files.createTempDirectory( "genatt-staging" );
+        ChunkedUploadService service = new ChunkedUploadService( pathStaging.resolve( ".chunks" ) );
+        UploadStagingStore store = new UploadStagingStore( pathStaging, 0, 0, 0, 0 );
+        String strUploadId = service.start( SESSION_ID, FIELD_NAME, "scan.pdf", CONTENT.length );
+
+        assertEquals( CONTENT.length, service.append( strUploadId, SESSION_ID, 0, chunk( 0, CONTENT.length ), checksum( 0, CONTENT.length ) ) );
+        assertEquals( Status.STAGED, store.add( SESSION_ID, FIELD_NAME, service.finish( strUploadId, SESSION_ID ), -1, -1 ) );
+
+        // the reaper of the chunks runs long after the last chunk
+        assertEquals( 0, service.reap( Long.MAX_VALUE ) );
+
+        List<FileItem> listFileItems = store.getFileItems( SESSION_ID, FIELD_NAME );
+        assertEquals( 1, listFileItems.size( ) );
+        assertTrue( Arrays.equals( CONTENT, listFileItems.get( 0 ).get( ) ) );
+        store.removeSession( SESSION_ID );
+    }
+
+    private static void assertRefused( Reason reason, ChunkedUploadService service, String strUploadId, long lOffset, String strChecksum )
+            throws IOException
+    {
+        long lUploadOffset = -1;
+
+        try
+        {
+            lUploadOffset = service.getOffset( strUploadId, SESSION_ID );
+            service.append( strUploadId, SESSION_ID, lOffset, ( lOffset == 0 ) ? new ByteArrayInputStream( CONTENT ) : chunk( (int) lOffset,
+                    CONTENT.length ), strChecksum );
+            fail( "The chunk should be refused" );
+        }
+        catch( ChunkedUploadException e )
+        {
+            assertEquals( reason, e.getReason( ) );
+            assertEquals( lUploadOffset, e.getOffset( ) );
+        }
+    }
+
+    private static InputStream chunk( int nFrom, int nTo )
+    {
+        return new ByteArrayInputStream( Arrays.copyOfRange( CONTENT, nFrom, nTo ) );
+    }
+
+    private static String checksum( int nFrom, int nTo )
+    {
+        return ResponseBlobService.digest( Arrays.copyOfRange( CONTENT, nFrom, nTo ) );
+    }
+}
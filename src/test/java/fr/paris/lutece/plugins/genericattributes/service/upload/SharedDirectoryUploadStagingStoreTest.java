@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.upload;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.fileupload.FileItem;
+
+import fr.paris.lutece.plugins.genericattributes.business.GenAttFileItem;
+import fr.paris.lutece.plugins.genericattributes.service.upload.IUploadStagingStore.Status;
+import fr.paris.lutece.test.LuteceTestCase;
+
+/**
+ * Test class for the SharedDirectoryUploadStagingStore, with two stores sharing a directory as two nodes would
+ */
+public class SharedDirectoryUploadStagingStoreTest extends LuteceTestCase
+{
+    private static final String SESSION_ID = "2f1c6b1e-3c49-4f1e-9f63-0d1b2c3d4e5f";
+    private static final String FIELD_NAME = "attribute1";
+    private static final byte [ ] CONTENT = "The content of an uploaded file".getBytes( StandardCharsets.UTF_8 );
+    private static final byte [ ] OTHER_CONTENT = "The content of an uploaded File".getBytes( StandardCharsets.UTF_8 );
+
+    public void testSharedStaging( ) throws IOException
+    {
+        Path pathRoot = Files.createTempDirectory( "genatt-shared-staging" );
+        SharedDirectoryUploadStagingStore storeNodeA = new SharedDirectoryUploadStagingStore( pathRoot, 100, 0, 0 );
+        SharedDirectoryUploadStagingStore storeNodeB = new SharedDirectoryUploadStagingStore( pathRoot, 100, 0, 0 );
+
+        assertTrue( storeNodeB.getFileItems( SESSION_ID, FIELD_NAME ).isEmpty( ) );
+        assertEquals( Status.STAGED, storeNodeA.add( SESSION_ID, FIELD_NAME, new GenAttFileItem( CONTENT, "first.txt", 7 ), -1, -1 ) );
+        assertEquals( Status.STAGED, storeNodeA.add( SESSION_ID, FIELD_NAME, new GenAttFileItem( OTHER_CONTENT, "second.txt" ), -1, -1 ) );
+        assertEquals( Status.DUPLICATE, storeNodeB.add( SESSION_ID, FIELD_NAME, new GenAttFileItem( CONTENT, "copy.txt" ), -1, -1 ) );
+        assertEquals( Status.MAX_FILES_EXCEEDED, storeNodeB.add( SESSION_ID, FIELD_NAME, new GenAttFileItem( new byte [ 1], "third.txt" ), -1, 2 ) );
+
+        List<FileItem> listFileItems = storeNodeB.getFileItems( SESSION_ID, FIELD_NAME );
+        assertEquals( 2, listFileItems.size( ) );
+        assertEquals( "first.txt", listFileItems.get( 0 ).getName( ) );
+        assertEquals( 7, ( (GenAttFileItem) listFileItems.get( 0 ) ).getIdResponse( ) );
+        assertEquals( CONTENT.length, listFileItems.get( 1 ).getSize( ) );
+        assertTrue( Arrays.equals( OTHER_CONTENT, listFileItems.get( 1 ).get( ) ) );
+
+        assertTrue( storeNodeB.isSessionQuotaExceeded( SESSION_ID, 100 - ( 2 * CONTENT.length ) + 1 ) );
+        assertEquals( Status.QUOTA_EXCEEDED, storeNodeB.add( SESSION_ID, FIELD_NAME, new GenAttFileItem( new byte [ 50], "rejected.txt" ), -1, -1 ) );
+
+        assertEquals( "first.txt", storeNodeB.remove( SESSION_ID, FIELD_NAME, 0 ).getName( ) );
+        assertEquals( 1, storeNodeA.getFileItems( SESSION_ID, FIELD_NAME ).size( ) );
+
+        storeNodeA.removeSession( SESSION_ID );
+        assertTrue( storeNodeB.getFileItems( SESSION_ID, FIELD_NAME ).isEmpty( ) );
+        assertEquals( 0, storeNodeB.getSessionCount( ) );
+    }
+
+    public void testReap( ) throws IOException
+    {
+        Path pathRoot = Files.createTempDirectory( "genatt-shared-staging" );
+        SharedDirectoryUploadStagingStore storeNodeA = new SharedDirectoryUploadStagingStore( pathRoot, 0, 0, 0 );
+
+        // the directory of the chunked uploads is not a session
+        Path pathChunk = Files.createDirectories( pathRoot.resolve( ".chunks" ) ).resolve( "upload.part" );
+        Files.write( pathChunk, CONTENT );
+
+        assertEquals( Status.STAGED, storeNodeA.add( SESSION_ID, FIELD_NAME, new GenAttFileItem( CONTENT, "first.txt" ), -1, -1 ) );
+
+        SharedDirectoryUploadStagingStore storeNodeB = new SharedDirectoryUploadStagingStore( pathRoot, 0, 0, 0 );
+        assertEquals( 1, storeNodeB.getItemsStaged( ) );
+        assertEquals( CONTENT.length, storeNodeB.getBytesHeld( ) );
+        assertEquals( 0, storeNodeB.reap( 0L ) );
+        assertEquals( 1, storeNodeB.reap( Long.MAX_VALUE ) );
+        assertEquals( CONTENT.length, storeNodeB.getBytesReaped( ) );
+        assertEquals( 0, storeNodeB.getItemsStaged( ) );
+        assertEquals( 0, storeNodeB.getSessionCount( ) );
+        assertTrue( Files.exists( pathChunk ) );
+    }
+
+    public void testDataBeingStoredByAnotherNode( ) throws IOException
+    {
+        Path pathRoot = Files.createTempDirectory( "genatt-shared-staging" );
+        SharedDirectoryUploadStagingStore storeNodeA = new SharedDirectoryUploadStagingStore( pathRoot, 0, 0, 60000 );
+
+        assertEquals( Status.STAGED, storeNodeA.add( SESSION_ID, FIELD_NAME, new GenAttFileItem( CONTENT, "first.txt" ), -1, -1 ) );
+
+        // another node has moved its data file but not yet written its index
+        Path pathData = pathRoot.resolve( SESSION_ID ).resolve( FIELD_NAME ).resolve( "0000000000000-other.data" );
+        Files.write( pathData, OTHER_CONTENT );
+
+        storeNodeA.removeSession( SESSION_ID );
+        assertTrue( storeNodeA.getFileItems( SESSION_ID, FIELD_NAME ).isEmpty( ) );
+        assertTrue( Files.exists( pathData ) );
+
+        // the data file is deleted once older than the time to live
+        Files.setLastModifiedTime( pathData, FileTime.fromMillis( System.currentTimeMillis( ) - 120000 ) );
+        storeNodeA.removeSession( SESSION_ID );
+        assertFalse( Files.exists( pathData ) );
+        assertEquals( 0, storeNodeA.getSessionCount( ) );
+    }
+
+    public void testToFileName( )
+    {
+        assertEquals( "attribute_1-a", SharedDirectoryUploadStagingStore.toFileName( "attribute_1-a" ) );
+        assertEquals( "~002e~002e~002fa", SharedDirectoryUploadStagingStore.toFileName( "../a" ) );
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.upload;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.commons.fileupload.FileItem;
+
+import fr.paris.lutece.plugins.genericattributes.business.Entry;
+import fr.paris.lutece.plugins.genericattributes.business.Field;
+import fr.paris.lutece.plugins.genericattributes.business.GenAttFileItem;
+import fr.paris.lutece.plugins.genericattributes.business.GenericAttributeError;
+import fr.paris.lutece.plugins.genericattributes.service.entrytype.IEntryTypeService;
+import fr.paris.lutece.portal.business.regularexpression.RegularExpression;
+import fr.paris.lutece.test.LuteceTestCase;
+
+public class UploadPolicyTest extends LuteceTestCase
+{
+    private static final String ENTRY_TITLE = "Entry 1";
+    private static final String ERROR_MESSAGE = "Only PDF files";
+
+    public void testLimits( )
+    {
+        UploadPolicy policy = UploadPolicy.compile( createEntry( "2", "4" ), null, true, null );
+
+        assertEquals( 1, policy.getIdEntry( ) );
+        assertEquals( 2, policy.getMaxFiles( ) );
+        assertTrue( policy.isMaxFilesDefined( ) );
+        assertEquals( 4L, policy.getMaxSize( ) );
+        assertTrue( policy.isImagesOnly( ) );
+        assertTrue( policy.hasField( 10 ) );
+        assertTrue( policy.hasField( 11 ) );
+        assertFalse( policy.hasField( 12 ) );
+
+        List<FileItem> listFiles = new ArrayList<>( );
+        listFiles.add( new GenAttFileItem( "abc".getBytes( ), "a.txt" ) );
+        assertNull( policy.checkNumberFiles( new ArrayList<>( ), listFiles, Locale.FRANCE ) );
+        assertNull( policy.checkFileSize( new ArrayList<>( ), listFiles, Locale.FRANCE ) );
+
+        listFiles.add( new GenAttFileItem( "azerty".getBytes( ), "b.txt" ) );
+        listFiles.add( new GenAttFileItem( "c".getBytes( ), "c.txt" ) );
+
+        GenericAttributeError error = policy.checkNumberFiles( new ArrayList<>( ), listFiles, Locale.FRANCE );
+        assertNotNull( error );
+        assertEquals( ENTRY_TITLE, error.getTitleQuestion( ) );
+        assertNotNull( policy.checkFileSize( new ArrayList<>( ), listFiles, Locale.FRANCE ) );
+    }
+
+    public void testDefaultMaxFiles( )
+    {
+        Entry entry = createEntry( "2", "4" );
+        entry.getFields( ).remove( 0 );
+        UploadPolicy policy = UploadPolicy.compile( entry, null, false, null );
+
+        assertEquals( 1, policy.getMaxFiles( ) );
+        assertFalse( policy.isMaxFilesDefined( ) );
+        assertFalse( policy.isImagesOnly( ) );
+    }
+
+    public void testMimeType( )
+    {
+        RegularExpression regularExpression = new RegularExpression( );
+        regularExpression.setValue( "application/pdf" );
+        regularExpression.setErrorMessage( ERROR_MESSAGE );
+
+        UploadPolicy policy = UploadPolicy.compile( createEntry( "2", "4" ), null, false, Collections.singletonList( regularExpression ) );
+
+        assertNull( policy.checkMimeType( new GenAttFileItem( "abc".getBytes( ), "file.pdf" ) ) );
+
+        GenericAttributeError error = policy.checkMimeType( new GenAttFileItem( "abc".getBytes( ), "file.png" ) );
+        assertNotNull( error );
+        assertFalse( error.isMandatoryError( ) );
+        assertEquals( ENTRY_TITLE, error.getTitleQuestion( ) );
+        assertEquals( ERROR_MESSAGE, error.getErrorMessage( ) );
+    }
+
+    public void testCompilationTime( )
+    {
+        UploadPolicy policy = UploadPolicy.compile( createEntry( "2", "4" ), null, false, null );
+
+        assertTrue( policy.isCompiledBefore( System.currentTimeMillis( ) + 1000L ) );
+        assertFalse( policy.isCompiledBefore( System.currentTimeMillis( ) - 60000L ) );
+    }
+
+    private Entry createEntry( String strMaxFiles, String strMaxSize )
+    {
+        Field fieldMaxFiles = new Field( );
+        fieldMaxFiles.setIdField( 10 );
+        fieldMaxFiles.setCode( IEntryTypeService.FIELD_MAX_FILES );
+        fieldMaxFiles.setValue( strMaxFiles );
+
+        Field fieldMaxSize = new Field( );
+        fieldMaxSize.setIdField( 11 );
+        fieldMaxSize.setCode( IEntryTypeService.FIELD_FILE_MAX_SIZE );
+        fieldMaxSize.setValue( strMaxSize );
+
+        Entry entry = new Entry( );
+        entry.setIdEntry( 1 );
+        entry.setTitle( ENTRY_TITLE );
+        entry.setFields( new ArrayList<>( ) );
+        entry.getFields( ).add( fieldMaxFiles );
+        entry.getFields( ).add( fieldMaxSize );
+
+        return entry;
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.service.upload;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.fileupload.FileItem;
+
+import fr.paris.lutece.plugins.genericattributes.business.GenAttFileItem;
+import fr.paris.lutece.plugins.genericattributes.service.upload.IUploadStagingStore.Status;
+import fr.paris.lutece.test.LuteceTestCase;
+
+/**
+ * Test class for the UploadStagingStore
+ */
+public class UploadStagingStoreTest extends LuteceTestCase
+{
+    private static final String SESSION_ID = "session";
+    private static final String FIELD_NAME = "attribute1";
+    private static final int THREADS = 32;
+
+    public void testSpillAndQuotas( ) throws IOException
+    {
+        Path pathDirectory = Files.createTempDirectory( "genatt-staging" );
+        UploadStagingStore store = new UploadStagingStore( pathDirectory, 10, 100, 150, 0 );
+
+        byte [ ] content = new byte [ 60];
+        Arrays.fill( content, (byte) 'a' );
+
+        assertEquals( Status.STAGED, store.add( SESSION_ID, FIELD_NAME, new GenAttFileItem( new byte [ 5], "small.txt", 3 ), -1, -1 ) );
+        assertEquals( Status.STAGED, store.add( SESSION_ID, FIELD_NAME, new GenAttFileItem( content, "large.txt", 4 ), -1, -1 ) );
+
+        FileItem fileItemStaged = store.getFileItems( SESSION_ID, FIELD_NAME ).get( 1 );
+        assertTrue( fileItemStaged instanceof StagedFileItem );
+        assertEquals( 4, ( (StagedFileItem) fileItemStaged ).getIdResponse( ) );
+        assertTrue( Arrays.equals( content, fileItemStaged.get( ) ) );
+        assertEquals( 5, store.getBytesInMemory( ) );
+        assertEquals( 60, store.getBytesOnDisk( ) );
+        assertEquals( 2, store.getItemsStaged( ) );
+
+        assertTrue( store.isSessionQuotaExceeded( SESSION_ID, 60 ) );
+        assertEquals( Status.QUOTA_EXCEEDED, store.add( SESSION_ID, FIELD_NAME, new GenAttFileItem( content, "rejected.txt" ), -1, -1 ) );
+        assertEquals( Status.STAGED, store.add( "other", FIELD_NAME, new GenAttFileItem( content, "other.txt" ), -1, -1 ) );
+        assertTrue( store.isGlobalQuotaExceeded( 60 ) );
+        assertEquals( Status.QUOTA_EXCEEDED, store.add( "third", FIELD_NAME, new GenAttFileItem( content, "third.txt" ), -1, -1 ) );
+
+        store.remove( SESSION_ID, FIELD_NAME, 1 );
+        assertFalse( ( (StagedFileItem) fileItemStaged ).getFile( ).exists( ) );
+        store.removeSession( "other" );
+        store.removeSession( "third" );
+        store.removeSession( SESSION_ID );
+        assertEquals( 0, store.getBytesHeld( ) );
+        assertEquals( 0, store.getItemsStaged( ) );
+        assertEquals( 0, store.getSessionCount( ) );
+    }
+
+    public void testReap( ) throws IOException
+    {
+        UploadStagingStore store = new UploadStagingStore( Files.createTempDirectory( "genatt-staging" ), 10, 0, 0, 0 );
+
+        assertEquals( Status.STAGED, store.add( SESSION_ID, FIELD_NAME, new GenAttFileItem( new byte [ 5], "small.txt" ), -1, -1 ) );
+        assertEquals( Status.STAGED, store.add( SESSION_ID, FIELD_NAME, new GenAttFileItem( new byte [ 20], "large.txt" ), -1, -1 ) );
+        assertEquals( 0, store.reapExpired( ) );
+        assertEquals( 0, store.reap( 0L ) );
+
+        assertEquals( 2, store.reap( Long.MAX_VALUE ) );
+        assertEquals( 2, store.getItemsReaped( ) );
+        assertEquals( 25, store.getBytesReaped( ) );
+        assertEquals( 0, store.getBytesHeld( ) );
+        assertEquals( 0, store.getSessionCount( ) );
+    }
+
+    public void testLimitsAndDuplicates( ) throws IOException
+    {
+        Path pathDirectory = Files.createTempDirectory( "genatt-staging" );
+        UploadStagingStore store = new UploadStagingStore( pathDirectory, 10, 0, 0, 0 );
+        byte [ ] content = new byte [ 60];
+
+        assertEquals( Status.SIZE_EXCEEDED, store.add( SESSION_ID, FIELD_NAME, new GenAttFileItem( content, "large.txt" ), 50, -1 ) );
+
+        // a file whose declared size is wrong is stopped while it is copied
+        FileItem fileItemUnderstated = new GenAttFileItem( content, "understated.txt" )
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public long getSize( )
+            {
+                return 20;
+            }
+        };
+        assertEquals( Status.SIZE_EXCEEDED, store.add( SESSION_ID, FIELD_NAME, fileItemUnderstated, 50, -1 ) );
+        assertEquals( 0, store.getBytesHeld( ) );
+        assertEquals( 0, pathDirectory.toFile( ).list( ).length );
+
+        assertEquals( Status.STAGED, store.add( SESSION_ID, FIELD_NAME, new GenAttFileItem( content, "first.txt" ), 100, 2 ) );
+        assertEquals( Status.DUPLICATE, store.add( SESSION_ID, FIELD_NAME, new GenAttFileItem( new byte [ 60], "copy.txt" ), 100, 2 ) );
+        assertEquals( Status.STAGED, store.add( SESSION_ID, FIELD_NAME, new GenAttFileItem( new byte [ 5], "second.txt" ), 100, 2 ) );
+        assertEquals( Status.MAX_FILES_EXCEEDED, store.add( SESSION_ID, FIELD_NAME, new GenAttFileItem( new byte [ 6], "third.txt" ), 100, 2 ) );
+        assertEquals( 65, store.getBytesHeld( ) );
+        assertEquals( 1, pathDirectory.toFile( ).list( ).length );
+    }
+
+    public void testConcurrentUploads( ) throws Exception
+    {
+        Path pathDirectory = Files.createTempDirectory( "genatt-staging" );
+        UploadStagingStore store = new UploadStagingStore( pathDirectory, 16, 0, 0, 0 );
+        ExecutorService executor = Executors.newFixedThreadPool( THREADS );
+        CountDownLatch latchStart = new CountDownLatch( 1 );
+        List<Future<Status>> listFutures = new ArrayList<>( );
+
+        try
+        {
+            for ( int nIndex = 0; nIndex < THREADS; nIndex++ )
+            {
+                // half of the files are kept in memory, the others are staged on disk
+                byte [ ] content = new byte [ ( nIndex % 2 == 0 ) ? 8 : 64];
+                Arrays.fill( content, (byte) nIndex );
+
+                FileItem fileItem = new GenAttFileItem( content, "file" + nIndex + ".txt" );
+                listFutures.add( executor.submit( ( ) -> {
+                    latchStart.await( );
+
+                    // the list is read while the other files are uploaded
+                    for ( FileItem fileItemStaged : store.getFileItems( SESSION_ID, FIELD_NAME ) )
+                    {
+                        assertNotNull( fileItemStaged.getName( ) );
+                    }
+
+                    return store.add( SESSION_ID, FIELD_NAME, fileItem, -1, -1 );
+                } ) );
+            }
+
+            latchStart.countDown( );
+
+            for ( Future<Status> future : listFutures )
+            {
+                assertEquals( Status.STAGED, future.get( ) );
+            }
+
+            assertEquals( THREADS, store.getFileItems( SESSION_ID, FIELD_NAME ).size( ) );
+            assertEquals( THREADS, store.getItemsStaged( ) );
+            assertEquals( ( THREADS / 2 ) * ( 8 + 64 ), store.getBytesHeld( ) );
+
+            List<Future<FileItem>> listRemovals = new ArrayList<>( );
+
+            for ( int nIndex = 0; nIndex < THREADS; nIndex++ )
+            {
+                listRemovals.add( executor.submit( ( ) -> store.remove( SESSION_ID, FIELD_NAME, 0 ) ) );
+            }
+
+            for ( Future<FileItem> future : listRemovals )
+            {
+                assertNotNull( future.get( ) );
+            }
+
+            assertTrue( store.getFileItems( SESSION_ID, FIELD_NAME ).isEmpty( ) );
+            assertEquals( 0, store.getBytesHeld( ) );
+            assertEquals( 0, pathDirectory.toFile( ).list( ).length );
+        }
+        finally
+        {
+            executor.shutdownNow( );
+        }
+    }
+
+    public void testConcurrentUploadsWithMaxFiles( ) throws Exception
+    {
+        UploadStagingStore store = new UploadStagingStore( Files.createTempDirectory( "genatt-staging" ), 16, 0, 0, 0 );
+        ExecutorService executor = Executors.newFixedThreadPool( THREADS );
+        CountDownLatch latchStart = new CountDownLatch( 1 );
+        List<Future<Status>> listFutures = new ArrayList<>( );
+
+        try
+        {
+            for ( int nIndex = 0; nIndex < THREADS; nIndex++ )
+            {
+                FileItem fileItem = new GenAttFileItem( new byte [ nIndex + 1], "file" + nIndex + ".txt" );
+                listFutures.add( executor.submit( ( ) -> {
+                    latchStart.await( );
+
+                    return store.add( SESSION_ID, FIELD_NAME, fileItem, -1, 10 );
+                } ) );
+            }
+
+            latchStart.countDown( );
+
+            int nStaged = 0;
+
+            for ( Future<Status> future : listFutures )
+            {
+                nStaged += ( future.get( ) == Status.STAGED ) ? 1 : 0;
+            }
+
+            assertEquals( 10, nStaged );
+            assertEquals( 10, store.getFileItems( SESSION_ID, FIELD_NAME ).size( ) );
+            assertEquals( 10, store.getItemsStaged( ) );
+        }
+        finally
+        {
+            executor.shutdownNow( );
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+import fr.paris.lutece.test.LuteceTestCase;
+
+public class DataUriTest extends LuteceTestCase
+{
+    public void testDecodeDataUri( )
+    {
+        for ( int nLength = 1; nLength < 40; nLength++ )
+        {
+            byte [ ] content = createContent( nLength );
+            String strSource = "data:image/png;base64," + Base64.getEncoder( ).encodeToString( content );
+
+            assertTrue( Arrays.equals( content, DataUri.decode( strSource ) ) );
+        }
+    }
+
+    public void testDecodeRawBase64( )
+    {
+        byte [ ] content = createContent( 1000 );
+
+        assertTrue( Arrays.equals( content, DataUri.decode( Base64.getEncoder( ).encodeToString( content ) ) ) );
+        assertTrue( Arrays.equals( content, DataUri.decode( Base64.getMimeEncoder( ).encodeToString( content ) ) ) );
+        assertTrue( Arrays.equals( content, DataUri.decode( Base64.getEncoder( ).withoutPadding( ).encodeToString( content ) ) ) );
+    }
+
+    public void testDecodeNoContent( )
+    {
+        assertNull( DataUri.decode( null ) );
+        assertNull( DataUri.decode( "" ) );
+        assertNull( DataUri.decode( "data:image/png;base64," ) );
+        assertNull( DataUri.decode( "data:image/png;base64" ) );
+        assertEquals( -1, DataUri.getDataOffset( "data:image/png;base64" ) );
+    }
+
+    public void testGetDataOffset( )
+    {
+        assertEquals( 0, DataUri.getDataOffset( "iVBORw0KGgo" ) );
+        assertEquals( 22, DataUri.getDataOffset( "data:image/png;base64,iVBORw0KGgo" ) );
+        assertEquals( 22, DataUri.getDataOffset( "DATA:image/png;base64,iVBORw0KGgo" ) );
+        assertTrue( Arrays.equals( "Hello".getBytes( StandardCharsets.US_ASCII ), DataUri.decode( "data:text/plain;base64,SGVsbG8=" ) ) );
+    }
+
+    private byte [ ] createContent( int nLength )
+    {
+        byte [ ] content = new byte [ nLength];
+        new Random( nLength ).nextBytes( content );
+
+        return content;
+    }
+}
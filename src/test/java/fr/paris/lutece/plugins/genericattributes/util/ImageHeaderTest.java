@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.util;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+import fr.paris.lutece.test.LuteceTestCase;
+
+public class ImageHeaderTest extends LuteceTestCase
+{
+    public void testReadJpeg( ) throws IOException
+    {
+        ImageHeader header = ImageHeader.read( new ByteArrayInputStream( createImage( "jpg", 30, 20 ) ) );
+
+        assertNotNull( header );
+        assertEquals( ImageHeader.FORMAT_JPEG, header.getFormat( ) );
+        assertEquals( 30, header.getWidth( ) );
+        assertEquals( 20, header.getHeight( ) );
+        assertEquals( 600L, header.getPixelCount( ) );
+    }
+
+    public void testReadPng( ) throws IOException
+    {
+        ImageHeader header = ImageHeader.read( new ByteArrayInputStream( createImage( "png", 40, 10 ) ) );
+
+        assertNotNull( header );
+        assertEquals( ImageHeader.FORMAT_PNG, header.getFormat( ) );
+        assertEquals( 40, header.getWidth( ) );
+        assertEquals( 10, header.getHeight( ) );
+    }
+
+    public void testReadOnlyHeader( ) throws IOException
+    {
+        // The signature and the IHDR chunk of a PNG are enough to get its dimensions
+        byte [ ] header = Arrays.copyOf( createImage( "png", 4000, 3000 ), 33 );
+        ImageHeader imageHeader = ImageHeader.read( new ByteArrayInputStream( header ) );
+
+        assertNotNull( imageHeader );
+        assertEquals( 12000000L, imageHeader.getPixelCount( ) );
+    }
+
+    public void testReadNotAnImage( ) throws IOException
+    {
+        assertNull( ImageHeader.read( new ByteArrayInputStream( "not an image".getBytes( StandardCharsets.UTF_8 ) ) ) );
+        assertNull( ImageHeader.read( new ByteArrayInputStream( new byte [ 0] ) ) );
+        assertNull( ImageHeader.read( new ByteArrayInputStream( Arrays.copyOf( createImage( "png", 4, 4 ), 8 ) ) ) );
+    }
+
+    public void testGetFormat( )
+    {
+        byte [ ] gif = "GIF89a".getBytes( StandardCharsets.US_ASCII );
+        byte [ ] webp = "RIFF\0\0\0\0WEBP".getBytes( StandardCharsets.US_ASCII );
+
+        assertEquals( ImageHeader.FORMAT_GIF, ImageHeader.getFormat( gif, gif.length ) );
+        assertEquals( ImageHeader.FORMAT_WEBP, ImageHeader.getFormat( webp, webp.length ) );
+        assertNull( ImageHeader.getFormat( webp, 4 ) );
+    }
+
+    private byte [ ] createImage( String strFormat, int nWidth, int nHeight ) throws IOException
+    {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream( );
+        ImageIO.write( new BufferedImage( nWidth, nHeight, BufferedImage.TYPE_INT_RGB ), strFormat, outputStream );
+
+        return outputStream.toByteArray( );
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2002-2020, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.genericattributes.web;
+
+import fr.paris.lutece.test.LuteceTestCase;
+
+public class ResponseImageServletTest extends LuteceTestCase
+{
+    private static final String ETAG = "\"0123abcd\"";
+
+    public void testIfNoneMatch( )
+    {
+        assertTrue( ResponseImageServlet.isNotModified( ETAG, -1, ETAG, 1000 ) );
+        assertTrue( ResponseImageServlet.isNotModified( "\"other\", W/" + ETAG, -1, ETAG, 1000 ) );
+        assertTrue( ResponseImageServlet.isNotModified( "*", -1, ETAG, 1000 ) );
+        assertFalse( ResponseImageServlet.isNotModified( "\"other\"", -1, ETAG, 1000 ) );
+
+        // The entity tags take precedence over the modification date
+        assertFalse( ResponseImageServlet.isNotModified( "\"other\"", 5000, ETAG, 1000 ) );
+    }
+
+    public void testIfModifiedSince( )
+    {
+        assertTrue( ResponseImageServlet.isNotModified( null, 1000, null, 1999 ) );
+        assertTrue( ResponseImageServlet.isNotModified( null, 5000, null, 1000 ) );
+        assertFalse( ResponseImageServlet.isNotModified( null, 1000, null, 2000 ) );
+        assertFalse( ResponseImageServlet.isNotModified( null, 1000, null, -1 ) );
+        assertFalse( ResponseImageServlet.isNotModified( null, -1, null, 1000 ) );
+    }
+}